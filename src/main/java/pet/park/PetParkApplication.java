@@ -4,6 +4,8 @@ package pet.park;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import pet.park.startup.PetParkRuntimeHints;
 
 /**
  * This class is the entry point to a Java application. The purpose of this
@@ -27,10 +29,15 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * sets up a Dispatcher Servlet, which is responsible for routing HTTP requests
  * to controller methods that you specify.
  * 
+ * The @ImportRuntimeHints annotation registers the reflection and resource
+ * hints needed when the application is compiled to a native image (see
+ * {@link PetParkRuntimeHints}).
+ * 
  * @author Promineo
  *
  */
 @SpringBootApplication
+@ImportRuntimeHints(PetParkRuntimeHints.class)
 public class PetParkApplication {
   /**
    * This method starts Spring Boot. Since this is a Web application it will
@@ -5,22 +5,47 @@ package pet.park.controller;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.error.InvalidParameterValueException;
 import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.ParkFields;
 import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PopularPetParkData;
+import pet.park.controller.model.SimilarPetParkData;
+import pet.park.controller.model.TopContributorData;
+import pet.park.controller.stream.BoundingBox;
+import pet.park.controller.stream.ParkEventStream;
+import pet.park.service.DuplicatePolicy;
+import pet.park.service.ParkFilter;
+import pet.park.service.ParkListCache;
+import pet.park.service.ParkListCache.Snapshot;
 import pet.park.service.ParkService;
+import pet.park.service.PetParkSaveResult;
+import pet.park.service.ReadConsistency;
 
 /**
  * This class intercepts HTTP requests and formulates appropriate responses. The
@@ -42,11 +67,16 @@ import pet.park.service.ParkService;
  * @Slf4j This is a Lombok annotation that sets up an SLF4J logger in an
  *        instance variable named <em>log</em>.
  * 
+ * @Profile This controller runs on the servlet stack. When the "reactive"
+ *          profile is active, {@link ReactiveParkController} serves the read
+ *          routes instead.
+ * 
  * @author Promineo
  *
  */
 @RestController
 @RequestMapping("/pet_park")
+@Profile("!reactive")
 @Slf4j
 public class ParkController {
   /*
@@ -58,6 +88,36 @@ public class ParkController {
   @Autowired
   private ParkService parkService;
 
+  @Autowired
+  private ParkListCache parkListCache;
+
+  @Autowired
+  private ParkEventStream parkEventStream;
+
+  /**
+   * The header that a reconnecting server-sent event client sends with the
+   * ID of the last event it received.
+   */
+  private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+  /**
+   * A client that must see its own writes immediately sends this header with
+   * the value "strong". The park list is then read from the database instead
+   * of from the {@link ParkListCache} or the column store. A client that
+   * would rather have an answer at once sends "stale", which lets the column
+   * store answer from its startup snapshot (see {@link ReadConsistency}).
+   */
+  public static final String CONSISTENCY_HEADER = "X-Consistency";
+
+  /**
+   * The response header that lists the IDs of existing parks that look like
+   * a newly submitted park.
+   */
+  public static final String DUPLICATE_OF_HEADER = "X-Duplicate-Of";
+
+  @Value("${pet-park.duplicates.default-policy:WARN}")
+  private DuplicatePolicy defaultDuplicatePolicy;
+
   /**
    * This method is mapped to a POST request sent to /pet_park/contributor. If
    * successful, it returns status 201 (Created). The method is used to create a
@@ -166,6 +226,58 @@ public class ParkController {
     return parkService.retrieveAllContributors();
   }
 
+  /**
+   * The largest number of contributors that a client may ask for with the
+   * "k" parameter of the leaderboard.
+   */
+  private static final int MAX_TOP_CONTRIBUTORS = 100;
+
+  /**
+   * This method returns the contributors with the most parks, most parks
+   * first. It is mapped to a GET request sent to
+   * "/pet_park/contributor/top". The optional "k" query parameter sets the
+   * number of contributors returned (default 10, at most 100), e.g.
+   * "/pet_park/contributor/top?k=25". Unlike "/pet_park/contributor", no
+   * parks are loaded: the counts are kept in memory by
+   * {@link pet.park.service.ContributorLeaderboard}.
+   * 
+   * @param k The number of contributors to return.
+   * @return The contributors and their park counts.
+   */
+  @GetMapping("/contributor/top")
+  public List<TopContributorData> retrieveTopContributors(
+      @RequestParam(defaultValue = "10") int k) {
+    int limit = Math.max(1, Math.min(k, MAX_TOP_CONTRIBUTORS));
+    log.info("Retrieving the top {} contributors.", limit);
+
+    return parkService.retrieveTopContributors(limit);
+  }
+
+  /**
+   * This method is used to look up a contributor by email. It is mapped to a
+   * GET request sent to "/pet_park/contributor?email={email}". The onboarding
+   * flow uses it to check whether an email is already registered. A 404 (Not
+   * Found) status means the email is free.
+   * 
+   * Here are explanations of the annotations:
+   * 
+   * @GetMapping The params attribute makes this mapping apply only when the
+   *             "email" query parameter is present. Without it, the request
+   *             goes to {@link #retrieveAllContributors()}.
+   * 
+   * @RequestParam This tells Spring to pass the "email" query parameter to
+   *               the method parameter.
+   * 
+   * @param email The email to look up.
+   * @return The contributor with the email.
+   */
+  @GetMapping(value = "/contributor", params = "email")
+  public ContributorData retrieveContributorByEmail(
+      @RequestParam String email) {
+    log.info("Retrieving contributor with email={}", email);
+    return parkService.retrieveContributorByEmail(email);
+  }
+
   /**
    * This method is used to retrieve a single contributor with the given ID. It
    * is mapped to a GET request sent to "/pet_park/contributor/{contributorId}
@@ -292,21 +404,43 @@ public class ParkController {
   }
    * </pre>
    * 
+   * Before the park is created, it is checked against the existing parks.
+   * If a park with a similar name already exists close by, the "onDuplicate"
+   * query parameter decides what happens: REJECT returns 409 (Conflict),
+   * MERGE adds the amenities to the existing park and returns it with status
+   * 200 (OK) if the contributor owns it (otherwise the park is created as
+   * with WARN), and WARN creates the park anyway. In every case the IDs of the
+   * similar parks are sent in the X-Duplicate-Of response header. Without the
+   * parameter, <em>pet-park.duplicates.default-policy</em> is used.
+   * 
    * @param contributorId The ID (primary key value) of the contributor on which
    *        to add the park description. This is passed in the URI.
    * @param petParkData The pet park data. This is passed in the request body.
+   * @param onDuplicate What to do if the park looks like an existing park.
    * @return The pet park data with primary key and the associated contributor
    *         information.
    */
   @PostMapping("/contributor/{contributorId}/park")
-  @ResponseStatus(code = HttpStatus.CREATED)
-  public PetParkData insertPetPark(@PathVariable Long contributorId,
-      @RequestBody PetParkData petParkData) {
+  public ResponseEntity<PetParkData> insertPetPark(
+      @PathVariable Long contributorId, @RequestBody PetParkData petParkData,
+      @RequestParam(required = false) DuplicatePolicy onDuplicate) {
 
     log.info("Creating park {} for contributor with ID={}", petParkData,
         contributorId);
 
-    return parkService.savePetPark(contributorId, petParkData);
+    PetParkSaveResult result = parkService.savePetPark(contributorId,
+        petParkData, Objects.requireNonNullElse(onDuplicate,
+            defaultDuplicatePolicy));
+
+    ResponseEntity.BodyBuilder response = ResponseEntity
+        .status(result.merged() ? HttpStatus.OK : HttpStatus.CREATED);
+
+    if(!result.duplicateIds().isEmpty()) {
+      response.header(DUPLICATE_OF_HEADER, result.duplicateIds().stream()
+          .map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    return response.body(result.petPark());
   }
 
 /**
@@ -321,8 +455,8 @@ public class ParkController {
    * @param parkId The ID (primary key value) of the park. This is supplied in
    *        the URI.
    * @param petParkData The park data. See
-   *        {@link #insertPetPark(Long, PetParkData)} for the correct format.
-   *        The data is supplied in the request body.
+   *        {@link #insertPetPark(Long, PetParkData, DuplicatePolicy)} for
+   *        the correct format. The data is supplied in the request body.
    * @return The modified data object with the contributor data.
    */
   @PutMapping("/contributor/{contributorId}/park/{parkId}")
@@ -363,23 +497,259 @@ public class ParkController {
 
     return parkService.retrievePetParkById(contributorId, parkId);
   }
+
+  /**
+   * This method is the same as
+   * {@link #retrievePetParkById(Long, Long)}, but only the properties named
+   * in the "fields" query parameter are returned, e.g.
+   * "/pet_park/contributor/4/park/3?fields=parkName,directions".
+   * 
+   * @param contributorId The contributor ID (primary key value).
+   * @param parkId The park ID (primary key value).
+   * @param fields The comma-separated property names.
+   * @return The requested properties of the park.
+   * @throws InvalidParameterValueException Thrown if a field name is not
+   *         valid.
+   */
+  @GetMapping(value = "/contributor/{contributorId}/park/{parkId}",
+      params = "fields")
+  public Map<String, Object> retrievePetParkFieldsById(
+      @PathVariable Long contributorId, @PathVariable Long parkId,
+      @RequestParam String fields) {
+    return ParkFields.parse(fields)
+        .select(retrievePetParkById(contributorId, parkId));
+  }
   
   /**
-   * This method is used to retrieve all contributors. It is mapped to a PUT
-   * request sent to "/pet_park/contributor".
+   * The largest page that a client may ask for with the "size" parameter.
+   */
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  /**
+   * The largest number of similar parks that a client may ask for.
+   */
+  private static final int MAX_SIMILAR_PARKS = 100;
+
+  /**
+   * The largest number of popular parks that a client may ask for.
+   */
+  private static final int MAX_POPULAR_PARKS = 100;
+
+  /**
+   * This method is used to retrieve all pet parks. It is mapped to a GET
+   * request sent to "/pet_park/park".
+   * 
+   * If the "page" query parameter is given, only that page of parks (ordered
+   * by pet park ID) is returned, e.g. "/pet_park/park?page=2&size=50".
+   * 
+   * The parks may be filtered by country, state or province, and amenities,
+   * e.g. "/pet_park/park?country=USA&amenity=Water&amenity=Shade". A park
+   * must have every amenity given. A filtered list is returned whole unless
+   * "page" is given as well.
+   * 
+   * The "fields" query parameter limits the properties returned for each
+   * park, e.g. "/pet_park/park?fields=petParkId,parkName,geoLocation" for a
+   * map. When the parks are read from the database, only the columns for
+   * those properties are selected.
+   * 
+   * Pages, filtered lists and lists with fields are answered from the
+   * in-memory
+   * {@link pet.park.service.ParkColumnStore} once it is loaded, and from the
+   * database before that or if the client sends "X-Consistency: strong".
+   * With "X-Consistency: stale" they may come from the snapshot that the
+   * store reads at startup, before the database has been read.
+   * 
+   * The response normally comes from the pre-serialized snapshot kept by
+   * {@link ParkListCache}. The JSON bytes are sent as-is (gzip-compressed if
+   * the client accepts it). An ETag is sent so that a client can poll with
+   * If-None-Match and receive a 304 (Not Modified) if nothing has changed. If
+   * the snapshot is not available or the client sends "X-Consistency: strong",
+   * the list is read from the database.
    * 
    * Here are explanations of the annotations:
    * 
    * @GetMapping This tells Spring to map a GET request to
    *             "pet_park/park".
    * 
+   * @RequestHeader This tells Spring to pass the named request header to the
+   *                parameter. The header is optional.
+   * 
+   * @RequestParam This tells Spring to pass the named query parameter to the
+   *               parameter. All of the query parameters are optional.
+   *               "amenity" may be given more than once.
+   * 
+   * @param page The page number, starting at 0, if a page is wanted. A
+   *        negative page, or a page beyond the last one that can be read,
+   *        is a 400 (Bad Request).
+   * @param size The number of parks per page (1 to 1000, default 100).
+   * @param country The country to filter by, if any.
+   * @param stateOrProvince The state or province to filter by, if any.
+   * @param amenity The amenities that the parks must have, if any.
+   * @param fields The comma-separated property names to return, if not all.
+   * @param consistency The value of the X-Consistency header, if any.
+   * @param acceptEncoding The value of the Accept-Encoding header, if any.
+   * @param ifNoneMatch The value of the If-None-Match header, if any.
    * @return A list of all pet parks.
    */
   @GetMapping("/park")
-  public List<PetParkData> retrieveAllPetParks() {
+  public ResponseEntity<?> retrieveAllPetParks(
+      @RequestParam(required = false) Integer page,
+      @RequestParam(defaultValue = "100") int size,
+      @RequestParam(required = false) String country,
+      @RequestParam(required = false) String stateOrProvince,
+      @RequestParam(required = false) Set<String> amenity,
+      @RequestParam(required = false) String fields,
+      @RequestHeader(name = CONSISTENCY_HEADER,
+          required = false) String consistency,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING,
+          required = false) String acceptEncoding,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH,
+          required = false) String ifNoneMatch) {
+    ParkFilter filter = new ParkFilter(country, stateOrProvince, amenity);
+    ParkFields parkFields = ParkFields.parse(fields);
+    ReadConsistency readConsistency = ReadConsistency.fromHeader(consistency);
+
+    if(page != null) {
+      int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+      log.info("Retrieving page {} of pet parks (size={}, filter={}).", page,
+          pageSize, filter);
+
+      return ResponseEntity.ok(select(parkFields,
+          parkService.retrievePetParks(filter, page, pageSize,
+              parkFields, readConsistency)));
+    }
+
+    if(!filter.isEmpty() || !parkFields.isAll()) {
+      log.info("Retrieving pet parks with filter={}, fields={}.", filter,
+          parkFields.fields());
+
+      return ResponseEntity.ok(select(parkFields,
+          parkService.retrievePetParks(filter, 0, Integer.MAX_VALUE,
+              parkFields, readConsistency)));
+    }
+
     log.info("Retrieving all pet parks.");
-    return parkService.retrieveAllPetParks();
+
+    Optional<Snapshot> snapshot = readConsistency == ReadConsistency.STRONG
+        ? Optional.empty()
+        : parkListCache.current();
+
+    if(snapshot.isEmpty()) {
+      return ResponseEntity.ok(parkService.retrieveAllPetParks());
+    }
+
+    Snapshot cached = snapshot.get();
+
+    if(cached.getEtag().equals(ifNoneMatch)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+          .eTag(cached.getEtag()).build();
+    }
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON).eTag(cached.getEtag())
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+    if(cached.getGzip() != null && acceptEncoding != null
+        && acceptEncoding.contains("gzip")) {
+      return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+          .body(cached.getGzip());
+    }
+
+    return response.body(cached.getJson());
   }
 
+  /*
+   * The parks are returned as they are unless only some fields are wanted.
+   */
+  private List<?> select(ParkFields fields, List<PetParkData> petParks) {
+    if(fields.isAll()) {
+      return petParks;
+    }
+
+    return petParks.stream().map(fields::select).toList();
+  }
+
+  /**
+   * This method returns the pet parks that are most similar to the park with
+   * the given ID. Parks are ranked by how many amenities they share with the
+   * park and by how close they are to it. To call this method, send a GET
+   * request to "/pet_park/park/{parkId}/similar". The optional "limit" query
+   * parameter sets the number of parks returned (default 10, at most 100).
+   * So, to get the 5 parks most like park 7, send a GET request to
+   * "/pet_park/park/7/similar?limit=5".
+   * 
+   * @param parkId The pet park ID (primary key value). This value is supplied
+   *        in the request URI.
+   * @param limit The maximum number of parks to return.
+   * @return The similar parks with their scores, best first.
+   * @throws NoSuchElementException Thrown if the park does not exist.
+   */
+  @GetMapping("/park/{parkId}/similar")
+  public List<SimilarPetParkData> retrieveSimilarPetParks(
+      @PathVariable Long parkId,
+      @RequestParam(defaultValue = "10") int limit) {
+    log.info("Retrieving parks similar to pet park with ID={}", parkId);
+
+    return parkService.retrieveSimilarPetParks(parkId,
+        Math.max(1, Math.min(limit, MAX_SIMILAR_PARKS)));
+  }
 
+  /**
+   * This method returns the most viewed pet parks, most views first. It is
+   * mapped to a GET request sent to "/pet_park/park/popular". The optional
+   * "limit" query parameter sets the number of parks returned (default 10, at
+   * most 100), e.g. "/pet_park/park/popular?limit=25". A view is counted each
+   * time a park is retrieved by ID. Views are written to the database every
+   * few seconds, so the most recent views may not be included yet.
+   * 
+   * @param limit The maximum number of parks to return.
+   * @return The parks with their view counts.
+   */
+  @GetMapping("/park/popular")
+  public List<PopularPetParkData> retrievePopularPetParks(
+      @RequestParam(defaultValue = "10") int limit) {
+    int count = Math.max(1, Math.min(limit, MAX_POPULAR_PARKS));
+    log.info("Retrieving the {} most viewed pet parks.", count);
+
+    return parkService.retrievePopularPetParks(count);
+  }
+
+  /**
+   * This method opens a server-sent event stream of pet park changes. It is
+   * mapped to a GET request sent to "/pet_park/park/stream". A map client
+   * reads the park list once and then applies the park-created,
+   * park-updated and park-deleted events instead of polling the list. See
+   * {@link ParkEventStream} for the events.
+   * 
+   * The optional "bbox" query parameter limits the events to parks in an
+   * area, e.g. "/pet_park/park/stream?bbox=-123.2,45.3,-122.4,45.7"
+   * (minimum longitude, minimum latitude, maximum longitude, maximum
+   * latitude). A client that reconnects sends the Last-Event-ID header and
+   * receives the events it missed.
+   * 
+   * @param bbox The bounding box, if any.
+   * @param lastEventId The ID of the last event the client received, if any.
+   * @return The event stream, or status 503 (Service Unavailable) if this
+   *         node cannot send park events yet (or at all, if the column
+   *         store is disabled) or has no room for another stream.
+   * @throws InvalidParameterValueException Thrown if the bounding box is
+   *         not valid.
+   */
+  @GetMapping(value = "/park/stream",
+      produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> streamPetParks(
+      @RequestParam(required = false) String bbox,
+      @RequestHeader(name = LAST_EVENT_ID_HEADER,
+          required = false) String lastEventId) {
+    BoundingBox boundingBox =
+        Objects.isNull(bbox) ? null : BoundingBox.parse(bbox);
+
+    log.info("Opening pet park stream (bbox={}, Last-Event-ID={})", bbox,
+        lastEventId);
+
+    return parkEventStream.subscribe(boundingBox, lastEventId)
+        .map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "5").build());
+  }
 }
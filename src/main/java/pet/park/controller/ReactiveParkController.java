@@ -0,0 +1,119 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller;
+
+import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.PetParkData;
+import pet.park.service.ReactiveParkService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * This class serves the "/pet_park" read routes on the reactive (WebFlux)
+ * stack. It is the counterpart of {@link ParkController} and is only active
+ * with the "reactive" profile, in which case ParkController is not loaded.
+ * The URIs and JSON are the same as those of ParkController.
+ *
+ * The list methods return a {@link Flux}. Spring writes each element as it is
+ * produced. If the client asks for "application/x-ndjson", each element is
+ * written as one line of JSON, which lets a map client start drawing parks
+ * before the list is complete.
+ *
+ * Write routes (POST, PUT, DELETE) are not served by this controller. A node
+ * running this profile is a read replica.
+ *
+ * @author Promineo
+ *
+ */
+@RestController
+@RequestMapping("/pet_park")
+@Profile("reactive")
+@Slf4j
+public class ReactiveParkController {
+
+  @Autowired
+  private ReactiveParkService reactiveParkService;
+
+  /**
+   * Stream all contributors. This is mapped to GET "/pet_park/contributor".
+   *
+   * @return The contributors.
+   */
+  @GetMapping(value = "/contributor", produces = {
+      MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public Flux<ContributorData> retrieveAllContributors() {
+    log.info("Retrieving all contributors.");
+    return reactiveParkService.retrieveAllContributors();
+  }
+
+  /**
+   * Retrieve one contributor. This is mapped to GET
+   * "/pet_park/contributor/{contributorId}".
+   *
+   * @param contributorId The contributor ID.
+   * @return The contributor data.
+   */
+  @GetMapping("/contributor/{contributorId}")
+  public Mono<ContributorData> retrieveContributorById(
+      @PathVariable Long contributorId) {
+    log.info("Retrieving contributor with ID={}", contributorId);
+    return mapErrors(
+        reactiveParkService.retrieveContributorById(contributorId));
+  }
+
+  /**
+   * Retrieve one pet park. This is mapped to GET
+   * "/pet_park/contributor/{contributorId}/park/{parkId}".
+   *
+   * @param contributorId The contributor ID.
+   * @param parkId The pet park ID.
+   * @return The pet park data.
+   */
+  @GetMapping("/contributor/{contributorId}/park/{parkId}")
+  public Mono<PetParkData> retrievePetParkById(
+      @PathVariable Long contributorId, @PathVariable Long parkId) {
+    log.info("Retrieving pet park with ID={} for contributor with ID={}",
+        parkId, contributorId);
+    return mapErrors(
+        reactiveParkService.retrievePetParkById(contributorId, parkId));
+  }
+
+  /**
+   * Stream all pet parks. This is mapped to GET "/pet_park/park".
+   *
+   * @return The pet parks.
+   */
+  @GetMapping(value = "/park", produces = {MediaType.APPLICATION_JSON_VALUE,
+      MediaType.APPLICATION_NDJSON_VALUE})
+  public Flux<PetParkData> retrieveAllPetParks() {
+    log.info("Retrieving all pet parks.");
+    return reactiveParkService.retrieveAllPetParks();
+  }
+
+  /*
+   * The GlobalControllerErrorHandler is written for the servlet stack, so the
+   * exceptions are converted to ResponseStatusException, which WebFlux turns
+   * into the matching status.
+   */
+  private <T> Mono<T> mapErrors(Mono<T> mono) {
+    return mono
+        .onErrorMap(NoSuchElementException.class,
+            e -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                e.getMessage()))
+        .onErrorMap(IllegalStateException.class,
+            e -> new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                e.getMessage()));
+  }
+}
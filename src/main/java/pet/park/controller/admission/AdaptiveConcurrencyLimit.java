@@ -0,0 +1,126 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class limits the number of requests of one class that may be in
+ * progress at the same time. The limit is not fixed. It follows the time
+ * that the requests spend in the database, using the gradient method:
+ *
+ * <ul>
+ * <li>The lowest recent latency is taken as the "no load" latency. Requests
+ * cannot go faster than that, so any additional latency is time spent waiting
+ * in a queue (for a Tomcat thread, a pooled connection or a MySQL lock).</li>
+ * <li>gradient = noLoadLatency / smoothedLatency. A value of 1 means no
+ * queueing. A value of 0.5 means requests take twice as long as they
+ * should.</li>
+ * <li>newLimit = limit * gradient + sqrt(limit). The square root term lets the
+ * limit grow slowly when there is no queueing.</li>
+ * </ul>
+ *
+ * When the database slows down, the limit shrinks quickly and excess requests
+ * are rejected instead of waiting. This keeps the latency of the requests
+ * that are admitted close to the no-load latency.
+ *
+ * @author Promineo
+ *
+ */
+class AdaptiveConcurrencyLimit {
+  private static final double SMOOTHING = 0.2;
+
+  /*
+   * The no-load latency is allowed to drift upward slowly so that a
+   * permanently slower database eventually becomes the new baseline.
+   */
+  private static final double NO_LOAD_DRIFT = 1.001;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile double limit;
+  private double smoothedLatencyNanos;
+  private double noLoadLatencyNanos = Double.MAX_VALUE;
+
+  /**
+   * Create a limit.
+   *
+   * @param initialLimit The starting limit.
+   * @param minLimit The limit never drops below this value.
+   * @param maxLimit The limit never rises above this value.
+   */
+  AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * Try to start a request.
+   *
+   * @return {@code true} if the request may proceed. The caller must then call
+   *         {@link #release(long)} when the request completes.
+   */
+  boolean tryAcquire() {
+    while(true) {
+      int current = inFlight.get();
+
+      if(current >= (int)limit) {
+        return false;
+      }
+
+      if(inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Finish a request and feed its latency into the limit.
+   *
+   * @param latencyNanos How long the request spent in the database.
+   */
+  void release(long latencyNanos) {
+    inFlight.decrementAndGet();
+    update(latencyNanos);
+  }
+
+  /**
+   * Finish a request whose latency says nothing about the database (it did
+   * not use it, or was not timed to the end).
+   */
+  void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /*
+   * Synchronized because the latency statistics are updated together. This
+   * is called once per completed request, after the response has been
+   * written, so it is not on the path that decides admission.
+   */
+  private synchronized void update(long latencyNanos) {
+    noLoadLatencyNanos =
+        Math.min(noLoadLatencyNanos * NO_LOAD_DRIFT, latencyNanos);
+
+    smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos
+        : smoothedLatencyNanos * (1 - SMOOTHING) + latencyNanos * SMOOTHING;
+
+    double gradient = Math.max(0.5,
+        Math.min(1.0, noLoadLatencyNanos / smoothedLatencyNanos));
+
+    double newLimit = limit * gradient + Math.sqrt(limit);
+
+    limit = Math.max(minLimit,
+        Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+  }
+
+  int getLimit() {
+    return (int)limit;
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * This class registers the {@link AdmissionControlInterceptor} with Spring MVC
+ * so that it runs in front of every request mapped under "/pet_park".
+ *
+ * Class-level annotations:
+ *
+ * @Configuration Tells Spring that this class contributes configuration.
+ *
+ * @ConditionalOnProperty Admission control is on unless
+ *                        <em>pet-park.admission.enabled</em> is set to false.
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "pet-park.admission.enabled",
+    matchIfMissing = true)
+public class AdmissionControlConfiguration implements WebMvcConfigurer {
+
+  @Autowired
+  private AdmissionControlInterceptor admissionControlInterceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(admissionControlInterceptor)
+        .addPathPatterns("/pet_park/**");
+  }
+}
@@ -0,0 +1,331 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.admission;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import pet.park.dao.DatabaseTime;
+
+/**
+ * This class decides whether a request to "/pet_park/**" is allowed to reach
+ * the ParkController. It runs before the controller method, on the Tomcat
+ * thread, and rejects excess requests in a few microseconds instead of letting
+ * them queue for a database connection.
+ *
+ * Two checks are made, in this order:
+ *
+ * <ol>
+ * <li>Per-client rate. Each client has a {@link TokenBucket}. A client is
+ * its remote address, except that a request from one of the
+ * <em>pet-park.admission.trusted-proxies</em> is identified by its
+ * X-Client-Id header (set by the proxy). The header is ignored from anyone
+ * else, so a client cannot escape its limit by sending a new value with each
+ * request. A client that exceeds its rate receives 429 (Too Many
+ * Requests).</li>
+ * <li>Concurrency. Each {@link RequestClass} has an
+ * {@link AdaptiveConcurrencyLimit} that follows the time requests spend in
+ * the database (see {@link DatabaseTime}). If the limit is reached, the
+ * request receives 503 (Service Unavailable).</li>
+ * </ol>
+ *
+ * Both responses carry a Retry-After header. Heavy list requests have their
+ * own, smaller limit so that they are shed first and cannot starve the cheap
+ * single-entity reads.
+ *
+ * The buckets are kept in a fixed array of
+ * <em>pet-park.admission.max-tracked-clients</em> slots, like the
+ * NegativeLookupCache. A client is hashed to a pair of neighboring slots,
+ * and a new client takes the slot of an idle bucket (a full bucket, which
+ * behaves like a new one) if there is one. So the memory used is bounded and
+ * no request ever has to sweep the buckets.
+ *
+ * Class-level annotations:
+ *
+ * @Component Tells Spring that this class is a Managed Bean. It is registered
+ *            with Spring MVC by {@link AdmissionControlConfiguration}.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class AdmissionControlInterceptor implements AsyncHandlerInterceptor {
+  /**
+   * Header a trusted proxy sends to identify the client it forwards for.
+   */
+  public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+  private static final String PERMIT_ATTRIBUTE =
+      AdmissionControlInterceptor.class.getName() + ".PERMIT";
+
+  /**
+   * Requests are grouped by cost. Each group has its own concurrency limit.
+   */
+  enum RequestClass {
+    /** GET of a whole collection, e.g. "/pet_park/park". */
+    LIST,
+    /** GET of a single contributor or park. */
+    READ,
+    /** POST, PUT and DELETE. */
+    WRITE
+  }
+
+  /*
+   * Remembers which limit a request was admitted under and the time it has
+   * spent in the database.
+   */
+  private record Permit(AdaptiveConcurrencyLimit limit,
+      DatabaseTime databaseTime) {
+  }
+
+  /*
+   * The token bucket of one client.
+   */
+  private record ClientBucket(String clientId, TokenBucket bucket) {
+  }
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.admission.client-rate:50}")
+  private double clientRate;
+
+  @Value("${pet-park.admission.client-burst:100}")
+  private int clientBurst;
+
+  @Value("${pet-park.admission.max-tracked-clients:100000}")
+  private int maxTrackedClients;
+
+  @Value("${pet-park.admission.trusted-proxies:}")
+  private Set<String> trustedProxies;
+
+  @Value("${pet-park.admission.list.initial-limit:8}")
+  private int listInitialLimit;
+
+  @Value("${pet-park.admission.list.max-limit:16}")
+  private int listMaxLimit;
+
+  @Value("${pet-park.admission.read.initial-limit:50}")
+  private int readInitialLimit;
+
+  @Value("${pet-park.admission.read.max-limit:150}")
+  private int readMaxLimit;
+
+  @Value("${pet-park.admission.write.initial-limit:20}")
+  private int writeInitialLimit;
+
+  @Value("${pet-park.admission.write.max-limit:50}")
+  private int writeMaxLimit;
+
+  private final Map<RequestClass, AdaptiveConcurrencyLimit> limits =
+      new EnumMap<>(RequestClass.class);
+
+  private AtomicReferenceArray<ClientBucket> buckets;
+  private int mask;
+
+  /**
+   * Create the concurrency limits and register a gauge for each so that the
+   * current limit can be watched on the metrics endpoint.
+   */
+  @PostConstruct
+  void init() {
+    int size = Integer.highestOneBit(Math.max(2, maxTrackedClients - 1)) << 1;
+
+    buckets = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+
+    limits.put(RequestClass.LIST,
+        new AdaptiveConcurrencyLimit(listInitialLimit, 1, listMaxLimit));
+    limits.put(RequestClass.READ,
+        new AdaptiveConcurrencyLimit(readInitialLimit, 1, readMaxLimit));
+    limits.put(RequestClass.WRITE,
+        new AdaptiveConcurrencyLimit(writeInitialLimit, 1, writeMaxLimit));
+
+    limits.forEach((requestClass, limit) -> {
+      Gauge.builder("pet.park.admission.limit", limit,
+          AdaptiveConcurrencyLimit::getLimit).tag("class", requestClass.name())
+          .register(meterRegistry);
+
+      Gauge.builder("pet.park.admission.in.flight", limit,
+          AdaptiveConcurrencyLimit::getInFlight)
+          .tag("class", requestClass.name()).register(meterRegistry);
+    });
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request,
+      HttpServletResponse response, Object handler) throws IOException {
+    long now = System.nanoTime();
+    RequestClass requestClass = classify(request);
+
+    long waitNanos = bucketFor(clientId(request), now).tryAcquire(now);
+
+    if(waitNanos > 0) {
+      reject(response, HttpStatus.TOO_MANY_REQUESTS, requestClass, waitNanos,
+          "Request rate exceeded for this client.");
+      return false;
+    }
+
+    AdaptiveConcurrencyLimit limit = limits.get(requestClass);
+
+    if(!limit.tryAcquire()) {
+      reject(response, HttpStatus.SERVICE_UNAVAILABLE, requestClass,
+          TimeUnit.SECONDS.toNanos(1), "Server is at capacity.");
+      return false;
+    }
+
+    request.setAttribute(PERMIT_ATTRIBUTE,
+        new Permit(limit, DatabaseTime.start()));
+    return true;
+  }
+
+  /*
+   * A request that switches to asynchronous processing (e.g. a streaming
+   * response) releases its permit as soon as the Tomcat thread is returned.
+   * Otherwise a long-lived stream would occupy a slot for its whole life.
+   * Its latency is not sampled, since the rest of its work is not timed.
+   */
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    release(request, false);
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request,
+      HttpServletResponse response, Object handler, Exception ex) {
+    release(request, true);
+  }
+
+  /*
+   * The limit only learns from requests that ran a transaction, and from
+   * the time they spent in the database rather than the whole request.
+   * Cache hits and 304s are fast for reasons that have nothing to do with
+   * the database, and would drag the no-load latency toward zero.
+   */
+  private void release(HttpServletRequest request, boolean sample) {
+    if(request.getAttribute(PERMIT_ATTRIBUTE) instanceof Permit permit) {
+      DatabaseTime databaseTime = permit.databaseTime();
+
+      request.removeAttribute(PERMIT_ATTRIBUTE);
+      DatabaseTime.clear();
+
+      if(sample && databaseTime.transactions() > 0) {
+        permit.limit().release(databaseTime.nanos());
+      }
+      else {
+        permit.limit().release();
+      }
+    }
+  }
+
+  /*
+   * List endpoints are the collection GETs: "/pet_park/park" and
+   * "/pet_park/contributor" (with or without a query string).
+   */
+  private RequestClass classify(HttpServletRequest request) {
+    if(!HttpMethod.GET.matches(request.getMethod())) {
+      return RequestClass.WRITE;
+    }
+
+    String path = request.getRequestURI();
+
+    if(path.endsWith("/pet_park/park")
+        || path.endsWith("/pet_park/contributor")) {
+      return RequestClass.LIST;
+    }
+
+    return RequestClass.READ;
+  }
+
+  private String clientId(HttpServletRequest request) {
+    String remoteAddress = request.getRemoteAddr();
+    String clientId = request.getHeader(CLIENT_ID_HEADER);
+
+    if(Objects.isNull(clientId) || !trustedProxies.contains(remoteAddress)) {
+      return remoteAddress;
+    }
+
+    return clientId;
+  }
+
+  /*
+   * Find the client's bucket in its pair of slots, or put a new one in the
+   * slot whose bucket is empty or idle (the first slot if neither is). An
+   * idle bucket is full, so replacing it loses nothing. Replacing a busy one
+   * gives that client a fresh bucket, which only happens when more clients
+   * are active at once than there are slots.
+   */
+  private TokenBucket bucketFor(String clientId, long now) {
+    int first = slot(clientId);
+    int second = first ^ 1;
+    ClientBucket a = buckets.get(first);
+    ClientBucket b = buckets.get(second);
+
+    if(a != null && a.clientId().equals(clientId)) {
+      return a.bucket();
+    }
+
+    if(b != null && b.clientId().equals(clientId)) {
+      return b.bucket();
+    }
+
+    boolean useSecond = a != null && !a.bucket().isIdle(now)
+        && (b == null || b.bucket().isIdle(now));
+    int slot = useSecond ? second : first;
+    ClientBucket created = new ClientBucket(clientId,
+        new TokenBucket(clientRate, clientBurst, now));
+
+    if(buckets.compareAndSet(slot, useSecond ? b : a, created)) {
+      return created.bucket();
+    }
+
+    /* Another request put a bucket there first. Use it if it is ours. */
+    ClientBucket winner = buckets.get(slot);
+
+    return winner != null && winner.clientId().equals(clientId)
+        ? winner.bucket()
+        : created.bucket();
+  }
+
+  private int slot(String clientId) {
+    long hash = clientId.hashCode() * 0x9e3779b97f4a7c15L;
+    return (int)(hash >>> 32) & mask;
+  }
+
+  private void reject(HttpServletResponse response, HttpStatus status,
+      RequestClass requestClass, long retryAfterNanos, String message)
+      throws IOException {
+    meterRegistry.counter("pet.park.admission.rejected", "status",
+        String.valueOf(status.value()), "class", requestClass.name())
+        .increment();
+
+    long retryAfterSeconds =
+        Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos));
+
+    response.setStatus(status.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER,
+        String.valueOf(retryAfterSeconds));
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.getWriter().write("{\"message\":\"" + message
+        + "\",\"statusReason\":\"" + status.getReasonPhrase()
+        + "\",\"statusCode\":" + status.value() + "}");
+  }
+}
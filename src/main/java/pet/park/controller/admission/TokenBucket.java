@@ -0,0 +1,79 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a lock-free token bucket. Instead of storing a token count and a
+ * refill time (which would have to be updated together under a lock), it
+ * stores a single "theoretical arrival time" in an {@link AtomicLong}. This is
+ * known as the Generic Cell Rate Algorithm (GCRA) and behaves exactly like a
+ * token bucket:
+ *
+ * <ul>
+ * <li>Each admitted request pushes the theoretical arrival time forward by one
+ * emission interval (1 / rate).</li>
+ * <li>A request is admitted if the theoretical arrival time is no more than
+ * the burst allowance ahead of the current time.</li>
+ * </ul>
+ *
+ * A compare-and-set loop updates the value, so many threads can use the same
+ * bucket without blocking.
+ *
+ * @author Promineo
+ *
+ */
+class TokenBucket {
+  private final long emissionIntervalNanos;
+  private final long burstAllowanceNanos;
+  private final AtomicLong theoreticalArrival;
+
+  /**
+   * Create a token bucket.
+   *
+   * @param ratePerSecond The sustained number of requests per second.
+   * @param burst The number of requests that may be made at once.
+   * @param nowNanos The current time from System.nanoTime().
+   */
+  TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+    emissionIntervalNanos = (long)(1_000_000_000L / ratePerSecond);
+    burstAllowanceNanos = emissionIntervalNanos * Math.max(burst - 1, 0);
+    theoreticalArrival = new AtomicLong(nowNanos);
+  }
+
+  /**
+   * Try to take one token.
+   *
+   * @param nowNanos The current time from System.nanoTime().
+   * @return Zero if a token was taken, otherwise the number of nanoseconds
+   *         until a token will be available.
+   */
+  long tryAcquire(long nowNanos) {
+    while(true) {
+      long current = theoreticalArrival.get();
+      long base = Math.max(current, nowNanos);
+      long wait = base - nowNanos - burstAllowanceNanos;
+
+      if(wait > 0) {
+        return wait;
+      }
+
+      if(theoreticalArrival.compareAndSet(current,
+          base + emissionIntervalNanos)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * A bucket is idle if it is completely full. An idle bucket behaves exactly
+   * like a new one, so it can be discarded.
+   *
+   * @param nowNanos The current time from System.nanoTime().
+   * @return {@code true} if the bucket is full.
+   */
+  boolean isIdle(long nowNanos) {
+    return theoreticalArrival.get() <= nowNanos;
+  }
+}
@@ -0,0 +1,33 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.deadline;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * This class registers the {@link DeadlineInterceptor} with Spring MVC for
+ * every request mapped under "/pet_park". The park event stream is left out:
+ * it is meant to stay open and does no database work of its own.
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "pet-park.deadline.enabled",
+    matchIfMissing = true)
+public class DeadlineConfiguration implements WebMvcConfigurer {
+
+  @Autowired
+  private DeadlineInterceptor deadlineInterceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(deadlineInterceptor)
+        .addPathPatterns("/pet_park/**")
+        .excludePathPatterns("/pet_park/park/stream");
+  }
+}
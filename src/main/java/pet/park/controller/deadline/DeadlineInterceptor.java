@@ -0,0 +1,153 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.deadline;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import pet.park.dao.Deadline;
+
+/**
+ * This class gives each request a {@link Deadline}. A client that will give
+ * up after a certain time says so in the "X-Request-Timeout-Ms" header (in
+ * milliseconds). Otherwise the route's default from
+ * {@link DeadlineProperties} is used. The deadline is set on the request
+ * thread for ParkController and ParkService, and the database work they
+ * start is cut off when it passes (see
+ * pet.park.dao.DeadlineTransactionManager).
+ *
+ * When the deadline passes, the request is answered with a 504 (Gateway
+ * Timeout) and these metrics are recorded, tagged with the route:
+ *
+ * <ul>
+ * <li>pet.park.deadline.exceeded - requests whose work was cancelled or never
+ * started.</li>
+ * <li>pet.park.deadline.cancelled.time - how long those requests ran before
+ * they were cut off. Comparing it with the route's usual latency shows the
+ * time (and connection time) given back.</li>
+ * <li>pet.park.deadline.late - requests that finished, but after their
+ * deadline.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class DeadlineInterceptor implements AsyncHandlerInterceptor {
+
+  /**
+   * The header in which the client gives the time it will wait, in
+   * milliseconds.
+   */
+  public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+  private static final String DEADLINE_ATTRIBUTE =
+      DeadlineInterceptor.class.getName() + ".deadline";
+
+  @Autowired
+  private DeadlineProperties properties;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  /*
+   * An asynchronous request is dispatched again when its result is ready, so
+   * the deadline created on the first dispatch is reused.
+   */
+  @Override
+  public boolean preHandle(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    Deadline deadline;
+
+    if(request.getAttribute(DEADLINE_ATTRIBUTE) instanceof Deadline existing) {
+      deadline = existing;
+    }
+    else {
+      deadline = Deadline.after(timeoutMillis(request));
+      request.setAttribute(DEADLINE_ATTRIBUTE, deadline);
+    }
+
+    Deadline.set(deadline);
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    Deadline.set(null);
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request,
+      HttpServletResponse response, Object handler, Exception ex) {
+    Deadline.set(null);
+
+    if(!(request.getAttribute(DEADLINE_ATTRIBUTE) instanceof Deadline deadline)
+        || !deadline.isExpired()) {
+      return;
+    }
+
+    String route = route(request);
+
+    if(response.getStatus() == HttpStatus.GATEWAY_TIMEOUT.value()) {
+      Counter.builder("pet.park.deadline.exceeded")
+          .description("Requests cut off by their deadline")
+          .tag("route", route).register(meterRegistry).increment();
+
+      Timer.builder("pet.park.deadline.cancelled.time")
+          .description("Time spent on requests before they were cut off")
+          .tag("route", route).register(meterRegistry)
+          .record(deadline.elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+    else {
+      Counter.builder("pet.park.deadline.late")
+          .description("Requests that finished after their deadline")
+          .tag("route", route).register(meterRegistry).increment();
+    }
+  }
+
+  private long timeoutMillis(HttpServletRequest request) {
+    Long requested = parseMillis(request.getHeader(TIMEOUT_HEADER));
+
+    if(Objects.nonNull(requested)) {
+      return Math.min(requested, properties.getMaxTimeout().toMillis());
+    }
+
+    return properties.getRoutes()
+        .getOrDefault(route(request), properties.getDefaultTimeout())
+        .toMillis();
+  }
+
+  /*
+   * An unreadable header is treated as no header.
+   */
+  private Long parseMillis(String header) {
+    if(Objects.isNull(header)) {
+      return null;
+    }
+
+    try {
+      return Long.parseLong(header.trim());
+    }
+    catch(NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private String route(HttpServletRequest request) {
+    Object pattern =
+        request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    return request.getMethod() + " "
+        + Objects.requireNonNullElse(pattern, "UNMAPPED");
+  }
+}
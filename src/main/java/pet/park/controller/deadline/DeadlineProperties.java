@@ -0,0 +1,48 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.deadline;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import lombok.Data;
+
+/**
+ * This class holds the <em>pet-park.deadline</em> settings from
+ * application.yaml. For example:
+ *
+ * <pre>
+ pet-park:
+   deadline:
+     enabled: true
+     default-timeout: PT10S
+     max-timeout: PT30S
+     routes:
+       "[GET /pet_park/park]": PT5S
+       "[GET /pet_park/contributor]": PT5S
+ * </pre>
+ *
+ * The route keys are the HTTP method and the mapped URI pattern, the same
+ * names that the latency endpoint reports. The brackets keep Spring Boot from
+ * removing the spaces and slashes.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@ConfigurationProperties("pet-park.deadline")
+@Data
+public class DeadlineProperties {
+  private boolean enabled = true;
+
+  /** The time allowed for a route that is not listed. */
+  private Duration defaultTimeout = Duration.ofSeconds(10);
+
+  /** The longest time that a client may ask for. */
+  private Duration maxTimeout = Duration.ofSeconds(30);
+
+  /** The time allowed per route when the client does not say. */
+  private Map<String, Duration> routes = new HashMap<>();
+}
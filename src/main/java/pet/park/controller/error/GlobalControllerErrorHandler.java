@@ -1,22 +1,45 @@
 package pet.park.controller.error;
 
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import pet.park.dao.DeadlineExceededException;
 
+/*
+ * This handler uses the servlet request, so it is not loaded on the reactive
+ * stack.
+ *
+ * Logging is rate limited per status code: at most
+ * pet-park.error-log.max-per-second exceptions of one status are logged each
+ * second, and the number skipped is added to the next line that is logged.
+ * A storm of 404s therefore does not flood the log or slow the responses.
+ */
 @RestControllerAdvice
+@Profile("!reactive")
 @Slf4j
 public class GlobalControllerErrorHandler {
 	
@@ -24,6 +47,58 @@ public class GlobalControllerErrorHandler {
 		STACK_TRACE, MESSAGE_ONLY
 	}
 	
+	/*
+	 * The RFC 1123 timestamp only changes once a second, so it is formatted
+	 * once a second instead of for every error.
+	 */
+	private record Timestamp(long epochSecond, String text) {
+	}
+	
+	@Value("${pet-park.error-log.max-per-second:10}")
+	private int maxLogsPerSecond;
+	
+	private final Map<HttpStatus, LogLimiter> logLimiters = new EnumMap<>(HttpStatus.class);
+	
+	private volatile Timestamp timestamp = new Timestamp(-1, null);
+	
+	/*
+	 * Allows a fixed number of log lines per one-second window and counts the
+	 * lines it turned away.
+	 */
+	private class LogLimiter {
+		private final AtomicLong window = new AtomicLong();
+		private final AtomicInteger logged = new AtomicInteger();
+		private final AtomicInteger suppressed = new AtomicInteger();
+		
+		/*
+		 * Returns -1 if the line must not be logged. Otherwise returns the
+		 * number of lines suppressed since the last one was logged.
+		 */
+		int tryAcquire() {
+			long now = System.currentTimeMillis() / 1000;
+			long current = window.get();
+			
+			if (now != current && window.compareAndSet(current, now)) {
+				logged.set(0);
+			}
+			
+			if (logged.incrementAndGet() > maxLogsPerSecond) {
+				suppressed.incrementAndGet();
+				return -1;
+			}
+			
+			return suppressed.getAndSet(0);
+		}
+	}
+	
+	{
+		for (HttpStatus status : new HttpStatus[] { HttpStatus.INTERNAL_SERVER_ERROR, HttpStatus.NOT_FOUND,
+				HttpStatus.CONFLICT, HttpStatus.METHOD_NOT_ALLOWED, HttpStatus.BAD_REQUEST,
+				HttpStatus.GATEWAY_TIMEOUT }) {
+			logLimiters.put(status, new LogLimiter());
+		}
+	}
+	
 	@Data
 	@NoArgsConstructor
 	private class ExceptionMessage {
@@ -53,14 +128,37 @@ public class GlobalControllerErrorHandler {
 	}
 
 	/*
-	 * Exception handler for DuplicateKeyException
+	 * Exception handler for DuplicateKeyException, and for a write that lost a
+	 * race with another one (the edge store refuses the later commit)
 	 */
-	@ExceptionHandler(DuplicateKeyException.class)
+	@ExceptionHandler({ DuplicateKeyException.class, OptimisticLockingFailureException.class })
 	@ResponseStatus(code = HttpStatus.CONFLICT)
-	public ExceptionMessage handleDuplicateKeyException(DuplicateKeyException e, WebRequest webRequest) {
+	public ExceptionMessage handleDuplicateKeyException(RuntimeException e, WebRequest webRequest) {
 		return buildExceptionMessage(e, HttpStatus.CONFLICT, webRequest, LogStatus.MESSAGE_ONLY);
 	}
 
+	/*
+	 * Exception handler for request parameters that cannot be converted (e.g. an
+	 * unknown enum value)
+	 */
+	@ExceptionHandler(MethodArgumentTypeMismatchException.class)
+	@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+	public ExceptionMessage handleMethodArgumentTypeMismatchException(MethodArgumentTypeMismatchException e,
+			WebRequest webRequest) {
+		return buildExceptionMessage(e, HttpStatus.BAD_REQUEST, webRequest, LogStatus.MESSAGE_ONLY);
+	}
+
+	/*
+	 * Exception handler for InvalidParameterValueException (e.g. a malformed
+	 * bounding box)
+	 */
+	@ExceptionHandler(InvalidParameterValueException.class)
+	@ResponseStatus(code = HttpStatus.BAD_REQUEST)
+	public ExceptionMessage handleInvalidParameterValueException(InvalidParameterValueException e,
+			WebRequest webRequest) {
+		return buildExceptionMessage(e, HttpStatus.BAD_REQUEST, webRequest, LogStatus.MESSAGE_ONLY);
+	}
+
 	/*
 	 * Exception handler for UnsupportedOperationException
 	 */
@@ -70,23 +168,38 @@ public class GlobalControllerErrorHandler {
 		return buildExceptionMessage(e, HttpStatus.METHOD_NOT_ALLOWED, webRequest, LogStatus.MESSAGE_ONLY);
 	}
 
+	/*
+	 * Exception handler for a request deadline that has passed, either while
+	 * waiting or as a transaction or query timeout derived from it
+	 */
+	@ExceptionHandler({ DeadlineExceededException.class, TransactionTimedOutException.class,
+			QueryTimeoutException.class })
+	@ResponseStatus(code = HttpStatus.GATEWAY_TIMEOUT)
+	public ExceptionMessage handleDeadlineExceededException(RuntimeException e, WebRequest webRequest) {
+		return buildExceptionMessage(e, HttpStatus.GATEWAY_TIMEOUT, webRequest, LogStatus.MESSAGE_ONLY);
+	}
+
 	private ExceptionMessage buildExceptionMessage(Exception e, HttpStatus status, WebRequest webRequest,
 			LogStatus logStatus) {
 		String message = e.toString();
 		String statusReason = status.getReasonPhrase();
 		int statusCode = status.value();
 		String uri = null;
-		String timestamp = ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME);
+		String timestamp = currentTimestamp();
 		
 		if (webRequest instanceof ServletWebRequest swr) {
 			uri = swr.getRequest().getRequestURI();
 		}
 		
-		if (logStatus == LogStatus.MESSAGE_ONLY) {
-			log.error("Exception: {}", e.toString());
-		}
-		else {
-			log.error("Exception: ", e);
+		int suppressed = logLimiters.get(status).tryAcquire();
+		
+		if (suppressed >= 0) {
+			if (logStatus == LogStatus.MESSAGE_ONLY) {
+				log.error("Exception: {} ({} similar suppressed)", e.toString(), suppressed);
+			}
+			else {
+				log.error("Exception ({} similar suppressed): ", suppressed, e);
+			}
 		}
 		
 		ExceptionMessage em = new ExceptionMessage();
@@ -98,5 +211,19 @@ public class GlobalControllerErrorHandler {
 		
 		return em;
 	}
+	
+	private String currentTimestamp() {
+		long now = System.currentTimeMillis();
+		Timestamp current = timestamp;
+		
+		if (current.epochSecond() != now / 1000) {
+			String text = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), ZoneId.systemDefault())
+					.format(DateTimeFormatter.RFC_1123_DATE_TIME);
+			current = new Timestamp(now / 1000, text);
+			timestamp = current;
+		}
+		
+		return current.text();
+	}
 
 }
@@ -0,0 +1,35 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.error;
+
+/**
+ * This exception is thrown when a request parameter cannot be parsed, such
+ * as an unknown name in "fields" or a malformed "bbox". The
+ * {@link GlobalControllerErrorHandler} turns it into a 400 (Bad Request).
+ * Other IllegalArgumentExceptions are bugs, and stay a 500.
+ * 
+ * @author Promineo
+ *
+ */
+public class InvalidParameterValueException extends IllegalArgumentException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Create the exception.
+   * 
+   * @param message Says what is wrong with the value.
+   */
+  public InvalidParameterValueException(String message) {
+    super(message);
+  }
+
+  /**
+   * Create the exception.
+   * 
+   * @param message Says what is wrong with the value.
+   * @param cause The exception thrown while parsing the value.
+   */
+  public InvalidParameterValueException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
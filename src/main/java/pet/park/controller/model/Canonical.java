@@ -0,0 +1,140 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import pet.park.dao.PetParkView;
+
+/**
+ * This class lets the DTOs share values that repeat from park to park. Out of
+ * a million parks there are only a few hundred different amenity sets and a
+ * few thousand countries and states, but each DTO used to hold its own
+ * HashSet and its own copies of the strings. The DTO constructors now ask
+ * this class for the one shared (canonical) instance of each value, so a
+ * large park list holds only the DTOs themselves plus one copy of each
+ * distinct value.
+ *
+ * The amenity sets returned are unmodifiable and sorted by name, which also
+ * keeps the JSON order stable. Code that builds a DTO by hand and adds
+ * amenities one at a time should call {@link #amenities(Collection)} at the
+ * end.
+ *
+ * Each table is bounded. Once it is full, new values are returned as
+ * unshared copies, so unusual data cannot make the tables grow without
+ * limit.
+ *
+ * @author Promineo
+ *
+ */
+public final class Canonical {
+  private static final int MAX_AMENITY_SETS = 4096;
+  private static final int MAX_STRINGS = 65536;
+
+  private static final Set<String> NO_AMENITIES = Collections.emptySet();
+
+  /*
+   * Amenity sets by content, and by the GROUP_CONCAT string that they were
+   * read from. The second table lets the projection queries skip the split.
+   */
+  private static final ConcurrentMap<Set<String>, Set<String>> amenitySets =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Set<String>> aggregatedSets =
+      new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<String, String> strings =
+      new ConcurrentHashMap<>();
+
+  private Canonical() {
+  }
+
+  /**
+   * Return the shared copy of a string, such as a country or state.
+   *
+   * @param value The string.
+   * @return An equal string. {@code null} if the value is {@code null}.
+   */
+  public static String string(String value) {
+    if(Objects.isNull(value)) {
+      return null;
+    }
+
+    String shared = strings.get(value);
+
+    if(shared != null) {
+      return shared;
+    }
+
+    if(strings.size() >= MAX_STRINGS) {
+      return value;
+    }
+
+    shared = strings.putIfAbsent(value, value);
+    return shared == null ? value : shared;
+  }
+
+  /**
+   * Return the shared, unmodifiable set holding the given amenity names.
+   *
+   * @param names The amenity names.
+   * @return An unmodifiable set equal to the names.
+   */
+  public static Set<String> amenities(Collection<String> names) {
+    if(names.isEmpty()) {
+      return NO_AMENITIES;
+    }
+
+    Set<String> key = names instanceof Set<String> set ? set
+        : new HashSet<>(names);
+    Set<String> shared = amenitySets.get(key);
+
+    if(shared != null) {
+      return shared;
+    }
+
+    shared = Collections.unmodifiableSet(new TreeSet<>(key));
+
+    if(amenitySets.size() >= MAX_AMENITY_SETS) {
+      return shared;
+    }
+
+    Set<String> existing = amenitySets.putIfAbsent(shared, shared);
+    return existing == null ? shared : existing;
+  }
+
+  /**
+   * Return the shared amenity set for the names aggregated by a projection
+   * query.
+   *
+   * @param aggregated The amenity names joined by
+   *        {@link PetParkView#AMENITY_SEPARATOR}, or {@code null}.
+   * @return An unmodifiable set of the names.
+   */
+  public static Set<String> amenities(String aggregated) {
+    if(Objects.isNull(aggregated) || aggregated.isEmpty()) {
+      return NO_AMENITIES;
+    }
+
+    Set<String> shared = aggregatedSets.get(aggregated);
+
+    if(shared != null) {
+      return shared;
+    }
+
+    shared = amenities(
+        Arrays.asList(aggregated.split(PetParkView.AMENITY_SEPARATOR)));
+
+    if(aggregatedSets.size() < MAX_AMENITY_SETS) {
+      aggregatedSets.putIfAbsent(aggregated, shared);
+    }
+
+    return shared;
+  }
+}
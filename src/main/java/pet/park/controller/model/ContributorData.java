@@ -3,9 +3,13 @@
 package pet.park.controller.model;
 
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import pet.park.dao.PetParkView;
 import pet.park.entity.Amenity;
 import pet.park.entity.Contributor;
 import pet.park.entity.GeoLocation;
@@ -60,6 +64,51 @@ public class ContributorData {
     }
   }
 
+  /**
+   * This constructor builds a ContributorData object from the rows of a
+   * read-only projection query. All rows must belong to the same contributor.
+   * Each row with a pet park ID becomes one pet park. No entities are
+   * involved.
+   * 
+   * @param views The projection rows for one contributor. There must be at
+   *        least one.
+   */
+  public ContributorData(List<? extends PetParkView> views) {
+    PetParkView first = views.get(0);
+
+    contributorId = first.getContributorId();
+    contributorName = first.getContributorName();
+    contributorEmail = first.getContributorEmail();
+
+    for(PetParkView view : views) {
+      if(Objects.nonNull(view.getPetParkId())) {
+        petParks.add(new PetParkResponse(view));
+      }
+    }
+  }
+
+  /**
+   * This constructor builds a ContributorData object from the results of
+   * three separate projection queries: the contributor row, the park rows
+   * and the amenities of each park.
+   * 
+   * @param contributor The contributor row. Its park columns are ignored.
+   * @param parks The contributor's parks. Their amenity columns are ignored.
+   * @param amenities The amenity names by pet park ID. A park that is not in
+   *        the map has no amenities.
+   */
+  public ContributorData(PetParkView contributor,
+      List<? extends PetParkView> parks, Map<Long, Set<String>> amenities) {
+    contributorId = contributor.getContributorId();
+    contributorName = contributor.getContributorName();
+    contributorEmail = contributor.getContributorEmail();
+
+    for(PetParkView park : parks) {
+      petParks.add(new PetParkResponse(park, amenities.getOrDefault(
+          park.getPetParkId(), Canonical.amenities(List.of()))));
+    }
+  }
+
   /**
    * This inner class contains the same data as the PetPark entity but without
    * the recursion. As such it is Jackson friendly.
@@ -69,7 +118,7 @@ public class ContributorData {
    */
   @Data
   @NoArgsConstructor
-  static class PetParkResponse {
+  public static class PetParkResponse {
     private Long petParkId;
     private String parkName;
     private String directions;
@@ -89,13 +138,42 @@ public class ContributorData {
       petParkId = petPark.getPetParkId();
       parkName = petPark.getParkName();
       directions = petPark.getDirections();
-      stateOrProvince = petPark.getStateOrProvince();
-      country = petPark.getCountry();
+      stateOrProvince = Canonical.string(petPark.getStateOrProvince());
+      country = Canonical.string(petPark.getCountry());
       geoLocation = new GeoLocation(petPark.getGeoLocation());
 
       for(Amenity amenity : petPark.getAmenities()) {
         amenities.add(amenity.getAmenity());
       }
+
+      amenities = Canonical.amenities(amenities);
+    }
+
+    /**
+     * This constructor converts a projection row into a PetParkResponse
+     * object.
+     * 
+     * @param view The projection row.
+     */
+    PetParkResponse(PetParkView view) {
+      this(view, view.amenitySet());
+    }
+
+    /**
+     * This constructor converts a projection row whose amenities were read
+     * separately.
+     * 
+     * @param view The projection row.
+     * @param amenities The park's amenity names.
+     */
+    PetParkResponse(PetParkView view, Set<String> amenities) {
+      petParkId = view.getPetParkId();
+      parkName = view.getParkName();
+      directions = view.getDirections();
+      stateOrProvince = Canonical.string(view.getStateOrProvince());
+      country = Canonical.string(view.getCountry());
+      geoLocation = new GeoLocation(view.getLatitude(), view.getLongitude());
+      this.amenities = amenities;
     }
   }
 }
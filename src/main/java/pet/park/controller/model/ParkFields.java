@@ -0,0 +1,149 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import pet.park.controller.error.InvalidParameterValueException;
+
+/**
+ * This record holds the {@link PetParkData} properties that a client asked
+ * for with the "fields" query parameter, e.g.
+ * "GET /pet_park/park?fields=petParkId,parkName,geoLocation". A map that
+ * lists many parks needs only a few properties, and leaving out the
+ * directions text, the contributor and the amenities makes both the response
+ * and the query much smaller (see pet.park.dao.SparseParkDao).
+ *
+ * @author Promineo
+ *
+ */
+public record ParkFields(Set<Field> fields) {
+
+  /**
+   * The properties of {@link PetParkData} that can be asked for.
+   */
+  public enum Field {
+    PET_PARK_ID("petParkId"), PARK_NAME("parkName"),
+    DIRECTIONS("directions"), STATE_OR_PROVINCE("stateOrProvince"),
+    COUNTRY("country"), GEO_LOCATION("geoLocation"),
+    CONTRIBUTOR("contributor"), AMENITIES("amenities");
+
+    private final String property;
+
+    Field(String property) {
+      this.property = property;
+    }
+
+    /**
+     * @return The JSON property name.
+     */
+    public String property() {
+      return property;
+    }
+  }
+
+  /**
+   * All properties. This is used when no fields are given.
+   */
+  public static final ParkFields ALL =
+      new ParkFields(EnumSet.allOf(Field.class));
+
+  public ParkFields {
+    Set<Field> copy = EnumSet.noneOf(Field.class);
+
+    copy.addAll(fields);
+    fields = Collections.unmodifiableSet(copy);
+  }
+
+  /**
+   * Parse the "fields" query parameter.
+   *
+   * @param fields The comma-separated property names, or {@code null}.
+   * @return The fields. {@link #ALL} if none are given.
+   * @throws InvalidParameterValueException Thrown if a name is not a
+   *         property of {@link PetParkData}.
+   */
+  public static ParkFields parse(String fields) {
+    if(Objects.isNull(fields) || fields.isBlank()) {
+      return ALL;
+    }
+
+    Set<Field> parsed = EnumSet.noneOf(Field.class);
+
+    for(String name : fields.split(",")) {
+      parsed.add(Arrays.stream(Field.values())
+          .filter(field -> field.property.equals(name.trim())).findFirst()
+          .orElseThrow(() -> new InvalidParameterValueException(
+              "Unknown field: " + name.trim() + ". Valid fields are "
+                  + Arrays.stream(Field.values()).map(Field::property)
+                      .collect(Collectors.joining(","))
+                  + ".")));
+    }
+
+    return new ParkFields(parsed);
+  }
+
+  /**
+   * @return {@code true} if every property is wanted.
+   */
+  public boolean isAll() {
+    return fields.size() == Field.values().length;
+  }
+
+  /**
+   * @param field The field.
+   * @return {@code true} if the field is wanted.
+   */
+  public boolean contains(Field field) {
+    return fields.contains(field);
+  }
+
+  /**
+   * Add fields. This is used to read the columns that a filter needs along
+   * with the ones the client asked for.
+   *
+   * @param more The fields to add.
+   * @return The combined fields.
+   */
+  public ParkFields with(Field... more) {
+    Set<Field> combined = EnumSet.noneOf(Field.class);
+
+    combined.addAll(fields);
+    combined.addAll(Arrays.asList(more));
+
+    return new ParkFields(combined);
+  }
+
+  /**
+   * Copy the wanted properties of a park into a map, in the order in which
+   * {@link PetParkData} declares them. Jackson writes the map as a JSON
+   * object with only those properties.
+   *
+   * @param petPark The park.
+   * @return The wanted properties by name.
+   */
+  public Map<String, Object> select(PetParkData petPark) {
+    Map<String, Object> selected = new LinkedHashMap<>();
+
+    for(Field field : fields) {
+      selected.put(field.property, switch(field) {
+        case PET_PARK_ID -> petPark.getPetParkId();
+        case PARK_NAME -> petPark.getParkName();
+        case DIRECTIONS -> petPark.getDirections();
+        case STATE_OR_PROVINCE -> petPark.getStateOrProvince();
+        case COUNTRY -> petPark.getCountry();
+        case GEO_LOCATION -> petPark.getGeoLocation();
+        case CONTRIBUTOR -> petPark.getContributor();
+        case AMENITIES -> petPark.getAmenities();
+      });
+    }
+
+    return selected;
+  }
+}
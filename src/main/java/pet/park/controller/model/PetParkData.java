@@ -6,6 +6,7 @@ import java.util.HashSet;
 import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import pet.park.dao.PetParkView;
 import pet.park.entity.Amenity;
 import pet.park.entity.Contributor;
 import pet.park.entity.GeoLocation;
@@ -56,14 +57,35 @@ public class PetParkData {
     petParkId = petPark.getPetParkId();
     parkName = petPark.getParkName();
     directions = petPark.getDirections();
-    stateOrProvince = petPark.getStateOrProvince();
-    country = petPark.getCountry();
+    stateOrProvince = Canonical.string(petPark.getStateOrProvince());
+    country = Canonical.string(petPark.getCountry());
     geoLocation = petPark.getGeoLocation();
     contributor = new PetParkContributor(petPark.getContributor());
 
     for(Amenity amenity : petPark.getAmenities()) {
       amenities.add(amenity.getAmenity());
     }
+
+    amenities = Canonical.amenities(amenities);
+  }
+
+  /**
+   * This constructor converts from a read-only {@link PetParkView} projection.
+   * No entities are involved, so this is the path used by the read-only
+   * queries.
+   * 
+   * @param view The projection row to convert.
+   */
+  public PetParkData(PetParkView view) {
+    petParkId = view.getPetParkId();
+    parkName = view.getParkName();
+    directions = view.getDirections();
+    stateOrProvince = Canonical.string(view.getStateOrProvince());
+    country = Canonical.string(view.getCountry());
+    geoLocation = new GeoLocation(view.getLatitude(), view.getLongitude());
+    contributor = new PetParkContributor(view.getContributorId(),
+        view.getContributorName(), view.getContributorEmail());
+    amenities = view.amenitySet();
   }
 
   /**
@@ -88,5 +110,12 @@ public class PetParkData {
       contributorName = contributor.getContributorName();
       contributorEmail = contributor.getContributorEmail();
     }
+
+    public PetParkContributor(Long contributorId, String contributorName,
+        String contributorEmail) {
+      this.contributorId = contributorId;
+      this.contributorName = contributorName;
+      this.contributorEmail = contributorEmail;
+    }
   }
 }
@@ -0,0 +1,33 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class is a Data Transfer Object (DTO) for one entry in the response to
+ * "GET /pet_park/park/popular". It holds a pet park and the number of times
+ * it has been viewed.
+ * 
+ * @Data This is a Lombok library annotation. It adds getters and setters for
+ *       all the instance variables as well as .toString(), .hashCode() and
+ *       .equals() methods.
+ * 
+ * @AllArgsConstructor This Lombok annotation adds a constructor that takes
+ *                     every instance variable in declaration order.
+ * 
+ * @NoArgsConstructor This Lombok annotation adds the no-argument constructor
+ *                    that Jackson requires.
+ * 
+ * @author Promineo
+ *
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PopularPetParkData {
+  private PetParkData petPark;
+  private long viewCount;
+}
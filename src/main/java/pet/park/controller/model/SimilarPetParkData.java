@@ -0,0 +1,41 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This class is a Data Transfer Object (DTO) for one entry in the response to
+ * "GET /pet_park/park/{parkId}/similar". It holds a similar pet park and the
+ * numbers it was ranked by.
+ * 
+ * @Data This is a Lombok library annotation. It adds getters and setters for
+ *       all the instance variables as well as .toString(), .hashCode() and
+ *       .equals() methods.
+ * 
+ * @AllArgsConstructor This Lombok annotation adds a constructor that takes
+ *                     every instance variable in declaration order.
+ * 
+ * @NoArgsConstructor This Lombok annotation adds the no-argument constructor
+ *                    that Jackson requires.
+ * 
+ * @author Promineo
+ *
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SimilarPetParkData {
+  private PetParkData petPark;
+
+  /** The Jaccard similarity of the amenity sets, from 0 to 1. */
+  private double amenitySimilarity;
+
+  /** The distance between the parks in kilometers, if both are located. */
+  private Double distanceKm;
+
+  /** The combined score the parks are ranked by, from 0 to 1. */
+  private double score;
+}
@@ -0,0 +1,86 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.stream;
+
+import java.util.Objects;
+import pet.park.controller.error.InvalidParameterValueException;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This record is the map area that a park stream subscriber is looking at.
+ * It is given as "minLongitude,minLatitude,maxLongitude,maxLatitude", the
+ * same order as a GeoJSON "bbox". If the minimum longitude is greater than
+ * the maximum, the box crosses the 180th meridian.
+ *
+ * @author Promineo
+ *
+ */
+public record BoundingBox(double minLongitude, double minLatitude,
+    double maxLongitude, double maxLatitude) {
+
+  /**
+   * Parse a bounding box.
+   *
+   * @param bbox The four comma-separated numbers.
+   * @return The bounding box.
+   * @throws InvalidParameterValueException Thrown if the text is not a
+   *         valid bounding box.
+   */
+  public static BoundingBox parse(String bbox) {
+    String[] parts = bbox.split(",");
+
+    if(parts.length != 4) {
+      throw new InvalidParameterValueException("bbox must be "
+          + "minLongitude,minLatitude,maxLongitude,maxLatitude: " + bbox);
+    }
+
+    double[] values = new double[parts.length];
+
+    for(int index = 0; index < parts.length; index++) {
+      try {
+        values[index] = Double.parseDouble(parts[index].trim());
+      }
+      catch(NumberFormatException e) {
+        throw new InvalidParameterValueException(
+            "bbox value is not a number: " + parts[index], e);
+      }
+    }
+
+    BoundingBox box =
+        new BoundingBox(values[0], values[1], values[2], values[3]);
+
+    if(box.minLatitude > box.maxLatitude) {
+      throw new InvalidParameterValueException(
+          "bbox minimum latitude is greater than maximum: " + bbox);
+    }
+
+    return box;
+  }
+
+  /**
+   * Check whether a location is inside the box. A park without a location
+   * is never inside.
+   *
+   * @param geoLocation The location.
+   * @return {@code true} if the location is inside the box.
+   */
+  public boolean contains(GeoLocation geoLocation) {
+    if(Objects.isNull(geoLocation) || Objects.isNull(geoLocation.getLatitude())
+        || Objects.isNull(geoLocation.getLongitude())) {
+      return false;
+    }
+
+    double latitude = geoLocation.getLatitude().doubleValue();
+    double longitude = geoLocation.getLongitude().doubleValue();
+
+    if(latitude < minLatitude || latitude > maxLatitude) {
+      return false;
+    }
+
+    if(minLongitude <= maxLongitude) {
+      return longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    return longitude >= minLongitude || longitude <= maxLongitude;
+  }
+}
@@ -0,0 +1,387 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.controller.stream;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.PetParkData;
+import pet.park.service.ParkIndex;
+
+/**
+ * This class pushes pet park changes to map clients as server-sent events
+ * ("GET /pet_park/park/stream"). A client keeps one connection open instead
+ * of polling the park list, and receives one of these events whenever a
+ * park changes:
+ *
+ * <ul>
+ * <li>park-created - the data is the new park.</li>
+ * <li>park-updated - the data is the park as it is now.</li>
+ * <li>park-deleted - the data is the park as it was.</li>
+ * <li>reset - the client missed events that can no longer be replayed and
+ * must read the park list again.</li>
+ * </ul>
+ *
+ * The changes come from the ParkColumnStore through {@link ParkIndex}: the
+ * store reports every park it adds, replaces or removes, whether the change
+ * was made on this node or found when the park was read again. A change
+ * made on another node is found when the store reconciles with the database
+ * (every <em>pet-park.column-store.reconcile-interval</em>), so clients of
+ * every node receive it within that interval. No copy of the parks is kept
+ * here. Until the store has been loaded from the database, or if it is
+ * disabled, there are no events to send and no stream is opened. A
+ * subscriber may give a bounding box, in
+ * which case it only receives events for parks inside the box (for an
+ * update, parks that were or are inside the box).
+ *
+ * Every event has an ID. The last {@code replay-size} events are kept, and a
+ * client that reconnects with a Last-Event-ID header (browsers send it
+ * automatically) first receives the events it missed. If they are no longer
+ * kept, or the ID is from before this node started, it receives a reset.
+ *
+ * Sending never blocks the thread that publishes a change. Each subscriber
+ * has a bounded queue of {@code buffer-size} events. Publishing only adds to
+ * the queues, and a virtual thread is started to drain a queue only while it
+ * has events in it, so idle connections hold no thread. A subscriber whose
+ * queue is full is too slow to keep up: its connection is closed and it
+ * resumes from its Last-Event-ID when it reconnects. A comment is sent every
+ * {@code heartbeat} so that proxies keep idle connections open and closed
+ * connections are noticed.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Profile("!reactive")
+@Slf4j
+public class ParkEventStream extends ParkIndex {
+
+  @Getter
+  @Value("${pet-park.park-stream.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.park-stream.max-subscribers:10000}")
+  private int maxSubscribers;
+
+  @Value("${pet-park.park-stream.buffer-size:256}")
+  private int bufferSize;
+
+  @Value("${pet-park.park-stream.replay-size:1000}")
+  private int replaySize;
+
+  @Value("${pet-park.park-stream.timeout:PT30M}")
+  private Duration timeout;
+
+  @Value("${pet-park.park-stream.heartbeat:PT25S}")
+  private Duration heartbeat;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private enum EventType {
+    CREATED("park-created"), UPDATED("park-updated"),
+    DELETED("park-deleted"), RESET("reset"), HEARTBEAT(null);
+
+    private final String eventName;
+
+    EventType(String eventName) {
+      this.eventName = eventName;
+    }
+  }
+
+  /*
+   * The previous park is only set for updates. It is used to send the update
+   * to subscribers whose box the park has just left.
+   */
+  private record StreamEvent(long id, EventType type, PetParkData petPark,
+      PetParkData previous) {
+  }
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  private final ExecutorService senders =
+      Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("park-stream-", 0).factory());
+
+  private final ScheduledExecutorService heartbeats =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("park-stream-heartbeat").factory());
+
+  /*
+   * Event IDs start at the time this node started (in microseconds), so an
+   * ID from before a restart is always older than the replay window.
+   */
+  private final long firstEventId = System.currentTimeMillis() * 1000;
+
+  /*
+   * The replay ring and the next ID are guarded by "this".
+   */
+  private StreamEvent[] replay;
+  private long nextEventId = firstEventId;
+
+  private Counter dropped;
+
+  public ParkEventStream() {
+    super("park-event-stream");
+  }
+
+  @PostConstruct
+  void init() {
+    replay = new StreamEvent[Math.max(1, replaySize)];
+
+    Gauge.builder("pet.park.stream.subscribers", subscribers, Set::size)
+        .description("Open park event streams").register(meterRegistry);
+
+    dropped = Counter.builder("pet.park.stream.dropped")
+        .description("Park event streams closed because they fell behind")
+        .register(meterRegistry);
+
+    long period = heartbeat.toMillis();
+    heartbeats.scheduleAtFixedRate(this::sendHeartbeats, period, period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Open a stream for a client.
+   *
+   * @param boundingBox The area the client wants events for, or
+   *        {@code null} for all parks.
+   * @param lastEventId The Last-Event-ID header sent by a reconnecting
+   *        client, or {@code null}.
+   * @return The emitter that the controller returns, or an empty Optional if
+   *         the stream is disabled, the parks have not been loaded (or the
+   *         column store is disabled) or there are too many subscribers.
+   */
+  public Optional<SseEmitter> subscribe(BoundingBox boundingBox,
+      String lastEventId) {
+    if(!enabled || !isLoaded() || subscribers.size() >= maxSubscribers) {
+      return Optional.empty();
+    }
+
+    SseEmitter emitter = new SseEmitter(timeout.toMillis());
+    Subscriber subscriber = new Subscriber(emitter, boundingBox);
+
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+
+    /*
+     * The replay and the registration happen under the same lock as
+     * publish(), so no event is missed or sent twice in between.
+     */
+    synchronized(this) {
+      subscriber.offer(new StreamEvent(0, EventType.HEARTBEAT, null, null));
+
+      if(Objects.nonNull(lastEventId)) {
+        replay(subscriber, lastEventId);
+      }
+
+      subscribers.add(subscriber);
+    }
+
+    return Optional.of(emitter);
+  }
+
+  @Override
+  protected void added(PetParkData petPark) {
+    if(isLoaded()) {
+      publish(EventType.CREATED, petPark, null);
+    }
+  }
+
+  @Override
+  protected void removed(PetParkData petPark) {
+    if(isLoaded()) {
+      publish(EventType.DELETED, petPark, null);
+    }
+  }
+
+  @Override
+  protected void replaced(PetParkData previous, PetParkData petPark) {
+    if(isLoaded() && !previous.equals(petPark)) {
+      publish(EventType.UPDATED, petPark, previous);
+    }
+  }
+
+  /*
+   * Runs on the ParkIndex background thread. Offering to a queue never
+   * blocks, so the lock is held only briefly even with many subscribers.
+   */
+  private synchronized void publish(EventType type, PetParkData petPark,
+      PetParkData previous) {
+    StreamEvent event =
+        new StreamEvent(nextEventId++, type, petPark, previous);
+
+    replay[(int)(event.id() % replay.length)] = event;
+
+    for(Subscriber subscriber : subscribers) {
+      if(subscriber.wants(event)) {
+        subscriber.offer(event);
+      }
+    }
+  }
+
+  /*
+   * Called with the lock held.
+   */
+  private void replay(Subscriber subscriber, String lastEventId) {
+    long lastId;
+
+    try {
+      lastId = Long.parseLong(lastEventId.trim());
+    }
+    catch(NumberFormatException e) {
+      lastId = -1;
+    }
+
+    long oldestKept = Math.max(firstEventId, nextEventId - replay.length);
+
+    if(lastId < oldestKept - 1 || lastId >= nextEventId
+        || nextEventId - lastId > bufferSize) {
+      subscriber.offer(
+          new StreamEvent(nextEventId - 1, EventType.RESET, null, null));
+      return;
+    }
+
+    for(long id = lastId + 1; id < nextEventId; id++) {
+      StreamEvent event = replay[(int)(id % replay.length)];
+
+      if(subscriber.wants(event)) {
+        subscriber.offer(event);
+      }
+    }
+  }
+
+  private void sendHeartbeats() {
+    StreamEvent event = new StreamEvent(0, EventType.HEARTBEAT, null, null);
+    subscribers.forEach(subscriber -> subscriber.offer(event));
+  }
+
+  /**
+   * Close all streams when the application stops. Clients reconnect to
+   * another node.
+   */
+  @PreDestroy
+  public void closeStreams() {
+    heartbeats.shutdownNow();
+    subscribers.forEach(Subscriber::close);
+    senders.shutdownNow();
+  }
+
+  /*
+   * One open stream. The queue is drained by at most one virtual thread at a
+   * time, which is started when an event is offered and no drain is running.
+   */
+  private class Subscriber {
+    private final SseEmitter emitter;
+    private final BoundingBox boundingBox;
+    private final BlockingQueue<StreamEvent> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    Subscriber(SseEmitter emitter, BoundingBox boundingBox) {
+      this.emitter = emitter;
+      this.boundingBox = boundingBox;
+      this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+    }
+
+    boolean wants(StreamEvent event) {
+      return boundingBox == null
+          || boundingBox.contains(event.petPark().getGeoLocation())
+          || (event.previous() != null
+              && boundingBox.contains(event.previous().getGeoLocation()));
+    }
+
+    void offer(StreamEvent event) {
+      if(closed) {
+        return;
+      }
+
+      if(!queue.offer(event)) {
+        dropped.increment();
+        close();
+        return;
+      }
+
+      if(draining.compareAndSet(false, true)) {
+        senders.execute(this::drain);
+      }
+    }
+
+    /*
+     * After the drain flag is cleared the queue is checked again, because an
+     * event offered just before that would otherwise wait for the next one.
+     */
+    private void drain() {
+      try {
+        StreamEvent event;
+
+        while(!closed && (event = queue.poll()) != null) {
+          send(event);
+        }
+      }
+      catch(IOException | IllegalStateException e) {
+        log.debug("Park stream closed: {}", e.toString());
+        close();
+      }
+      finally {
+        draining.set(false);
+      }
+
+      if(!closed && !queue.isEmpty() && draining.compareAndSet(false, true)) {
+        senders.execute(this::drain);
+      }
+    }
+
+    private void send(StreamEvent event) throws IOException {
+      if(event.type() == EventType.HEARTBEAT) {
+        emitter.send(SseEmitter.event().comment("keep-alive"));
+        return;
+      }
+
+      SseEmitter.SseEventBuilder builder = SseEmitter.event()
+          .id(Long.toString(event.id())).name(event.type().eventName);
+
+      if(event.petPark() != null) {
+        builder.data(event.petPark(), MediaType.APPLICATION_JSON);
+      }
+      else {
+        builder.data("");
+      }
+
+      emitter.send(builder);
+    }
+
+    void close() {
+      if(!closed) {
+        closed = true;
+        subscribers.remove(this);
+        queue.clear();
+        emitter.complete();
+      }
+    }
+  }
+}
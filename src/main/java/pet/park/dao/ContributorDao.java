@@ -2,7 +2,12 @@
 
 package pet.park.dao;
 
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import pet.park.entity.Contributor;
 
@@ -16,5 +21,164 @@ import pet.park.entity.Contributor;
  *
  */
 public interface ContributorDao extends JpaRepository<Contributor, Long> {
+  // @formatter:off
+  /**
+   * The select list and joins shared by the contributor {@link PetParkView}
+   * queries. There is one row per contributor and park. A contributor without
+   * parks has a single row in which the park columns are null.
+   */
+  String VIEW_SELECT = ""
+      + "SELECT c.contributor_id AS contributorId, "
+      + "c.contributor_name AS contributorName, "
+      + "c.contributor_email AS contributorEmail, "
+      + "p.pet_park_id AS petParkId, p.park_name AS parkName, "
+      + "p.directions AS directions, "
+      + "p.state_or_province AS stateOrProvince, p.country AS country, "
+      + "p.latitude AS latitude, p.longitude AS longitude, "
+      + "GROUP_CONCAT(a.amenity SEPARATOR '"
+      + PetParkView.AMENITY_SEPARATOR + "') AS amenities "
+      + "FROM contributor c "
+      + "LEFT JOIN pet_park p ON p.contributor_id = c.contributor_id "
+      + "LEFT JOIN pet_park_amenity pa ON pa.pet_park_id = p.pet_park_id "
+      + "LEFT JOIN amenity a ON a.amenity_id = pa.amenity_id ";
+  // @formatter:on
 
+  /**
+   * Read all contributors and their parks as projections. This is a native
+   * (MySQL) query, so no entities are created.
+   * 
+   * @return The rows, ordered by contributor ID and then pet park ID.
+   */
+  @Query(value = VIEW_SELECT + "GROUP BY c.contributor_id, p.pet_park_id "
+      + "ORDER BY c.contributor_id, p.pet_park_id", nativeQuery = true)
+  List<PetParkView> findAllViews();
+
+  /**
+   * Read one contributor and their parks as projections.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The rows, ordered by pet park ID. The list is empty if the
+   *         contributor does not exist.
+   */
+  @Query(value = VIEW_SELECT + "WHERE c.contributor_id = :contributorId "
+      + "GROUP BY c.contributor_id, p.pet_park_id ORDER BY p.pet_park_id",
+      nativeQuery = true)
+  List<PetParkView> findViewsById(Long contributorId);
+
+  /**
+   * Read only the contributor row as a projection. The park columns of the
+   * view are {@code null}. This is a primary key lookup that is run at the
+   * same time as {@link PetParkDao#findViewsByContributorId(Long)} and
+   * {@link PetParkDao#findAmenityViewsByContributorId(Long)}.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The view, if the contributor exists.
+   */
+  @Query(value = "SELECT contributor_id AS contributorId, "
+      + "contributor_name AS contributorName, "
+      + "contributor_email AS contributorEmail "
+      + "FROM contributor WHERE contributor_id = :contributorId",
+      nativeQuery = true)
+  Optional<PetParkView> findContributorViewById(Long contributorId);
+
+  // @formatter:off
+  /**
+   * The select list and joins shared by the {@link ContributorParkCount}
+   * queries. A contributor without parks is counted as zero.
+   */
+  String PARK_COUNT_SELECT = ""
+      + "SELECT c.contributor_id AS contributorId, "
+      + "c.contributor_name AS contributorName, "
+      + "COUNT(p.pet_park_id) AS parkCount "
+      + "FROM contributor c "
+      + "LEFT JOIN pet_park p ON p.contributor_id = c.contributor_id ";
+  // @formatter:on
+
+  /**
+   * Count the parks of every contributor. The count uses the index on the
+   * pet_park.contributor_id foreign key, so no park rows are read.
+   * 
+   * @return One row per contributor.
+   */
+  @Query(value = PARK_COUNT_SELECT + "GROUP BY c.contributor_id",
+      nativeQuery = true)
+  List<ContributorParkCount> findParkCounts();
+
+  /**
+   * Count the parks of one contributor.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The count, if the contributor exists.
+   */
+  @Query(value = PARK_COUNT_SELECT
+      + "WHERE c.contributor_id = :contributorId GROUP BY c.contributor_id",
+      nativeQuery = true)
+  Optional<ContributorParkCount> findParkCountById(Long contributorId);
+
+  /**
+   * Find a contributor by email. This uses the unique index on the
+   * contributor_email column, so it reads a single index entry instead of
+   * scanning the table.
+   * 
+   * @param contributorEmail The email to look up.
+   * @return The contributor, if there is one with the email.
+   */
+  Optional<Contributor> findByContributorEmail(String contributorEmail);
+
+  /**
+   * Load a contributor with its parks and their amenities, using the
+   * "Contributor.parks" fetch plan declared on the {@link Contributor}
+   * entity. Everything that is needed to build a ContributorData object is
+   * read by this one query, so nothing is loaded lazily afterwards.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The contributor, if there is one with the ID.
+   */
+  @EntityGraph("Contributor.parks")
+  Optional<Contributor> findWithParksByContributorId(Long contributorId);
+
+  /**
+   * Return every contributor email. Only the email column is selected (no
+   * entities are created), which keeps loading the email Bloom filter cheap.
+   * 
+   * @return All contributor emails.
+   */
+  @Query("SELECT c.contributorEmail FROM Contributor c")
+  List<String> findAllContributorEmails();
+
+  // @formatter:off
+  /**
+   * Insert or update the copy of a contributor on a non-primary shard. The
+   * contributor keeps the ID it was given by the primary shard.
+   * 
+   * @param contributorId The contributor ID.
+   * @param contributorName The contributor name.
+   * @param contributorEmail The contributor email.
+   * @return The number of rows changed.
+   */
+  @Modifying
+  @Query(value = ""
+      + "INSERT INTO contributor "
+      + "(contributor_id, contributor_name, contributor_email) "
+      + "VALUES (:contributorId, :contributorName, :contributorEmail) "
+      + "ON DUPLICATE KEY UPDATE "
+      + "contributor_name = VALUES(contributor_name), "
+      + "contributor_email = VALUES(contributor_email)",
+      nativeQuery = true)
+  int upsertReplica(Long contributorId, String contributorName,
+      String contributorEmail);
+  // @formatter:on
+
+  /**
+   * Delete the copy of a contributor on a non-primary shard. The
+   * contributor's parks on that shard must be deleted first (see
+   * {@link PetParkDao#deleteParksByContributorId(Long)}).
+   * 
+   * @param contributorId The contributor ID.
+   * @return The number of rows deleted.
+   */
+  @Modifying
+  @Query(value = "DELETE FROM contributor "
+      + "WHERE contributor_id = :contributorId", nativeQuery = true)
+  int deleteReplica(Long contributorId);
 }
@@ -0,0 +1,19 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+/**
+ * This is a read-only projection of a contributor and the number of parks
+ * the contributor has on one shard. It is returned by the park count queries
+ * in {@link ContributorDao}. The getter names match the column aliases.
+ *
+ * @author Promineo
+ *
+ */
+public interface ContributorParkCount {
+  Long getContributorId();
+
+  String getContributorName();
+
+  Long getParkCount();
+}
@@ -0,0 +1,115 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This class adds up the time a request spends in database transactions,
+ * from the moment a transaction asks for a connection until it has
+ * committed or rolled back. It is started for each request by
+ * pet.park.controller.admission.AdmissionControlInterceptor, which sizes
+ * its concurrency limits from this time rather than from the whole request:
+ * a request that is answered from a cache, with a 304, or that switches to
+ * a stream does no database work and says nothing about how loaded the
+ * database is.
+ *
+ * The transaction managers ({@link DeadlineTransactionManager} and the edge
+ * LogStoreTransactionManager) report each new transaction through
+ * {@link #transactionBegun(Object, Object, long)} and
+ * {@link #transactionCompleted(Object, Object)}. A transaction started while
+ * another is suspended is counted as part of the outer one.
+ *
+ * Like {@link Deadline}, the value is kept in a ThreadLocal. It is not
+ * carried to the threads of a scatter-gather: those queries overlap, so
+ * adding up their times would overstate the wait, and a request that only
+ * queries on other threads simply gives no sample.
+ *
+ * @author Promineo
+ *
+ */
+public final class DatabaseTime {
+  private static final ThreadLocal<DatabaseTime> CURRENT = new ThreadLocal<>();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final AtomicInteger transactions = new AtomicInteger();
+
+  /*
+   * Bound as a transaction resource while a transaction is being timed.
+   */
+  private record Timing(DatabaseTime time, Object transaction,
+      long startNanos) {
+  }
+
+  private DatabaseTime() {
+  }
+
+  /**
+   * Start adding up the database time of the current thread's work.
+   *
+   * @return The new total, which is also the current thread's.
+   */
+  public static DatabaseTime start() {
+    DatabaseTime time = new DatabaseTime();
+
+    CURRENT.set(time);
+    return time;
+  }
+
+  /**
+   * Stop adding up the current thread's database time.
+   */
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  /**
+   * Called by a transaction manager once a new transaction has begun.
+   *
+   * @param manager The transaction manager.
+   * @param transaction The manager's transaction object.
+   * @param startNanos When the transaction was asked for, from
+   *        System.nanoTime().
+   */
+  public static void transactionBegun(Object manager, Object transaction,
+      long startNanos) {
+    DatabaseTime time = CURRENT.get();
+
+    if(time != null
+        && !TransactionSynchronizationManager.hasResource(manager)) {
+      TransactionSynchronizationManager.bindResource(manager,
+          new Timing(time, transaction, startNanos));
+    }
+  }
+
+  /**
+   * Called by a transaction manager when a transaction has completed.
+   *
+   * @param manager The transaction manager.
+   * @param transaction The manager's transaction object.
+   */
+  public static void transactionCompleted(Object manager, Object transaction) {
+    if(TransactionSynchronizationManager.getResource(manager)
+        instanceof Timing timing && timing.transaction() == transaction) {
+      TransactionSynchronizationManager.unbindResource(manager);
+      timing.time().nanos.addAndGet(System.nanoTime() - timing.startNanos());
+      timing.time().transactions.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return The total time spent in transactions, in nanoseconds.
+   */
+  public long nanos() {
+    return nanos.get();
+  }
+
+  /**
+   * @return The number of transactions that have completed.
+   */
+  public int transactions() {
+    return transactions.get();
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.TransactionTimedOutException;
+
+/**
+ * This class holds the time by which the current request must be answered.
+ * After that the client has given up, so any work still running for it is
+ * wasted. The deadline is set for each request by
+ * pet.park.controller.deadline.DeadlineInterceptor and is used to:
+ *
+ * <ul>
+ * <li>set the timeout of each transaction to the time that is left (see
+ * {@link DeadlineTransactionManager}). Spring then applies the time that is
+ * left in the transaction as the JDBC query timeout of each query, and the
+ * driver cancels a query that runs past it.</li>
+ * <li>refuse to start a transaction, and so to take a pooled connection,
+ * once the deadline has passed.</li>
+ * <li>stop waiting for the shards in a scatter-gather.</li>
+ * </ul>
+ *
+ * Like {@link ShardContext}, the value is kept in a ThreadLocal. Work that is
+ * handed to another thread carries the deadline with it by using
+ * {@link #wrap(Supplier)}.
+ *
+ * @author Promineo
+ *
+ */
+public final class Deadline {
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private final long startNanos;
+  private final long deadlineNanos;
+
+  private Deadline(long startNanos, long timeoutNanos) {
+    this.startNanos = startNanos;
+    this.deadlineNanos = startNanos + timeoutNanos;
+  }
+
+  /**
+   * Create a deadline that is the given time from now.
+   *
+   * @param timeoutMillis The time allowed, in milliseconds.
+   * @return The deadline.
+   */
+  public static Deadline after(long timeoutMillis) {
+    return new Deadline(System.nanoTime(),
+        TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+  }
+
+  /**
+   * @return The current thread's deadline, or {@code null} if it has none.
+   */
+  public static Deadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Set the current thread's deadline.
+   *
+   * @param deadline The deadline, or {@code null} for none.
+   * @return The previous deadline, so that it can be restored.
+   */
+  public static Deadline set(Deadline deadline) {
+    Deadline previous = CURRENT.get();
+
+    if(deadline == null) {
+      CURRENT.remove();
+    }
+    else {
+      CURRENT.set(deadline);
+    }
+
+    return previous;
+  }
+
+  /**
+   * Throw if the current thread has a deadline and it has passed.
+   *
+   * @throws DeadlineExceededException Thrown if the deadline has passed.
+   */
+  public static void checkCurrent() {
+    Deadline deadline = current();
+
+    if(deadline != null) {
+      deadline.check();
+    }
+  }
+
+  /**
+   * Wrap work so that it runs with the current thread's deadline on
+   * whichever thread runs it.
+   *
+   * @param <T> The result type.
+   * @param work The work.
+   * @return The wrapped work.
+   */
+  public static <T> Supplier<T> wrap(Supplier<T> work) {
+    Deadline deadline = current();
+
+    if(deadline == null) {
+      return work;
+    }
+
+    return () -> {
+      Deadline previous = set(deadline);
+
+      try {
+        return work.get();
+      }
+      finally {
+        set(previous);
+      }
+    };
+  }
+
+  /**
+   * Check whether an exception means that a deadline or a timeout derived
+   * from one has passed.
+   *
+   * @param e The exception.
+   * @return {@code true} for a deadline, transaction or query timeout.
+   */
+  public static boolean isTimeout(Throwable e) {
+    return e instanceof DeadlineExceededException
+        || e instanceof TransactionTimedOutException
+        || e instanceof QueryTimeoutException;
+  }
+
+  /**
+   * @return The time left in nanoseconds. Zero or less once the deadline
+   *         has passed.
+   */
+  public long remainingNanos() {
+    return deadlineNanos - System.nanoTime();
+  }
+
+  /**
+   * @return The time left in milliseconds, rounded up.
+   */
+  public long remainingMillis() {
+    return Math.max(0,
+        (remainingNanos() + TimeUnit.MILLISECONDS.toNanos(1) - 1) / 1_000_000);
+  }
+
+  /**
+   * @return The time since the deadline was created, in nanoseconds.
+   */
+  public long elapsedNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  /**
+   * @return {@code true} if the deadline has passed.
+   */
+  public boolean isExpired() {
+    return remainingNanos() <= 0;
+  }
+
+  /**
+   * Throw if the deadline has passed. Long-running work calls this between
+   * steps so that it stops once nobody is waiting for the result.
+   *
+   * @throws DeadlineExceededException Thrown if the deadline has passed.
+   */
+  public void check() {
+    if(isExpired()) {
+      throw exceeded();
+    }
+  }
+
+  /**
+   * @return An exception stating that the deadline has passed.
+   */
+  public DeadlineExceededException exceeded() {
+    return new DeadlineExceededException(
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos()));
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import lombok.Getter;
+
+/**
+ * This exception is thrown when a request's {@link Deadline} has passed
+ * before its work was done. The error handler turns it into a 504 (Gateway
+ * Timeout).
+ *
+ * Deadlines pass in bursts (e.g. when the database slows down), so like
+ * pet.park.service.NotFoundException this exception does not record a stack
+ * trace.
+ *
+ * @author Promineo
+ *
+ */
+@Getter
+public class DeadlineExceededException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  private final long elapsedMillis;
+
+  /**
+   * Create the exception.
+   *
+   * @param elapsedMillis The time the request had been running.
+   */
+  public DeadlineExceededException(long elapsedMillis) {
+    super("Request deadline exceeded after " + elapsedMillis + " ms.");
+    this.elapsedMillis = elapsedMillis;
+  }
+
+  /*
+   * No stack trace is recorded.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
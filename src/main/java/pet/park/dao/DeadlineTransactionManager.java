@@ -0,0 +1,90 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This is the JPA transaction manager with the current thread's
+ * {@link Deadline} applied to each new transaction:
+ *
+ * <ul>
+ * <li>If the deadline has already passed, the transaction is not started
+ * and no connection is taken from the pool. A
+ * {@link DeadlineExceededException} is thrown instead.</li>
+ * <li>Otherwise the transaction timeout is the time that is left (or the
+ * timeout given in the transaction definition, if that is shorter). Spring
+ * sets the time left in the transaction as the query timeout of every query
+ * run through the shared EntityManager, which is what the Spring Data
+ * repositories use. The JDBC driver cancels a query that runs past it, and
+ * a query started after the deadline fails at once with a
+ * TransactionTimedOutException.</li>
+ * </ul>
+ *
+ * Transaction timeouts are given in whole seconds, so the EntityManager's
+ * timeout is set again in milliseconds after the transaction has begun.
+ *
+ * The time each transaction takes, including the wait for a connection, is
+ * added to the request's {@link DatabaseTime}.
+ *
+ * The manager is created by {@link TransactionConfiguration} in place of the
+ * one Spring Boot would create.
+ *
+ * @author Promineo
+ *
+ */
+public class DeadlineTransactionManager extends JpaTransactionManager {
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  protected int determineTimeout(TransactionDefinition definition) {
+    int timeout = super.determineTimeout(definition);
+    Deadline deadline = Deadline.current();
+
+    if(deadline == null) {
+      return timeout;
+    }
+
+    int remaining =
+        (int)Math.max(1, (deadline.remainingMillis() + 999) / 1000);
+
+    return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? remaining
+        : Math.min(timeout, remaining);
+  }
+
+  @Override
+  protected void doBegin(Object transaction, TransactionDefinition definition) {
+    long startNanos = System.nanoTime();
+    Deadline deadline = Deadline.current();
+
+    Deadline.checkCurrent();
+    super.doBegin(transaction, definition);
+    DatabaseTime.transactionBegun(this, transaction, startNanos);
+
+    if(deadline != null && TransactionSynchronizationManager.getResource(
+        obtainEntityManagerFactory()) instanceof EntityManagerHolder holder) {
+      long remaining = deadline.remainingMillis();
+
+      /*
+       * getTimeToLiveInMillis() would throw once the time is up, and the
+       * transaction has already begun, so the holder's deadline is read
+       * directly.
+       */
+      if(holder.hasTimeout()) {
+        remaining = Math.min(remaining,
+            holder.getDeadline().getTime() - System.currentTimeMillis());
+      }
+
+      holder.setTimeoutInMillis(Math.max(1, remaining));
+    }
+  }
+
+  @Override
+  protected void doCleanupAfterCompletion(Object transaction) {
+    DatabaseTime.transactionCompleted(this, transaction);
+    super.doCleanupAfterCompletion(transaction);
+  }
+}
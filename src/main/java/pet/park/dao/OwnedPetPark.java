@@ -0,0 +1,17 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import pet.park.entity.Contributor;
+import pet.park.entity.PetPark;
+
+/**
+ * This record holds the result of {@link PetParkDao#findOwnedById(Long, Long)}:
+ * the requested contributor and the pet park with the requested ID (or
+ * {@code null} if there is no such park). Both are managed entities.
+ * 
+ * @author Promineo
+ *
+ */
+public record OwnedPetPark(Contributor contributor, PetPark petPark) {
+}
@@ -0,0 +1,25 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.Map;
+
+/**
+ * This interface adds the view count upsert to {@link PetParkDao}. The
+ * statement has one row of values per park, which an @Query cannot express.
+ * Spring Data finds the implementation, {@link ParkViewDaoImpl}, by its name.
+ *
+ * @author Promineo
+ *
+ */
+public interface ParkViewDao {
+
+  /**
+   * Add views to the pet_park_view table in one statement. A park that has
+   * no row yet gets one.
+   *
+   * @param views The number of views to add, by pet park ID.
+   * @return The number of rows affected, as reported by MySQL.
+   */
+  int addViews(Map<Long, Long> views);
+}
@@ -0,0 +1,51 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.Map;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * This class implements {@link ParkViewDao} with a multi-row MySQL
+ * "INSERT ... ON DUPLICATE KEY UPDATE". The shared EntityManager is used, so
+ * the statement runs in the caller's transaction and on the caller's shard.
+ *
+ * @author Promineo
+ *
+ */
+public class ParkViewDaoImpl implements ParkViewDao {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public int addViews(Map<Long, Long> views) {
+    if(views.isEmpty()) {
+      return 0;
+    }
+
+    StringBuilder sql = new StringBuilder(
+        "INSERT INTO pet_park_view (pet_park_id, view_count) VALUES ");
+    int position = 1;
+
+    for(int row = 0; row < views.size(); row++) {
+      sql.append(row == 0 ? "" : ", ").append("(?").append(position++)
+          .append(", ?").append(position++).append(")");
+    }
+
+    sql.append(" ON DUPLICATE KEY UPDATE ")
+        .append("view_count = view_count + VALUES(view_count)");
+
+    Query query = entityManager.createNativeQuery(sql.toString());
+    position = 1;
+
+    for(Map.Entry<Long, Long> entry : views.entrySet()) {
+      query.setParameter(position++, entry.getKey());
+      query.setParameter(position++, entry.getValue());
+    }
+
+    return query.executeUpdate();
+  }
+}
@@ -2,7 +2,12 @@
 
 package pet.park.dao;
 
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import pet.park.entity.PetPark;
 
@@ -10,10 +15,218 @@ import pet.park.entity.PetPark;
  * This interface extends {@link JpaRepository}. Both JpaRepository and its
  * parent interface {@link CrudRepository} provide convenient common methods
  * used for CRUD operations on the pet_park table. When JPA starts up, it
- * creates backing methods for the method declarations in the interface.
+ * creates backing methods for the method declarations in the interface. The
+ * query that reads only some columns comes from {@link SparseParkDao}, and
+ * the view count upsert from {@link ParkViewDao}.
  * 
  * @author Promineo
  *
  */
-public interface PetParkDao extends JpaRepository<PetPark, Long> {
+public interface PetParkDao
+    extends JpaRepository<PetPark, Long>, SparseParkDao, ParkViewDao {
+  // @formatter:off
+  /**
+   * The select list shared by the {@link PetParkView} queries. The aliases
+   * match the getter names in PetParkView. The park is aliased "p", its
+   * contributor "c" and its amenities "a".
+   */
+  String VIEW_COLUMNS = ""
+      + "SELECT p.pet_park_id AS petParkId, p.park_name AS parkName, "
+      + "p.directions AS directions, "
+      + "p.state_or_province AS stateOrProvince, p.country AS country, "
+      + "p.latitude AS latitude, p.longitude AS longitude, "
+      + "c.contributor_id AS contributorId, "
+      + "c.contributor_name AS contributorName, "
+      + "c.contributor_email AS contributorEmail, "
+      + "GROUP_CONCAT(a.amenity SEPARATOR '"
+      + PetParkView.AMENITY_SEPARATOR + "') AS amenities ";
+
+  /**
+   * The joins from the park ("p") to its amenities ("a").
+   */
+  String AMENITY_JOINS = ""
+      + "LEFT JOIN pet_park_amenity pa ON pa.pet_park_id = p.pet_park_id "
+      + "LEFT JOIN amenity a ON a.amenity_id = pa.amenity_id ";
+
+  /**
+   * The select list and joins shared by the {@link PetParkView} queries that
+   * start from the pet_park table.
+   */
+  String VIEW_SELECT = VIEW_COLUMNS
+      + "FROM pet_park p "
+      + "JOIN contributor c ON c.contributor_id = p.contributor_id "
+      + AMENITY_JOINS;
+  // @formatter:on
+
+  /**
+   * Read all pet parks as projections. This is a native (MySQL) query, so no
+   * entities are created.
+   * 
+   * @return One view per pet park, ordered by pet park ID.
+   */
+  @Query(value = VIEW_SELECT
+      + "GROUP BY p.pet_park_id ORDER BY p.pet_park_id", nativeQuery = true)
+  List<PetParkView> findAllViews();
+
+  /**
+   * Read the first pet parks (by pet park ID) as projections. This is used to
+   * page through the parks of several shards: each shard returns its first
+   * (page + 1) * size parks, and the merged list is then cut to the page.
+   * 
+   * @param limit The maximum number of parks.
+   * @return Up to <em>limit</em> views, ordered by pet park ID.
+   */
+  @Query(value = VIEW_SELECT
+      + "GROUP BY p.pet_park_id ORDER BY p.pet_park_id LIMIT :limit",
+      nativeQuery = true)
+  List<PetParkView> findFirstViews(int limit);
+
+  /**
+   * Read a single pet park as a projection.
+   * 
+   * @param petParkId The pet park ID.
+   * @return The view, if the park exists.
+   */
+  @Query(value = VIEW_SELECT
+      + "WHERE p.pet_park_id = :petParkId GROUP BY p.pet_park_id",
+      nativeQuery = true)
+  Optional<PetParkView> findViewById(Long petParkId);
+
+  /**
+   * Read the most viewed pet parks as projections. pet_park_view keeps the
+   * counts of deleted parks (see V5), so the derived table joins the counts
+   * to pet_park before applying the limit; a deleted park never takes one
+   * of the <em>limit</em> places. It still reads the highest counts from
+   * the end of the view_count index and looks each one up by primary key,
+   * stopping once <em>limit</em> parks have been found.
+   * 
+   * @param limit The maximum number of parks.
+   * @return Up to <em>limit</em> views, most viewed first.
+   */
+  @Query(value = VIEW_COLUMNS + ", v.view_count AS viewCount "
+      + "FROM (SELECT pv.pet_park_id, pv.view_count FROM pet_park_view pv "
+      + "JOIN pet_park live ON live.pet_park_id = pv.pet_park_id "
+      + "ORDER BY pv.view_count DESC LIMIT :limit) v "
+      + "JOIN pet_park p ON p.pet_park_id = v.pet_park_id "
+      + "JOIN contributor c ON c.contributor_id = p.contributor_id "
+      + AMENITY_JOINS
+      + "GROUP BY p.pet_park_id, v.view_count "
+      + "ORDER BY v.view_count DESC, p.pet_park_id", nativeQuery = true)
+  List<PopularParkView> findMostViewedViews(int limit);
+
+  /**
+   * Read a contributor's parks without their amenities or contributor
+   * columns. The query reads only the pet_park table, using the index on the
+   * contributor_id foreign key.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The views, ordered by pet park ID.
+   */
+  @Query(value = "SELECT p.pet_park_id AS petParkId, "
+      + "p.park_name AS parkName, p.directions AS directions, "
+      + "p.state_or_province AS stateOrProvince, p.country AS country, "
+      + "p.latitude AS latitude, p.longitude AS longitude "
+      + "FROM pet_park p WHERE p.contributor_id = :contributorId "
+      + "ORDER BY p.pet_park_id", nativeQuery = true)
+  List<PetParkView> findViewsByContributorId(Long contributorId);
+
+  /**
+   * Read the amenities of a contributor's parks. Only the pet park ID and
+   * amenity columns of the views are set, and parks without amenities are
+   * left out.
+   * 
+   * @param contributorId The contributor ID.
+   * @return One view per park that has amenities.
+   */
+  @Query(value = "SELECT pa.pet_park_id AS petParkId, "
+      + "GROUP_CONCAT(a.amenity SEPARATOR '"
+      + PetParkView.AMENITY_SEPARATOR + "') AS amenities "
+      + "FROM pet_park p "
+      + "JOIN pet_park_amenity pa ON pa.pet_park_id = p.pet_park_id "
+      + "JOIN amenity a ON a.amenity_id = pa.amenity_id "
+      + "WHERE p.contributor_id = :contributorId "
+      + "GROUP BY pa.pet_park_id", nativeQuery = true)
+  List<PetParkView> findAmenityViewsByContributorId(Long contributorId);
+
+  // @formatter:off
+  /**
+   * Read a pet park for a contributor in one query. The query starts from the
+   * requested contributor (alias "o") and joins the park by ID, so a single
+   * primary key lookup on each table tells all the possible outcomes apart:
+   * 
+   * <ul>
+   * <li>No row - the contributor does not exist.</li>
+   * <li>A row with a {@code null} pet park ID - the park does not
+   * exist.</li>
+   * <li>A row whose contributor ID differs from the requested one - the park
+   * belongs to another contributor.</li>
+   * <li>Otherwise the row is the park.</li>
+   * </ul>
+   * 
+   * @param contributorId The requested contributor ID.
+   * @param petParkId The pet park ID.
+   * @return The view, as described above.
+   */
+  @Query(value = VIEW_COLUMNS
+      + "FROM contributor o "
+      + "LEFT JOIN pet_park p ON p.pet_park_id = :petParkId "
+      + "LEFT JOIN contributor c ON c.contributor_id = p.contributor_id "
+      + AMENITY_JOINS
+      + "WHERE o.contributor_id = :contributorId "
+      + "GROUP BY p.pet_park_id, c.contributor_id", nativeQuery = true)
+  Optional<PetParkView> findOwnedViewById(Long contributorId, Long petParkId);
+
+  /**
+   * Load a pet park and the requested contributor as entities in one query,
+   * for updating the park. The outcomes are the same as for
+   * {@link #findOwnedViewById(Long, Long)}: empty if the contributor does not
+   * exist, a {@code null} park if the park does not exist, and a park whose
+   * contributor is someone else if it is not owned by the contributor.
+   * 
+   * @param contributorId The requested contributor ID.
+   * @param petParkId The pet park ID.
+   * @return The contributor and park.
+   */
+  @Query("SELECT new pet.park.dao.OwnedPetPark(o, p) "
+      + "FROM Contributor o "
+      + "LEFT JOIN PetPark p ON p.petParkId = :petParkId "
+      + "WHERE o.contributorId = :contributorId")
+  Optional<OwnedPetPark> findOwnedById(Long contributorId, Long petParkId);
+  // @formatter:on
+
+  /**
+   * Load a pet park with its contributor and amenities, using the
+   * "PetPark.detail" fetch plan declared on the {@link PetPark} entity.
+   * 
+   * @param petParkId The pet park ID.
+   * @return The pet park, if there is one with the ID.
+   */
+  @EntityGraph("PetPark.detail")
+  Optional<PetPark> findDetailByPetParkId(Long petParkId);
+
+  /**
+   * Delete the amenity links of every park owned by a contributor. This is
+   * the first step of deleting a contributor's parks with
+   * {@link #deleteParksByContributorId(Long)}.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The number of rows deleted.
+   */
+  @Modifying
+  @Query(value = "DELETE FROM pet_park_amenity WHERE pet_park_id IN "
+      + "(SELECT pet_park_id FROM pet_park "
+      + "WHERE contributor_id = :contributorId)", nativeQuery = true)
+  int deleteAmenityLinksByContributorId(Long contributorId);
+
+  /**
+   * Delete every park owned by a contributor. The JPA cascade is not used,
+   * because on a non-primary shard the contributor is only a copy.
+   * 
+   * @param contributorId The contributor ID.
+   * @return The number of rows deleted.
+   */
+  @Modifying
+  @Query(value = "DELETE FROM pet_park WHERE contributor_id = :contributorId",
+      nativeQuery = true)
+  int deleteParksByContributorId(Long contributorId);
 }
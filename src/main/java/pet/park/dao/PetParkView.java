@@ -0,0 +1,66 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import pet.park.controller.model.Canonical;
+
+/**
+ * This interface is a Spring Data projection. It describes one row of a
+ * read-only query that returns pet park data without creating PetPark,
+ * Contributor or Amenity entities. Spring Data implements the interface with
+ * a lightweight proxy over the result row. The getter names match the column
+ * aliases in the query.
+ * 
+ * Because no entities are created, nothing is added to the persistence
+ * context and Hibernate takes no dirty-checking snapshots. The amenity names
+ * are aggregated in SQL (GROUP_CONCAT) so that one row holds a whole park.
+ * 
+ * @author Promineo
+ *
+ */
+public interface PetParkView {
+  /**
+   * The separator used by GROUP_CONCAT for amenity names. It is the ASCII
+   * unit separator, which does not appear in amenity names.
+   */
+  String AMENITY_SEPARATOR = "\u001F";
+
+  Long getPetParkId();
+
+  String getParkName();
+
+  String getDirections();
+
+  String getStateOrProvince();
+
+  String getCountry();
+
+  BigDecimal getLatitude();
+
+  BigDecimal getLongitude();
+
+  Long getContributorId();
+
+  String getContributorName();
+
+  String getContributorEmail();
+
+  /**
+   * @return The amenity names joined by {@link #AMENITY_SEPARATOR}, or
+   *         {@code null} if the park has no amenities.
+   */
+  String getAmenities();
+
+  /**
+   * Split the aggregated amenity names. Parks with the same amenities share
+   * one set (see {@link Canonical}).
+   * 
+   * @return The amenity names as an unmodifiable set. The set is empty if
+   *         there are none.
+   */
+  default Set<String> amenitySet() {
+    return Canonical.amenities(getAmenities());
+  }
+}
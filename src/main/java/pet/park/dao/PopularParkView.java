@@ -0,0 +1,15 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+/**
+ * This is a read-only projection of a pet park and the number of times it
+ * has been viewed. It is returned by
+ * {@link PetParkDao#findMostViewedViews(int)}.
+ *
+ * @author Promineo
+ *
+ */
+public interface PopularParkView extends PetParkView {
+  Long getViewCount();
+}
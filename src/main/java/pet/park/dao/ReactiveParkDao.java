@@ -0,0 +1,239 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import io.r2dbc.spi.Readable;
+import pet.park.controller.model.Canonical;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.ContributorData.PetParkResponse;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+import pet.park.entity.GeoLocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * This class reads pet parks and contributors with R2DBC, the non-blocking
+ * alternative to JDBC. It is only used when the "reactive" profile is active.
+ *
+ * R2DBC does not manage entity relationships the way JPA does. Instead, each
+ * method runs a single query that joins the pet park, contributor and amenity
+ * tables, and the rows are grouped into DTOs as they arrive. The rows are
+ * ordered by the grouping key so that a group is complete as soon as the key
+ * changes. This means that the first DTO can be sent to the client before the
+ * last row has been read, and that a slow client slows down the query (via
+ * Reactor backpressure) instead of making the server buffer the whole result.
+ *
+ * Class-level annotations:
+ *
+ * @Repository Tells Spring that this class is a Managed Bean in the data
+ *             layer.
+ *
+ * @Profile The bean is only created when the "reactive" profile is active.
+ *
+ * @author Promineo
+ *
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveParkDao {
+  // @formatter:off
+  private static final String PARK_SELECT = ""
+      + "SELECT p.pet_park_id, p.park_name, p.directions, "
+      + "p.state_or_province, p.country, p.latitude, p.longitude, "
+      + "c.contributor_id, c.contributor_name, c.contributor_email, "
+      + "a.amenity "
+      + "FROM pet_park p "
+      + "JOIN contributor c ON c.contributor_id = p.contributor_id "
+      + "LEFT JOIN pet_park_amenity pa ON pa.pet_park_id = p.pet_park_id "
+      + "LEFT JOIN amenity a ON a.amenity_id = pa.amenity_id ";
+
+  private static final String CONTRIBUTOR_SELECT = ""
+      + "SELECT c.contributor_id, c.contributor_name, c.contributor_email, "
+      + "p.pet_park_id, p.park_name, p.directions, p.state_or_province, "
+      + "p.country, p.latitude, p.longitude, a.amenity "
+      + "FROM contributor c "
+      + "LEFT JOIN pet_park p ON p.contributor_id = c.contributor_id "
+      + "LEFT JOIN pet_park_amenity pa ON pa.pet_park_id = p.pet_park_id "
+      + "LEFT JOIN amenity a ON a.amenity_id = pa.amenity_id ";
+  // @formatter:on
+
+  @Autowired
+  private DatabaseClient databaseClient;
+
+  /*
+   * One row of the joined result. The park columns are null for a contributor
+   * without parks and the amenity is null for a park without amenities.
+   */
+  private record Row(Long petParkId, String parkName, String directions,
+      String stateOrProvince, String country, BigDecimal latitude,
+      BigDecimal longitude, Long contributorId, String contributorName,
+      String contributorEmail, String amenity) {
+  }
+
+  /**
+   * Stream all pet parks, ordered by pet park ID.
+   *
+   * @return The pet parks.
+   */
+  public Flux<PetParkData> findAllPetParks() {
+    return toPetParks(databaseClient
+        .sql(PARK_SELECT + "ORDER BY p.pet_park_id").map(this::toRow).all());
+  }
+
+  /**
+   * Find a single pet park.
+   *
+   * @param petParkId The pet park ID.
+   * @return The pet park, or an empty Mono if there is no such park.
+   */
+  public Mono<PetParkData> findPetParkById(Long petParkId) {
+    return toPetParks(databaseClient
+        .sql(PARK_SELECT + "WHERE p.pet_park_id = :petParkId")
+        .bind("petParkId", petParkId).map(this::toRow).all()).next();
+  }
+
+  /**
+   * Stream all contributors with their parks, ordered by contributor ID.
+   *
+   * @return The contributors.
+   */
+  public Flux<ContributorData> findAllContributors() {
+    return toContributors(databaseClient
+        .sql(CONTRIBUTOR_SELECT + "ORDER BY c.contributor_id, p.pet_park_id")
+        .map(this::toRow).all());
+  }
+
+  /**
+   * Find a single contributor with their parks.
+   *
+   * @param contributorId The contributor ID.
+   * @return The contributor, or an empty Mono if there is no such
+   *         contributor.
+   */
+  public Mono<ContributorData> findContributorById(Long contributorId) {
+    return toContributors(databaseClient
+        .sql(CONTRIBUTOR_SELECT + "WHERE c.contributor_id = :contributorId "
+            + "ORDER BY p.pet_park_id")
+        .bind("contributorId", contributorId).map(this::toRow).all()).next();
+  }
+
+  private Row toRow(Readable row) {
+    // @formatter:off
+    return new Row(
+        row.get("pet_park_id", Long.class),
+        row.get("park_name", String.class),
+        row.get("directions", String.class),
+        row.get("state_or_province", String.class),
+        row.get("country", String.class),
+        row.get("latitude", BigDecimal.class),
+        row.get("longitude", BigDecimal.class),
+        row.get("contributor_id", Long.class),
+        row.get("contributor_name", String.class),
+        row.get("contributor_email", String.class),
+        row.get("amenity", String.class));
+    // @formatter:on
+  }
+
+  /*
+   * Consecutive rows with the same pet park ID make up one pet park.
+   */
+  private Flux<PetParkData> toPetParks(Flux<Row> rows) {
+    return rows.bufferUntilChanged(Row::petParkId).map(this::toPetParkData);
+  }
+
+  /*
+   * Consecutive rows with the same contributor ID make up one contributor.
+   */
+  private Flux<ContributorData> toContributors(Flux<Row> rows) {
+    return rows.bufferUntilChanged(Row::contributorId)
+        .map(this::toContributorData);
+  }
+
+  private PetParkData toPetParkData(List<Row> rows) {
+    Row first = rows.get(0);
+    PetParkData park = new PetParkData();
+
+    park.setPetParkId(first.petParkId());
+    park.setParkName(first.parkName());
+    park.setDirections(first.directions());
+    park.setStateOrProvince(Canonical.string(first.stateOrProvince()));
+    park.setCountry(Canonical.string(first.country()));
+    park.setGeoLocation(toGeoLocation(first));
+
+    PetParkContributor contributor = new PetParkContributor();
+    contributor.setContributorId(first.contributorId());
+    contributor.setContributorName(first.contributorName());
+    contributor.setContributorEmail(first.contributorEmail());
+    park.setContributor(contributor);
+
+    for(Row row : rows) {
+      if(Objects.nonNull(row.amenity())) {
+        park.getAmenities().add(row.amenity());
+      }
+    }
+
+    park.setAmenities(Canonical.amenities(park.getAmenities()));
+    return park;
+  }
+
+  private ContributorData toContributorData(List<Row> rows) {
+    Row first = rows.get(0);
+    ContributorData contributor = new ContributorData();
+
+    contributor.setContributorId(first.contributorId());
+    contributor.setContributorName(first.contributorName());
+    contributor.setContributorEmail(first.contributorEmail());
+
+    /*
+     * The parks are collected in a list first and added to the set at the
+     * end. The set uses the (Lombok generated) hashCode(), which changes as
+     * amenities are added.
+     */
+    List<PetParkResponse> parks = new ArrayList<>();
+    PetParkResponse park = null;
+
+    for(Row row : rows) {
+      if(Objects.isNull(row.petParkId())) {
+        continue;
+      }
+
+      if(park == null || !park.getPetParkId().equals(row.petParkId())) {
+        park = new PetParkResponse();
+        park.setPetParkId(row.petParkId());
+        park.setParkName(row.parkName());
+        park.setDirections(row.directions());
+        park.setStateOrProvince(Canonical.string(row.stateOrProvince()));
+        park.setCountry(Canonical.string(row.country()));
+        park.setGeoLocation(toGeoLocation(row));
+        parks.add(park);
+      }
+
+      if(Objects.nonNull(row.amenity())) {
+        park.getAmenities().add(row.amenity());
+      }
+    }
+
+    for(PetParkResponse response : parks) {
+      response.setAmenities(Canonical.amenities(response.getAmenities()));
+    }
+
+    contributor.getPetParks().addAll(parks);
+    return contributor;
+  }
+
+  private GeoLocation toGeoLocation(Row row) {
+    GeoLocation geoLocation = new GeoLocation();
+    geoLocation.setLatitude(row.latitude());
+    geoLocation.setLongitude(row.longitude());
+    return geoLocation;
+  }
+}
@@ -0,0 +1,49 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+/**
+ * This class holds the name of the shard that the current thread's database
+ * work should go to. The {@link ShardRoutingDataSource} reads it when a
+ * connection is actually needed.
+ * 
+ * The value is kept in a ThreadLocal, so each thread (each request, each
+ * scatter-gather branch) has its own. Code should not set the value directly.
+ * It should use ShardRouter.inShard(), which sets the value, starts the
+ * transaction and restores the previous value when it is done.
+ * 
+ * @author Promineo
+ *
+ */
+public final class ShardContext {
+  private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+  private ShardContext() {
+  }
+
+  /**
+   * @return The current shard name, or {@code null} for the primary shard.
+   */
+  public static String get() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Set the current shard.
+   * 
+   * @param shard The shard name, or {@code null} for the primary shard.
+   * @return The previous shard name, so that it can be restored.
+   */
+  public static String set(String shard) {
+    String previous = CURRENT.get();
+
+    if(shard == null) {
+      CURRENT.remove();
+    }
+    else {
+      CURRENT.set(shard);
+    }
+
+    return previous;
+  }
+}
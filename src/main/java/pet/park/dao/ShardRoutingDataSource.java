@@ -0,0 +1,26 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * This DataSource sends each connection request to the shard named in the
+ * {@link ShardContext}. If no shard is named, the default (primary) shard is
+ * used. The shards are registered by ShardingConfiguration.
+ * 
+ * A transaction takes its connection when the transaction starts, which may
+ * be before the service has decided which shard to use. For that reason this
+ * DataSource is wrapped in a LazyConnectionDataSourceProxy, which only asks
+ * for the real connection when the first SQL statement is run.
+ * 
+ * @author Promineo
+ *
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return ShardContext.get();
+  }
+}
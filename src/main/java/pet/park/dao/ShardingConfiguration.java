@@ -0,0 +1,148 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class replaces the single DataSource with one connection pool per
+ * shard when <em>pet-park.sharding.enabled</em> is true (see
+ * {@link ShardingProperties}). Each shard is a complete copy of the schema
+ * (contributor, pet_park, amenity and pet_park_amenity). The pet parks are
+ * split between the shards by country and the contributors are copied to
+ * every shard, so the joins in the DAO queries stay local to one shard.
+ * 
+ * Park IDs must be unique across the shards, because an ID is all that a
+ * client sends back. Each shard's connections are set up with
+ * auto_increment_increment equal to the number of shards and
+ * auto_increment_offset equal to the shard's position (1, 2, 3...). Shard 1
+ * then generates IDs 1, 4, 7..., shard 2 generates 2, 5, 8... and so on, so
+ * the shard that holds an ID can be computed from the ID alone.
+ * 
+ * The Flyway migrations are run against every shard at startup.
+ * 
+ * @author Promineo
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "pet-park.sharding.enabled",
+    havingValue = "true")
+@Slf4j
+public class ShardingConfiguration {
+
+  @Autowired
+  private ShardingProperties properties;
+
+  @Value("${spring.datasource.username:}")
+  private String defaultUsername;
+
+  @Value("${spring.datasource.password:}")
+  private String defaultPassword;
+
+  private final List<HikariDataSource> pools = new ArrayList<>();
+
+  /**
+   * Create the routing DataSource that JPA, the transaction manager and
+   * Flyway use in place of the auto-configured one.
+   * 
+   * @return The DataSource.
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource() {
+    List<ShardingProperties.Shard> shards = properties.getShards();
+
+    if(shards.isEmpty()) {
+      throw new IllegalStateException(
+          "pet-park.sharding.enabled is true but no shards are configured.");
+    }
+
+    Map<Object, Object> targets = new HashMap<>();
+
+    for(int index = 0; index < shards.size(); index++) {
+      ShardingProperties.Shard shard = shards.get(index);
+      HikariDataSource pool = new HikariDataSource();
+
+      pool.setPoolName("shard-" + shard.getName());
+      pool.setJdbcUrl(shard.getUrl());
+      pool.setUsername(
+          Objects.requireNonNullElse(shard.getUsername(), defaultUsername));
+      pool.setPassword(
+          Objects.requireNonNullElse(shard.getPassword(), defaultPassword));
+      pool.setConnectionInitSql("SET SESSION auto_increment_increment = "
+          + shards.size() + ", auto_increment_offset = " + (index + 1));
+
+      pools.add(pool);
+      targets.put(shard.getName(), pool);
+
+      log.info("Shard {} ({} of {}) at {}", shard.getName(), index + 1,
+          shards.size(), shard.getUrl());
+    }
+
+    ShardRoutingDataSource routing = new ShardRoutingDataSource();
+    routing.setTargetDataSources(targets);
+    routing.setDefaultTargetDataSource(pools.get(0));
+    routing.setLenientFallback(false);
+    routing.afterPropertiesSet();
+
+    /*
+     * The defaults are given here so that the proxy does not open a
+     * connection at startup to find them out.
+     */
+    LazyConnectionDataSourceProxy lazy = new LazyConnectionDataSourceProxy();
+    lazy.setTargetDataSource(routing);
+    lazy.setDefaultAutoCommit(true);
+    lazy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+    lazy.afterPropertiesSet();
+
+    return lazy;
+  }
+
+  /**
+   * Run the Flyway migrations against every shard instead of only the
+   * primary.
+   * 
+   * @return The migration strategy.
+   */
+  @Bean
+  public FlywayMigrationStrategy shardedMigrationStrategy() {
+    return flyway -> {
+      for(ShardingProperties.Shard shard : properties.getShards()) {
+        String previous = ShardContext.set(shard.getName());
+
+        try {
+          log.info("Migrating shard {}", shard.getName());
+          flyway.migrate();
+        }
+        finally {
+          ShardContext.set(previous);
+        }
+      }
+    };
+  }
+
+  /**
+   * Close the shard connection pools.
+   */
+  @PreDestroy
+  public void close() {
+    pools.forEach(HikariDataSource::close);
+  }
+}
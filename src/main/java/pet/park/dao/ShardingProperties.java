@@ -0,0 +1,60 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import lombok.Data;
+
+/**
+ * This class holds the <em>pet-park.sharding</em> settings from
+ * application.yaml. Spring Boot copies the settings into the fields because
+ * of the @ConfigurationProperties annotation. For example:
+ * 
+ * <pre>
+ pet-park:
+   sharding:
+     enabled: true
+     default-shard: na
+     shards:
+       - name: na
+         url: jdbc:mysql://na-db:3306/pet_parks
+       - name: eu
+         url: jdbc:mysql://eu-db:3306/pet_parks
+     countries:
+       USA: na
+       Canada: na
+       Germany: eu
+       "[United Kingdom]": eu
+ * </pre>
+ * 
+ * The first shard in the list is the primary shard. It is the home of the
+ * contributors, and it is used when no shard has been chosen. A shard with no
+ * username or password uses spring.datasource.username/password.
+ * 
+ * @author Promineo
+ *
+ */
+@Component
+@ConfigurationProperties("pet-park.sharding")
+@Data
+public class ShardingProperties {
+  private boolean enabled;
+  private String defaultShard;
+  private List<Shard> shards = new ArrayList<>();
+
+  /** Maps a pet park country to the name of the shard that stores it. */
+  private Map<String, String> countries = new HashMap<>();
+
+  @Data
+  public static class Shard {
+    private String name;
+    private String url;
+    private String username;
+    private String password;
+  }
+}
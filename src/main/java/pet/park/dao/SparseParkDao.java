@@ -0,0 +1,31 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.util.List;
+import pet.park.controller.model.ParkFields;
+
+/**
+ * This interface adds a query to {@link PetParkDao} whose select list depends
+ * on the fields a client asked for, which an @Query cannot do. Spring Data
+ * finds the implementation, {@link SparseParkDaoImpl}, by its name and adds it
+ * to the PetParkDao repository.
+ *
+ * @author Promineo
+ *
+ */
+public interface SparseParkDao {
+
+  /**
+   * Read the first pet parks (by pet park ID) as projections that hold only
+   * the given fields. Columns that are not wanted are not selected, and the
+   * contributor and amenity tables are joined only if those fields are
+   * wanted. The pet park ID is always read.
+   *
+   * @param fields The wanted fields.
+   * @param limit The maximum number of parks.
+   * @return Up to <em>limit</em> views, ordered by pet park ID. The getters
+   *         of fields that were not read return {@code null}.
+   */
+  List<PetParkView> findSparseViews(ParkFields fields, int limit);
+}
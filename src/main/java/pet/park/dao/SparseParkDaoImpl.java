@@ -0,0 +1,161 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import pet.park.controller.model.ParkFields;
+import pet.park.controller.model.ParkFields.Field;
+
+/**
+ * This class implements {@link SparseParkDao} with a native (MySQL) query
+ * that is built from the wanted fields. The shared EntityManager is used, so
+ * the query runs in the caller's transaction and on the caller's shard.
+ *
+ * @author Promineo
+ *
+ */
+public class SparseParkDaoImpl implements SparseParkDao {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public List<PetParkView> findSparseViews(ParkFields fields, int limit) {
+    StringBuilder sql =
+        new StringBuilder("SELECT p.pet_park_id AS petParkId");
+
+    if(fields.contains(Field.PARK_NAME)) {
+      sql.append(", p.park_name AS parkName");
+    }
+
+    if(fields.contains(Field.DIRECTIONS)) {
+      sql.append(", p.directions AS directions");
+    }
+
+    if(fields.contains(Field.STATE_OR_PROVINCE)) {
+      sql.append(", p.state_or_province AS stateOrProvince");
+    }
+
+    if(fields.contains(Field.COUNTRY)) {
+      sql.append(", p.country AS country");
+    }
+
+    if(fields.contains(Field.GEO_LOCATION)) {
+      sql.append(", p.latitude AS latitude, p.longitude AS longitude");
+    }
+
+    if(fields.contains(Field.CONTRIBUTOR)) {
+      sql.append(", c.contributor_id AS contributorId")
+          .append(", c.contributor_name AS contributorName")
+          .append(", c.contributor_email AS contributorEmail");
+    }
+
+    if(fields.contains(Field.AMENITIES)) {
+      sql.append(", GROUP_CONCAT(a.amenity SEPARATOR '")
+          .append(PetParkView.AMENITY_SEPARATOR).append("') AS amenities");
+    }
+
+    sql.append(" FROM pet_park p ");
+
+    if(fields.contains(Field.CONTRIBUTOR)) {
+      sql.append("JOIN contributor c ON c.contributor_id = p.contributor_id ");
+    }
+
+    if(fields.contains(Field.AMENITIES)) {
+      sql.append(PetParkDao.AMENITY_JOINS).append("GROUP BY p.pet_park_id ");
+    }
+
+    sql.append("ORDER BY p.pet_park_id LIMIT :limit");
+
+    /* Hibernate returns Tuples when asked for Tuple.class. */
+    @SuppressWarnings("unchecked")
+    List<Tuple> rows = entityManager.createNativeQuery(sql.toString(),
+        Tuple.class).setParameter("limit", limit).getResultList();
+
+    return rows.stream().map(SparseParkDaoImpl::toView).toList();
+  }
+
+  /*
+   * A Tuple throws if asked for a column that was not selected, so the
+   * values are copied into a map, which returns null instead.
+   */
+  private static PetParkView toView(Tuple row) {
+    Map<String, Object> values = new HashMap<>();
+
+    for(TupleElement<?> element : row.getElements()) {
+      values.put(element.getAlias(), row.get(element));
+    }
+
+    return new TupleView(values);
+  }
+
+  private record TupleView(Map<String, Object> values) implements PetParkView {
+
+    @Override
+    public Long getPetParkId() {
+      return getLong("petParkId");
+    }
+
+    @Override
+    public String getParkName() {
+      return (String)values.get("parkName");
+    }
+
+    @Override
+    public String getDirections() {
+      return (String)values.get("directions");
+    }
+
+    @Override
+    public String getStateOrProvince() {
+      return (String)values.get("stateOrProvince");
+    }
+
+    @Override
+    public String getCountry() {
+      return (String)values.get("country");
+    }
+
+    @Override
+    public BigDecimal getLatitude() {
+      return (BigDecimal)values.get("latitude");
+    }
+
+    @Override
+    public BigDecimal getLongitude() {
+      return (BigDecimal)values.get("longitude");
+    }
+
+    @Override
+    public Long getContributorId() {
+      return getLong("contributorId");
+    }
+
+    @Override
+    public String getContributorName() {
+      return (String)values.get("contributorName");
+    }
+
+    @Override
+    public String getContributorEmail() {
+      return (String)values.get("contributorEmail");
+    }
+
+    @Override
+    public String getAmenities() {
+      return (String)values.get("amenities");
+    }
+
+    private Long getLong(String alias) {
+      return values.get(alias) instanceof Number number ? number.longValue()
+          : null;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * This class creates the transaction manager. It is the
+ * {@link DeadlineTransactionManager}, set up the same way as the
+ * JpaTransactionManager that Spring Boot creates when there is none (Spring
+ * Boot backs off because this bean exists). The "edge" profile has no
+ * database and creates its own transaction manager (see
+ * pet.park.dao.edge.EdgeStorageConfiguration).
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+@Profile("!edge")
+public class TransactionConfiguration {
+
+  /**
+   * Create the transaction manager. The EntityManagerFactory is found by the
+   * manager itself.
+   *
+   * @param customizers The customizers set up by Spring Boot (e.g. from the
+   *        spring.transaction properties).
+   * @return The transaction manager.
+   */
+  @Bean
+  public PlatformTransactionManager transactionManager(
+      ObjectProvider<TransactionManagerCustomizers> customizers) {
+    DeadlineTransactionManager transactionManager =
+        new DeadlineTransactionManager();
+
+    customizers.ifAvailable(
+        customizer -> customizer.customize(transactionManager));
+
+    return transactionManager;
+  }
+}
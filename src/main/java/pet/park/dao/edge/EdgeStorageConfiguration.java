@@ -0,0 +1,45 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * This class creates the transaction manager when the "edge" profile is
+ * active. The profile turns off the DataSource, JPA and Flyway, so the
+ * {@link LogStoreTransactionManager} takes the place of the one created by
+ * pet.park.dao.TransactionConfiguration, and the @Transactional service
+ * methods run against the {@link LogStore} unchanged.
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+@Profile("edge")
+public class EdgeStorageConfiguration {
+
+  /**
+   * Create the transaction manager.
+   *
+   * @param store The log store.
+   * @param customizers The customizers set up by Spring Boot (e.g. from the
+   *        spring.transaction properties).
+   * @return The transaction manager.
+   */
+  @Bean
+  public PlatformTransactionManager transactionManager(LogStore store,
+      ObjectProvider<TransactionManagerCustomizers> customizers) {
+    LogStoreTransactionManager transactionManager =
+        new LogStoreTransactionManager(store);
+
+    customizers.ifAvailable(
+        customizer -> customizer.customize(transactionManager));
+
+    return transactionManager;
+  }
+}
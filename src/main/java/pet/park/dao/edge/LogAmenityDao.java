@@ -0,0 +1,81 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import pet.park.dao.AmenityDao;
+import pet.park.dao.edge.LogCatalog.AmenityRow;
+import pet.park.dao.edge.LogStore.Table;
+import pet.park.entity.Amenity;
+
+/**
+ * This class implements {@link AmenityDao} with the edge {@link LogCatalog}.
+ * The amenities are returned without their parks (an empty set), which is
+ * what a JPA amenity would load lazily. A park that refers to a deleted
+ * amenity no longer lists it.
+ *
+ * @Repository Tells Spring that this class is a Managed Bean in the data
+ *             layer.
+ *
+ * @Profile The bean is only created when the "edge" profile is active.
+ *
+ * @author Promineo
+ *
+ */
+@Repository
+@Profile("edge")
+public class LogAmenityDao extends LogRepository<Amenity>
+    implements AmenityDao {
+
+  @Autowired
+  private LogCatalog catalog;
+
+  @Override
+  public Set<Amenity> findAllByAmenityIn(Set<String> amenities) {
+    Set<Amenity> found = new HashSet<>();
+
+    for(String amenity : amenities) {
+      catalog.amenityIdByName(amenity).flatMap(catalog::amenity)
+          .map(catalog::toEntity).ifPresent(found::add);
+    }
+
+    return found;
+  }
+
+  @Override
+  public Optional<Amenity> findById(Long amenityId) {
+    return catalog.amenity(amenityId).map(catalog::toEntity);
+  }
+
+  @Override
+  public <S extends Amenity> S save(S amenity) {
+    if(Objects.isNull(amenity.getAmenityId())) {
+      amenity.setAmenityId(catalog.nextId(Table.AMENITY));
+    }
+
+    catalog.put(new AmenityRow(amenity.getAmenityId(), amenity.getAmenity()));
+    return amenity;
+  }
+
+  @Override
+  public void deleteById(Long amenityId) {
+    catalog.deleteAmenity(amenityId);
+  }
+
+  @Override
+  protected List<Long> ids() {
+    return catalog.amenityIds();
+  }
+
+  @Override
+  protected Long idOf(Amenity amenity) {
+    return amenity.getAmenityId();
+  }
+}
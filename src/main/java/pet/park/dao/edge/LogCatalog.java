@@ -0,0 +1,487 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.dao.PetParkView;
+import pet.park.dao.edge.LogStore.Table;
+import pet.park.entity.Amenity;
+import pet.park.entity.Contributor;
+import pet.park.entity.GeoLocation;
+import pet.park.entity.PetPark;
+
+/**
+ * This class stores the catalog's rows in the {@link LogStore} and answers
+ * the lookups that MySQL answers with its secondary indexes. Each row is
+ * stored as JSON under its ID, with the relationships stored the way the
+ * MySQL tables store them: a park holds its contributor ID and the IDs of
+ * its amenities.
+ *
+ * The store only finds rows by ID, so these are kept in memory and updated
+ * by the store after every commit (see {@link LogStore#listen}):
+ *
+ * <ul>
+ * <li>the parks of each contributor, in pet park ID order (the
+ * pet_park.contributor_id index),</li>
+ * <li>the contributor with each email (the unique contributor_email
+ * index, which is also checked by the store before each commit). As in
+ * MySQL's collation, emails that differ only in case or in surrounding
+ * spaces are the same email,</li>
+ * <li>the amenity names, which are few,</li>
+ * <li>the view count of each park, so that the most viewed parks can be
+ * found without reading every count from the file.</li>
+ * </ul>
+ *
+ * The amenities in <em>pet-park.edge.amenities</em> are added at startup if
+ * they are missing, as the V4 migration does for MySQL.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Profile("edge")
+@Slf4j
+public class LogCatalog {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * A row of the contributor table.
+   */
+  record ContributorRow(Long contributorId, String contributorName,
+      String contributorEmail) {
+  }
+
+  /**
+   * A row of the amenity table.
+   */
+  record AmenityRow(Long amenityId, String amenity) {
+  }
+
+  /**
+   * A row of the pet_park table, with the park's rows of the
+   * pet_park_amenity table.
+   */
+  record ParkRow(Long petParkId, String parkName, String directions,
+      String stateOrProvince, String country, BigDecimal latitude,
+      BigDecimal longitude, Long contributorId, Set<Long> amenityIds) {
+  }
+
+  @Autowired
+  private LogStore store;
+
+  @Value("${pet-park.edge.amenities:}")
+  private List<String> seedAmenities;
+
+  private final ConcurrentMap<Long, NavigableSet<Long>> parksByContributor =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, Long> parkOwners =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Long> contributorsByEmail =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, String> contributorEmails =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, String> amenityNames =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Long> amenitiesByName =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, Long> viewCounts =
+      new ConcurrentHashMap<>();
+
+  @PostConstruct
+  void init() {
+    store.listen(Table.CONTRIBUTOR, this::contributorChanged);
+    store.listen(Table.AMENITY, this::amenityChanged);
+    store.listen(Table.PET_PARK, this::parkChanged);
+    store.listen(Table.PARK_VIEW, this::viewsChanged);
+    store.check(Table.CONTRIBUTOR, this::checkEmailsUnique);
+
+    for(String amenity : seedAmenities) {
+      if(!amenity.isBlank() && !amenitiesByName.containsKey(amenity)) {
+        put(new AmenityRow(nextId(Table.AMENITY), amenity));
+      }
+    }
+
+    log.info("Edge catalog has {} contributors, {} parks and {} amenities",
+        contributorIds().size(), parkIds().size(), amenityNames.size());
+  }
+
+  /*
+   * The listeners below are called by the store after each commit, while
+   * the store is locked.
+   */
+  private void contributorChanged(Long contributorId, byte[] value) {
+    String email = value == null ? null
+        : decode(value, ContributorRow.class).contributorEmail();
+    String previous = Objects.isNull(email)
+        ? contributorEmails.remove(contributorId)
+        : contributorEmails.put(contributorId, email);
+
+    if(previous != null) {
+      contributorsByEmail.remove(emailKey(previous), contributorId);
+    }
+
+    if(email != null) {
+      contributorsByEmail.put(emailKey(email), contributorId);
+    }
+  }
+
+  /*
+   * Called by the store before a commit that writes contributors. An email
+   * may only be taken by a contributor that no other contributor row
+   * (committed or in the same commit) has.
+   */
+  private void checkEmailsUnique(Map<Long, byte[]> writes) {
+    Map<String, Long> emails = new HashMap<>();
+
+    writes.forEach((contributorId, value) -> {
+      String email = value == null ? null
+          : decode(value, ContributorRow.class).contributorEmail();
+
+      if(email == null) {
+        return;
+      }
+
+      Long owner = emails.put(emailKey(email), contributorId);
+
+      if(owner == null) {
+        owner = contributorsByEmail.get(emailKey(email));
+
+        if(owner != null && writes.containsKey(owner)) {
+          owner = null;
+        }
+      }
+
+      if(owner != null && !owner.equals(contributorId)) {
+        throw new DuplicateKeyException("Duplicate entry '" + email
+            + "' for contributor_email");
+      }
+    });
+  }
+
+  private void amenityChanged(Long amenityId, byte[] value) {
+    String previous = value == null ? amenityNames.remove(amenityId)
+        : amenityNames.put(amenityId,
+            decode(value, AmenityRow.class).amenity());
+
+    if(previous != null) {
+      amenitiesByName.remove(previous, amenityId);
+    }
+
+    if(value != null) {
+      amenitiesByName.put(amenityNames.get(amenityId), amenityId);
+    }
+  }
+
+  private void parkChanged(Long petParkId, byte[] value) {
+    Long previous = value == null ? parkOwners.remove(petParkId)
+        : parkOwners.put(petParkId,
+            decode(value, ParkRow.class).contributorId());
+
+    if(previous != null) {
+      parksByContributor.computeIfPresent(previous, (id, parks) -> {
+        parks.remove(petParkId);
+        return parks.isEmpty() ? null : parks;
+      });
+    }
+
+    if(value != null) {
+      parksByContributor.computeIfAbsent(parkOwners.get(petParkId),
+          id -> new ConcurrentSkipListSet<>()).add(petParkId);
+    }
+  }
+
+  private void viewsChanged(Long petParkId, byte[] value) {
+    if(value == null) {
+      viewCounts.remove(petParkId);
+    }
+    else {
+      viewCounts.put(petParkId, decode(value, Long.class));
+    }
+  }
+
+  /**
+   * @param table The table.
+   * @return A new ID for a row in the table.
+   */
+  long nextId(Table table) {
+    return store.nextId(table);
+  }
+
+  Optional<ContributorRow> contributor(Long contributorId) {
+    return read(Table.CONTRIBUTOR, contributorId, ContributorRow.class);
+  }
+
+  Optional<ParkRow> park(Long petParkId) {
+    return read(Table.PET_PARK, petParkId, ParkRow.class);
+  }
+
+  Optional<AmenityRow> amenity(Long amenityId) {
+    return read(Table.AMENITY, amenityId, AmenityRow.class);
+  }
+
+  /**
+   * @return The IDs of all contributors, in ascending order.
+   */
+  List<Long> contributorIds() {
+    return store.ids(Table.CONTRIBUTOR);
+  }
+
+  /**
+   * @return The IDs of all parks, in ascending order.
+   */
+  List<Long> parkIds() {
+    return store.ids(Table.PET_PARK);
+  }
+
+  /**
+   * @return The IDs of all amenities, in ascending order.
+   */
+  List<Long> amenityIds() {
+    return store.ids(Table.AMENITY);
+  }
+
+  /**
+   * @param contributorId The contributor ID.
+   * @return The IDs of the contributor's parks, in ascending order.
+   */
+  List<Long> parkIdsOf(Long contributorId) {
+    NavigableSet<Long> parks = parksByContributor.get(contributorId);
+
+    return parks == null ? List.of() : List.copyOf(parks);
+  }
+
+  Optional<Long> contributorIdByEmail(String email) {
+    return Optional.ofNullable(email).map(LogCatalog::emailKey)
+        .map(contributorsByEmail::get);
+  }
+
+  /*
+   * The key of an email in contributorsByEmail, which is the form that
+   * ContributorEmailIndex compares.
+   */
+  private static String emailKey(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+  List<String> contributorEmailList() {
+    return List.copyOf(contributorEmails.values());
+  }
+
+  Optional<Long> amenityIdByName(String amenity) {
+    return Optional.ofNullable(amenity).map(amenitiesByName::get);
+  }
+
+  /**
+   * @return A copy of the view count of each park.
+   */
+  Map<Long, Long> viewCounts() {
+    return new HashMap<>(viewCounts);
+  }
+
+  void put(ContributorRow row) {
+    store.write(Table.CONTRIBUTOR, row.contributorId(), encode(row));
+  }
+
+  void put(AmenityRow row) {
+    store.write(Table.AMENITY, row.amenityId(), encode(row));
+  }
+
+  void put(ParkRow row) {
+    store.write(Table.PET_PARK, row.petParkId(), encode(row));
+  }
+
+  void deleteContributor(Long contributorId) {
+    store.delete(Table.CONTRIBUTOR, contributorId);
+  }
+
+  void deletePark(Long petParkId) {
+    store.delete(Table.PET_PARK, petParkId);
+  }
+
+  void deleteAmenity(Long amenityId) {
+    store.delete(Table.AMENITY, amenityId);
+  }
+
+  /**
+   * Add to the view counts of parks.
+   *
+   * @param views The views to add by pet park ID.
+   * @return The number of counts changed.
+   */
+  int addViews(Map<Long, Long> views) {
+    views.forEach((petParkId, count) -> {
+      Long current =
+          read(Table.PARK_VIEW, petParkId, Long.class).orElse(0L);
+
+      store.write(Table.PARK_VIEW, petParkId, encode(current + count));
+    });
+
+    return views.size();
+  }
+
+  /**
+   * Build the projection of a park with its contributor and amenities, as
+   * PetParkDao.VIEW_SELECT does.
+   *
+   * @param park The park row.
+   * @return The view.
+   */
+  LogView view(ParkRow park) {
+    LogView.LogViewBuilder view = parkColumns(park);
+
+    contributor(park.contributorId())
+        .ifPresent(contributor -> contributorColumns(view, contributor));
+
+    return view.amenities(amenityColumn(park)).build();
+  }
+
+  /**
+   * @param park The park row.
+   * @return A builder with only the pet_park columns set.
+   */
+  LogView.LogViewBuilder parkColumns(ParkRow park) {
+    return LogView.builder().petParkId(park.petParkId())
+        .parkName(park.parkName()).directions(park.directions())
+        .stateOrProvince(park.stateOrProvince()).country(park.country())
+        .latitude(park.latitude()).longitude(park.longitude());
+  }
+
+  LogView.LogViewBuilder contributorColumns(LogView.LogViewBuilder view,
+      ContributorRow contributor) {
+    return view.contributorId(contributor.contributorId())
+        .contributorName(contributor.contributorName())
+        .contributorEmail(contributor.contributorEmail());
+  }
+
+  /**
+   * @param park The park row.
+   * @return The names of the park's amenities joined by
+   *         {@link PetParkView#AMENITY_SEPARATOR}, or {@code null} if it has
+   *         none (like GROUP_CONCAT).
+   */
+  String amenityColumn(ParkRow park) {
+    String names = park.amenityIds().stream().map(amenityNames::get)
+        .filter(Objects::nonNull).sorted()
+        .collect(Collectors.joining(PetParkView.AMENITY_SEPARATOR));
+
+    return names.isEmpty() ? null : names;
+  }
+
+  /*
+   * The entities below are built from the rows. They are detached: changing
+   * them changes nothing until they are saved through a DAO.
+   */
+  Contributor toEntity(ContributorRow row) {
+    Contributor contributor = new Contributor();
+
+    contributor.setContributorId(row.contributorId());
+    contributor.setContributorName(row.contributorName());
+    contributor.setContributorEmail(row.contributorEmail());
+
+    return contributor;
+  }
+
+  Amenity toEntity(AmenityRow row) {
+    Amenity amenity = new Amenity();
+
+    amenity.setAmenityId(row.amenityId());
+    amenity.setAmenity(row.amenity());
+
+    return amenity;
+  }
+
+  /**
+   * @param row The park row.
+   * @param contributor The park's contributor entity.
+   * @return The park entity with its contributor and amenities.
+   */
+  PetPark toEntity(ParkRow row, Contributor contributor) {
+    PetPark petPark = new PetPark();
+
+    petPark.setPetParkId(row.petParkId());
+    petPark.setParkName(row.parkName());
+    petPark.setDirections(row.directions());
+    petPark.setStateOrProvince(row.stateOrProvince());
+    petPark.setCountry(row.country());
+    petPark.setGeoLocation(new GeoLocation(row.latitude(), row.longitude()));
+    petPark.setContributor(contributor);
+
+    for(Long amenityId : row.amenityIds()) {
+      amenity(amenityId).map(this::toEntity)
+          .ifPresent(petPark.getAmenities()::add);
+    }
+
+    return petPark;
+  }
+
+  /**
+   * @param petPark The park entity. Its contributor and amenities must have
+   *        IDs.
+   * @return The park row.
+   */
+  ParkRow toRow(PetPark petPark) {
+    GeoLocation location = Objects.requireNonNullElseGet(
+        petPark.getGeoLocation(), GeoLocation::new);
+    Set<Long> amenityIds = new HashSet<>();
+
+    for(Amenity amenity : petPark.getAmenities()) {
+      amenityIds.add(amenity.getAmenityId());
+    }
+
+    return new ParkRow(petPark.getPetParkId(), petPark.getParkName(),
+        petPark.getDirections(), petPark.getStateOrProvince(),
+        petPark.getCountry(), location.getLatitude(),
+        location.getLongitude(), petPark.getContributor().getContributorId(),
+        amenityIds);
+  }
+
+  private <T> Optional<T> read(Table table, Long id, Class<T> type) {
+    if(Objects.isNull(id)) {
+      return Optional.empty();
+    }
+
+    return Optional.ofNullable(store.read(table, id))
+        .map(value -> decode(value, type));
+  }
+
+  private static byte[] encode(Object row) {
+    try {
+      return MAPPER.writeValueAsBytes(row);
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static <T> T decode(byte[] value, Class<T> type) {
+    try {
+      return MAPPER.readValue(value, type);
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Repository;
+import lombok.Value;
+import pet.park.dao.ContributorDao;
+import pet.park.dao.ContributorParkCount;
+import pet.park.dao.PetParkView;
+import pet.park.dao.edge.LogCatalog.ContributorRow;
+import pet.park.dao.edge.LogStore.Table;
+import pet.park.entity.Contributor;
+
+/**
+ * This class implements {@link ContributorDao} with the edge
+ * {@link LogCatalog}. The queries return the same rows as the MySQL queries
+ * they replace, in the same order.
+ *
+ * Only findWithParksByContributorId() returns a contributor with its parks.
+ * The other finders return the contributor with an empty set of parks,
+ * which is all that the application reads from them. Saving a contributor
+ * saves only the contributor row (parks are saved through
+ * {@link LogPetParkDao}), but deleting one deletes its parks too, like the
+ * JPA cascade.
+ *
+ * @Repository Tells Spring that this class is a Managed Bean in the data
+ *             layer.
+ *
+ * @Profile The bean is only created when the "edge" profile is active.
+ *
+ * @author Promineo
+ *
+ */
+@Repository
+@Profile("edge")
+public class LogContributorDao extends LogRepository<Contributor>
+    implements ContributorDao {
+
+  /*
+   * The ContributorParkCount projection.
+   */
+  @Value
+  private static class ParkCount implements ContributorParkCount {
+    Long contributorId;
+    String contributorName;
+    Long parkCount;
+  }
+
+  @Autowired
+  private LogCatalog catalog;
+
+  @Override
+  public List<PetParkView> findAllViews() {
+    List<PetParkView> views = new ArrayList<>();
+
+    for(Long contributorId : catalog.contributorIds()) {
+      views.addAll(findViewsById(contributorId));
+    }
+
+    return views;
+  }
+
+  @Override
+  public List<PetParkView> findViewsById(Long contributorId) {
+    Optional<ContributorRow> contributor = catalog.contributor(contributorId);
+
+    if(contributor.isEmpty()) {
+      return List.of();
+    }
+
+    List<PetParkView> views = new ArrayList<>();
+
+    for(Long petParkId : catalog.parkIdsOf(contributorId)) {
+      catalog.park(petParkId).ifPresent(park -> views.add(
+          catalog.contributorColumns(catalog.parkColumns(park),
+              contributor.get()).amenities(catalog.amenityColumn(park))
+              .build()));
+    }
+
+    if(views.isEmpty()) {
+      views.add(catalog.contributorColumns(LogView.builder(),
+          contributor.get()).build());
+    }
+
+    return views;
+  }
+
+  @Override
+  public Optional<PetParkView> findContributorViewById(Long contributorId) {
+    return catalog.contributor(contributorId)
+        .map(contributor -> catalog
+            .contributorColumns(LogView.builder(), contributor).build());
+  }
+
+  @Override
+  public List<ContributorParkCount> findParkCounts() {
+    List<ContributorParkCount> counts = new ArrayList<>();
+
+    for(Long contributorId : catalog.contributorIds()) {
+      findParkCountById(contributorId).ifPresent(counts::add);
+    }
+
+    return counts;
+  }
+
+  @Override
+  public Optional<ContributorParkCount> findParkCountById(
+      Long contributorId) {
+    return catalog.contributor(contributorId)
+        .map(contributor -> new ParkCount(contributorId,
+            contributor.contributorName(),
+            (long)catalog.parkIdsOf(contributorId).size()));
+  }
+
+  @Override
+  public Optional<Contributor> findByContributorEmail(
+      String contributorEmail) {
+    return catalog.contributorIdByEmail(contributorEmail)
+        .flatMap(this::findById);
+  }
+
+  @Override
+  public Optional<Contributor> findWithParksByContributorId(
+      Long contributorId) {
+    return findById(contributorId).map(contributor -> {
+      for(Long petParkId : catalog.parkIdsOf(contributorId)) {
+        catalog.park(petParkId)
+            .map(park -> catalog.toEntity(park, contributor))
+            .ifPresent(contributor.getPetParks()::add);
+      }
+
+      return contributor;
+    });
+  }
+
+  @Override
+  public List<String> findAllContributorEmails() {
+    return catalog.contributorEmailList();
+  }
+
+  @Override
+  public int upsertReplica(Long contributorId, String contributorName,
+      String contributorEmail) {
+    catalog.put(
+        new ContributorRow(contributorId, contributorName, contributorEmail));
+    return 1;
+  }
+
+  @Override
+  public int deleteReplica(Long contributorId) {
+    if(catalog.contributor(contributorId).isEmpty()) {
+      return 0;
+    }
+
+    catalog.deleteContributor(contributorId);
+    return 1;
+  }
+
+  @Override
+  public Optional<Contributor> findById(Long contributorId) {
+    return catalog.contributor(contributorId).map(catalog::toEntity);
+  }
+
+  /**
+   * Save the contributor row. Like the unique index on contributor_email,
+   * an email that belongs to another contributor is refused. It is refused
+   * here if it is already taken, and otherwise by the store when the
+   * transaction commits if another one took it in the meantime (see
+   * LogCatalog).
+   *
+   * @throws DataIntegrityViolationException Thrown if another contributor
+   *         has the email.
+   */
+  @Override
+  public <S extends Contributor> S save(S contributor) {
+    Long contributorId = contributor.getContributorId();
+
+    catalog.contributorIdByEmail(contributor.getContributorEmail())
+        .filter(owner -> !owner.equals(contributorId)).ifPresent(owner -> {
+          throw new DataIntegrityViolationException("Duplicate entry '"
+              + contributor.getContributorEmail() + "' for contributor_email");
+        });
+
+    if(Objects.isNull(contributorId)) {
+      contributor.setContributorId(catalog.nextId(Table.CONTRIBUTOR));
+    }
+
+    catalog.put(new ContributorRow(contributor.getContributorId(),
+        contributor.getContributorName(), contributor.getContributorEmail()));
+
+    return contributor;
+  }
+
+  @Override
+  public void deleteById(Long contributorId) {
+    catalog.parkIdsOf(contributorId).forEach(catalog::deletePark);
+    catalog.deleteContributor(contributorId);
+  }
+
+  @Override
+  protected List<Long> ids() {
+    return catalog.contributorIds();
+  }
+
+  @Override
+  protected Long idOf(Contributor contributor) {
+    return contributor.getContributorId();
+  }
+}
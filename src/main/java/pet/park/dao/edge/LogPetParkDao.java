@@ -0,0 +1,275 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import pet.park.controller.model.ParkFields;
+import pet.park.controller.model.ParkFields.Field;
+import pet.park.dao.OwnedPetPark;
+import pet.park.dao.PetParkDao;
+import pet.park.dao.PetParkView;
+import pet.park.dao.PopularParkView;
+import pet.park.dao.edge.LogCatalog.AmenityRow;
+import pet.park.dao.edge.LogCatalog.ParkRow;
+import pet.park.dao.edge.LogStore.Table;
+import pet.park.entity.Amenity;
+import pet.park.entity.PetPark;
+
+/**
+ * This class implements {@link PetParkDao}, including the sparse view query
+ * and the view count upsert, with the edge {@link LogCatalog}. The queries
+ * return the same rows as the MySQL queries they replace, in the same order.
+ *
+ * Saving a park saves its row, which holds the IDs of its contributor and
+ * amenities. A new amenity on the park is saved first, as the JPA cascade
+ * would; the contributor must already have been saved.
+ *
+ * @Repository Tells Spring that this class is a Managed Bean in the data
+ *             layer.
+ *
+ * @Profile The bean is only created when the "edge" profile is active.
+ *
+ * @author Promineo
+ *
+ */
+@Repository
+@Profile("edge")
+public class LogPetParkDao extends LogRepository<PetPark>
+    implements PetParkDao {
+
+  @Autowired
+  private LogCatalog catalog;
+
+  @Override
+  public List<PetParkView> findAllViews() {
+    return findFirstViews(Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<PetParkView> findFirstViews(int limit) {
+    return parks(limit).stream().<PetParkView>map(catalog::view).toList();
+  }
+
+  @Override
+  public Optional<PetParkView> findViewById(Long petParkId) {
+    return catalog.park(petParkId).map(catalog::view);
+  }
+
+  /**
+   * Read the most viewed parks. The counts are in memory, so they are sorted
+   * here and only the top <em>limit</em> parks are read from the store.
+   */
+  @Override
+  public List<PopularParkView> findMostViewedViews(int limit) {
+    List<PopularParkView> views = new ArrayList<>();
+    List<Map.Entry<Long, Long>> counts =
+        new ArrayList<>(catalog.viewCounts().entrySet());
+
+    counts.sort(Map.Entry.<Long, Long>comparingByValue(
+        Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()));
+
+    for(Map.Entry<Long, Long> count : counts) {
+      if(views.size() >= limit) {
+        break;
+      }
+
+      catalog.park(count.getKey()).ifPresent(park -> views.add(
+          catalog.view(park).toBuilder().viewCount(count.getValue()).build()));
+    }
+
+    return views;
+  }
+
+  @Override
+  public List<PetParkView> findViewsByContributorId(Long contributorId) {
+    List<PetParkView> views = new ArrayList<>();
+
+    for(Long petParkId : catalog.parkIdsOf(contributorId)) {
+      catalog.park(petParkId)
+          .ifPresent(park -> views.add(catalog.parkColumns(park).build()));
+    }
+
+    return views;
+  }
+
+  @Override
+  public List<PetParkView> findAmenityViewsByContributorId(
+      Long contributorId) {
+    List<PetParkView> views = new ArrayList<>();
+
+    for(Long petParkId : catalog.parkIdsOf(contributorId)) {
+      catalog.park(petParkId).map(catalog::amenityColumn)
+          .ifPresent(amenities -> views.add(LogView.builder()
+              .petParkId(petParkId).amenities(amenities).build()));
+    }
+
+    return views;
+  }
+
+  /**
+   * Read a park for a contributor. The outcomes are those of the MySQL
+   * query: empty if the contributor does not exist, a view with only
+   * {@code null} columns if the park does not exist, otherwise the park.
+   */
+  @Override
+  public Optional<PetParkView> findOwnedViewById(Long contributorId,
+      Long petParkId) {
+    if(catalog.contributor(contributorId).isEmpty()) {
+      return Optional.empty();
+    }
+
+    return Optional.of(catalog.park(petParkId).map(catalog::view)
+        .orElseGet(() -> LogView.builder().build()));
+  }
+
+  @Override
+  public Optional<OwnedPetPark> findOwnedById(Long contributorId,
+      Long petParkId) {
+    return catalog.contributor(contributorId).map(catalog::toEntity)
+        .map(contributor -> new OwnedPetPark(contributor,
+            findDetailByPetParkId(petParkId).orElse(null)));
+  }
+
+  @Override
+  public Optional<PetPark> findDetailByPetParkId(Long petParkId) {
+    return catalog.park(petParkId).map(park -> catalog.toEntity(park,
+        catalog.contributor(park.contributorId()).map(catalog::toEntity)
+            .orElse(null)));
+  }
+
+  @Override
+  public int deleteAmenityLinksByContributorId(Long contributorId) {
+    int links = 0;
+
+    for(Long petParkId : catalog.parkIdsOf(contributorId)) {
+      Optional<ParkRow> park = catalog.park(petParkId);
+
+      if(park.isPresent() && !park.get().amenityIds().isEmpty()) {
+        ParkRow row = park.get();
+
+        links += row.amenityIds().size();
+        catalog.put(new ParkRow(row.petParkId(), row.parkName(),
+            row.directions(), row.stateOrProvince(), row.country(),
+            row.latitude(), row.longitude(), row.contributorId(), Set.of()));
+      }
+    }
+
+    return links;
+  }
+
+  @Override
+  public int deleteParksByContributorId(Long contributorId) {
+    List<Long> petParkIds = catalog.parkIdsOf(contributorId);
+
+    petParkIds.forEach(catalog::deletePark);
+    return petParkIds.size();
+  }
+
+  /**
+   * Read the first parks with only the given fields set. The whole row is
+   * read either way, so this saves no I/O, but the views hold only what the
+   * caller asked for, as SparseParkDao promises.
+   */
+  @Override
+  public List<PetParkView> findSparseViews(ParkFields fields, int limit) {
+    List<PetParkView> views = new ArrayList<>();
+
+    for(ParkRow park : parks(limit)) {
+      LogView view = catalog.view(park);
+
+      views.add(LogView.builder().petParkId(view.getPetParkId())
+          .parkName(wanted(fields, Field.PARK_NAME, view.getParkName()))
+          .directions(
+              wanted(fields, Field.DIRECTIONS, view.getDirections()))
+          .stateOrProvince(wanted(fields, Field.STATE_OR_PROVINCE,
+              view.getStateOrProvince()))
+          .country(wanted(fields, Field.COUNTRY, view.getCountry()))
+          .latitude(wanted(fields, Field.GEO_LOCATION, view.getLatitude()))
+          .longitude(
+              wanted(fields, Field.GEO_LOCATION, view.getLongitude()))
+          .contributorId(wanted(fields, Field.CONTRIBUTOR,
+              view.getContributorId()))
+          .contributorName(wanted(fields, Field.CONTRIBUTOR,
+              view.getContributorName()))
+          .contributorEmail(wanted(fields, Field.CONTRIBUTOR,
+              view.getContributorEmail()))
+          .amenities(wanted(fields, Field.AMENITIES, view.getAmenities()))
+          .build());
+    }
+
+    return views;
+  }
+
+  @Override
+  public int addViews(Map<Long, Long> views) {
+    return catalog.addViews(views);
+  }
+
+  @Override
+  public Optional<PetPark> findById(Long petParkId) {
+    return findDetailByPetParkId(petParkId);
+  }
+
+  @Override
+  public <S extends PetPark> S save(S petPark) {
+    if(Objects.isNull(petPark.getPetParkId())) {
+      petPark.setPetParkId(catalog.nextId(Table.PET_PARK));
+    }
+
+    for(Amenity amenity : petPark.getAmenities()) {
+      if(Objects.isNull(amenity.getAmenityId())) {
+        amenity.setAmenityId(catalog.nextId(Table.AMENITY));
+        catalog.put(
+            new AmenityRow(amenity.getAmenityId(), amenity.getAmenity()));
+      }
+    }
+
+    catalog.put(catalog.toRow(petPark));
+    return petPark;
+  }
+
+  @Override
+  public void deleteById(Long petParkId) {
+    catalog.deletePark(petParkId);
+  }
+
+  @Override
+  protected List<Long> ids() {
+    return catalog.parkIds();
+  }
+
+  @Override
+  protected Long idOf(PetPark petPark) {
+    return petPark.getPetParkId();
+  }
+
+  /*
+   * Read the first parks by pet park ID.
+   */
+  private List<ParkRow> parks(int limit) {
+    List<ParkRow> parks = new ArrayList<>();
+
+    for(Long petParkId : catalog.parkIds()) {
+      if(parks.size() >= limit) {
+        break;
+      }
+
+      catalog.park(petParkId).ifPresent(parks::add);
+    }
+
+    return parks;
+  }
+
+  private static <T> T wanted(ParkFields fields, Field field, T value) {
+    return fields.contains(field) ? value : null;
+  }
+}
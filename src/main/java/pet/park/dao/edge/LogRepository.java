@@ -0,0 +1,410 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher.NullHandler;
+import org.springframework.data.domain.ExampleMatcher.StringMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.FluentQuery.FetchableFluentQuery;
+import org.springframework.data.support.ExampleMatcherAccessor;
+import org.springframework.data.support.PageableExecutionUtils;
+import jakarta.persistence.EntityNotFoundException;
+
+/**
+ * This class implements the generic {@link JpaRepository} methods for the
+ * edge DAOs in terms of four methods that each DAO provides: find by ID,
+ * list the IDs, save and delete by ID. The rows are kept in pet park ID
+ * order (or contributor or amenity ID order). Any other {@link Sort} is
+ * applied in memory, after the rows are read. Sorting by a property that is
+ * {@code null} puts the row first in ascending order, as MySQL does.
+ *
+ * Queries by example read every row and keep the ones whose properties
+ * match the probe's, following the example's matcher. As with JPA, the
+ * collection properties of the probe are ignored and a property that holds
+ * another entity or an embeddable is matched property by property. The
+ * fluent findBy() query is not supported, because the application does not
+ * use it.
+ *
+ * There is no persistence context: each find returns a new, detached entity,
+ * and changes to an entity are written when it is saved. flush() therefore
+ * has nothing to do.
+ *
+ * @param <T> The entity type.
+ *
+ * @author Promineo
+ *
+ */
+abstract class LogRepository<T> implements JpaRepository<T, Long> {
+
+  /**
+   * @return The IDs of all rows, in ascending order.
+   */
+  protected abstract List<Long> ids();
+
+  /**
+   * @param entity The entity.
+   * @return The entity's ID, or {@code null} if it is new.
+   */
+  protected abstract Long idOf(T entity);
+
+  @Override
+  public abstract Optional<T> findById(Long id);
+
+  @Override
+  public abstract <S extends T> S save(S entity);
+
+  @Override
+  public abstract void deleteById(Long id);
+
+  @Override
+  public List<T> findAll() {
+    return findAllById(ids());
+  }
+
+  @Override
+  public List<T> findAllById(Iterable<Long> ids) {
+    List<T> entities = new ArrayList<>();
+
+    ids.forEach(id -> findById(id).ifPresent(entities::add));
+    return entities;
+  }
+
+  @Override
+  public List<T> findAll(Sort sort) {
+    return sorted(findAll(), sort);
+  }
+
+  /**
+   * Read a page of rows. Only the rows on the page are read, unless the page
+   * is sorted by something other than the ID.
+   */
+  @Override
+  public Page<T> findAll(Pageable pageable) {
+    if(pageable.isUnpaged()) {
+      return new PageImpl<>(findAll(pageable.getSort()));
+    }
+
+    if(pageable.getSort().isSorted()) {
+      return page(findAll(pageable.getSort()), pageable);
+    }
+
+    List<Long> ids = ids();
+    int from = (int)Math.min(pageable.getOffset(), ids.size());
+    int to = Math.min(from + pageable.getPageSize(), ids.size());
+
+    return new PageImpl<>(findAllById(ids.subList(from, to)), pageable,
+        ids.size());
+  }
+
+  @Override
+  public boolean existsById(Long id) {
+    return findById(id).isPresent();
+  }
+
+  @Override
+  public long count() {
+    return ids().size();
+  }
+
+  @Override
+  public <S extends T> List<S> saveAll(Iterable<S> entities) {
+    List<S> saved = new ArrayList<>();
+
+    entities.forEach(entity -> saved.add(save(entity)));
+    return saved;
+  }
+
+  @Override
+  public <S extends T> S saveAndFlush(S entity) {
+    return save(entity);
+  }
+
+  @Override
+  public <S extends T> List<S> saveAllAndFlush(Iterable<S> entities) {
+    return saveAll(entities);
+  }
+
+  @Override
+  public void flush() {
+    /* Every save has already been written. */
+  }
+
+  @Override
+  public void delete(T entity) {
+    Long id = idOf(entity);
+
+    if(id != null) {
+      deleteById(id);
+    }
+  }
+
+  @Override
+  public void deleteAllById(Iterable<? extends Long> ids) {
+    ids.forEach(this::deleteById);
+  }
+
+  @Override
+  public void deleteAll(Iterable<? extends T> entities) {
+    entities.forEach(this::delete);
+  }
+
+  @Override
+  public void deleteAll() {
+    deleteAllById(ids());
+  }
+
+  @Override
+  public void deleteAllInBatch(Iterable<T> entities) {
+    deleteAll(entities);
+  }
+
+  @Override
+  public void deleteAllByIdInBatch(Iterable<Long> ids) {
+    deleteAllById(ids);
+  }
+
+  @Override
+  public void deleteAllInBatch() {
+    deleteAll();
+  }
+
+  @Override
+  @Deprecated
+  public T getOne(Long id) {
+    return getReferenceById(id);
+  }
+
+  @Override
+  @Deprecated
+  public T getById(Long id) {
+    return getReferenceById(id);
+  }
+
+  @Override
+  public T getReferenceById(Long id) {
+    return findById(id).orElseThrow(() -> new EntityNotFoundException(
+        "No row with ID=" + id));
+  }
+
+  /**
+   * @throws IncorrectResultSizeDataAccessException Thrown if more than one
+   *         row matches.
+   */
+  @Override
+  public <S extends T> Optional<S> findOne(Example<S> example) {
+    List<S> matches = findAll(example);
+
+    if(matches.size() > 1) {
+      throw new IncorrectResultSizeDataAccessException(1, matches.size());
+    }
+
+    return matches.stream().findFirst();
+  }
+
+  @Override
+  public <S extends T> List<S> findAll(Example<S> example) {
+    ExampleMatcherAccessor matcher =
+        new ExampleMatcherAccessor(example.getMatcher());
+    BeanWrapper probe = new BeanWrapperImpl(example.getProbe());
+    List<S> matches = new ArrayList<>();
+
+    for(T entity : findAll()) {
+      if(example.getProbeType().isInstance(entity) && matches(matcher,
+          example.getMatcher().isAllMatching(), probe,
+          new BeanWrapperImpl(entity), "")) {
+        matches.add(example.getProbeType().cast(entity));
+      }
+    }
+
+    return matches;
+  }
+
+  @Override
+  public <S extends T> List<S> findAll(Example<S> example, Sort sort) {
+    return sorted(findAll(example), sort);
+  }
+
+  @Override
+  public <S extends T> Page<S> findAll(Example<S> example,
+      Pageable pageable) {
+    List<S> matches = findAll(example, pageable.getSort());
+
+    return pageable.isUnpaged() ? new PageImpl<>(matches)
+        : page(matches, pageable);
+  }
+
+  @Override
+  public <S extends T> long count(Example<S> example) {
+    return findAll(example).size();
+  }
+
+  @Override
+  public <S extends T> boolean exists(Example<S> example) {
+    return !findAll(example).isEmpty();
+  }
+
+  @Override
+  public <S extends T, R> R findBy(Example<S> example,
+      Function<FetchableFluentQuery<S>, R> queryFunction) {
+    throw new UnsupportedOperationException(
+        "Fluent queries are not supported by the edge store.");
+  }
+
+  /*
+   * Sort rows that were read in ID order. The sort is stable, so rows that
+   * compare equal stay in ID order.
+   */
+  private static <E> List<E> sorted(List<E> entities, Sort sort) {
+    if(sort.isSorted()) {
+      entities.sort(comparator(sort));
+    }
+
+    return entities;
+  }
+
+  private static <E> Page<E> page(List<E> entities, Pageable pageable) {
+    int from = (int)Math.min(pageable.getOffset(), entities.size());
+    int to = Math.min(from + pageable.getPageSize(), entities.size());
+
+    return PageableExecutionUtils.getPage(entities.subList(from, to),
+        pageable, entities::size);
+  }
+
+  private static <E> Comparator<E> comparator(Sort sort) {
+    Comparator<E> comparator = (first, second) -> 0;
+
+    for(Sort.Order order : sort) {
+      comparator = comparator.thenComparing(comparator(order));
+    }
+
+    return comparator;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static <E> Comparator<E> comparator(Sort.Order order) {
+    Comparator<Object> values = order.isIgnoreCase()
+        ? Comparator.comparing(Object::toString, String.CASE_INSENSITIVE_ORDER)
+        : (first, second) -> ((Comparable)first).compareTo(second);
+
+    if(order.isDescending()) {
+      values = values.reversed();
+    }
+
+    boolean nullsFirst = switch(order.getNullHandling()) {
+      case NULLS_FIRST -> true;
+      case NULLS_LAST -> false;
+      case NATIVE -> order.isAscending();
+    };
+
+    Comparator<Object> nullSafe = nullsFirst ? Comparator.nullsFirst(values)
+        : Comparator.nullsLast(values);
+
+    return Comparator.comparing(
+        entity -> new BeanWrapperImpl(entity)
+            .getPropertyValue(order.getProperty()),
+        nullSafe);
+  }
+
+  /*
+   * Match the properties of a candidate against those of the probe. A
+   * property that holds another bean is matched by its own properties.
+   */
+  private static boolean matches(ExampleMatcherAccessor matcher,
+      boolean allMatching, BeanWrapper probe, BeanWrapper candidate,
+      String prefix) {
+    boolean anyChecked = false;
+
+    for(PropertyDescriptor property : probe.getPropertyDescriptors()) {
+      String name = property.getName();
+      String path = prefix + name;
+
+      if(Objects.isNull(property.getReadMethod()) || name.equals("class")
+          || matcher.isIgnoredPath(path)
+          || Collection.class.isAssignableFrom(property.getPropertyType())
+          || Map.class.isAssignableFrom(property.getPropertyType())) {
+        continue;
+      }
+
+      Object expected = matcher.getValueTransformerForPath(path)
+          .apply(Optional.ofNullable(probe.getPropertyValue(name)))
+          .orElse(null);
+
+      if(expected == null
+          && matcher.getNullHandler() == NullHandler.IGNORE) {
+        continue;
+      }
+
+      Object actual = candidate.getPropertyValue(name);
+      boolean matched;
+
+      if(expected == null || actual == null) {
+        matched = expected == actual;
+      }
+      else if(BeanUtils.isSimpleValueType(expected.getClass())) {
+        matched = matches(matcher, path, expected, actual);
+      }
+      else {
+        matched = matches(matcher, allMatching,
+            new BeanWrapperImpl(expected), new BeanWrapperImpl(actual),
+            path + ".");
+      }
+
+      if(matched != allMatching) {
+        return matched;
+      }
+
+      anyChecked = true;
+    }
+
+    return allMatching || !anyChecked;
+  }
+
+  private static boolean matches(ExampleMatcherAccessor matcher, String path,
+      Object expected, Object actual) {
+    if(!(expected instanceof String wanted)) {
+      return expected.equals(actual);
+    }
+
+    boolean ignoreCase = matcher.isIgnoreCaseForPath(path);
+    StringMatcher stringMatcher = matcher.getStringMatcherForPath(path);
+
+    if(stringMatcher == StringMatcher.REGEX) {
+      return Pattern.compile(wanted, ignoreCase ? Pattern.CASE_INSENSITIVE : 0)
+          .matcher(actual.toString()).matches();
+    }
+
+    String value = ignoreCase ? actual.toString().toLowerCase(Locale.ROOT)
+        : actual.toString();
+
+    if(ignoreCase) {
+      wanted = wanted.toLowerCase(Locale.ROOT);
+    }
+
+    return switch(stringMatcher) {
+      case DEFAULT, EXACT, REGEX -> value.equals(wanted);
+      case STARTING -> value.startsWith(wanted);
+      case ENDING -> value.endsWith(wanted);
+      case CONTAINING -> value.contains(wanted);
+    };
+  }
+}
@@ -0,0 +1,906 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is an embedded, append-only, log-structured record store. It
+ * keeps the catalog of an edge node (a kiosk that cannot run MySQL) in one
+ * file, <em>pet-park.edge.directory</em>/pet-parks.log. The design is that
+ * of Bitcask:
+ *
+ * <ul>
+ * <li>A record is never changed in place. Every insert, update and delete
+ * appends a new version of the record (a delete appends a tombstone), so a
+ * write is one sequential append.</li>
+ * <li>An in-memory hash index per table maps each record ID to the file
+ * position of its latest version. A read is one positional read of the
+ * file, which the operating system usually answers from its page cache.
+ * </li>
+ * <li>Every <em>pet-park.edge.compaction-interval</em>, if at least
+ * <em>pet-park.edge.compaction-threshold</em> of the file is taken by
+ * replaced versions and tombstones, the live records are copied to a new
+ * file, which then replaces the old one in a single atomic rename.</li>
+ * <li>On startup the index is rebuilt by reading the file from the start.
+ * </li>
+ * </ul>
+ *
+ * The records of one transaction (see {@link LogStoreTransactionManager})
+ * are appended as one frame: a length, a CRC-32C checksum and the records.
+ * A crash in the middle of an append can only damage the last frame: it is
+ * cut short, fails its checksum or reads as zeros. On startup such a frame is
+ * cut off, so a transaction is either fully in the file or not at all. A bad
+ * frame that is followed by more of the file is not a torn append but
+ * corruption, and cutting it off would lose the commits after it, so startup
+ * fails instead. With <em>pet-park.edge.set-aside-corruption</em> the
+ * store starts anyway: everything from the bad frame on is first copied to
+ * pet-parks.log.corrupt-<em>time</em> for repair by hand.
+ * With <em>pet-park.edge.sync-writes</em> (the default), a commit returns
+ * only after the frame has been forced to disk. A compaction that was
+ * interrupted leaves a pet-parks.log.compact file behind, which is deleted,
+ * because the old file is still whole.
+ *
+ * Reads take a shared lock and appends and compactions an exclusive one, so
+ * a read never sees a half-applied frame or a file that is being replaced.
+ *
+ * Each record keeps the number of the commit that wrote it. A transaction
+ * notes that number the first time it reads or writes a record, and its
+ * commit is refused with an OptimisticLockingFailureException if another
+ * transaction has changed one of the records it writes since then. Before
+ * a commit is appended, the checks registered with
+ * {@link #check(Table, Consumer)} are run on its writes, which is how the
+ * catalog keeps the contributor emails unique.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Profile("edge")
+@Slf4j
+public class LogStore {
+  private static final String LOG_FILE = "pet-parks.log";
+  private static final String COMPACT_FILE = LOG_FILE + ".compact";
+  private static final String CORRUPT_FILE = LOG_FILE + ".corrupt-";
+  private static final long MAGIC = 0x50504C4F47000001L;
+  private static final int MAGIC_BYTES = Long.BYTES;
+  private static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+  private static final int ENTRY_HEADER_BYTES =
+      1 + Long.BYTES + Integer.BYTES;
+  private static final int TOMBSTONE = -1;
+  private static final int MAX_SCAN_BYTES = 64 * 1024;
+
+  /*
+   * The next ID of each table. Compaction drops tombstones, so it records
+   * the next IDs in entries of this type, so that the ID of a deleted record
+   * is not given out again after a restart.
+   */
+  private static final byte SEQUENCE_ENTRY = -1;
+
+  /**
+   * The tables in the store. The ordinal is written to the file, so new
+   * tables must be added at the end.
+   */
+  public enum Table {
+    CONTRIBUTOR, AMENITY, PET_PARK, PARK_VIEW
+  }
+
+  /*
+   * The position and length of the latest version of a record's value, and
+   * the number of the commit that wrote it.
+   */
+  private record Location(long position, int length, long version) {
+  }
+
+  /*
+   * Identifies a record.
+   */
+  private record Key(Table table, long id) {
+  }
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.edge.directory:./data}")
+  private Path directory;
+
+  @Value("${pet-park.edge.sync-writes:true}")
+  private boolean syncWrites;
+
+  @Value("${pet-park.edge.compaction-interval:PT10M}")
+  private Duration compactionInterval;
+
+  @Value("${pet-park.edge.compaction-threshold:0.5}")
+  private double compactionThreshold;
+
+  @Value("${pet-park.edge.compaction-min-size:1MB}")
+  private DataSize compactionMinSize;
+
+  @Value("${pet-park.edge.set-aside-corruption:false}")
+  private boolean setAsideCorruption;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Table, ConcurrentMap<Long, Location>> index =
+      new EnumMap<>(Table.class);
+  private final Map<Table, AtomicLong> nextIds = new EnumMap<>(Table.class);
+  private final Map<Table, List<BiConsumer<Long, byte[]>>> listeners =
+      new EnumMap<>(Table.class);
+  private final Map<Table, List<Consumer<Map<Long, byte[]>>>> checks =
+      new EnumMap<>(Table.class);
+
+  private final ScheduledExecutorService compactor =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("log-store-compaction").factory());
+
+  private FileChannel channel;
+
+  /*
+   * Written only while the store is locked. They are volatile so that the
+   * gauges can read them at any time.
+   */
+  private volatile long end;
+  private volatile long deadBytes;
+
+  /*
+   * The number of the latest commit. Written only while the store is locked.
+   */
+  private long version;
+
+  private Timer compactionTime;
+
+  /**
+   * The writes of one transaction. They are kept in memory until the
+   * transaction commits and are then appended as one frame.
+   */
+  public static final class Batch {
+    private final Map<Key, byte[]> writes = new LinkedHashMap<>();
+    private final Map<Key, Long> seenVersions = new HashMap<>();
+    private final boolean readOnly;
+    private boolean rollbackOnly;
+
+    private Batch(boolean readOnly) {
+      this.readOnly = readOnly;
+    }
+
+    void setRollbackOnly() {
+      rollbackOnly = true;
+    }
+
+    boolean isRollbackOnly() {
+      return rollbackOnly;
+    }
+  }
+
+  @PostConstruct
+  void open() throws IOException {
+    for(Table table : Table.values()) {
+      index.put(table, new ConcurrentHashMap<>());
+      nextIds.put(table, new AtomicLong(1));
+      listeners.put(table, new ArrayList<>());
+      checks.put(table, new ArrayList<>());
+    }
+
+    Files.createDirectories(directory);
+    Files.deleteIfExists(directory.resolve(COMPACT_FILE));
+
+    channel = FileChannel.open(directory.resolve(LOG_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+
+    recover();
+
+    Gauge.builder("pet.park.edge.log.size", this, store -> store.end)
+        .description("Size of the edge log file in bytes")
+        .baseUnit("bytes").register(meterRegistry);
+
+    Gauge.builder("pet.park.edge.log.dead", this, store -> store.deadBytes)
+        .description("Bytes of replaced versions and tombstones in the log")
+        .baseUnit("bytes").register(meterRegistry);
+
+    compactionTime = Timer.builder("pet.park.edge.compaction")
+        .description("Time taken to compact the edge log")
+        .register(meterRegistry);
+
+    long period = Math.max(1, compactionInterval.toMillis());
+
+    compactor.scheduleWithFixedDelay(this::compactIfNeeded, period, period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /*
+   * Rebuild the index from the file. Reading stops at the first frame that
+   * is cut short, fails its checksum or does not hold whole entries. If that
+   * frame is the torn end of the file, the file is cut back to the end of
+   * the frame before it. Otherwise the file is corrupt.
+   */
+  private void recover() throws IOException {
+    long size = channel.size();
+
+    if(size < MAGIC_BYTES) {
+      channel.truncate(0);
+      write(channel, 0, ByteBuffer.allocate(MAGIC_BYTES).putLong(MAGIC));
+      channel.force(true);
+      end = MAGIC_BYTES;
+      return;
+    }
+
+    if(read(channel, 0, MAGIC_BYTES).getLong() != MAGIC) {
+      throw new IllegalStateException(directory.resolve(LOG_FILE)
+          + " is not a pet park log file.");
+    }
+
+    long position = MAGIC_BYTES;
+    int frames = 0;
+
+    while(position + FRAME_HEADER_BYTES <= size) {
+      ByteBuffer header = read(channel, position, FRAME_HEADER_BYTES);
+      int length = header.getInt();
+      int checksum = header.getInt();
+
+      if(length <= 0 || position + FRAME_HEADER_BYTES + length > size) {
+        break;
+      }
+
+      ByteBuffer payload =
+          read(channel, position + FRAME_HEADER_BYTES, length);
+
+      if(checksum(payload) != checksum || !apply(payload,
+          position + FRAME_HEADER_BYTES, version + 1)) {
+        break;
+      }
+
+      version++;
+
+      position += FRAME_HEADER_BYTES + length;
+      frames++;
+    }
+
+    if(position < size) {
+      discardTail(position, size);
+    }
+
+    end = position;
+
+    log.info("Recovered {} frames ({} bytes) from {}", frames, end,
+        directory.resolve(LOG_FILE));
+  }
+
+  /*
+   * Cut off the bad frame at the given position and everything after it.
+   * An append writes the frame's header and payload together at the end of
+   * the file, so a torn append leaves a frame that runs up to or past the
+   * end of the file, or zeros where the file was extended but not written.
+   * Anything else is refused unless set-aside-corruption is on.
+   */
+  private void discardTail(long position, long size) throws IOException {
+    if(!isTornAppend(position, size)) {
+      Path file = directory.resolve(LOG_FILE);
+
+      if(!setAsideCorruption) {
+        throw new IllegalStateException(file + " is corrupt: the frame at "
+            + position + " is damaged but is followed by more of the file. "
+            + "Set pet-park.edge.set-aside-corruption to start without the "
+            + (size - position) + " bytes from there on.");
+      }
+
+      Path corrupt = directory.resolve(
+          CORRUPT_FILE + System.currentTimeMillis());
+
+      try(FileChannel target = FileChannel.open(corrupt,
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        for(long from = position; from < size;) {
+          from += channel.transferTo(from, size - from, target);
+        }
+
+        target.force(true);
+      }
+
+      log.error("{} is corrupt from {} on. The {} bytes from there on were "
+          + "moved to {}", file, position, size - position, corrupt);
+    }
+    else {
+      log.warn("Discarding {} bytes at the end of {} that are not a whole "
+          + "frame", size - position, LOG_FILE);
+    }
+
+    channel.truncate(position);
+    channel.force(true);
+  }
+
+  /*
+   * Whether the bad frame at the given position can be the torn last
+   * append: its header is cut short, its length runs to or past the end of
+   * the file, or the rest of the file is zeros.
+   */
+  private boolean isTornAppend(long position, long size) throws IOException {
+    if(position + FRAME_HEADER_BYTES > size) {
+      return true;
+    }
+
+    int length = read(channel, position, Integer.BYTES).getInt();
+
+    if(length > 0 && position + FRAME_HEADER_BYTES + length >= size) {
+      return true;
+    }
+
+    for(long from = position; from < size; from += MAX_SCAN_BYTES) {
+      ByteBuffer bytes = read(channel, from,
+          (int)Math.min(MAX_SCAN_BYTES, size - from));
+
+      while(bytes.hasRemaining()) {
+        if(bytes.get() != 0) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /*
+   * Apply the entries of a frame read during recovery to the index, as the
+   * given commit. Returns false if the entries do not fill the frame
+   * exactly.
+   */
+  private boolean apply(ByteBuffer payload, long payloadPosition,
+      long commit) {
+    List<Runnable> updates = new ArrayList<>();
+
+    while(payload.remaining() >= ENTRY_HEADER_BYTES) {
+      byte type = payload.get();
+      long id = payload.getLong();
+      int length = payload.getInt();
+      long position = payloadPosition + payload.position();
+
+      if(length < TOMBSTONE || length > payload.remaining()
+          || (type != SEQUENCE_ENTRY
+              && (type < 0 || type >= Table.values().length))) {
+        return false;
+      }
+
+      if(type == SEQUENCE_ENTRY) {
+        if(length != Long.BYTES || id < 0 || id >= Table.values().length) {
+          return false;
+        }
+
+        long next = payload.getLong();
+        updates.add(() -> nextIds.get(Table.values()[(int)id])
+            .accumulateAndGet(next, Math::max));
+        continue;
+      }
+
+      Table table = Table.values()[type];
+      Location location = length == TOMBSTONE ? null
+          : new Location(position, length, commit);
+
+      payload.position(payload.position() + Math.max(0, length));
+      updates.add(() -> put(new Key(table, id), location));
+    }
+
+    if(payload.hasRemaining()) {
+      return false;
+    }
+
+    updates.forEach(Runnable::run);
+    return true;
+  }
+
+  /*
+   * Point the index at a record's new version (or remove it for a
+   * tombstone), counting the bytes that are no longer live.
+   */
+  private void put(Key key, Location location) {
+    Map<Long, Location> table = index.get(key.table());
+    Location previous = Objects.isNull(location) ? table.remove(key.id())
+        : table.put(key.id(), location);
+
+    if(previous != null) {
+      deadBytes += ENTRY_HEADER_BYTES + previous.length();
+    }
+
+    if(location == null) {
+      deadBytes += ENTRY_HEADER_BYTES;
+    }
+
+    nextIds.get(key.table()).accumulateAndGet(key.id() + 1, Math::max);
+  }
+
+  /**
+   * Call a listener for every record in a table now, and after every commit
+   * that changes a record in it. The listener is given the record ID and the
+   * new value, or {@code null} if the record was deleted. It is called while
+   * the store is locked, so it must not read from the store.
+   *
+   * @param table The table.
+   * @param listener The listener.
+   */
+  public void listen(Table table, BiConsumer<Long, byte[]> listener) {
+    lock.writeLock().lock();
+
+    try {
+      for(Map.Entry<Long, Location> entry : index.get(table).entrySet()) {
+        listener.accept(entry.getKey(), readValue(entry.getValue()));
+      }
+
+      listeners.get(table).add(listener);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Check the writes of every commit that changes a table before they are
+   * appended. The check is given the IDs and new values (or {@code null} for
+   * a delete) of the commit's writes to the table, and refuses the commit by
+   * throwing. It is called while the store is locked, so it must not read
+   * from the store, but it sees the state that the listeners have built from
+   * every earlier commit.
+   *
+   * @param table The table.
+   * @param check The check.
+   */
+  public void check(Table table, Consumer<Map<Long, byte[]>> check) {
+    lock.writeLock().lock();
+
+    try {
+      checks.get(table).add(check);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Read the latest version of a record. A write made earlier in the current
+   * transaction is seen.
+   *
+   * @param table The table.
+   * @param id The record ID.
+   * @return The value, or {@code null} if there is no such record.
+   */
+  public byte[] read(Table table, long id) {
+    Batch batch = currentBatch();
+    Key key = new Key(table, id);
+
+    if(batch != null && batch.writes.containsKey(key)) {
+      return batch.writes.get(key);
+    }
+
+    lock.readLock().lock();
+
+    try {
+      Location location = index.get(table).get(id);
+
+      if(batch != null) {
+        batch.seenVersions.putIfAbsent(key, versionOf(location));
+      }
+
+      return location == null ? null : readValue(location);
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param table The table.
+   * @return The IDs of the committed records in the table, in ascending
+   *         order.
+   */
+  public List<Long> ids(Table table) {
+    lock.readLock().lock();
+
+    try {
+      return index.get(table).keySet().stream().sorted().toList();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param table The table.
+   * @return A new, unused ID for a record in the table.
+   */
+  public long nextId(Table table) {
+    return nextIds.get(table).getAndIncrement();
+  }
+
+  /**
+   * Write a new version of a record. Inside a transaction the write is kept
+   * until the transaction commits. Otherwise it is appended at once.
+   *
+   * @param table The table.
+   * @param id The record ID.
+   * @param value The new value.
+   */
+  public void write(Table table, long id, byte[] value) {
+    stage(new Key(table, id), Objects.requireNonNull(value));
+  }
+
+  /**
+   * Delete a record by writing a tombstone.
+   *
+   * @param table The table.
+   * @param id The record ID.
+   */
+  public void delete(Table table, long id) {
+    stage(new Key(table, id), null);
+  }
+
+  private void stage(Key key, byte[] value) {
+    Batch batch = currentBatch();
+
+    if(batch == null) {
+      batch = new Batch(false);
+      batch.writes.put(key, value);
+      commit(batch);
+      return;
+    }
+
+    if(batch.readOnly) {
+      throw new IllegalStateException(
+          "A record cannot be written in a read-only transaction.");
+    }
+
+    batch.seenVersions.computeIfAbsent(key,
+        seen -> versionOf(index.get(key.table()).get(key.id())));
+    batch.writes.put(key, value);
+  }
+
+  /*
+   * The commit number of a record, or zero if there is no such record.
+   */
+  private static long versionOf(Location location) {
+    return location == null ? 0 : location.version();
+  }
+
+  /**
+   * Start collecting the writes of a transaction.
+   *
+   * @param readOnly {@code true} if the transaction must not write.
+   * @return The batch.
+   */
+  Batch begin(boolean readOnly) {
+    return new Batch(readOnly);
+  }
+
+  private Batch currentBatch() {
+    return TransactionSynchronizationManager
+        .getResource(this) instanceof Batch batch ? batch : null;
+  }
+
+  /**
+   * Check the writes of a batch, append them as one frame, then update the
+   * index and tell the listeners.
+   *
+   * @param batch The batch.
+   * @throws OptimisticLockingFailureException Thrown if a record the batch
+   *         writes was changed by another commit after the batch first read
+   *         or wrote it.
+   * @throws org.springframework.dao.DataAccessException Thrown by a check
+   *         registered with {@link #check(Table, Consumer)}.
+   * @throws UncheckedIOException Thrown if the frame could not be written.
+   *         Nothing of the batch is applied if anything is thrown.
+   */
+  void commit(Batch batch) {
+    if(batch.writes.isEmpty()) {
+      return;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Map<Key, Location> locations = new LinkedHashMap<>();
+
+    lock.writeLock().lock();
+
+    try {
+      checkWrites(batch);
+
+      DataOutputStream out = new DataOutputStream(bytes);
+      long payloadPosition = end + FRAME_HEADER_BYTES;
+      long commit = version + 1;
+
+      for(Map.Entry<Key, byte[]> entry : batch.writes.entrySet()) {
+        Key key = entry.getKey();
+        byte[] value = entry.getValue();
+
+        out.writeByte(key.table().ordinal());
+        out.writeLong(key.id());
+        out.writeInt(value == null ? TOMBSTONE : value.length);
+
+        locations.put(key, value == null ? null
+            : new Location(payloadPosition + out.size(), value.length,
+                commit));
+
+        if(value != null) {
+          out.write(value);
+        }
+      }
+
+      append(bytes.toByteArray());
+
+      version = commit;
+      locations.forEach(this::put);
+      batch.writes.forEach((key, value) -> listeners.get(key.table())
+          .forEach(listener -> listener.accept(key.id(), value)));
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException("Could not write to " + LOG_FILE, e);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Refuse the batch if another commit changed a record it writes, then run
+   * the checks of each table it writes. Called while the store is locked.
+   */
+  private void checkWrites(Batch batch) {
+    Map<Table, Map<Long, byte[]>> tables = new EnumMap<>(Table.class);
+
+    for(Map.Entry<Key, byte[]> entry : batch.writes.entrySet()) {
+      Key key = entry.getKey();
+      Long seen = batch.seenVersions.get(key);
+
+      if(seen != null
+          && seen != versionOf(index.get(key.table()).get(key.id()))) {
+        throw new OptimisticLockingFailureException("Record " + key.id()
+            + " of " + key.table() + " was changed by another transaction.");
+      }
+
+      tables.computeIfAbsent(key.table(), table -> new HashMap<>())
+          .put(key.id(), entry.getValue());
+    }
+
+    tables.forEach((table, writes) -> checks.get(table)
+        .forEach(check -> check.accept(writes)));
+  }
+
+  /*
+   * Append a frame. If the append fails, the file is cut back so that the
+   * next frame starts where this one would have.
+   */
+  private void append(byte[] payload) throws IOException {
+    ByteBuffer frame =
+        ByteBuffer.allocate(FRAME_HEADER_BYTES + payload.length);
+
+    frame.putInt(payload.length);
+    frame.putInt(checksum(ByteBuffer.wrap(payload)));
+    frame.put(payload);
+
+    try {
+      write(channel, end, frame);
+
+      if(syncWrites) {
+        channel.force(false);
+      }
+    }
+    catch(IOException e) {
+      channel.truncate(end);
+      throw e;
+    }
+
+    end += frame.capacity();
+  }
+
+  private void compactIfNeeded() {
+    try {
+      if(end >= compactionMinSize.toBytes()
+          && deadBytes >= end * compactionThreshold) {
+        compactionTime.record(this::compact);
+      }
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not compact {}: {}", LOG_FILE, e.toString());
+    }
+  }
+
+  /**
+   * Copy the live records to a new file and replace the log with it.
+   *
+   * @throws UncheckedIOException Thrown if the new file could not be
+   *         written. The old file is then still in use.
+   */
+  public void compact() {
+    Path compactPath = directory.resolve(COMPACT_FILE);
+
+    lock.writeLock().lock();
+
+    try {
+      long before = end;
+      Map<Table, ConcurrentMap<Long, Location>> compacted =
+          new EnumMap<>(Table.class);
+      long position;
+
+      try(FileChannel target = FileChannel.open(compactPath,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.WRITE)) {
+        write(target, 0, ByteBuffer.allocate(MAGIC_BYTES).putLong(MAGIC));
+        position = MAGIC_BYTES;
+
+        for(Table table : Table.values()) {
+          ConcurrentMap<Long, Location> locations = new ConcurrentHashMap<>();
+
+          position = copySequence(target, position, table);
+
+          for(Map.Entry<Long, Location> entry : index.get(table).entrySet()) {
+            byte[] value = readValue(entry.getValue());
+
+            locations.put(entry.getKey(), new Location(
+                position + FRAME_HEADER_BYTES + ENTRY_HEADER_BYTES,
+                value.length, entry.getValue().version()));
+            position = copyRecord(target, position, table, entry.getKey(),
+                value);
+          }
+
+          compacted.put(table, locations);
+        }
+
+        target.force(true);
+      }
+
+      /*
+       * The rename replaces the old file in one step, so a crash leaves
+       * either the old file or the new one. The old channel stays usable
+       * until the rename has succeeded.
+       */
+      Files.move(compactPath, directory.resolve(LOG_FILE),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+
+      FileChannel compactedChannel = FileChannel.open(
+          directory.resolve(LOG_FILE), StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+
+      channel.close();
+      channel = compactedChannel;
+
+      index.putAll(compacted);
+      end = position;
+      deadBytes = 0;
+
+      log.info("Compacted {} from {} to {} bytes", LOG_FILE, before, end);
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException("Could not compact " + LOG_FILE, e);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private long copySequence(FileChannel target, long position, Table table)
+      throws IOException {
+    ByteBuffer frame = ByteBuffer.allocate(
+        FRAME_HEADER_BYTES + ENTRY_HEADER_BYTES + Long.BYTES);
+    ByteBuffer entry = frame.duplicate().position(FRAME_HEADER_BYTES);
+
+    entry.put(SEQUENCE_ENTRY).putLong(table.ordinal()).putInt(Long.BYTES)
+        .putLong(nextIds.get(table).get());
+
+    return copyFrame(target, position, frame);
+  }
+
+  private long copyRecord(FileChannel target, long position, Table table,
+      long id, byte[] value) throws IOException {
+    ByteBuffer frame = ByteBuffer.allocate(
+        FRAME_HEADER_BYTES + ENTRY_HEADER_BYTES + value.length);
+    ByteBuffer entry = frame.duplicate().position(FRAME_HEADER_BYTES);
+
+    entry.put((byte)table.ordinal()).putLong(id).putInt(value.length)
+        .put(value);
+
+    return copyFrame(target, position, frame);
+  }
+
+  private long copyFrame(FileChannel target, long position, ByteBuffer frame)
+      throws IOException {
+    int length = frame.capacity() - FRAME_HEADER_BYTES;
+
+    frame.putInt(0, length);
+    frame.putInt(Integer.BYTES, checksum(
+        frame.slice(FRAME_HEADER_BYTES, length)));
+    write(target, position, frame.position(0));
+
+    return position + frame.capacity();
+  }
+
+  private byte[] readValue(Location location) {
+    try {
+      return read(channel, location.position(), location.length()).array();
+    }
+    catch(IOException e) {
+      throw new UncheckedIOException("Could not read " + LOG_FILE, e);
+    }
+  }
+
+  private static ByteBuffer read(FileChannel from, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    while(buffer.hasRemaining()) {
+      if(from.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of " + LOG_FILE);
+      }
+    }
+
+    return buffer.flip();
+  }
+
+  private static void write(FileChannel to, long position, ByteBuffer buffer)
+      throws IOException {
+    buffer.rewind();
+
+    while(buffer.hasRemaining()) {
+      to.write(buffer, position + buffer.position());
+    }
+  }
+
+  private static int checksum(ByteBuffer payload) {
+    CRC32C crc = new CRC32C();
+
+    crc.update(payload.duplicate());
+    return (int)crc.getValue();
+  }
+
+  /**
+   * Stop compacting and close the file. Every commit has already been
+   * written.
+   */
+  @PreDestroy
+  public void close() throws IOException {
+    compactor.shutdownNow();
+
+    lock.writeLock().lock();
+
+    try {
+      channel.close();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.io.UncheckedIOException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pet.park.dao.DatabaseTime;
+import pet.park.dao.Deadline;
+
+/**
+ * This transaction manager is used in place of the JPA one when the "edge"
+ * profile is active. A transaction collects the writes made through the
+ * {@link LogStore} and appends them as one frame when it commits, so the
+ * writes of a transaction reach the file together or not at all. A rollback
+ * drops them. Reads see the committed records and the transaction's own
+ * writes.
+ *
+ * Like pet.park.dao.DeadlineTransactionManager, no transaction is started
+ * once the current request's {@link Deadline} has passed, and the time of
+ * each transaction is added to the request's {@link DatabaseTime}.
+ *
+ * @author Promineo
+ *
+ */
+public class LogStoreTransactionManager
+    extends AbstractPlatformTransactionManager {
+  private static final long serialVersionUID = 1L;
+
+  private final transient LogStore store;
+
+  /*
+   * Holds the batch of the transaction that is bound to the current thread,
+   * if there is one.
+   */
+  private static final class LogTransaction implements SmartTransactionObject {
+    private LogStore.Batch batch;
+
+    @Override
+    public boolean isRollbackOnly() {
+      return batch != null && batch.isRollbackOnly();
+    }
+
+    @Override
+    public void flush() {
+      /* Writes are only appended at commit. */
+    }
+  }
+
+  public LogStoreTransactionManager(LogStore store) {
+    this.store = store;
+  }
+
+  @Override
+  protected Object doGetTransaction() {
+    LogTransaction transaction = new LogTransaction();
+
+    if(TransactionSynchronizationManager
+        .getResource(store) instanceof LogStore.Batch batch) {
+      transaction.batch = batch;
+    }
+
+    return transaction;
+  }
+
+  @Override
+  protected boolean isExistingTransaction(Object transaction) {
+    return ((LogTransaction)transaction).batch != null;
+  }
+
+  @Override
+  protected void doBegin(Object transaction,
+      TransactionDefinition definition) {
+    long startNanos = System.nanoTime();
+
+    Deadline.checkCurrent();
+
+    LogStore.Batch batch = store.begin(definition.isReadOnly());
+
+    ((LogTransaction)transaction).batch = batch;
+    TransactionSynchronizationManager.bindResource(store, batch);
+    DatabaseTime.transactionBegun(this, transaction, startNanos);
+  }
+
+  @Override
+  protected Object doSuspend(Object transaction) {
+    ((LogTransaction)transaction).batch = null;
+    return TransactionSynchronizationManager.unbindResource(store);
+  }
+
+  @Override
+  protected void doResume(Object transaction, Object suspendedResources) {
+    TransactionSynchronizationManager.bindResource(store, suspendedResources);
+  }
+
+  @Override
+  protected void doCommit(DefaultTransactionStatus status) {
+    LogStore.Batch batch = ((LogTransaction)status.getTransaction()).batch;
+
+    try {
+      store.commit(batch);
+    }
+    catch(UncheckedIOException e) {
+      throw new TransactionSystemException(
+          "Could not append the transaction to the log", e);
+    }
+  }
+
+  @Override
+  protected void doRollback(DefaultTransactionStatus status) {
+    /* The writes were never appended, so there is nothing to undo. */
+  }
+
+  @Override
+  protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+    ((LogTransaction)status.getTransaction()).batch.setRollbackOnly();
+  }
+
+  @Override
+  protected void doCleanupAfterCompletion(Object transaction) {
+    DatabaseTime.transactionCompleted(this, transaction);
+    TransactionSynchronizationManager.unbindResourceIfPossible(store);
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import java.math.BigDecimal;
+import lombok.Builder;
+import lombok.Value;
+import pet.park.dao.PetParkView;
+import pet.park.dao.PopularParkView;
+
+/**
+ * This class is the {@link PetParkView} (and {@link PopularParkView}) that
+ * the edge DAOs return. It plays the part of a projection row: the columns
+ * that a query would not select are left {@code null}.
+ *
+ * @Value This is a Lombok annotation that makes all instance variables
+ *        private and final and creates a getter for each one. The getter
+ *        names match the PetParkView methods.
+ *
+ * @Builder This is a Lombok annotation that creates a builder, so that only
+ *          the columns a query reads need to be given.
+ *
+ * @author Promineo
+ *
+ */
+@Value
+@Builder(toBuilder = true)
+class LogView implements PopularParkView {
+  Long petParkId;
+  String parkName;
+  String directions;
+  String stateOrProvince;
+  String country;
+  BigDecimal latitude;
+  BigDecimal longitude;
+  Long contributorId;
+  String contributorName;
+  String contributorEmail;
+  String amenities;
+  Long viewCount;
+}
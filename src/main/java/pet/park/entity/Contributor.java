@@ -10,6 +10,9 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -30,11 +33,23 @@ import lombok.ToString;
  *       instance variables. It also creates .hashCode(), .equals, and
  *       .toString() methods.
  * 
+ * @NamedEntityGraph This declares a fetch plan: the associations that a
+ *                   query loads together with the contributor. The
+ *                   "Contributor.parks" plan loads the contributor's parks
+ *                   and the amenities of each park, which is everything a
+ *                   ContributorData object is built from (see
+ *                   pet.park.dao.ContributorDao#findWithParksByContributorId).
+ * 
  * @author Promineo
  *
  */
 @Entity
 @Data
+@NamedEntityGraph(name = "Contributor.parks",
+    attributeNodes = @NamedAttributeNode(value = "petParks",
+        subgraph = "amenities"),
+    subgraphs = @NamedSubgraph(name = "amenities",
+        attributeNodes = @NamedAttributeNode("amenities")))
 public class Contributor {
   /**
    * @Id This annotation tells Spring JPA that the instance variable annotated
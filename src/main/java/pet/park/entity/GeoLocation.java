@@ -4,6 +4,7 @@ package pet.park.entity;
 
 import java.math.BigDecimal;
 import java.util.Objects;
+import jakarta.persistence.Column;
 import jakarta.persistence.Embeddable;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -35,9 +36,27 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 public class GeoLocation {
+  /*
+   * Six decimals is about 0.1 meters. The columns are created by the V6
+   * migration.
+   */
+  @Column(precision = 9, scale = 6)
   private BigDecimal latitude;
+
+  @Column(precision = 9, scale = 6)
   private BigDecimal longitude;
 
+  /**
+   * Create a geolocation from a latitude and longitude.
+   * 
+   * @param latitude The latitude.
+   * @param longitude The longitude.
+   */
+  public GeoLocation(BigDecimal latitude, BigDecimal longitude) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
   /**
    * Copy constructor. This takes a GeoLocation object and copies it. It creates
    * new BigDecimal objects and does not simply copy the references.
@@ -14,6 +14,8 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -33,11 +35,20 @@ import lombok.ToString;
  *       instance variables. It also creates .hashCode(), .equals, and
  *       .toString() methods.
  * 
+ * @NamedEntityGraph This declares a fetch plan: the associations that a
+ *                   query loads together with the park. The "PetPark.detail"
+ *                   plan loads the contributor and the amenities, which is
+ *                   everything a PetParkData object is built from (see
+ *                   pet.park.dao.PetParkDao#findDetailByPetParkId(Long)).
+ * 
  * @author Promineo
  *
  */
 @Entity
 @Data
+@NamedEntityGraph(name = "PetPark.detail",
+    attributeNodes = {@NamedAttributeNode("contributor"),
+        @NamedAttributeNode("amenities")})
 public class PetPark {
   /**
    * @Id This annotation tells Spring JPA that the instance variable annotated
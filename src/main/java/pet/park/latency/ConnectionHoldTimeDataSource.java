@@ -0,0 +1,148 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * This DataSource measures how long each connection is held, from the time
+ * it is handed out until it is closed (returned to the pool). The time is
+ * recorded in the pet.park.jdbc.connection.hold timer, tagged with the route
+ * of the request that took the connection, e.g. "GET /pet_park/park".
+ * Connections taken outside a request (background jobs, or the shard queries
+ * that run on their own threads) are tagged "none".
+ *
+ * While a request holds connections, the number it holds is kept in a request
+ * attribute. {@link ConnectionReleaseAdvice} reads it just before the
+ * response body is written, to confirm that every connection was returned to
+ * the pool before serialization started.
+ *
+ * When sharding is on, the wrapped DataSource is the lazy proxy in front of
+ * the shard pools, which takes a pooled connection on the first statement.
+ * The time measured then starts when the transaction starts.
+ *
+ * @author Promineo
+ *
+ */
+public class ConnectionHoldTimeDataSource extends DelegatingDataSource {
+  static final String OPEN_CONNECTIONS_ATTRIBUTE =
+      ConnectionHoldTimeDataSource.class.getName() + ".open";
+
+  private static final String NO_ROUTE = "none";
+
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+
+  /**
+   * The registry is looked up when the first connection is closed, because
+   * the DataSource is created before most other beans.
+   *
+   * @param target The DataSource to measure.
+   * @param meterRegistry The registry for the hold time timer.
+   */
+  public ConnectionHoldTimeDataSource(DataSource target,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    super(target);
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return track(super.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password)
+      throws SQLException {
+    return track(super.getConnection(username, password));
+  }
+
+  /*
+   * Wrap the connection so that its first close() records the time it was
+   * held. Every other call goes straight to the connection.
+   */
+  private Connection track(Connection connection) {
+    HttpServletRequest request = currentRequest();
+    String route = Objects.isNull(request) ? NO_ROUTE : route(request);
+    AtomicInteger open =
+        Objects.isNull(request) ? null : openConnections(request);
+    AtomicBoolean closed = new AtomicBoolean();
+    long start = System.nanoTime();
+
+    if(open != null) {
+      open.incrementAndGet();
+    }
+
+    return (Connection)Proxy.newProxyInstance(
+        Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+        (proxy, method, args) -> {
+          try {
+            return method.invoke(connection, args);
+          }
+          catch(InvocationTargetException e) {
+            throw e.getCause();
+          }
+          finally {
+            if(method.getName().equals("close")
+                && closed.compareAndSet(false, true)) {
+              released(route, open, System.nanoTime() - start);
+            }
+          }
+        });
+  }
+
+  private void released(String route, AtomicInteger open, long nanos) {
+    if(open != null) {
+      open.decrementAndGet();
+    }
+
+    Timer.builder("pet.park.jdbc.connection.hold")
+        .description("Time a JDBC connection was held before it was closed")
+        .tag("route", route).register(meterRegistry.getObject())
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private HttpServletRequest currentRequest() {
+    if(RequestContextHolder.getRequestAttributes()
+        instanceof ServletRequestAttributes servlet) {
+      return servlet.getRequest();
+    }
+
+    return null;
+  }
+
+  private AtomicInteger openConnections(HttpServletRequest request) {
+    if(request.getAttribute(
+        OPEN_CONNECTIONS_ATTRIBUTE) instanceof AtomicInteger open) {
+      return open;
+    }
+
+    AtomicInteger open = new AtomicInteger();
+
+    request.setAttribute(OPEN_CONNECTIONS_ATTRIBUTE, open);
+    return open;
+  }
+
+  static String route(HttpServletRequest request) {
+    Object pattern =
+        request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    return request.getMethod() + " "
+        + Objects.requireNonNullElse(pattern, "UNMAPPED");
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * This class wraps the application's DataSource in a
+ * {@link ConnectionHoldTimeDataSource}, so that the time each request holds a
+ * JDBC connection is measured. Both the auto-configured pool and the
+ * sharded DataSource (pet.park.dao.ShardingConfiguration) are wrapped.
+ *
+ * Class-level annotations:
+ *
+ * @Configuration Tells Spring that this class contributes configuration.
+ *
+ * @ConditionalOnProperty The metrics are on unless
+ *                        <em>pet-park.connection-metrics.enabled</em> is set
+ *                        to false.
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "pet-park.connection-metrics.enabled",
+    matchIfMissing = true)
+public class ConnectionMetricsConfiguration {
+
+  /**
+   * Create the post processor that wraps each DataSource bean. The method is
+   * static so that the post processor can be created before the other beans
+   * in this class.
+   *
+   * @param meterRegistry The registry, which is looked up later.
+   * @return The post processor.
+   */
+  @Bean
+  public static BeanPostProcessor connectionHoldTimePostProcessor(
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean,
+          String beanName) {
+        if(bean instanceof DataSource dataSource
+            && !(bean instanceof ConnectionHoldTimeDataSource)) {
+          return new ConnectionHoldTimeDataSource(dataSource, meterRegistry);
+        }
+
+        return bean;
+      }
+    };
+  }
+}
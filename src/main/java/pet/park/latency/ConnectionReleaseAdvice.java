@@ -0,0 +1,70 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * This class checks, just before a response body is converted to JSON, that
+ * the request no longer holds a JDBC connection. With open session in view
+ * turned off, every connection is returned to the pool when the service
+ * transaction ends, so serializing a large response never keeps a connection
+ * busy. A request that still holds one is counted in the
+ * pet.park.jdbc.connection.held.at.serialization metric, tagged with its
+ * route. The count should stay at zero.
+ *
+ * The open connections are counted by {@link ConnectionHoldTimeDataSource}.
+ *
+ * @author Promineo
+ *
+ */
+@RestControllerAdvice
+@ConditionalOnProperty(name = "pet-park.connection-metrics.enabled",
+    matchIfMissing = true)
+public class ConnectionReleaseAdvice implements ResponseBodyAdvice<Object> {
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Override
+  public boolean supports(MethodParameter returnType,
+      Class<? extends HttpMessageConverter<?>> converterType) {
+    return true;
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType,
+      MediaType selectedContentType,
+      Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request, ServerHttpResponse response) {
+    if(request instanceof ServletServerHttpRequest servletRequest) {
+      check(servletRequest.getServletRequest());
+    }
+
+    return body;
+  }
+
+  private void check(HttpServletRequest request) {
+    Object open = request.getAttribute(
+        ConnectionHoldTimeDataSource.OPEN_CONNECTIONS_ATTRIBUTE);
+
+    if(open instanceof Number count && count.intValue() > 0) {
+      Counter.builder("pet.park.jdbc.connection.held.at.serialization")
+          .description("Responses serialized while a connection was held")
+          .tag("route", ConnectionHoldTimeDataSource.route(request))
+          .register(meterRegistry).increment();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * This interceptor records the latency of every "/pet_park" request in the
+ * {@link LatencyRecorder}. The operation name is the HTTP method and the
+ * mapped URI pattern, e.g. "GET /pet_park/contributor/{contributorId}", so
+ * that all requests to one endpoint share a histogram no matter which IDs
+ * they carry.
+ *
+ * The time is taken from the first call to preHandle() to afterCompletion().
+ * For an asynchronous request (e.g. a stream) that is the whole time the
+ * request is open.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class EndpointLatencyInterceptor implements HandlerInterceptor {
+  private static final String START_ATTRIBUTE =
+      EndpointLatencyInterceptor.class.getName() + ".start";
+
+  @Autowired
+  private LatencyRecorder latencyRecorder;
+
+  @Override
+  public boolean preHandle(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    if(request.getAttribute(START_ATTRIBUTE) == null) {
+      request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request,
+      HttpServletResponse response, Object handler, Exception ex) {
+    if(!(request.getAttribute(START_ATTRIBUTE) instanceof Long start)) {
+      return;
+    }
+
+    Object pattern =
+        request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    latencyRecorder.record(
+        request.getMethod() + " "
+            + Objects.requireNonNullElse(pattern, "UNMAPPED"),
+        System.nanoTime() - start);
+  }
+}
@@ -0,0 +1,30 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * This class registers the {@link EndpointLatencyInterceptor} with Spring MVC
+ * for every request mapped under "/pet_park". It is registered first, so the
+ * time a request waits in admission control is included.
+ *
+ * @author Promineo
+ *
+ */
+@Configuration
+public class LatencyConfiguration implements WebMvcConfigurer {
+
+  @Autowired
+  private EndpointLatencyInterceptor endpointLatencyInterceptor;
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(endpointLatencyInterceptor)
+        .addPathPatterns("/pet_park/**").order(Ordered.HIGHEST_PRECEDENCE);
+  }
+}
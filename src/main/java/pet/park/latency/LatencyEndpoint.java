@@ -0,0 +1,51 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * This class is an actuator endpoint that shows the latency percentiles
+ * recorded by {@link LatencyRecorder}. It is reached at
+ * "/actuator/latency" (if "latency" is in
+ * management.endpoints.web.exposure.include).
+ *
+ * <ul>
+ * <li>GET returns the start and end of the last whole interval (see
+ * <em>pet-park.latency.interval</em>), and the count and p50, p90, p99,
+ * p99.9 and maximum latency in milliseconds for each endpoint and service
+ * method that was called in it.</li>
+ * <li>DELETE resets the histograms.</li>
+ * </ul>
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+  @Autowired
+  private LatencyRecorder latencyRecorder;
+
+  /**
+   * @return The latency summary of each operation in the last interval.
+   */
+  @ReadOperation
+  public Map<String, Object> latencies() {
+    return latencyRecorder.summary();
+  }
+
+  /**
+   * Reset the histograms.
+   */
+  @DeleteOperation
+  public void reset() {
+    latencyRecorder.reset();
+  }
+}
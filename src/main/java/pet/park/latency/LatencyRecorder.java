@@ -0,0 +1,165 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * This class keeps one latency histogram per operation (per HTTP endpoint
+ * and per {@link pet.park.service.ParkService} method). The histograms are
+ * HdrHistograms, which record every value with a fixed relative precision (3
+ * significant digits here) in a fixed amount of memory, so high percentiles
+ * like p99.9 are exact to that precision rather than estimated.
+ *
+ * The latencies are reported per interval of
+ * <em>pet-park.latency.interval</em>, so that a slow period is not hidden by
+ * everything recorded since startup. Each operation records into an
+ * HdrHistogram {@link Recorder}, which lets many threads record at once
+ * without locking. At the end of each interval the recorder hands over the
+ * histogram of the interval and starts a new one, and the summary shows the
+ * last whole interval.
+ *
+ * The values are recorded in nanoseconds and reported in milliseconds by
+ * {@link LatencyEndpoint}.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class LatencyRecorder {
+  private static final int SIGNIFICANT_DIGITS = 3;
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  @Value("${pet-park.latency.interval:PT1M}")
+  private Duration interval;
+
+  private final ConcurrentMap<String, Recorder> recorders =
+      new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService roller =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("latency-interval").factory());
+
+  /*
+   * The histogram of each operation that was called in the last whole
+   * interval, and when that interval started and ended. Replaced together
+   * at the end of each interval.
+   */
+  private record Interval(Instant start, Instant end,
+      Map<String, Histogram> histograms) {
+  }
+
+  private volatile Interval last;
+  private volatile Instant currentStart;
+
+  /**
+   * Start the first interval.
+   */
+  @PostConstruct
+  void init() {
+    currentStart = Instant.now();
+    last = new Interval(currentStart, currentStart, Map.of());
+
+    long period = Math.max(1, interval.toMillis());
+
+    roller.scheduleAtFixedRate(this::endInterval, period, period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Record one call.
+   *
+   * @param operation The operation name, e.g. "GET /pet_park/park".
+   * @param nanos The time the call took in nanoseconds.
+   */
+  public void record(String operation, long nanos) {
+    recorders
+        .computeIfAbsent(operation, key -> new Recorder(SIGNIFICANT_DIGITS))
+        .recordValue(Math.max(0, nanos));
+  }
+
+  /*
+   * Take the histogram of the interval that has just ended from each
+   * recorder. Operations that were not called in it are left out.
+   */
+  private synchronized void endInterval() {
+    Map<String, Histogram> histograms = new TreeMap<>();
+    Instant end = Instant.now();
+
+    recorders.forEach((operation, recorder) -> {
+      Histogram histogram = recorder.getIntervalHistogram();
+
+      if(histogram.getTotalCount() > 0) {
+        histograms.put(operation, histogram);
+      }
+    });
+
+    last = new Interval(currentStart, end, histograms);
+    currentStart = end;
+  }
+
+  /**
+   * Summarize the last whole interval.
+   *
+   * @return The start and end of the interval, and the count and the p50,
+   *         p90, p99, p99.9 and maximum latency (in milliseconds) of each
+   *         operation that was called in it, ordered by operation name.
+   */
+  public Map<String, Object> summary() {
+    Interval ended = last;
+    Map<String, Map<String, Object>> operations = new LinkedHashMap<>();
+    Map<String, Object> summary = new LinkedHashMap<>();
+
+    ended.histograms().forEach((operation, histogram) -> {
+      Map<String, Object> values = new LinkedHashMap<>();
+
+      values.put("count", histogram.getTotalCount());
+      values.put("p50", millis(histogram.getValueAtPercentile(50)));
+      values.put("p90", millis(histogram.getValueAtPercentile(90)));
+      values.put("p99", millis(histogram.getValueAtPercentile(99)));
+      values.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+      values.put("max", millis(histogram.getMaxValue()));
+
+      operations.put(operation, values);
+    });
+
+    summary.put("intervalStart", ended.start());
+    summary.put("intervalEnd", ended.end());
+    summary.put("operations", operations);
+
+    return summary;
+  }
+
+  /**
+   * Clear the current and last intervals, e.g. before a load test.
+   */
+  public synchronized void reset() {
+    recorders.values().forEach(Recorder::reset);
+    currentStart = Instant.now();
+    last = new Interval(currentStart, currentStart, Map.of());
+  }
+
+  private static double millis(long nanos) {
+    return nanos / NANOS_PER_MILLI;
+  }
+
+  @PreDestroy
+  void shutdown() {
+    roller.shutdownNow();
+  }
+}
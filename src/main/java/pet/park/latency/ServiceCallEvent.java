@@ -0,0 +1,57 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is a JDK Flight Recorder (JFR) event that is recorded for each call
+ * to a {@link pet.park.service.ParkService} method (see
+ * {@link ServiceLatencyAspect}). The JFR start and end time give the
+ * duration; the fields tell which entities the call was about and how many
+ * rows it returned.
+ *
+ * JFR events cost almost nothing when no recording is running. To record
+ * them in production, start a recording, e.g.:
+ *
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start name=parks duration=5m filename=parks.jfr
+ * </pre>
+ *
+ * and open the file in JDK Mission Control, where the events are listed
+ * under "Pet Park".
+ *
+ * @author Promineo
+ *
+ */
+@Name("pet.park.ServiceCall")
+@Label("Park Service Call")
+@Category("Pet Park")
+@Description("A call to a ParkService method")
+@StackTrace(false)
+public class ServiceCallEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Contributor ID")
+  @Description("The contributor ID argument, or -1")
+  long contributorId = -1;
+
+  @Label("Pet Park ID")
+  @Description("The pet park ID argument, or -1")
+  long petParkId = -1;
+
+  @Label("Rows")
+  @Description("The number of items returned")
+  int rowCount;
+
+  @Label("Failure")
+  @Description("The exception thrown, if any")
+  String failure;
+}
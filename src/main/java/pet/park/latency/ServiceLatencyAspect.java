@@ -0,0 +1,109 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.latency;
+
+import java.util.Collection;
+import java.util.Objects;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import pet.park.controller.model.PetParkData;
+
+/**
+ * This class measures every public {@link pet.park.service.ParkService}
+ * method. It is an aspect: Spring wraps ParkService in a proxy (as it already
+ * does for @Transactional), and the proxy calls {@link #measure} around each
+ * method call.
+ *
+ * Each call is recorded in the {@link LatencyRecorder} under
+ * "ParkService.methodName" and, if a JFR recording is running, as a
+ * {@link ServiceCallEvent} with the IDs the method was called with and the
+ * number of items it returned.
+ *
+ * Calls that ParkService makes to its own methods do not go through the
+ * proxy, so they are only measured as part of the outer call.
+ *
+ * @author Promineo
+ *
+ */
+@Aspect
+@Component
+public class ServiceLatencyAspect {
+
+  @Autowired
+  private LatencyRecorder latencyRecorder;
+
+  /**
+   * Time one service call.
+   *
+   * @param joinPoint The call.
+   * @return The method's result.
+   * @throws Throwable The method's exception.
+   */
+  @Around("execution(public * pet.park.service.ParkService.*(..))")
+  public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+    String method = "ParkService." + joinPoint.getSignature().getName();
+    ServiceCallEvent event = new ServiceCallEvent();
+    long start = System.nanoTime();
+
+    event.begin();
+
+    try {
+      Object result = joinPoint.proceed();
+      event.rowCount = rowCount(result);
+      return result;
+    }
+    catch(Throwable e) {
+      event.failure = e.toString();
+      throw e;
+    }
+    finally {
+      latencyRecorder.record(method, System.nanoTime() - start);
+      event.end();
+
+      if(event.shouldCommit()) {
+        event.method = method;
+        setIds(event, joinPoint);
+        event.commit();
+      }
+    }
+  }
+
+  /*
+   * The IDs are found by parameter name. Spring Boot compiles with
+   * -parameters, so the names are available at run time.
+   */
+  private void setIds(ServiceCallEvent event, ProceedingJoinPoint joinPoint) {
+    String[] names =
+        ((MethodSignature)joinPoint.getSignature()).getParameterNames();
+    Object[] args = joinPoint.getArgs();
+
+    for(int index = 0; index < args.length; index++) {
+      Object arg = args[index];
+      String name = names == null ? "" : names[index];
+
+      if(arg instanceof Long id && name.equals("contributorId")) {
+        event.contributorId = id;
+      }
+      else if(arg instanceof Long id
+          && (name.equals("parkId") || name.equals("petParkId"))) {
+        event.petParkId = id;
+      }
+      else if(arg instanceof PetParkData petPark
+          && Objects.nonNull(petPark.getPetParkId())) {
+        event.petParkId = petPark.getPetParkId();
+      }
+    }
+  }
+
+  private int rowCount(Object result) {
+    if(result instanceof Collection<?> collection) {
+      return collection.size();
+    }
+
+    return result == null ? 0 : 1;
+  }
+}
@@ -0,0 +1,117 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This is a Bloom filter over strings. A Bloom filter answers the question
+ * "have I seen this value?" with either "definitely not" or "maybe". It never
+ * gives a false "definitely not", and it gives a false "maybe" with a small,
+ * configurable probability. It takes a few bits per value no matter how long
+ * the values are.
+ *
+ * Each value sets k bits in a bit array. The k bit positions are derived from
+ * one 64-bit hash using double hashing (position i = h1 + i * h2). A value is
+ * "maybe present" only if all k of its bits are set.
+ *
+ * The bits are kept in an {@link AtomicLongArray} and set with a
+ * compare-and-set loop, so {@link #add(String)} and
+ * {@link #mightContain(String)} may be called from many threads without
+ * locking. Values cannot be removed.
+ *
+ * @author Promineo
+ *
+ */
+public class BloomFilter {
+  private final AtomicLongArray words;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * Create a filter sized for the expected number of values.
+   *
+   * @param expectedInsertions The number of values the filter is sized for.
+   *        More can be added, but the false positive rate then rises.
+   * @param falsePositiveRate The desired false positive rate (e.g. 0.01).
+   */
+  public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+    long n = Math.max(1, expectedInsertions);
+    long m = (long)Math.ceil(
+        -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+    words = new AtomicLongArray((int)((m + 63) / 64));
+    bitCount = words.length() * 64L;
+    hashCount =
+        Math.max(1, (int)Math.round((double)bitCount / n * Math.log(2)));
+  }
+
+  /**
+   * Add a value to the filter.
+   *
+   * @param value The value.
+   */
+  public void add(String value) {
+    long hash = hash(value);
+    int h1 = (int)hash;
+    int h2 = (int)(hash >>> 32);
+
+    for(int i = 0; i < hashCount; i++) {
+      long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+      int index = (int)(bit >>> 6);
+      long mask = 1L << bit;
+
+      long word;
+
+      do {
+        word = words.get(index);
+      } while((word & mask) == 0
+          && !words.compareAndSet(index, word, word | mask));
+    }
+  }
+
+  /**
+   * Check whether a value may have been added.
+   *
+   * @param value The value.
+   * @return {@code false} if the value was definitely never added,
+   *         {@code true} if it may have been.
+   */
+  public boolean mightContain(String value) {
+    long hash = hash(value);
+    int h1 = (int)hash;
+    int h2 = (int)(hash >>> 32);
+
+    for(int i = 0; i < hashCount; i++) {
+      long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+
+      if((words.get((int)(bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /*
+   * 64-bit FNV-1a over the UTF-8 bytes followed by the MurmurHash3 finalizer
+   * to spread the bits.
+   */
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+
+    for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+
+    return hash;
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.dao.ContributorDao;
+
+/**
+ * This class keeps a {@link BloomFilter} of every contributor email. It lets
+ * {@link ParkService} skip the "does this email already exist?" query when
+ * the filter says the email is definitely new, which is the common case when
+ * contributors sign up.
+ *
+ * The filter is loaded from the contributor table when the application is
+ * ready. Until then, and whenever the filter has taken more emails than it was
+ * sized for, {@link #isDefinitelyNew(String)} returns {@code false} so that
+ * the query is always made. The filter is rebuilt at a larger size when it
+ * becomes full.
+ *
+ * The filter is only an optimization. The unique index on
+ * contributor_email is still what guarantees that emails are unique (e.g. when
+ * another node inserted the email after this node loaded its filter).
+ *
+ * Emails are compared in lower case, as MySQL's default collation does.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ContributorEmailIndex {
+
+  @Autowired
+  private ContributorDao contributorDao;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.contributor-email-filter.expected-insertions:100000}")
+  private long expectedInsertions;
+
+  @Value("${pet-park.contributor-email-filter.false-positive-rate:0.01}")
+  private double falsePositiveRate;
+
+  private final AtomicLong insertions = new AtomicLong();
+
+  private volatile BloomFilter filter;
+  private volatile long capacity;
+
+  private Counter skippedQueries;
+
+  @PostConstruct
+  void init() {
+    skippedQueries = Counter
+        .builder("pet.park.contributor.email.filter.skips")
+        .description("Duplicate-email queries skipped by the Bloom filter")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Load the filter when the application is ready.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    rebuild(expectedInsertions);
+  }
+
+  /**
+   * Check whether an email is definitely not used by any contributor.
+   *
+   * @param email The email.
+   * @return {@code true} if the email is definitely new. {@code false} if it
+   *         may already exist and the database must be checked.
+   */
+  public boolean isDefinitelyNew(String email) {
+    BloomFilter current = filter;
+
+    if(Objects.isNull(email) || current == null
+        || insertions.get() > capacity) {
+      return false;
+    }
+
+    boolean definitelyNew = !current.mightContain(normalize(email));
+
+    if(definitelyNew) {
+      skippedQueries.increment();
+    }
+
+    return definitelyNew;
+  }
+
+  /**
+   * Record an email that has been saved.
+   *
+   * @param email The email.
+   */
+  public void add(String email) {
+    BloomFilter current = filter;
+
+    if(Objects.isNull(email) || current == null) {
+      return;
+    }
+
+    current.add(normalize(email));
+
+    if(insertions.incrementAndGet() == capacity + 1) {
+      Thread.ofVirtual().name("contributor-email-filter-rebuild")
+          .start(() -> rebuild(capacity * 2));
+    }
+  }
+
+  private synchronized void rebuild(long size) {
+    try {
+      List<String> emails = contributorDao.findAllContributorEmails();
+      long newCapacity = Math.max(size, emails.size() * 2L);
+      BloomFilter newFilter =
+          new BloomFilter(newCapacity, falsePositiveRate);
+
+      for(String email : emails) {
+        if(Objects.nonNull(email)) {
+          newFilter.add(normalize(email));
+        }
+      }
+
+      /*
+       * The capacity is set to zero while switching so that callers fall
+       * back to the database until the new filter and count are in place.
+       */
+      capacity = 0;
+      filter = newFilter;
+      insertions.set(emails.size());
+      capacity = newCapacity;
+
+      log.info("Loaded contributor email filter with {} emails",
+          emails.size());
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not load contributor email filter: {}", e.toString());
+    }
+  }
+
+  private String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+}
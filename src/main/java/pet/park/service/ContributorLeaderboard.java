@@ -0,0 +1,284 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.TopContributorData;
+import pet.park.dao.ContributorDao;
+import pet.park.dao.ContributorParkCount;
+
+/**
+ * This class keeps the number of parks of every contributor in memory, in
+ * order, so that "GET /pet_park/contributor/top?k=" can return the
+ * contributors with the most parks without loading every contributor and
+ * park.
+ *
+ * The standings are kept in a ConcurrentSkipListSet ordered by park count
+ * (highest first) and then by contributor ID, plus a map from contributor ID
+ * to the contributor's current standing. Reading the top k walks the first k
+ * entries of the set, so it takes O(k) time and runs at the same time as
+ * updates. Changing one contributor's count removes their old standing and
+ * inserts the new one, in O(log n).
+ *
+ * The counts are kept current from the {@link ParkChangeEvent}s published by
+ * ParkService:
+ *
+ * <ul>
+ * <li>When a park is saved, or a contributor is saved, that contributor's
+ * parks are counted again on every shard (an index-only count).</li>
+ * <li>When a contributor is deleted, the contributor is removed.</li>
+ * </ul>
+ *
+ * Every <em>pet-park.leaderboard.reconcile-interval</em>, all counts are read
+ * from the database and compared with the standings. This catches changes
+ * made by other nodes or outside the application. The number of standings
+ * that had to be corrected is counted by the pet.park.leaderboard.corrections
+ * metric.
+ *
+ * All changes are made on one background thread, so the two structures are
+ * only ever written by one thread at a time. Until the first load has
+ * finished, {@link #top(int)} reads the counts from the database.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ContributorLeaderboard {
+
+  /*
+   * Highest park count first. Ties are broken by contributor ID so that every
+   * contributor has exactly one place.
+   */
+  private static final Comparator<Standing> ORDER = Comparator
+      .comparingLong(Standing::parkCount).reversed()
+      .thenComparing(Standing::contributorId);
+
+  /*
+   * Set elements must not change while they are in the set, so the standings
+   * are immutable and are copied into DTOs when they are read.
+   */
+  private record Standing(Long contributorId, String contributorName,
+      long parkCount) {
+
+    TopContributorData toData() {
+      return new TopContributorData(contributorId, contributorName,
+          parkCount);
+    }
+  }
+
+  @Autowired
+  private ContributorDao contributorDao;
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.leaderboard.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.leaderboard.reconcile-interval:PT5M}")
+  private Duration reconcileInterval;
+
+  private final NavigableSet<Standing> standings =
+      new ConcurrentSkipListSet<>(ORDER);
+
+  private final ConcurrentMap<Long, Standing> byContributor =
+      new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService updater =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("contributor-leaderboard").factory());
+
+  private volatile boolean loaded;
+
+  private Counter corrections;
+
+  @PostConstruct
+  void init() {
+    Gauge.builder("pet.park.leaderboard.contributors", byContributor,
+        Map::size).description("Contributors on the leaderboard")
+        .register(meterRegistry);
+
+    corrections = Counter.builder("pet.park.leaderboard.corrections")
+        .description("Leaderboard standings corrected by reconciliation")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Load the standings once the application is ready, and reconcile them
+   * with the database from then on.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if(enabled) {
+      long period = Math.max(1, reconcileInterval.toMillis());
+
+      updater.scheduleWithFixedDelay(this::reconcile, 0, period,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Update a contributor's standing after ParkService commits a change.
+   *
+   * @param event The change event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(ParkChangeEvent event) {
+    if(!enabled) {
+      return;
+    }
+
+    Long contributorId = event.getContributorId();
+
+    switch(event.getChangeType()) {
+      case PARK_SAVED, CONTRIBUTOR_SAVED -> updater
+          .execute(() -> recount(contributorId));
+      case CONTRIBUTOR_DELETED -> updater
+          .execute(() -> put(contributorId, null));
+    }
+  }
+
+  /**
+   * Return the contributors with the most parks.
+   *
+   * @param k The number of contributors.
+   * @return Up to <em>k</em> contributors, most parks first.
+   */
+  public List<TopContributorData> top(int k) {
+    if(loaded) {
+      return standings.stream().limit(k).map(Standing::toData).toList();
+    }
+
+    return readCounts().values().stream().sorted(ORDER).limit(k)
+        .map(Standing::toData).toList();
+  }
+
+  /*
+   * Contributors are copied to every shard, so each shard returns every
+   * contributor with the parks stored on that shard. The counts are added.
+   */
+  private Map<Long, Standing> readCounts() {
+    Map<Long, Standing> counts = new HashMap<>();
+
+    for(ContributorParkCount row : shardRouter
+        .gather(contributorDao::findParkCounts)) {
+      counts.merge(row.getContributorId(), toStanding(row),
+          (a, b) -> new Standing(a.contributorId(), a.contributorName(),
+              a.parkCount() + b.parkCount()));
+    }
+
+    return counts;
+  }
+
+  private void reconcile() {
+    try {
+      Map<Long, Standing> counts = readCounts();
+      int corrected = 0;
+
+      for(Long contributorId : List.copyOf(byContributor.keySet())) {
+        if(!counts.containsKey(contributorId)) {
+          put(contributorId, null);
+          corrected++;
+        }
+      }
+
+      for(Standing standing : counts.values()) {
+        if(!standing.equals(byContributor.get(standing.contributorId()))) {
+          put(standing.contributorId(), standing);
+          corrected++;
+        }
+      }
+
+      if(loaded) {
+        corrections.increment(corrected);
+      }
+      else {
+        loaded = true;
+        log.info("Loaded contributor leaderboard with {} contributors",
+            counts.size());
+      }
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not reconcile contributor leaderboard: {}",
+          e.toString());
+    }
+  }
+
+  private void recount(Long contributorId) {
+    try {
+      List<ContributorParkCount> rows = shardRouter.gather(() -> contributorDao
+          .findParkCountById(contributorId).stream().toList());
+
+      if(rows.isEmpty()) {
+        put(contributorId, null);
+        return;
+      }
+
+      long parkCount = rows.stream()
+          .mapToLong(ContributorParkCount::getParkCount).sum();
+
+      put(contributorId, new Standing(contributorId,
+          rows.get(0).getContributorName(), parkCount));
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not count parks of contributor with ID={}: {}",
+          contributorId, e.toString());
+    }
+  }
+
+  /*
+   * Replace a contributor's standing. The old standing is removed first, so
+   * a reader may briefly miss the contributor, but never sees them twice.
+   */
+  private void put(Long contributorId, Standing standing) {
+    Standing previous = Objects.isNull(standing)
+        ? byContributor.remove(contributorId)
+        : byContributor.put(contributorId, standing);
+
+    if(previous != null) {
+      standings.remove(previous);
+    }
+
+    if(standing != null) {
+      standings.add(standing);
+    }
+  }
+
+  private static Standing toStanding(ContributorParkCount row) {
+    return new Standing(row.getContributorId(),
+        row.getContributorName(), row.getParkCount());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    updater.shutdownNow();
+  }
+}
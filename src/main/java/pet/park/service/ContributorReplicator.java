@@ -0,0 +1,105 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.dao.ContributorDao;
+import pet.park.dao.PetParkDao;
+import pet.park.entity.Contributor;
+
+/**
+ * This class copies contributors from the primary shard to the other shards
+ * when sharding is enabled (see {@link ShardRouter}). Every shard needs the
+ * contributor rows because its pet parks reference them and the read queries
+ * join them.
+ * 
+ * The copy is made after the primary transaction commits, on the thread that
+ * made the change, so the contributor is on every shard by the time
+ * saveContributor() returns. Deleting a contributor deletes the copy and the
+ * contributor's parks on each of the other shards.
+ * 
+ * The shards are separate databases, so the copy is not atomic with the
+ * primary write. If a shard is unavailable the error is logged, and the next
+ * save of the contributor copies it again.
+ * 
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ContributorReplicator {
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  @Autowired
+  private ContributorDao contributorDao;
+
+  @Autowired
+  private PetParkDao petParkDao;
+
+  /**
+   * Copy a saved or deleted contributor to the non-primary shards.
+   * 
+   * @param event The change event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(ParkChangeEvent event) {
+    if(!shardRouter.isSharded()) {
+      return;
+    }
+
+    switch(event.getChangeType()) {
+      case CONTRIBUTOR_SAVED -> copy(event.getContributorId());
+      case CONTRIBUTOR_DELETED -> delete(event.getContributorId());
+      default -> {
+      }
+    }
+  }
+
+  private void copy(Long contributorId) {
+    Optional<Contributor> contributor =
+        shardRouter.inShard(shardRouter.primaryShard(), true,
+            () -> contributorDao.findById(contributorId));
+
+    if(contributor.isEmpty()) {
+      return;
+    }
+
+    String name = contributor.get().getContributorName();
+    String email = contributor.get().getContributorEmail();
+
+    forEachReplica(contributorId, "copy",
+        () -> contributorDao.upsertReplica(contributorId, name, email));
+  }
+
+  private void delete(Long contributorId) {
+    forEachReplica(contributorId, "delete", () -> {
+      petParkDao.deleteAmenityLinksByContributorId(contributorId);
+      petParkDao.deleteParksByContributorId(contributorId);
+      return contributorDao.deleteReplica(contributorId);
+    });
+  }
+
+  private void forEachReplica(Long contributorId, String action,
+      Supplier<Integer> work) {
+    for(String shard : shardRouter.shards()) {
+      if(shard.equals(shardRouter.primaryShard())) {
+        continue;
+      }
+
+      try {
+        shardRouter.inShard(shard, false, work);
+      }
+      catch(RuntimeException e) {
+        log.error("Could not {} contributor with ID={} on shard {}: {}",
+            action, contributorId, shard, e.toString());
+      }
+    }
+  }
+}
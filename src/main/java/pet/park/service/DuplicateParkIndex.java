@@ -0,0 +1,301 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import lombok.Getter;
+import pet.park.controller.model.PetParkData;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This class finds existing pet parks that are probably the same park as a
+ * new one, e.g. "Central Bark" and "Central Bark Dog Park" a few meters
+ * apart.
+ *
+ * Two parks are near duplicates if their names are similar and they are
+ * close together. Name similarity is measured on character trigrams (each
+ * run of three characters of the lower-cased name): it is the number of
+ * trigrams the names share divided by the number of trigrams in the shorter
+ * name, so a name that is contained in the other scores 1.
+ *
+ * Candidates are found without looking at every park:
+ *
+ * <ul>
+ * <li>Parks with a location are put in a grid of cells about
+ * <em>pet-park.duplicates.max-distance-meters</em> on a side. A new park is
+ * compared with the parks in its own cell and the neighboring cells.</li>
+ * <li>A new park without a location is compared with the parks that share
+ * trigrams with its name (an inverted index from trigram to parks), limited
+ * to parks in the same country and state or province.</li>
+ * </ul>
+ *
+ * The index is kept current by {@link ParkIndex}, and the parks are read
+ * from the ParkColumnStore. A park saved a moment ago may not be indexed
+ * yet, so two identical parks submitted at the same instant can both be
+ * accepted.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class DuplicateParkIndex extends ParkIndex {
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  @Getter
+  @Value("${pet-park.duplicates.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.duplicates.max-distance-meters:150}")
+  private double maxDistanceMeters;
+
+  @Value("${pet-park.duplicates.name-similarity:0.8}")
+  private double nameSimilarity;
+
+  /*
+   * Trigrams that are in more parks than this are not used to find
+   * candidates (e.g. "par" and "ark" are in most park names).
+   */
+  @Value("${pet-park.duplicates.max-trigram-parks:5000}")
+  private int maxTrigramParks;
+
+  private final ConcurrentMap<Long, Set<Long>> cells =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, Set<Long>> trigramIndex =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Long, Set<String>> trigramsById =
+      new ConcurrentHashMap<>();
+
+  public DuplicateParkIndex() {
+    super("duplicate-park-index");
+  }
+
+  /**
+   * Find existing parks that are near duplicates of the given park.
+   *
+   * @param petPark The new park.
+   * @return The matching parks, closest first.
+   */
+  public List<PetParkData> findDuplicates(PetParkData petPark) {
+    if(!enabled || Objects.isNull(petPark.getParkName())) {
+      return List.of();
+    }
+
+    Set<String> trigrams = trigrams(petPark.getParkName());
+    GeoLocation location = petPark.getGeoLocation();
+    boolean located = GeoMath.isComplete(location);
+
+    Set<Long> candidates =
+        located ? nearby(location) : sharingTrigrams(trigrams);
+
+    candidates.removeIf(candidateId -> {
+      Set<String> candidateTrigrams = trigramsById.get(candidateId);
+
+      return candidateTrigrams == null
+          || similarity(trigrams, candidateTrigrams) < nameSimilarity;
+    });
+
+    List<PetParkData> duplicates = new ArrayList<>();
+    Map<Long, Double> distances = new HashMap<>();
+
+    for(PetParkData candidate : findParks(candidates)) {
+      Long candidateId = candidate.getPetParkId();
+
+      if(located) {
+        if(!GeoMath.isComplete(candidate.getGeoLocation())) {
+          continue;
+        }
+
+        double meters = 1000 * GeoMath.distanceKm(
+            location.getLatitude().doubleValue(),
+            location.getLongitude().doubleValue(),
+            candidate.getGeoLocation().getLatitude().doubleValue(),
+            candidate.getGeoLocation().getLongitude().doubleValue());
+
+        if(meters > maxDistanceMeters) {
+          continue;
+        }
+
+        distances.put(candidateId, meters);
+      }
+      else if(!sameRegion(petPark, candidate)) {
+        continue;
+      }
+
+      duplicates.add(candidate);
+    }
+
+    duplicates.sort(Comparator.comparing(
+        park -> distances.getOrDefault(park.getPetParkId(), 0.0)));
+
+    return duplicates;
+  }
+
+  private Set<Long> nearby(GeoLocation location) {
+    double lat = location.getLatitude().doubleValue();
+    double lon = location.getLongitude().doubleValue();
+    long latCell = latCell(lat);
+    long lonCell = lonCell(lon);
+
+    /*
+     * A cell is narrower (in meters) away from the equator, so more cells to
+     * the east and west are searched there.
+     */
+    int lonRange = (int)Math.ceil(
+        1 / Math.max(0.01, Math.cos(Math.toRadians(lat))));
+
+    Set<Long> nearby = new HashSet<>();
+
+    for(long dLat = -1; dLat <= 1; dLat++) {
+      for(long dLon = -lonRange; dLon <= lonRange; dLon++) {
+        Set<Long> cell = cells.get(cellKey(latCell + dLat, lonCell + dLon));
+
+        if(cell != null) {
+          nearby.addAll(cell);
+        }
+      }
+    }
+
+    return nearby;
+  }
+
+  /*
+   * Every park that shares at least one of the less common trigrams. The
+   * name similarity is then computed exactly for each of them.
+   */
+  private Set<Long> sharingTrigrams(Set<String> trigrams) {
+    Set<Long> candidates = new HashSet<>();
+
+    for(String trigram : trigrams) {
+      Set<Long> posting = trigramIndex.get(trigram);
+
+      if(posting != null && posting.size() <= maxTrigramParks) {
+        candidates.addAll(posting);
+      }
+    }
+
+    return candidates;
+  }
+
+  private boolean sameRegion(PetParkData a, PetParkData b) {
+    return equalsIgnoreCase(a.getCountry(), b.getCountry())
+        && equalsIgnoreCase(a.getStateOrProvince(), b.getStateOrProvince());
+  }
+
+  private boolean equalsIgnoreCase(String a, String b) {
+    return a == null ? b == null : a.trim().equalsIgnoreCase(
+        Objects.requireNonNullElse(b, "").trim());
+  }
+
+  @Override
+  protected void added(PetParkData petPark) {
+    Long id = petPark.getPetParkId();
+
+    if(Objects.nonNull(petPark.getParkName())) {
+      Set<String> trigrams = trigrams(petPark.getParkName());
+      trigramsById.put(id, trigrams);
+
+      for(String trigram : trigrams) {
+        trigramIndex
+            .computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet())
+            .add(id);
+      }
+    }
+
+    if(GeoMath.isComplete(petPark.getGeoLocation())) {
+      cells.computeIfAbsent(cellKey(petPark.getGeoLocation()),
+          key -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+  }
+
+  @Override
+  protected void removed(PetParkData petPark) {
+    Long id = petPark.getPetParkId();
+    Set<String> trigrams = trigramsById.remove(id);
+
+    if(trigrams != null) {
+      for(String trigram : trigrams) {
+        trigramIndex.computeIfPresent(trigram, (key, posting) -> {
+          posting.remove(id);
+          return posting.isEmpty() ? null : posting;
+        });
+      }
+    }
+
+    if(GeoMath.isComplete(petPark.getGeoLocation())) {
+      cells.computeIfPresent(cellKey(petPark.getGeoLocation()),
+          (key, cell) -> {
+            cell.remove(id);
+            return cell.isEmpty() ? null : cell;
+          });
+    }
+  }
+
+  /*
+   * The share of the smaller trigram set that is also in the other set.
+   */
+  private static double similarity(Set<String> a, Set<String> b) {
+    if(a.isEmpty() || b.isEmpty()) {
+      return 0;
+    }
+
+    Set<String> smaller = a.size() <= b.size() ? a : b;
+    Set<String> larger = smaller == a ? b : a;
+    int shared = 0;
+
+    for(String trigram : smaller) {
+      if(larger.contains(trigram)) {
+        shared++;
+      }
+    }
+
+    return (double)shared / smaller.size();
+  }
+
+  /*
+   * The name is lower-cased, punctuation is dropped and runs of spaces are
+   * collapsed. A space is added at both ends so that the start and end of
+   * each word make their own trigrams.
+   */
+  private static Set<String> trigrams(String name) {
+    String normalized = " " + name.toLowerCase(Locale.ROOT)
+        .replaceAll("[^\\p{L}\\p{N}]+", " ").trim() + " ";
+    Set<String> trigrams = new HashSet<>();
+
+    for(int i = 0; i + 3 <= normalized.length(); i++) {
+      trigrams.add(normalized.substring(i, i + 3));
+    }
+
+    return trigrams;
+  }
+
+  private long cellKey(GeoLocation location) {
+    return cellKey(latCell(location.getLatitude().doubleValue()),
+        lonCell(location.getLongitude().doubleValue()));
+  }
+
+  private long latCell(double lat) {
+    return (long)Math.floor(lat * METERS_PER_DEGREE / maxDistanceMeters);
+  }
+
+  private long lonCell(double lon) {
+    return (long)Math.floor(lon * METERS_PER_DEGREE / maxDistanceMeters);
+  }
+
+  private static long cellKey(long latCell, long lonCell) {
+    return (latCell << 32) ^ (lonCell & 0xffffffffL);
+  }
+}
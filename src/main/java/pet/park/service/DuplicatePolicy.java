@@ -0,0 +1,26 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+/**
+ * This tells ParkService.savePetPark() what to do when a new pet park looks
+ * like a park that already exists (see {@link DuplicateParkIndex}).
+ * 
+ * @author Promineo
+ *
+ */
+public enum DuplicatePolicy {
+  /** Do not save the park. The caller gets a 409 (Conflict). */
+  REJECT,
+
+  /**
+   * Do not create a new park. The amenities of the new park are added to the
+   * existing park, and any of its missing fields are filled in. Only a park
+   * owned by the same contributor is merged into; if the contributor owns
+   * none of the duplicates, this acts like WARN.
+   */
+  MERGE,
+
+  /** Save the park anyway and report the possible duplicates. */
+  WARN
+}
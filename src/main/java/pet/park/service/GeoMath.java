@@ -0,0 +1,50 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.Objects;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This class holds geographic helper methods.
+ * 
+ * @author Promineo
+ *
+ */
+public final class GeoMath {
+  private static final double EARTH_RADIUS_KM = 6371.0088;
+
+  private GeoMath() {
+  }
+
+  /**
+   * Compute the great-circle distance between two points with the haversine
+   * formula.
+   * 
+   * @param lat1 The latitude of the first point in degrees.
+   * @param lon1 The longitude of the first point in degrees.
+   * @param lat2 The latitude of the second point in degrees.
+   * @param lon2 The longitude of the second point in degrees.
+   * @return The distance in kilometers.
+   */
+  public static double distanceKm(double lat1, double lon1, double lat2,
+      double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.pow(Math.sin(dLat / 2), 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.pow(Math.sin(dLon / 2), 2);
+
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  /**
+   * @param geoLocation A location (may be {@code null}).
+   * @return {@code true} if both the latitude and longitude are present.
+   */
+  public static boolean isComplete(GeoLocation geoLocation) {
+    return Objects.nonNull(geoLocation)
+        && Objects.nonNull(geoLocation.getLatitude())
+        && Objects.nonNull(geoLocation.getLongitude());
+  }
+}
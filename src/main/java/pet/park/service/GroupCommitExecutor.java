@@ -0,0 +1,307 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.dao.Deadline;
+import pet.park.dao.DeadlineExceededException;
+import pet.park.dao.ShardContext;
+
+/**
+ * This class implements group commit for database writes. Instead of every
+ * write committing its own transaction (and waiting for its own fsync in
+ * MySQL), writes are put on a queue. A worker thread takes writes off
+ * the queue in micro-batches and runs each batch in one transaction, so one
+ * commit covers the whole batch.
+ *
+ * A batch is closed when it holds <em>pet-park.group-commit.max-batch-size</em>
+ * writes or when <em>pet-park.group-commit.max-wait</em> has passed since the
+ * first write in the batch arrived, whichever comes first. A larger wait gives
+ * larger batches (more throughput) at the cost of added latency per write.
+ *
+ * A caller waits for its batch no longer than its request {@link Deadline},
+ * or <em>pet-park.group-commit.timeout</em> if it has none, and then gets a
+ * {@link DeadlineExceededException}. A write that has not been taken into a
+ * batch by then is dropped. One that is already in a batch may still commit.
+ *
+ * Each caller still gets its own result or exception. If any write in a batch
+ * fails, the batch transaction is rolled back and every write in it is retried
+ * in its own transaction. The writes that are fine then succeed and the
+ * failing write reports its own error.
+ *
+ * A transaction can only cover one shard (see {@link ShardRouter}), so each
+ * shard has its own queue and worker thread. The worker for a shard is
+ * started when the first write for that shard arrives.
+ *
+ * Group commit is off by default. When it is off, {@link #isEnabled()} returns
+ * {@code false} and the caller commits each write itself.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class GroupCommitExecutor {
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Getter
+  @Value("${pet-park.group-commit.enabled:false}")
+  private boolean enabled;
+
+  @Value("${pet-park.group-commit.max-batch-size:32}")
+  private int maxBatchSize;
+
+  @Value("${pet-park.group-commit.max-wait:PT0.005S}")
+  private Duration maxWait;
+
+  @Value("${pet-park.group-commit.timeout:PT30S}")
+  private Duration timeout;
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+  private TransactionTemplate writeTransaction;
+  private DistributionSummary batchSizes;
+  private volatile boolean shuttingDown;
+
+  /*
+   * The queue and worker thread of one shard.
+   */
+  private record Lane(BlockingQueue<PendingWrite<?>> queue, Thread worker) {
+  }
+
+  /*
+   * One queued write and the future its caller is waiting on.
+   */
+  private record PendingWrite<T>(Supplier<T> work,
+      CompletableFuture<T> result) {
+
+    @SuppressWarnings("unchecked")
+    void complete(Object value) {
+      result.complete((T)value);
+    }
+  }
+
+  /**
+   * Set up the transaction template and batch size metric.
+   */
+  @PostConstruct
+  void init() {
+    writeTransaction = new TransactionTemplate(transactionManager);
+    batchSizes = DistributionSummary
+        .builder("pet.park.group.commit.batch.size")
+        .description("Writes per group-commit transaction")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Queue a write and wait for the batch that contains it to commit.
+   *
+   * @param <T> The result type.
+   * @param shard The shard the write goes to.
+   * @param work The write. It is run inside the batch transaction, so it must
+   *        not start its own.
+   * @return The result of the write.
+   * @throws DeadlineExceededException Thrown if the batch did not commit in
+   *         time.
+   * @throws RuntimeException The exception thrown by the write, if any.
+   */
+  public <T> T submit(String shard, Supplier<T> work) {
+    if(shuttingDown) {
+      throw new IllegalStateException("Group commit is shutting down.");
+    }
+
+    Deadline deadline = Deadline.current();
+    long startNanos = System.nanoTime();
+    CompletableFuture<T> result = new CompletableFuture<>();
+
+    lanes.computeIfAbsent(shard, this::startLane).queue()
+        .add(new PendingWrite<>(work, result));
+
+    try {
+      result.get(deadline == null ? timeout.toNanos()
+          : deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+    catch(TimeoutException e) {
+      /* If the cancel fails, the result has just arrived. */
+      if(result.cancel(false)) {
+        throw deadline == null
+            ? new DeadlineExceededException(TimeUnit.NANOSECONDS
+                .toMillis(System.nanoTime() - startNanos))
+            : deadline.exceeded();
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(false);
+      throw new IllegalStateException(
+          "Interrupted while waiting for group commit.", e);
+    }
+    catch(ExecutionException e) {
+      /* The exception is thrown by join() below. */
+    }
+
+    try {
+      return result.join();
+    }
+    catch(CompletionException e) {
+      if(e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+
+      throw e;
+    }
+  }
+
+  private Lane startLane(String shard) {
+    BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+    Thread worker = Thread.ofPlatform().daemon().name("group-commit-" + shard)
+        .start(() -> drainLoop(shard, queue));
+
+    return new Lane(queue, worker);
+  }
+
+  private void drainLoop(String shard,
+      BlockingQueue<PendingWrite<?>> queue) {
+    List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+
+    /* Every transaction on this thread goes to the lane's shard. */
+    ShardContext.set(shardRouter.isSharded() ? shard : null);
+
+    while(!Thread.currentThread().isInterrupted()) {
+      try {
+        batch.add(queue.take());
+
+        long deadline = System.nanoTime() + maxWait.toNanos();
+
+        while(batch.size() < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          PendingWrite<?> next = remaining > 0
+              ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+              : queue.poll();
+
+          if(next == null) {
+            break;
+          }
+
+          batch.add(next);
+        }
+
+        commit(batch);
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /*
+   * Results are only handed to the callers after the transaction commits. A
+   * caller must never see success for a write that is later rolled back.
+   */
+  private void commit(List<PendingWrite<?>> batch) {
+    /* The callers of cancelled writes have stopped waiting. */
+    batch.removeIf(write -> write.result().isDone());
+
+    if(batch.isEmpty()) {
+      return;
+    }
+
+    batchSizes.record(batch.size());
+
+    List<Object> results;
+
+    try {
+      results = writeTransaction.execute(status -> {
+        List<Object> values = new ArrayList<>(batch.size());
+
+        for(PendingWrite<?> write : batch) {
+          values.add(write.work().get());
+        }
+
+        return values;
+      });
+    }
+    catch(RuntimeException e) {
+      if(batch.size() == 1) {
+        batch.get(0).result().completeExceptionally(e);
+        return;
+      }
+
+      log.debug("Group commit of {} writes failed ({}). Retrying singly.",
+          batch.size(), e.toString());
+
+      for(PendingWrite<?> write : batch) {
+        retryAlone(write);
+      }
+
+      return;
+    }
+
+    for(int index = 0; index < batch.size(); index++) {
+      batch.get(index).complete(results.get(index));
+    }
+  }
+
+  private void retryAlone(PendingWrite<?> write) {
+    try {
+      write.complete(writeTransaction.execute(status -> write.work().get()));
+    }
+    catch(RuntimeException e) {
+      write.result().completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Stop the worker. Writes still on the queue are failed so that their
+   * callers do not wait forever.
+   */
+  @PreDestroy
+  public void shutdown() {
+    shuttingDown = true;
+
+    for(Lane lane : lanes.values()) {
+      lane.worker().interrupt();
+
+      PendingWrite<?> write;
+
+      while((write = lane.queue().poll()) != null) {
+        write.result().completeExceptionally(
+            new IllegalStateException("Group commit is shutting down."));
+      }
+    }
+  }
+}
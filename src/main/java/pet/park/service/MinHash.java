@@ -0,0 +1,149 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * This class computes MinHash signatures of string sets and splits them into
+ * bands for locality-sensitive hashing (LSH).
+ *
+ * The Jaccard similarity of two sets is the size of their intersection
+ * divided by the size of their union. A MinHash signature is a short array of
+ * numbers computed from a set such that the chance of two signatures agreeing
+ * at any position equals the Jaccard similarity of the two sets. So the
+ * fraction of positions where two signatures agree estimates the similarity
+ * without comparing the sets.
+ *
+ * For LSH, the signature is cut into <em>bands</em> of <em>rows</em>
+ * positions each, and each band is hashed to a bucket key. Sets that share a
+ * bucket key in any band are candidates. Two sets with similarity s become
+ * candidates with probability 1 - (1 - s^rows)^bands, which rises steeply
+ * around (1 / bands)^(1 / rows). With 16 bands of 4 rows that threshold is
+ * about 0.5.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Promineo
+ *
+ */
+public class MinHash {
+  private final int bands;
+  private final int rows;
+
+  /**
+   * Create a MinHash with a signature of bands * rows values.
+   *
+   * @param bands The number of LSH bands.
+   * @param rows The number of signature values per band.
+   */
+  public MinHash(int bands, int rows) {
+    this.bands = bands;
+    this.rows = rows;
+  }
+
+  /**
+   * @return The number of LSH bands.
+   */
+  public int bands() {
+    return bands;
+  }
+
+  /**
+   * Compute the signature of a set. The signature of an empty set has every
+   * value set to Long.MAX_VALUE.
+   *
+   * @param values The set.
+   * @return The signature.
+   */
+  public long[] signature(Set<String> values) {
+    long[] signature = new long[bands * rows];
+    Arrays.fill(signature, Long.MAX_VALUE);
+
+    for(String value : values) {
+      long base = hash(value);
+
+      for(int i = 0; i < signature.length; i++) {
+        long h = mix(base + i * 0x9e3779b97f4a7c15L) >>> 1;
+
+        if(h < signature[i]) {
+          signature[i] = h;
+        }
+      }
+    }
+
+    return signature;
+  }
+
+  /**
+   * Compute the bucket key of one band of a signature.
+   *
+   * @param signature The signature.
+   * @param band The band index (0 to bands - 1).
+   * @return The bucket key.
+   */
+  public long bandKey(long[] signature, int band) {
+    long key = band;
+
+    for(int i = band * rows; i < (band + 1) * rows; i++) {
+      key = mix(key * 31 + signature[i]);
+    }
+
+    return key;
+  }
+
+  /**
+   * Compute the exact Jaccard similarity of two sets.
+   *
+   * @param a The first set.
+   * @param b The second set.
+   * @return The similarity, from 0 (nothing shared) to 1 (equal). Two empty
+   *         sets have a similarity of 0.
+   */
+  public static double jaccard(Set<String> a, Set<String> b) {
+    if(a.isEmpty() && b.isEmpty()) {
+      return 0;
+    }
+
+    Set<String> smaller = a.size() <= b.size() ? a : b;
+    Set<String> larger = smaller == a ? b : a;
+    int shared = 0;
+
+    for(String value : smaller) {
+      if(larger.contains(value)) {
+        shared++;
+      }
+    }
+
+    return (double)shared / (a.size() + b.size() - shared);
+  }
+
+  /*
+   * 64-bit FNV-1a over the UTF-8 bytes.
+   */
+  private static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+
+    for(byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+
+    return hash;
+  }
+
+  /*
+   * The MurmurHash3 64-bit finalizer.
+   */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+
+    return hash;
+  }
+}
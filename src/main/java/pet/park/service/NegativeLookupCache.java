@@ -0,0 +1,173 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import pet.park.service.NotFoundException.Entity;
+
+/**
+ * This class remembers IDs that were recently looked up and not found, so
+ * that repeated requests for them (e.g. from a scraper walking through IDs)
+ * are answered with a 404 without going to the database.
+ * 
+ * The cache is a fixed array of slots. An ID is hashed to one slot, and a new
+ * entry simply replaces whatever was in its slot. So the cache never holds
+ * more than <em>pet-park.negative-cache.max-entries</em> entries, needs no
+ * locks and no eviction thread. Entries expire after
+ * <em>pet-park.negative-cache.ttl</em>.
+ * 
+ * When a contributor or pet park is saved, its entry is removed (see
+ * {@link #onChange(ParkChangeEvent)}). A lookup that started before the save
+ * could still find nothing and try to cache the miss after the entry was
+ * removed. To prevent that, every removal increments a generation number.
+ * A caller takes the generation before it looks in the database, and the
+ * miss is only cached if the generation has not changed since. The
+ * generation is read again after the miss is stored, and the miss is taken
+ * back out if a removal started in between: a removal increments the
+ * generation before it clears the slot, so it either finds the miss or is
+ * seen by the second read.
+ * 
+ * Saves on other application nodes are not seen, so an ID created elsewhere
+ * may return 404 here for up to the TTL.
+ * 
+ * @author Promineo
+ *
+ */
+@Component
+public class NegativeLookupCache {
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.negative-cache.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.negative-cache.max-entries:16384}")
+  private int maxEntries;
+
+  @Value("${pet-park.negative-cache.ttl:PT30S}")
+  private Duration ttl;
+
+  private final AtomicLong generation = new AtomicLong();
+
+  private AtomicReferenceArray<Miss> slots;
+  private int mask;
+  private long ttlNanos;
+  private Counter hits;
+
+  /*
+   * One cached miss.
+   */
+  private record Miss(Entity entity, long id, long expiresAt) {
+  }
+
+  /**
+   * Size the slot array once the settings are injected.
+   */
+  @PostConstruct
+  void init() {
+    int size = Integer.highestOneBit(Math.max(1, maxEntries - 1)) << 1;
+
+    slots = new AtomicReferenceArray<>(size);
+    mask = size - 1;
+    ttlNanos = ttl.toNanos();
+
+    hits = Counter.builder("pet.park.negative.cache.hits")
+        .description("Lookups answered as not found without a query")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @return The current generation. Take it before looking in the database
+   *         and pass it to {@link #recordMissing(NotFoundException, long)}.
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * Throw a {@link NotFoundException} if the ID is known not to exist.
+   * 
+   * @param entity The kind of thing looked up.
+   * @param id The ID.
+   * @throws NotFoundException Thrown if a miss for the ID is cached.
+   */
+  public void checkNotMissing(Entity entity, Long id) {
+    if(!enabled || id == null) {
+      return;
+    }
+
+    Miss miss = slots.get(slot(entity, id));
+
+    if(miss != null && miss.entity() == entity && miss.id() == id
+        && miss.expiresAt() - System.nanoTime() > 0) {
+      hits.increment();
+      throw new NotFoundException(entity, id);
+    }
+  }
+
+  /**
+   * Cache a miss, unless an entry has been removed since the lookup started.
+   * 
+   * @param notFound The exception thrown by the lookup.
+   * @param startGeneration The generation taken before the lookup.
+   */
+  public void recordMissing(NotFoundException notFound,
+      long startGeneration) {
+    if(!enabled || notFound.getId() == null
+        || generation.get() != startGeneration) {
+      return;
+    }
+
+    long id = notFound.getId();
+    int slot = slot(notFound.getEntity(), id);
+    Miss miss =
+        new Miss(notFound.getEntity(), id, System.nanoTime() + ttlNanos);
+
+    slots.set(slot, miss);
+
+    if(generation.get() != startGeneration) {
+      slots.compareAndSet(slot, miss, null);
+    }
+  }
+
+  /**
+   * Remove the misses for the contributor and pet park that were saved.
+   * 
+   * @param event The change event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(ParkChangeEvent event) {
+    generation.incrementAndGet();
+
+    invalidate(Entity.CONTRIBUTOR, event.getContributorId());
+    invalidate(Entity.PET_PARK, event.getPetParkId());
+  }
+
+  private void invalidate(Entity entity, Long id) {
+    if(id == null) {
+      return;
+    }
+
+    int slot = slot(entity, id);
+    Miss miss = slots.get(slot);
+
+    if(miss != null && miss.entity() == entity && miss.id() == id) {
+      slots.compareAndSet(slot, miss, null);
+    }
+  }
+
+  private int slot(Entity entity, long id) {
+    long hash = (id * 31 + entity.ordinal()) * 0x9e3779b97f4a7c15L;
+    return (int)(hash >>> 32) & mask;
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.NoSuchElementException;
+import lombok.Getter;
+
+/**
+ * This exception is thrown when a contributor or pet park does not exist. It
+ * is a {@link NoSuchElementException}, so the error handler turns it into a
+ * 404 (Not Found) like before.
+ * 
+ * Filling in a stack trace is by far the most expensive part of creating an
+ * exception, and the trace of a "not found" is never looked at. This
+ * exception does not record one, which keeps a burst of requests for IDs
+ * that do not exist cheap.
+ * 
+ * toString() reports the type as NoSuchElementException so that the message
+ * returned to clients does not change.
+ * 
+ * @author Promineo
+ *
+ */
+@Getter
+public class NotFoundException extends NoSuchElementException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The kind of thing that was not found.
+   */
+  public enum Entity {
+    CONTRIBUTOR, PET_PARK
+  }
+
+  private final Entity entity;
+  private final Long id;
+
+  /**
+   * Create the exception.
+   * 
+   * @param entity The kind of thing that was not found.
+   * @param id The ID that was looked up.
+   */
+  public NotFoundException(Entity entity, Long id) {
+    super(entity == Entity.CONTRIBUTOR
+        ? "Contributor with ID=" + id + " was not found."
+        : "Pet park with ID=" + id + " does not exist.");
+
+    this.entity = entity;
+    this.id = id;
+  }
+
+  /**
+   * Create the exception for a lookup by something other than the ID. The
+   * ID is then {@code null}, so the miss is not cached by
+   * {@link NegativeLookupCache}.
+   * 
+   * @param entity The kind of thing that was not found.
+   * @param field The field that was looked up, e.g. "email".
+   * @param value The value that was looked up.
+   */
+  public NotFoundException(Entity entity, String field, Object value) {
+    super((entity == Entity.CONTRIBUTOR ? "Contributor" : "Pet park")
+        + " with " + field + "=" + value + " was not found.");
+
+    this.entity = entity;
+    this.id = null;
+  }
+
+  /*
+   * No stack trace is recorded.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return NoSuchElementException.class.getName() + ": " + getMessage();
+  }
+}
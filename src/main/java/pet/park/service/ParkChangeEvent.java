@@ -0,0 +1,89 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+
+/**
+ * This class is a Spring application event that {@link ParkService} publishes
+ * whenever it changes a pet park or a contributor. Components that keep derived
+ * copies of the data (caches, indexes, etc.) listen for this event so that they
+ * can bring their copies up to date. Listeners normally use
+ * the @TransactionalEventListener annotation so that they only see the change
+ * after the transaction has been committed.
+ *
+ * The event carries the park or contributor as it was saved, so that a
+ * listener can bring its copy up to date at once, on the thread that made
+ * the change. The events are only seen on the node that made the change.
+ *
+ * Class-level annotations:
+ *
+ * @Value This is a Lombok annotation that makes all instance variables private
+ *        and final. It adds getters and .equals(), .hashCode() and
+ *        .toString() methods.
+ *
+ * @AllArgsConstructor The constructor is private. Events are created with
+ *                     the factory methods, which set the fields that go
+ *                     with each kind of change.
+ *
+ * @author Promineo
+ *
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ParkChangeEvent {
+  /**
+   * The kind of change that was made.
+   */
+  public enum ChangeType {
+    PARK_SAVED, CONTRIBUTOR_SAVED, CONTRIBUTOR_DELETED
+  }
+
+  ChangeType changeType;
+  Long contributorId;
+
+  /** The pet park ID. This is {@code null} for contributor changes. */
+  Long petParkId;
+
+  /** The park as it was saved. This is only set for PARK_SAVED. */
+  PetParkData petPark;
+
+  /**
+   * The contributor as it was saved. This is only set for
+   * CONTRIBUTOR_SAVED.
+   */
+  PetParkContributor contributor;
+
+  /**
+   * @param petPark The park as it was saved.
+   * @return A PARK_SAVED event.
+   */
+  public static ParkChangeEvent parkSaved(PetParkData petPark) {
+    return new ParkChangeEvent(ChangeType.PARK_SAVED,
+        petPark.getContributor().getContributorId(), petPark.getPetParkId(),
+        petPark, null);
+  }
+
+  /**
+   * @param contributor The contributor as it was saved.
+   * @return A CONTRIBUTOR_SAVED event.
+   */
+  public static ParkChangeEvent contributorSaved(
+      PetParkContributor contributor) {
+    return new ParkChangeEvent(ChangeType.CONTRIBUTOR_SAVED,
+        contributor.getContributorId(), null, null, contributor);
+  }
+
+  /**
+   * @param contributorId The ID of the deleted contributor.
+   * @return A CONTRIBUTOR_DELETED event.
+   */
+  public static ParkChangeEvent contributorDeleted(Long contributorId) {
+    return new ParkChangeEvent(ChangeType.CONTRIBUTOR_DELETED, contributorId,
+        null, null, null);
+  }
+}
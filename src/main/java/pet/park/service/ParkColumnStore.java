@@ -0,0 +1,617 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.PetParkData;
+import pet.park.dao.ContributorDao;
+import pet.park.dao.PetParkDao;
+import pet.park.dao.PetParkView;
+
+/**
+ * This class keeps the whole pet park catalog in memory as
+ * {@link ParkColumns}, so that a read-heavy node can answer park lookups and
+ * filtered park lists without a query. {@link ParkService} uses it for
+ * "GET /pet_park/park" with filters or pages and for
+ * {@link ParkService#retrievePetParkById(Long, Long)}. Until the store is
+ * loaded, ParkService reads from the database as before.
+ *
+ * The store is filled in two steps:
+ *
+ * <ol>
+ * <li>When the bean is created, the snapshot file written at the last
+ * shutdown (<em>pet-park.column-store.snapshot-file</em>) is memory-mapped
+ * and read, if it is younger than
+ * <em>pet-park.column-store.max-snapshot-age</em>. The snapshot may hold
+ * parks that were changed or deleted while the node was down, so it is
+ * only used for park lists whose caller accepts that
+ * ({@link ReadConsistency#STALE}).</li>
+ * <li>When the application is ready, the parks are read from all shards in
+ * the background and replace the snapshot. From then on the store answers
+ * lookups by ID and park lists.</li>
+ * </ol>
+ *
+ * Every <em>pet-park.column-store.reconcile-interval</em> after that, all
+ * parks are read again and compared with the store. This catches changes
+ * made by other nodes or outside the application, so a change made on
+ * another node shows up here within the interval. Each park that differs
+ * is replaced or removed and the indexes are told about it, as they are
+ * about a change made on this node. The number of parks corrected is
+ * counted by the pet.park.column.store.corrections counter.
+ *
+ * A change made on this node is applied from its {@link ParkChangeEvent}
+ * on the thread that made it, right after the commit and before
+ * ParkService returns, so a client that saves a park and then reads it sees
+ * its own write. The changed parks are also read again from the database on
+ * a background thread, as {@link ParkIndex} does, which keeps the store
+ * right when two requests change the same park at once. A reload that
+ * started before the latest change on this node to a park leaves that park
+ * alone (each change is numbered to tell).
+ *
+ * The columns are guarded by a read-write lock: any number of lookups run at
+ * the same time, and each change takes the write lock.
+ *
+ * This is the only copy of the catalog on the node. The {@link ParkIndex}es
+ * (and the park event stream, which is one) register with the store, which
+ * gives them every park once it is loaded from the database and then tells
+ * them about each park it adds, replaces or removes, in order. They keep
+ * only their own lookup structures and read the parks from here.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ParkColumnStore {
+
+  @Autowired
+  private PetParkDao petParkDao;
+
+  @Autowired
+  private ContributorDao contributorDao;
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.column-store.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.column-store.snapshot-file:"
+      + "${java.io.tmpdir}/pet-park/park-columns.bin}")
+  private Path snapshotFile;
+
+  @Value("${pet-park.column-store.max-snapshot-age:PT24H}")
+  private Duration maxSnapshotAge;
+
+  @Value("${pet-park.column-store.reconcile-interval:PT1M}")
+  private Duration reconcileInterval;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final ScheduledExecutorService updater =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("park-column-store").factory());
+
+  private ParkColumns columns = new ParkColumns(0);
+
+  /*
+   * The number of the latest change made on this node, and the number of
+   * the latest change to each park that a reload has not yet caught up with.
+   */
+  private final AtomicLong changeNumber = new AtomicLong();
+  private final ConcurrentMap<Long, Long> changedParks =
+      new ConcurrentHashMap<>();
+
+  /*
+   * Guarded by the write lock.
+   */
+  private final List<ParkIndex> indexes = new ArrayList<>();
+
+  private volatile boolean snapshotRead;
+  private volatile boolean loaded;
+
+  private Counter corrections;
+
+  /**
+   * Register the meters and read the snapshot, if there is one.
+   */
+  @PostConstruct
+  void init() {
+    Gauge.builder("pet.park.column.store.parks",
+        () -> read(() -> columns.liveRows()))
+        .description("Pet parks in the in-memory column store")
+        .register(meterRegistry);
+
+    corrections = Counter.builder("pet.park.column.store.corrections")
+        .description("Parks in the column store corrected by reconciliation")
+        .register(meterRegistry);
+
+    if(enabled) {
+      readSnapshot();
+    }
+  }
+
+  /**
+   * Load the parks from the database in the background once the
+   * application is ready, and reconcile them with the database from then on.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if(enabled) {
+      long period = Math.max(1, reconcileInterval.toMillis());
+
+      updater.scheduleWithFixedDelay(this::loadAll, 0, period,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Update the store after ParkService commits a change. The change is
+   * applied at once, and the parks are read again in the background.
+   *
+   * @param event The change event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(ParkChangeEvent event) {
+    if(!enabled) {
+      return;
+    }
+
+    Long contributorId = event.getContributorId();
+
+    switch(event.getChangeType()) {
+      case PARK_SAVED -> {
+        change(columns -> List.of(event.getPetParkId()),
+            columns -> columns.put(event.getPetPark()));
+        updater.execute(() -> reloadPark(event.getPetParkId()));
+      }
+      case CONTRIBUTOR_SAVED -> {
+        change(columns -> columns.petParkIdsOf(contributorId),
+            columns -> columns.replaceContributor(event.getContributor()));
+        updater.execute(() -> reloadContributor(contributorId));
+      }
+      case CONTRIBUTOR_DELETED -> {
+        change(columns -> columns.petParkIdsOf(contributorId),
+            columns -> columns.removeContributor(contributorId));
+        updater.execute(() -> reloadContributor(contributorId));
+      }
+    }
+  }
+
+  /**
+   * Keep an index up to date with the store. If the store is already
+   * loaded, the index is given every park at once.
+   *
+   * @param index The index.
+   */
+  void register(ParkIndex index) {
+    if(!enabled) {
+      log.warn("{} is not loaded because the park column store is disabled",
+          index.getClass().getSimpleName());
+      return;
+    }
+
+    write(() -> {
+      indexes.add(index);
+
+      if(loaded) {
+        index.load(columns.find(ParkFilter.NONE, 0, Integer.MAX_VALUE));
+      }
+    });
+  }
+
+  /**
+   * @return {@code true} once the parks have been loaded from the database.
+   */
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * @param consistency How fresh the parks must be.
+   * @return {@code true} if the store can answer a park list read with the
+   *         given consistency: never for STRONG, once it is loaded for
+   *         BOUNDED, and as soon as the snapshot has been read for STALE.
+   */
+  public boolean canServe(ReadConsistency consistency) {
+    return switch(consistency) {
+      case STRONG -> false;
+      case BOUNDED -> loaded;
+      case STALE -> loaded || snapshotRead;
+    };
+  }
+
+  /**
+   * Find a park by ID.
+   *
+   * @param petParkId The pet park ID.
+   * @return The park, or an empty Optional if the park is not in the store
+   *         or the store has not been loaded from the database yet.
+   */
+  public Optional<PetParkData> findById(Long petParkId) {
+    if(!loaded) {
+      return Optional.empty();
+    }
+
+    return read(() -> columns.get(petParkId));
+  }
+
+  /**
+   * Find parks by ID.
+   *
+   * @param petParkIds The pet park IDs.
+   * @return The parks that are in the store, in no particular order. The
+   *         list is empty if the store has not been loaded from the database
+   *         yet.
+   */
+  public List<PetParkData> findAllById(Collection<Long> petParkIds) {
+    if(!loaded) {
+      return List.of();
+    }
+
+    return read(() -> {
+      List<PetParkData> petParks = new ArrayList<>();
+
+      for(Long petParkId : petParkIds) {
+        columns.get(petParkId).ifPresent(petParks::add);
+      }
+
+      return petParks;
+    });
+  }
+
+  /**
+   * Find the parks that pass a filter, ordered by pet park ID.
+   *
+   * @param filter The filter.
+   * @param offset The number of matching parks to skip.
+   * @param limit The maximum number of parks to return.
+   * @return The matching parks.
+   */
+  public List<PetParkData> find(ParkFilter filter, long offset, int limit) {
+    return read(() -> columns.find(filter, offset, limit));
+  }
+
+  private <T> T read(Supplier<T> reader) {
+    lock.readLock().lock();
+
+    try {
+      return reader.get();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void write(Runnable writer) {
+    lock.writeLock().lock();
+
+    try {
+      writer.run();
+
+      if(columns.needsCompaction()) {
+        columns = columns.compact();
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Applies a change made on this node. The parks it touches are numbered so
+   * that an older reload does not undo it.
+   */
+  private void change(Function<ParkColumns, List<Long>> touched,
+      Consumer<ParkColumns> change) {
+    write(() -> {
+      List<Long> petParkIds = touched.apply(columns);
+      long number = changeNumber.incrementAndGet();
+
+      update(petParkIds, () -> change.accept(columns));
+      petParkIds.forEach(petParkId -> changedParks.put(petParkId, number));
+    });
+  }
+
+  /*
+   * Make a change to the columns and tell the indexes how each of the given
+   * parks changed. Called under the write lock. The indexes are only told
+   * once they have been given the loaded parks.
+   */
+  private void update(Collection<Long> petParkIds, Runnable change) {
+    if(!loaded || indexes.isEmpty()) {
+      change.run();
+      return;
+    }
+
+    Map<Long, PetParkData> previous = new HashMap<>();
+
+    for(Long petParkId : petParkIds) {
+      columns.get(petParkId)
+          .ifPresent(petPark -> previous.put(petParkId, petPark));
+    }
+
+    change.run();
+
+    for(Long petParkId : petParkIds) {
+      PetParkData before = previous.get(petParkId);
+      PetParkData after = columns.get(petParkId).orElse(null);
+
+      if(before != null || after != null) {
+        notifyIndexes(before, after);
+      }
+    }
+  }
+
+  /*
+   * True if a park was changed on this node after a reload took the given
+   * change number. Called under the write lock.
+   */
+  private boolean changedSince(Long petParkId, long number) {
+    Long changed = changedParks.get(petParkId);
+    return changed != null && changed > number;
+  }
+
+  /*
+   * Forget the changes that a reload with the given change number has seen.
+   * Called under the write lock.
+   */
+  private void caughtUp(Long petParkId, long number) {
+    changedParks.computeIfPresent(petParkId,
+        (id, changed) -> changed > number ? changed : null);
+  }
+
+  private void readSnapshot() {
+    try {
+      if(!Files.exists(snapshotFile)) {
+        return;
+      }
+
+      Instant savedAt = Files.getLastModifiedTime(snapshotFile).toInstant();
+
+      if(savedAt.plus(maxSnapshotAge).isBefore(Instant.now())) {
+        log.info("Ignoring park column snapshot {} from {}", snapshotFile,
+            savedAt);
+        return;
+      }
+
+      long startNanos = System.nanoTime();
+      ParkColumns snapshot = ParkColumns.readSnapshot(snapshotFile);
+
+      write(() -> columns = snapshot);
+      snapshotRead = true;
+
+      log.info("Read {} parks from column snapshot {} in {} ms",
+          snapshot.liveRows(), snapshotFile,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+    catch(IOException e) {
+      log.warn("Could not read park column snapshot: {}", e.toString());
+    }
+  }
+
+  private void loadAll() {
+    try {
+      long number = changeNumber.get();
+      List<PetParkView> views = shardRouter.gather(petParkDao::findAllViews);
+      ParkColumns loadedColumns = new ParkColumns(views.size());
+
+      for(PetParkView view : views) {
+        loadedColumns.put(new PetParkData(view));
+      }
+
+      write(() -> {
+        /* Keep the changes made on this node while the parks were read. */
+        for(Map.Entry<Long, Long> changed : changedParks.entrySet()) {
+          Long petParkId = changed.getKey();
+
+          if(changed.getValue() > number) {
+            columns.get(petParkId).ifPresentOrElse(loadedColumns::put,
+                () -> loadedColumns.remove(petParkId));
+          }
+          else {
+            caughtUp(petParkId, number);
+          }
+        }
+
+        if(loaded) {
+          corrections.increment(reconcile(loadedColumns));
+          return;
+        }
+
+        columns = loadedColumns;
+        loaded = true;
+
+        List<PetParkData> petParks =
+            indexes.isEmpty() ? List.of()
+                : columns.find(ParkFilter.NONE, 0, Integer.MAX_VALUE);
+
+        indexes.forEach(index -> index.load(petParks));
+        log.info("Loaded park column store with {} parks", views.size());
+      });
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not load park column store: {}", e.toString());
+    }
+  }
+
+  /*
+   * Replace the columns with ones read from the database and tell the
+   * indexes about each park that differs. Called under the write lock.
+   * Returns the number of parks that differed.
+   */
+  private int reconcile(ParkColumns loadedColumns) {
+    Map<Long, PetParkData> before = byId(columns);
+    Map<Long, PetParkData> after = byId(loadedColumns);
+    int corrected = 0;
+
+    columns = loadedColumns;
+
+    for(Long petParkId : before.keySet()) {
+      if(!after.containsKey(petParkId)) {
+        notifyIndexes(before.get(petParkId), null);
+        corrected++;
+      }
+    }
+
+    for(PetParkData petPark : after.values()) {
+      PetParkData previous = before.get(petPark.getPetParkId());
+
+      if(!Objects.equals(previous, petPark)) {
+        notifyIndexes(previous, petPark);
+        corrected++;
+      }
+    }
+
+    return corrected;
+  }
+
+  private void notifyIndexes(PetParkData previous, PetParkData petPark) {
+    indexes.forEach(index -> index.changed(previous, petPark));
+  }
+
+  private static Map<Long, PetParkData> byId(ParkColumns columns) {
+    Map<Long, PetParkData> petParks = new HashMap<>();
+
+    for(PetParkData petPark : columns.find(ParkFilter.NONE, 0,
+        Integer.MAX_VALUE)) {
+      petParks.put(petPark.getPetParkId(), petPark);
+    }
+
+    return petParks;
+  }
+
+  private void reloadPark(Long petParkId) {
+    try {
+      long number = changeNumber.get();
+      Optional<PetParkData> petPark = shardRouter.inShard(
+          shardRouter.shardForId(petParkId), true,
+          () -> petParkDao.findViewById(petParkId)).map(PetParkData::new);
+
+      write(() -> {
+        if(!changedSince(petParkId, number)) {
+          update(List.of(petParkId), () -> petPark.ifPresentOrElse(
+              columns::put, () -> columns.remove(petParkId)));
+          caughtUp(petParkId, number);
+        }
+      });
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not store pet park with ID={}: {}", petParkId,
+          e.toString());
+    }
+  }
+
+  /*
+   * If a park of the contributor was changed on this node after the reload
+   * started, the reload is dropped. The change queued a reload of its own.
+   */
+  private void reloadContributor(Long contributorId) {
+    try {
+      long number = changeNumber.get();
+      List<PetParkData> petParks = new ArrayList<>();
+
+      for(PetParkView view : shardRouter
+          .gather(() -> contributorDao.findViewsById(contributorId))) {
+        if(view.getPetParkId() != null) {
+          petParks.add(new PetParkData(view));
+        }
+      }
+
+      write(() -> {
+        Set<Long> petParkIds =
+            new HashSet<>(columns.petParkIdsOf(contributorId));
+
+        petParks.stream().map(PetParkData::getPetParkId)
+            .forEach(petParkIds::add);
+
+        if(petParkIds.stream()
+            .anyMatch(petParkId -> changedSince(petParkId, number))) {
+          return;
+        }
+
+        update(petParkIds, () -> {
+          columns.removeContributor(contributorId);
+          petParks.forEach(columns::put);
+        });
+        petParkIds.forEach(petParkId -> caughtUp(petParkId, number));
+      });
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not store parks of contributor with ID={}: {}",
+          contributorId, e.toString());
+    }
+  }
+
+  /**
+   * Stop the background thread and write the snapshot for the next start.
+   */
+  @PreDestroy
+  public void shutdown() {
+    updater.shutdownNow();
+
+    if(!enabled || !loaded) {
+      return;
+    }
+
+    try {
+      long startNanos = System.nanoTime();
+      int rows = read(() -> {
+        try {
+          columns.writeSnapshot(snapshotFile);
+          return columns.liveRows();
+        }
+        catch(IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+
+      log.info("Wrote {} parks to column snapshot {} in {} ms", rows,
+          snapshotFile,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+    catch(RuntimeException e) {
+      log.warn("Could not write park column snapshot: {}", e.toString());
+    }
+  }
+}
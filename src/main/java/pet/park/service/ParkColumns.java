@@ -0,0 +1,666 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import pet.park.controller.model.Canonical;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This class holds the pet park catalog in columns. Instead of one object per
+ * park, there is one array per field, and park number n is found at index n
+ * of every array (a "row"):
+ *
+ * <ul>
+ * <li>IDs are kept in long[] arrays. Each coordinate is kept as the
+ * unscaled value and scale of its BigDecimal (a long[] and an int[]), so it
+ * comes back exactly as it was stored.</li>
+ * <li>Country and state/province are dictionary-encoded. Each distinct value
+ * is stored once and each row holds its int code. A filter is evaluated once
+ * per dictionary entry and the rows are then checked by comparing ints.</li>
+ * <li>Amenities are a bitset. Each amenity has a bit number, and each row
+ * holds one long per 64 amenities.</li>
+ * <li>Park name, directions, contributor name and contributor email are
+ * stored as UTF-8 in one byte array (the string heap). Each row holds the
+ * offset and length of each of its strings.</li>
+ * </ul>
+ *
+ * This takes far less memory than PetParkData objects and a filter scans a
+ * few dense arrays. A row that is changed or removed is marked as deleted and
+ * a changed park is appended as a new row. {@link #compact()} drops the
+ * deleted rows and their strings.
+ *
+ * The columns can be written to a file with {@link #writeSnapshot(Path)} and
+ * read back with {@link #readSnapshot(Path)}. Both map the file into memory
+ * and copy the arrays in bulk, which takes milliseconds even for a large
+ * catalog.
+ *
+ * This class is not thread-safe. {@link ParkColumnStore} guards it with a
+ * read-write lock.
+ *
+ * @author Promineo
+ *
+ */
+public class ParkColumns {
+  private static final int MAGIC = 0x50504353; // "PPCS"
+  private static final int FORMAT_VERSION = 2;
+
+  /*
+   * The scale of a missing coordinate. A coordinate whose unscaled value does
+   * not fit in a long is rounded to the largest scale that fits.
+   */
+  private static final int NO_COORDINATE = Integer.MIN_VALUE;
+
+  private static final int PARK_NAME = 0;
+  private static final int DIRECTIONS = 1;
+  private static final int CONTRIBUTOR_NAME = 2;
+  private static final int CONTRIBUTOR_EMAIL = 3;
+  private static final int STRING_FIELDS = 4;
+
+  private int size;
+  private int deleted;
+
+  private long[] ids;
+  private long[] contributorIds;
+  private long[] latitudes;
+  private long[] longitudes;
+  private int[] latitudeScales;
+  private int[] longitudeScales;
+  private int[] countries;
+  private int[] states;
+  private long[][] amenityWords = new long[0][];
+  private int[] stringOffsets;
+  private int[] stringLengths;
+  private byte[] heap;
+  private int heapSize;
+
+  private final BitSet deletedRows = new BitSet();
+  private final Map<Long, Integer> rowsById = new HashMap<>();
+
+  private final Dictionary countryDictionary = new Dictionary();
+  private final Dictionary stateDictionary = new Dictionary();
+  private final Dictionary amenityDictionary = new Dictionary();
+
+  /**
+   * Create empty columns.
+   *
+   * @param capacity The number of rows to allocate room for. The columns
+   *        grow as needed.
+   */
+  public ParkColumns(int capacity) {
+    allocate(Math.max(16, capacity), 64 * Math.max(16, capacity));
+  }
+
+  /**
+   * @return The number of parks (rows that are not deleted).
+   */
+  public int liveRows() {
+    return size - deleted;
+  }
+
+  /**
+   * @return {@code true} if more than half the rows are deleted.
+   */
+  public boolean needsCompaction() {
+    return deleted > 1024 && deleted > liveRows();
+  }
+
+  /**
+   * Add a park, or replace it if a park with the same ID is present.
+   *
+   * @param petPark The park.
+   */
+  public void put(PetParkData petPark) {
+    remove(petPark.getPetParkId());
+    ensureCapacity(size + 1);
+
+    int row = size++;
+    GeoLocation geoLocation = petPark.getGeoLocation();
+    PetParkContributor contributor = petPark.getContributor();
+
+    ids[row] = petPark.getPetParkId();
+    contributorIds[row] = contributor.getContributorId();
+    BigDecimal latitude = toStored(
+        geoLocation == null ? null : geoLocation.getLatitude());
+    BigDecimal longitude = toStored(
+        geoLocation == null ? null : geoLocation.getLongitude());
+
+    latitudes[row] = latitude == null ? 0 : latitude.unscaledValue()
+        .longValueExact();
+    latitudeScales[row] = latitude == null ? NO_COORDINATE : latitude.scale();
+    longitudes[row] = longitude == null ? 0 : longitude.unscaledValue()
+        .longValueExact();
+    longitudeScales[row] =
+        longitude == null ? NO_COORDINATE : longitude.scale();
+    countries[row] = countryDictionary.encode(petPark.getCountry());
+    states[row] = stateDictionary.encode(petPark.getStateOrProvince());
+
+    for(String amenity : petPark.getAmenities()) {
+      int code = amenityDictionary.encode(amenity);
+
+      if(code / 64 >= amenityWords.length) {
+        amenityWords = Arrays.copyOf(amenityWords, code / 64 + 1);
+        amenityWords[code / 64] = new long[ids.length];
+      }
+
+      amenityWords[code / 64][row] |= 1L << code;
+    }
+
+    putString(row, PARK_NAME, petPark.getParkName());
+    putString(row, DIRECTIONS, petPark.getDirections());
+    putString(row, CONTRIBUTOR_NAME, contributor.getContributorName());
+    putString(row, CONTRIBUTOR_EMAIL, contributor.getContributorEmail());
+
+    rowsById.put(petPark.getPetParkId(), row);
+  }
+
+  /**
+   * Remove a park.
+   *
+   * @param petParkId The pet park ID.
+   */
+  public void remove(Long petParkId) {
+    Integer row = rowsById.remove(petParkId);
+
+    if(row != null) {
+      deletedRows.set(row);
+      deleted++;
+    }
+  }
+
+  /**
+   * Remove all parks of a contributor.
+   *
+   * @param contributorId The contributor ID.
+   */
+  public void removeContributor(Long contributorId) {
+    for(int row = 0; row < size; row++) {
+      if(contributorIds[row] == contributorId && !deletedRows.get(row)) {
+        remove(ids[row]);
+      }
+    }
+  }
+
+  /**
+   * @param contributorId The contributor ID.
+   * @return The IDs of the contributor's parks.
+   */
+  public List<Long> petParkIdsOf(Long contributorId) {
+    List<Long> petParkIds = new ArrayList<>();
+
+    for(int row = 0; row < size; row++) {
+      if(contributorIds[row] == contributorId && !deletedRows.get(row)) {
+        petParkIds.add(ids[row]);
+      }
+    }
+
+    return petParkIds;
+  }
+
+  /**
+   * Set the contributor name and email on all parks of a contributor.
+   *
+   * @param contributor The contributor.
+   */
+  public void replaceContributor(PetParkContributor contributor) {
+    for(Long petParkId : petParkIdsOf(contributor.getContributorId())) {
+      PetParkData petPark = toPetPark(rowsById.get(petParkId));
+
+      petPark.setContributor(contributor);
+      put(petPark);
+    }
+  }
+
+  /**
+   * Find a park by ID.
+   *
+   * @param petParkId The pet park ID.
+   * @return The park, or an empty Optional if it is not present.
+   */
+  public Optional<PetParkData> get(Long petParkId) {
+    Integer row = rowsById.get(petParkId);
+    return row == null ? Optional.empty() : Optional.of(toPetPark(row));
+  }
+
+  /**
+   * Find the parks that pass a filter, ordered by pet park ID.
+   *
+   * @param filter The filter.
+   * @param offset The number of matching parks to skip.
+   * @param limit The maximum number of parks to return.
+   * @return The matching parks.
+   */
+  public List<PetParkData> find(ParkFilter filter, long offset, int limit) {
+    boolean[] countryMatches = countryDictionary.matching(filter.country());
+    boolean[] stateMatches =
+        stateDictionary.matching(filter.stateOrProvince());
+    long[] amenityMask = new long[amenityWords.length];
+
+    for(String amenity : filter.amenities()) {
+      int code = amenityDictionary.code(amenity);
+
+      if(code < 0) {
+        return new ArrayList<>();
+      }
+
+      amenityMask[code / 64] |= 1L << code;
+    }
+
+    long[] matches = new long[Math.min(size, 1024)];
+    int count = 0;
+
+    for(int row = 0; row < size; row++) {
+      if(!deletedRows.get(row)
+          && matches(countryMatches, countries[row])
+          && matches(stateMatches, states[row])
+          && hasAmenities(row, amenityMask)) {
+        if(count == matches.length) {
+          matches = Arrays.copyOf(matches, count * 2);
+        }
+
+        matches[count++] = ids[row];
+      }
+    }
+
+    Arrays.sort(matches, 0, count);
+
+    long end = Math.min(count, offset + limit);
+    List<PetParkData> petParks = new ArrayList<>();
+
+    for(long index = offset; index < end; index++) {
+      petParks.add(toPetPark(rowsById.get(matches[(int)index])));
+    }
+
+    return petParks;
+  }
+
+  /**
+   * Copy the parks into new columns without the deleted rows.
+   *
+   * @return The compacted columns.
+   */
+  public ParkColumns compact() {
+    ParkColumns compacted = new ParkColumns(liveRows());
+
+    for(int row = 0; row < size; row++) {
+      if(!deletedRows.get(row)) {
+        compacted.put(toPetPark(row));
+      }
+    }
+
+    return compacted;
+  }
+
+  /**
+   * Write the columns to a file. The file is written under a temporary name
+   * and then renamed, so a crash never leaves a partial snapshot behind.
+   *
+   * @param file The snapshot file.
+   * @throws IOException Thrown if the file cannot be written.
+   */
+  public void writeSnapshot(Path file) throws IOException {
+    ParkColumns live = deleted == 0 ? this : compact();
+    byte[][] dictionaries = {live.countryDictionary.toBytes(),
+        live.stateDictionary.toBytes(), live.amenityDictionary.toBytes()};
+    int rows = live.size;
+    int words = live.amenityWords.length;
+    long length = 5 * Integer.BYTES + live.heapSize
+        + (long)rows * (4 * Long.BYTES + 4 * Integer.BYTES)
+        + (long)rows * words * Long.BYTES
+        + (long)rows * STRING_FIELDS * 2 * Integer.BYTES;
+
+    for(byte[] dictionary : dictionaries) {
+      length += dictionary.length;
+    }
+
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+    try(FileChannel channel = FileChannel.open(temp,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, length);
+
+      buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(rows).putInt(words)
+          .putInt(live.heapSize);
+
+      for(byte[] dictionary : dictionaries) {
+        buffer.put(dictionary);
+      }
+
+      putLongs(buffer, live.ids, rows);
+      putLongs(buffer, live.contributorIds, rows);
+      putLongs(buffer, live.latitudes, rows);
+      putLongs(buffer, live.longitudes, rows);
+      putInts(buffer, live.latitudeScales, rows);
+      putInts(buffer, live.longitudeScales, rows);
+      putInts(buffer, live.countries, rows);
+      putInts(buffer, live.states, rows);
+
+      for(long[] word : live.amenityWords) {
+        putLongs(buffer, word, rows);
+      }
+
+      putInts(buffer, live.stringOffsets, rows * STRING_FIELDS);
+      putInts(buffer, live.stringLengths, rows * STRING_FIELDS);
+      buffer.put(live.heap, 0, live.heapSize);
+      buffer.force();
+    }
+
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Read columns from a file written by {@link #writeSnapshot(Path)}.
+   *
+   * @param file The snapshot file.
+   * @return The columns.
+   * @throws IOException Thrown if the file cannot be read or is not a
+   *         snapshot in the current format.
+   */
+  public static ParkColumns readSnapshot(Path file) throws IOException {
+    try(FileChannel channel = FileChannel.open(file,
+        StandardOpenOption.READ)) {
+      MappedByteBuffer buffer =
+          channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+      if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        throw new IOException(file + " is not a park column snapshot");
+      }
+
+      int rows = buffer.getInt();
+      int words = buffer.getInt();
+      int heapSize = buffer.getInt();
+
+      ParkColumns columns = new ParkColumns(0);
+      columns.allocate(Math.max(16, rows), Math.max(64, heapSize));
+      columns.countryDictionary.read(buffer);
+      columns.stateDictionary.read(buffer);
+      columns.amenityDictionary.read(buffer);
+
+      getLongs(buffer, columns.ids, rows);
+      getLongs(buffer, columns.contributorIds, rows);
+      getLongs(buffer, columns.latitudes, rows);
+      getLongs(buffer, columns.longitudes, rows);
+      getInts(buffer, columns.latitudeScales, rows);
+      getInts(buffer, columns.longitudeScales, rows);
+      getInts(buffer, columns.countries, rows);
+      getInts(buffer, columns.states, rows);
+
+      columns.amenityWords = new long[words][];
+
+      for(int word = 0; word < words; word++) {
+        columns.amenityWords[word] = new long[columns.ids.length];
+        getLongs(buffer, columns.amenityWords[word], rows);
+      }
+
+      getInts(buffer, columns.stringOffsets, rows * STRING_FIELDS);
+      getInts(buffer, columns.stringLengths, rows * STRING_FIELDS);
+      buffer.get(columns.heap, 0, heapSize);
+
+      columns.size = rows;
+      columns.heapSize = heapSize;
+
+      for(int row = 0; row < rows; row++) {
+        columns.rowsById.put(columns.ids[row], row);
+      }
+
+      return columns;
+    }
+    catch(RuntimeException e) {
+      throw new IOException(file + " is damaged: " + e, e);
+    }
+  }
+
+  private PetParkData toPetPark(int row) {
+    PetParkData petPark = new PetParkData();
+
+    petPark.setPetParkId(ids[row]);
+    petPark.setParkName(getString(row, PARK_NAME));
+    petPark.setDirections(getString(row, DIRECTIONS));
+    petPark.setCountry(countryDictionary.decode(countries[row]));
+    petPark.setStateOrProvince(stateDictionary.decode(states[row]));
+    petPark.setGeoLocation(new GeoLocation(
+        toDecimal(latitudes[row], latitudeScales[row]),
+        toDecimal(longitudes[row], longitudeScales[row])));
+    petPark.setContributor(new PetParkContributor(contributorIds[row],
+        getString(row, CONTRIBUTOR_NAME), getString(row, CONTRIBUTOR_EMAIL)));
+
+    List<String> amenities = new ArrayList<>();
+
+    for(int word = 0; word < amenityWords.length; word++) {
+      long bits = amenityWords[word][row];
+
+      while(bits != 0) {
+        int code = word * 64 + Long.numberOfTrailingZeros(bits);
+        amenities.add(amenityDictionary.decode(code));
+        bits &= bits - 1;
+      }
+    }
+
+    petPark.setAmenities(Canonical.amenities(amenities));
+    return petPark;
+  }
+
+  private boolean hasAmenities(int row, long[] mask) {
+    for(int word = 0; word < mask.length; word++) {
+      if((amenityWords[word][row] & mask[word]) != mask[word]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /*
+   * A null array means that there is no filter on the column.
+   */
+  private static boolean matches(boolean[] codes, int code) {
+    return codes == null || (code >= 0 && codes[code]);
+  }
+
+  private void putString(int row, int field, String value) {
+    int slot = row * STRING_FIELDS + field;
+
+    if(value == null) {
+      stringLengths[slot] = -1;
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+    if(heapSize + bytes.length > heap.length) {
+      heap = Arrays.copyOf(heap,
+          Math.max(heap.length * 2, heapSize + bytes.length));
+    }
+
+    System.arraycopy(bytes, 0, heap, heapSize, bytes.length);
+    stringOffsets[slot] = heapSize;
+    stringLengths[slot] = bytes.length;
+    heapSize += bytes.length;
+  }
+
+  private String getString(int row, int field) {
+    int slot = row * STRING_FIELDS + field;
+    int length = stringLengths[slot];
+
+    return length < 0 ? null
+        : new String(heap, stringOffsets[slot], length,
+            StandardCharsets.UTF_8);
+  }
+
+  private void allocate(int rows, int heapBytes) {
+    ids = new long[rows];
+    contributorIds = new long[rows];
+    latitudes = new long[rows];
+    longitudes = new long[rows];
+    latitudeScales = new int[rows];
+    longitudeScales = new int[rows];
+    countries = new int[rows];
+    states = new int[rows];
+    stringOffsets = new int[rows * STRING_FIELDS];
+    stringLengths = new int[rows * STRING_FIELDS];
+    heap = new byte[heapBytes];
+  }
+
+  private void ensureCapacity(int rows) {
+    if(rows <= ids.length) {
+      return;
+    }
+
+    int capacity = Math.max(rows, ids.length * 2);
+
+    ids = Arrays.copyOf(ids, capacity);
+    contributorIds = Arrays.copyOf(contributorIds, capacity);
+    latitudes = Arrays.copyOf(latitudes, capacity);
+    longitudes = Arrays.copyOf(longitudes, capacity);
+    latitudeScales = Arrays.copyOf(latitudeScales, capacity);
+    longitudeScales = Arrays.copyOf(longitudeScales, capacity);
+    countries = Arrays.copyOf(countries, capacity);
+    states = Arrays.copyOf(states, capacity);
+    stringOffsets = Arrays.copyOf(stringOffsets, capacity * STRING_FIELDS);
+    stringLengths = Arrays.copyOf(stringLengths, capacity * STRING_FIELDS);
+
+    for(int word = 0; word < amenityWords.length; word++) {
+      amenityWords[word] = Arrays.copyOf(amenityWords[word], capacity);
+    }
+  }
+
+  /*
+   * Returns the coordinate as it will be stored: unchanged, unless its
+   * unscaled value needs more than a long.
+   */
+  private static BigDecimal toStored(BigDecimal value) {
+    if(value == null) {
+      return null;
+    }
+
+    BigDecimal stored = value;
+
+    while(stored.unscaledValue().bitLength() > 63) {
+      stored = stored.setScale(stored.scale() - 1, RoundingMode.HALF_UP);
+    }
+
+    return stored;
+  }
+
+  private static BigDecimal toDecimal(long unscaled, int scale) {
+    return scale == NO_COORDINATE ? null
+        : BigDecimal.valueOf(unscaled, scale);
+  }
+
+  private static void putLongs(ByteBuffer buffer, long[] values, int count) {
+    buffer.asLongBuffer().put(values, 0, count);
+    buffer.position(buffer.position() + count * Long.BYTES);
+  }
+
+  private static void putInts(ByteBuffer buffer, int[] values, int count) {
+    buffer.asIntBuffer().put(values, 0, count);
+    buffer.position(buffer.position() + count * Integer.BYTES);
+  }
+
+  private static void getLongs(ByteBuffer buffer, long[] values, int count) {
+    buffer.asLongBuffer().get(values, 0, count);
+    buffer.position(buffer.position() + count * Long.BYTES);
+  }
+
+  private static void getInts(ByteBuffer buffer, int[] values, int count) {
+    buffer.asIntBuffer().get(values, 0, count);
+    buffer.position(buffer.position() + count * Integer.BYTES);
+  }
+
+  /*
+   * Maps each distinct string to a small int code. Code -1 stands for null.
+   */
+  private static class Dictionary {
+    private final List<String> values = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    int encode(String value) {
+      if(value == null) {
+        return -1;
+      }
+
+      return codes.computeIfAbsent(value, key -> {
+        values.add(Canonical.string(key));
+        return values.size() - 1;
+      });
+    }
+
+    int code(String value) {
+      return codes.getOrDefault(value, -1);
+    }
+
+    String decode(int code) {
+      return code < 0 ? null : values.get(code);
+    }
+
+    /*
+     * Returns which codes match the wanted value (ignoring case), or null if
+     * there is no filter.
+     */
+    boolean[] matching(String wanted) {
+      if(Objects.isNull(wanted)) {
+        return null;
+      }
+
+      boolean[] matches = new boolean[values.size()];
+
+      for(int code = 0; code < matches.length; code++) {
+        matches[code] = wanted.equalsIgnoreCase(values.get(code));
+      }
+
+      return matches;
+    }
+
+    byte[] toBytes() {
+      byte[][] encoded = new byte[values.size()][];
+      int length = Integer.BYTES;
+
+      for(int code = 0; code < encoded.length; code++) {
+        encoded[code] = values.get(code).getBytes(StandardCharsets.UTF_8);
+        length += Integer.BYTES + encoded[code].length;
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(length).putInt(encoded.length);
+
+      for(byte[] value : encoded) {
+        buffer.putInt(value.length).put(value);
+      }
+
+      return buffer.array();
+    }
+
+    void read(ByteBuffer buffer) {
+      int count = buffer.getInt();
+
+      for(int code = 0; code < count; code++) {
+        byte[] value = new byte[buffer.getInt()];
+        buffer.get(value);
+        encode(new String(value, StandardCharsets.UTF_8));
+      }
+    }
+  }
+}
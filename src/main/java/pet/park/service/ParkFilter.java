@@ -0,0 +1,57 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.Objects;
+import java.util.Set;
+import pet.park.controller.model.PetParkData;
+
+/**
+ * This record holds the filters that may be applied to the pet park list
+ * ("GET /pet_park/park?country=...&stateOrProvince=...&amenity=..."). A
+ * null country or state, or an empty amenity set, means "no filter".
+ *
+ * Country and state are compared without regard to case, as MySQL's default
+ * collation does. Amenities are compared exactly, since they come from the
+ * fixed amenity table. A park matches if it has all of the amenities.
+ *
+ * @author Promineo
+ *
+ */
+public record ParkFilter(String country, String stateOrProvince,
+    Set<String> amenities) {
+
+  /**
+   * A filter that matches every park.
+   */
+  public static final ParkFilter NONE = new ParkFilter(null, null, Set.of());
+
+  public ParkFilter {
+    amenities = Objects.isNull(amenities) ? Set.of() : Set.copyOf(amenities);
+  }
+
+  /**
+   * @return {@code true} if the filter matches every park.
+   */
+  public boolean isEmpty() {
+    return Objects.isNull(country) && Objects.isNull(stateOrProvince)
+        && amenities.isEmpty();
+  }
+
+  /**
+   * Check a park against the filter. This is used when the parks are not
+   * in the {@link ParkColumnStore}.
+   *
+   * @param petPark The park.
+   * @return {@code true} if the park passes the filter.
+   */
+  public boolean matches(PetParkData petPark) {
+    return matches(country, petPark.getCountry())
+        && matches(stateOrProvince, petPark.getStateOrProvince())
+        && petPark.getAmenities().containsAll(amenities);
+  }
+
+  private static boolean matches(String wanted, String value) {
+    return Objects.isNull(wanted) || wanted.equalsIgnoreCase(value);
+  }
+}
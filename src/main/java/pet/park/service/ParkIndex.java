@@ -0,0 +1,178 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.annotation.Autowired;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.PetParkData;
+
+/**
+ * This is the base class of the in-memory pet park indexes (e.g.
+ * {@link SimilarParkIndex}). It tells the subclass when a park is added or
+ * removed, so that the subclass can maintain its own lookup structures. The
+ * parks themselves are not copied: they are kept once, in the
+ * {@link ParkColumnStore}, and a subclass reads them from there with
+ * {@link #findPark(Long)} and {@link #findParks(Collection)}.
+ *
+ * The index is registered with the store when it is created. Once the store
+ * has loaded the parks from the database, every park is added to the index,
+ * and after that the store reports each park that it changes. An index is
+ * therefore only loaded if the column store is enabled.
+ *
+ * All changes are made on one background thread per index, so the subclass
+ * methods {@link #added(PetParkData)}, {@link #removed(PetParkData)} and
+ * {@link #replaced(PetParkData, PetParkData)} are never called
+ * concurrently, and in the order the store made the changes. Lookups may
+ * run on any thread at the same time as a change, so subclasses keep their
+ * structures in concurrent maps.
+ *
+ * @author Promineo
+ *
+ */
+@Slf4j
+public abstract class ParkIndex {
+
+  @Autowired
+  private ParkColumnStore columnStore;
+
+  private final String name;
+  private final ExecutorService updater;
+
+  private volatile boolean loaded;
+
+  /**
+   * Create the index and its background thread.
+   *
+   * @param name The index name, used for the thread name and in log
+   *        messages.
+   */
+  protected ParkIndex(String name) {
+    this.name = name;
+    updater = Executors.newSingleThreadExecutor(
+        Thread.ofPlatform().daemon().name(name).factory());
+  }
+
+  /**
+   * @return {@code true} if the index is to be loaded and maintained.
+   */
+  protected abstract boolean isEnabled();
+
+  /**
+   * Called on the background thread after a park is added.
+   *
+   * @param petPark The park.
+   */
+  protected abstract void added(PetParkData petPark);
+
+  /**
+   * Called on the background thread after a park is removed.
+   *
+   * @param petPark The park as it was.
+   */
+  protected abstract void removed(PetParkData petPark);
+
+  /**
+   * Called on the background thread after a park that was already in the
+   * store is stored again. The park may or may not have changed. By default
+   * the old park is removed and the new one added.
+   *
+   * @param previous The park as it was.
+   * @param petPark The park as it is now.
+   */
+  protected void replaced(PetParkData previous, PetParkData petPark) {
+    removed(previous);
+    added(petPark);
+  }
+
+  /**
+   * @return {@code true} once the initial load has finished.
+   */
+  protected boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Find a park in the column store.
+   *
+   * @param petParkId The pet park ID.
+   * @return The park, or an empty Optional if it is not in the store.
+   */
+  protected Optional<PetParkData> findPark(Long petParkId) {
+    return columnStore.findById(petParkId);
+  }
+
+  /**
+   * Find parks in the column store.
+   *
+   * @param petParkIds The pet park IDs.
+   * @return The parks that are in the store, in no particular order.
+   */
+  protected List<PetParkData> findParks(Collection<Long> petParkIds) {
+    return columnStore.findAllById(petParkIds);
+  }
+
+  /**
+   * Register with the column store once the settings are injected.
+   */
+  @PostConstruct
+  void register() {
+    if(isEnabled()) {
+      columnStore.register(this);
+    }
+  }
+
+  /**
+   * Called by the store, while it is locked, once it has loaded the parks.
+   *
+   * @param petParks Every park.
+   */
+  void load(List<PetParkData> petParks) {
+    updater.execute(() -> {
+      petParks.forEach(this::added);
+      loaded = true;
+      log.info("Loaded {} with {} parks", name, petParks.size());
+    });
+  }
+
+  /**
+   * Called by the store, while it is locked, for each park it changes.
+   *
+   * @param previous The park before the change, or {@code null} if it is
+   *        new.
+   * @param petPark The park after the change, or {@code null} if it was
+   *        removed.
+   */
+  void changed(PetParkData previous, PetParkData petPark) {
+    updater.execute(() -> {
+      try {
+        if(previous == null) {
+          added(petPark);
+        }
+        else if(petPark == null) {
+          removed(previous);
+        }
+        else {
+          replaced(previous, petPark);
+        }
+      }
+      catch(RuntimeException e) {
+        log.warn("Could not index pet park with ID={} in {}: {}",
+            Objects.requireNonNullElse(petPark, previous).getPetParkId(),
+            name, e.toString());
+      }
+    });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    updater.shutdownNow();
+  }
+}
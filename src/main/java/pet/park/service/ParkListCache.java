@@ -0,0 +1,244 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.PetParkData;
+
+/**
+ * This class keeps a pre-serialized snapshot of the response to "GET
+ * /pet_park/park". The snapshot holds the JSON bytes (and a gzip-compressed
+ * copy) so that the controller can send them without querying the database,
+ * mapping entities to DTOs or running Jackson.
+ *
+ * The snapshot is never rebuilt on the request path. When {@link ParkService}
+ * commits a change it publishes a {@link ParkChangeEvent}. This class marks
+ * the snapshot as out of date and asks a single background thread to rebuild
+ * it. Several writes that arrive close together are folded into one rebuild.
+ *
+ * While a rebuild is pending, the old snapshot may still be served, but only
+ * for as long as the configured staleness bound
+ * (<em>pet-park.park-list-cache.max-staleness</em>). After that,
+ * {@link #current()} returns an empty Optional and the caller goes to the
+ * database.
+ *
+ * Writes made on other nodes publish no event here, so the bound is also
+ * applied to the age of the snapshot itself: a snapshot is never served
+ * more than max-staleness after its rebuild started. Once half of that has
+ * passed, the next request schedules a rebuild in the background, so a node
+ * that is being read keeps its snapshot fresh and one that is not does no
+ * work.
+ *
+ * Class-level annotations:
+ *
+ * @Component Tells Spring that this class is a Managed Bean.
+ *
+ * @Slf4j This is a Lombok annotation that sets up an SLF4J logger in an
+ *        instance variable named <em>log</em>.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ParkListCache {
+
+  @Autowired
+  private ParkService parkService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${pet-park.park-list-cache.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.park-list-cache.max-staleness:PT5S}")
+  private Duration maxStaleness;
+
+  @Value("${pet-park.park-list-cache.compress:true}")
+  private boolean compress;
+
+  private final ExecutorService rebuilder =
+      Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon()
+          .name("park-list-cache-rebuild").factory());
+
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+  private volatile Snapshot snapshot;
+
+  /*
+   * The number of committed writes seen so far. A snapshot is current if it
+   * was built after the last of these writes.
+   */
+  private volatile long writeVersion;
+
+  /*
+   * The time (System.nanoTime()) of the oldest write not yet reflected in the
+   * snapshot, or zero if the snapshot is current.
+   */
+  private volatile long staleSinceNanos;
+
+  /**
+   * This holds one serialized copy of the park list. The ETag is a hash of
+   * the JSON, as Spring's ShallowEtagHeaderFilter makes it, so it stays the
+   * same across restarts and nodes as long as the list does.
+   *
+   * @Getter Lombok adds getters for the instance variables.
+   */
+  @Getter
+  public static class Snapshot {
+    private final long version;
+    private final long builtNanos;
+    private final byte[] json;
+    private final byte[] gzip;
+    private final String etag;
+
+    Snapshot(long version, long builtNanos, byte[] json, byte[] gzip) {
+      this.version = version;
+      this.builtNanos = builtNanos;
+      this.json = json;
+      this.gzip = gzip;
+      this.etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+    }
+  }
+
+  /**
+   * Return the snapshot if it is current or it is within the staleness bound.
+   *
+   * @return The snapshot, or an empty Optional if the caller must read from
+   *         the database.
+   */
+  public Optional<Snapshot> current() {
+    Snapshot current = snapshot;
+
+    if(!enabled || current == null) {
+      return Optional.empty();
+    }
+
+    long age = System.nanoTime() - current.builtNanos;
+
+    if(age > maxStaleness.toNanos() / 2) {
+      scheduleRebuild();
+    }
+
+    if(age > maxStaleness.toNanos()) {
+      return Optional.empty();
+    }
+
+    if(current.version != writeVersion) {
+      long staleSince = staleSinceNanos;
+
+      if(staleSince != 0
+          && System.nanoTime() - staleSince > maxStaleness.toNanos()) {
+        return Optional.empty();
+      }
+    }
+
+    return Optional.of(current);
+  }
+
+  /**
+   * Build the first snapshot once the application is ready to take requests.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    scheduleRebuild();
+  }
+
+  /**
+   * Called after a transaction in {@link ParkService} commits a change. Every
+   * change can alter the park list (contributor names and emails are part of
+   * each park), so a rebuild is always scheduled.
+   *
+   * @param event The change event.
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onParkChange(ParkChangeEvent event) {
+    recordWrite();
+    scheduleRebuild();
+  }
+
+  private synchronized void recordWrite() {
+    writeVersion++;
+
+    if(staleSinceNanos == 0) {
+      staleSinceNanos = System.nanoTime();
+    }
+  }
+
+  private void scheduleRebuild() {
+    if(enabled && rebuildScheduled.compareAndSet(false, true)) {
+      rebuilder.execute(this::rebuild);
+    }
+  }
+
+  /*
+   * Runs on the background thread. The flag is cleared before reading so that
+   * a write that lands during the rebuild schedules another one.
+   */
+  private void rebuild() {
+    rebuildScheduled.set(false);
+
+    long version = writeVersion;
+    long startNanos = System.nanoTime();
+
+    try {
+      List<PetParkData> parks = parkService.retrieveAllPetParks();
+      byte[] json = objectMapper.writeValueAsBytes(parks);
+      byte[] gzip = compress ? gzip(json) : null;
+
+      install(new Snapshot(version, startNanos, json, gzip));
+
+      log.debug("Rebuilt park list snapshot version {} ({} parks, {} bytes)",
+          version, parks.size(), json.length);
+    }
+    catch(Exception e) {
+      log.warn("Park list snapshot rebuild failed: {}", e.toString());
+    }
+  }
+
+  private synchronized void install(Snapshot newSnapshot) {
+    snapshot = newSnapshot;
+
+    /*
+     * Any write that is not in the new snapshot happened after the rebuild
+     * started, so the start time is a safe (slightly pessimistic) bound.
+     */
+    staleSinceNanos =
+        newSnapshot.version == writeVersion ? 0 : newSnapshot.builtNanos;
+  }
+
+  private byte[] gzip(byte[] json) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+
+    try(GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+      gzipOut.write(json);
+    }
+
+    return out.toByteArray();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    rebuilder.shutdownNow();
+  }
+}
@@ -2,21 +2,44 @@
 
 package pet.park.service;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import pet.park.controller.error.InvalidParameterValueException;
 import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.ParkFields;
+import pet.park.controller.model.ParkFields.Field;
 import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+import pet.park.controller.model.PopularPetParkData;
+import pet.park.controller.model.SimilarPetParkData;
+import pet.park.controller.model.TopContributorData;
 import pet.park.dao.AmenityDao;
 import pet.park.dao.ContributorDao;
+import pet.park.dao.Deadline;
+import pet.park.dao.OwnedPetPark;
 import pet.park.dao.PetParkDao;
+import pet.park.dao.PetParkView;
 import pet.park.entity.Amenity;
 import pet.park.entity.Contributor;
 import pet.park.entity.PetPark;
+import pet.park.service.NotFoundException.Entity;
 
 /**
  * This class sits between the controller (I/O layer) and the data (DAO) layer.
@@ -29,6 +52,25 @@ import pet.park.entity.PetPark;
  * thrown, the transaction is rolled back. If no exception is thrown the
  * transaction is committed.
  * 
+ * Open session in view is turned off (spring.jpa.open-in-view is false), so
+ * the entity manager and its connection are closed when the transaction
+ * ends, before the response is written. A lazy association that is touched
+ * after that throws a LazyInitializationException instead of quietly
+ * running another query. Entities are therefore converted into DTOs inside
+ * the transaction, and each method loads what the DTO needs up front:
+ * 
+ * <ul>
+ * <li>The read methods use projection queries, so no entities are loaded.
+ * </li>
+ * <li>saveContributor() and deleteContributorById() load the contributor
+ * with its parks and their amenities ("Contributor.parks").</li>
+ * <li>Merging a duplicate park loads the park with its contributor and
+ * amenities ("PetPark.detail").</li>
+ * <li>Updating a park loads the park and its contributor in one query (see
+ * PetParkDao.findOwnedById()). Its amenities are read in the same
+ * transaction.</li>
+ * </ul>
+ * 
  * Class-level annotations:
  * 
  * @Service Tells Spring that this class is a Managed Bean. With a Managed Bean,
@@ -54,6 +96,76 @@ public class ParkService {
   @Autowired
   private ContributorDao contributorDao;
 
+  /**
+   * The event publisher is used to tell interested components (like the
+   * {@link ParkListCache}) that data has changed.
+   */
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private GroupCommitExecutor groupCommit;
+
+  @Autowired
+  private ContributorEmailIndex contributorEmailIndex;
+
+  /**
+   * The shard router decides which database a park is stored in. Pet park
+   * writes and ID lookups go to one shard, and lists are gathered from all of
+   * them. Contributor writes go to the primary shard.
+   */
+  @Autowired
+  private ShardRouter shardRouter;
+
+  /**
+   * IDs that were recently looked up and not found. A repeated lookup of such
+   * an ID is answered without a query.
+   */
+  @Autowired
+  private NegativeLookupCache negativeCache;
+
+  @Autowired
+  private SimilarParkIndex similarParkIndex;
+
+  @Autowired
+  private DuplicateParkIndex duplicateParkIndex;
+
+  /**
+   * The in-memory copy of the park catalog. Once it is loaded, park lookups
+   * and filtered park lists are answered from it without a query.
+   */
+  @Autowired
+  private ParkColumnStore columnStore;
+
+  @Autowired
+  private ContributorLeaderboard leaderboard;
+
+  @Autowired
+  private ParkViewCounter viewCounter;
+
+  private SingleFlight<Long, ContributorData> contributorLoads;
+  private SingleFlight<ParkKey, PetParkData> petParkLoads;
+
+  /*
+   * Key for coalescing pet park lookups. Records supply equals() and
+   * hashCode().
+   */
+  private record ParkKey(Long contributorId, Long parkId) {
+  }
+
+  /**
+   * Set up the single-flight groups once Spring has injected the
+   * dependencies.
+   */
+  @PostConstruct
+  void init() {
+    contributorLoads = new SingleFlight<>("contributor", meterRegistry);
+    petParkLoads = new SingleFlight<>("petPark", meterRegistry);
+  }
+
   /**
    * Save the contributor in the contributor table. If the
    * <em>contributorID</em> is null, the contributor is added to the table. If
@@ -64,14 +176,64 @@ public class ParkService {
    *         (<em>contributorId</em>) set.
    * @throws NoSuchElementException Thrown if the contributor with the given ID
    *         is not found.
+   * @throws DuplicateKeyException Thrown if another contributor already has
+   *         the email.
    */
   @Transactional(readOnly = false)
   public ContributorData saveContributor(ContributorData contributorData) {
     Long contributorId = contributorData.getContributorId();
+    checkEmailNotTaken(contributorData.getContributorEmail(), contributorId);
+
     Contributor contributor = findOrCreateContributor(contributorId);
 
     setFieldsInContributor(contributor, contributorData);
-    return new ContributorData(contributorDao.save(contributor));
+    Contributor dbContributor = saveAndFlushContributor(contributor);
+    contributorEmailIndex.add(dbContributor.getContributorEmail());
+
+    eventPublisher.publishEvent(ParkChangeEvent
+        .contributorSaved(new PetParkContributor(dbContributor)));
+
+    return new ContributorData(dbContributor);
+  }
+
+  /**
+   * Check that no other contributor has the email. The Bloom filter in
+   * {@link ContributorEmailIndex} answers most new emails without a query. If
+   * the filter cannot rule the email out, the indexed email lookup is used.
+   * This gives a fast 409 (Conflict) before any insert is attempted.
+   * 
+   * @param email The email to check.
+   * @param contributorId The ID of the contributor being saved, or
+   *        {@code null} for a new contributor.
+   * @throws DuplicateKeyException Thrown if another contributor has the
+   *         email.
+   */
+  private void checkEmailNotTaken(String email, Long contributorId) {
+    if(Objects.isNull(email) || contributorEmailIndex.isDefinitelyNew(email)) {
+      return;
+    }
+
+    contributorDao.findByContributorEmail(email)
+        .filter(existing -> !existing.getContributorId().equals(contributorId))
+        .ifPresent(existing -> {
+          throw new DuplicateKeyException(
+              "A contributor with email " + email + " already exists.");
+        });
+  }
+
+  /*
+   * The insert is flushed here so that a unique index violation (two requests
+   * racing with the same new email) is reported as a 409 instead of failing
+   * at commit.
+   */
+  private Contributor saveAndFlushContributor(Contributor contributor) {
+    try {
+      return contributorDao.saveAndFlush(contributor);
+    }
+    catch(DataIntegrityViolationException e) {
+      throw new DuplicateKeyException("A contributor with email "
+          + contributor.getContributorEmail() + " already exists.", e);
+    }
   }
 
   /**
@@ -105,7 +267,7 @@ public class ParkService {
       contributor = new Contributor();
     }
     else {
-      contributor = findContributorById(contributorId);
+      contributor = findContributorWithParksById(contributorId);
     }
 
     return contributor;
@@ -121,8 +283,26 @@ public class ParkService {
    */
   private Contributor findContributorById(Long contributorId) {
     return contributorDao.findById(contributorId)
-        .orElseThrow(() -> new NoSuchElementException(
-            "Contributor with ID=" + contributorId + " was not found."));
+        .orElseThrow(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId));
+  }
+
+  /**
+   * Find the contributor with the given ID together with its parks and their
+   * amenities (the "Contributor.parks" fetch plan). This is used where the
+   * contributor is returned as a ContributorData object or deleted along
+   * with its parks, so that the parks are read in one query inside the
+   * transaction rather than lazily.
+   * 
+   * @param contributorId The contributor ID.
+   * @return A Contributor entity object if successful.
+   * @throws NoSuchElementException Thrown if the contributor with the matching
+   *         contributor ID is not found.
+   */
+  private Contributor findContributorWithParksById(Long contributorId) {
+    return contributorDao.findWithParksByContributorId(contributorId)
+        .orElseThrow(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId));
   }
 
   /**
@@ -130,43 +310,127 @@ public class ParkService {
    * 
    * @return The list of contributors.
    */
-  @Transactional(readOnly = true)
   public List<ContributorData> retrieveAllContributors() {
     /*
-     * Uncomment the code below to retrieve all contributors using traditional
-     * (non-functional) coding techniques. An enhanced for loop is used to
-     * convert from the list of Contributor to the list of ContributorData
-     * required by the method return type.
+     * The rows come from a read-only projection query (no entities are
+     * loaded), run on every shard. Once they are sorted by contributor ID,
+     * consecutive rows with the same contributor ID belong to one
+     * contributor. A contributor's parks may be on several shards.
      */
-    // List<Contributor> contributors = contributorDao.findAll();
-    // List<ContributorData> response = new LinkedList<>();
-    //
-    // for(Contributor contributor : contributors) {
-    // response.add(new ContributorData(contributor));
-    // }
-    //
-    // return response;
+    List<PetParkView> views = shardRouter.gather(contributorDao::findAllViews);
+    Deadline.checkCurrent();
+    views.sort(Comparator.comparing(PetParkView::getContributorId));
 
-    // @formatter:off
-    return contributorDao.findAll() // Retrieves a List of Contributor
-        .stream()                   // Converts to a Stream of Contributor
-        .map(ContributorData::new)  // Converts to a Stream of ContributorData
-        .toList();                  // Converts to a List of ContributorData
-    // @formatter:on
+    List<ContributorData> response = new LinkedList<>();
+    List<PetParkView> group = new ArrayList<>();
+
+    for(PetParkView view : views) {
+      if(!group.isEmpty() && !Objects.equals(view.getContributorId(),
+          group.get(0).getContributorId())) {
+        response.add(new ContributorData(group));
+        group.clear();
+      }
+
+      group.add(view);
+    }
+
+    if(!group.isEmpty()) {
+      response.add(new ContributorData(group));
+    }
+
+    return response;
+  }
+
+  /**
+   * This method returns the contributors with the most parks. The counts
+   * come from the in-memory {@link ContributorLeaderboard}, so no contributor
+   * or park is loaded.
+   * 
+   * @param k The number of contributors.
+   * @return Up to <em>k</em> contributors, most parks first.
+   */
+  public List<TopContributorData> retrieveTopContributors(int k) {
+    return leaderboard.top(k);
   }
 
   /**
    * This method retrieves a specific contributor given the contributor ID
-   * (primary key value).
+   * (primary key value). Concurrent requests for the same contributor share a
+   * single database load (see {@link SingleFlight}), which is why this method
+   * manages its own transactions instead of using @Transactional. IDs that
+   * were recently not found are answered from the {@link NegativeLookupCache}.
+   * 
+   * The contributor row, the contributor's parks and the parks' amenities are
+   * read by separate queries that run at the same time (see
+   * {@link ShardScope}), so a contributor with many parks costs the slowest
+   * of the three queries rather than their sum. The parks and amenities are
+   * read from every shard. The results are joined in memory by pet park ID.
    * 
    * @param contributorId The ID of the contributor to retrieve.
    * @return The contributor data.
    * @throws NoSuchElementException Thrown if the contributor ID is invalid.
    */
-  @Transactional(readOnly = true)
   public ContributorData retrieveContributorById(Long contributorId) {
-    Contributor contributor = findContributorById(contributorId);
-    return new ContributorData(contributor);
+    negativeCache.checkNotMissing(Entity.CONTRIBUTOR, contributorId);
+    long generation = negativeCache.generation();
+
+    try {
+      return loadContributorById(contributorId);
+    }
+    catch(NotFoundException e) {
+      negativeCache.recordMissing(e, generation);
+      throw e;
+    }
+  }
+
+  private ContributorData loadContributorById(Long contributorId) {
+    return contributorLoads.load(contributorId, () -> {
+      try(ShardScope scope = shardRouter.openScope()) {
+        Supplier<Optional<PetParkView>> contributor =
+            scope.fork(shardRouter.primaryShard(),
+                () -> contributorDao.findContributorViewById(contributorId));
+        Supplier<List<PetParkView>> parks = scope.forkAll(
+            () -> petParkDao.findViewsByContributorId(contributorId));
+        Supplier<List<PetParkView>> amenities = scope.forkAll(
+            () -> petParkDao.findAmenityViewsByContributorId(contributorId));
+
+        scope.join();
+
+        return new ContributorData(
+            contributor.get().orElseThrow(
+                () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId)),
+            parks.get(), amenitiesByPark(amenities.get()));
+      }
+    });
+  }
+
+  private Map<Long, Set<String>> amenitiesByPark(List<PetParkView> views) {
+    Map<Long, Set<String>> amenities = new HashMap<>();
+
+    for(PetParkView view : views) {
+      amenities.put(view.getPetParkId(), view.amenitySet());
+    }
+
+    return amenities;
+  }
+
+  /**
+   * This method retrieves the contributor with the given email. The lookup
+   * uses the unique index on the email column of the primary shard. The
+   * contributor is then loaded with {@link #retrieveContributorById(Long)},
+   * which gathers the contributor's parks from every shard.
+   * 
+   * @param email The email of the contributor to retrieve.
+   * @return The contributor data.
+   * @throws NoSuchElementException Thrown if no contributor has the email.
+   */
+  public ContributorData retrieveContributorByEmail(String email) {
+    Long contributorId = contributorDao.findByContributorEmail(email)
+        .map(Contributor::getContributorId)
+        .orElseThrow(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, "email", email));
+
+    return retrieveContributorById(contributorId);
   }
 
   /**
@@ -176,8 +440,11 @@ public class ParkService {
    */
   @Transactional(readOnly = false)
   public void deleteContributorById(Long contributorId) {
-    Contributor contributor = findContributorById(contributorId);
+    Contributor contributor = findContributorWithParksById(contributorId);
     contributorDao.delete(contributor);
+
+    eventPublisher
+        .publishEvent(ParkChangeEvent.contributorDeleted(contributorId));
   }
 
   /**
@@ -193,18 +460,174 @@ public class ParkService {
    * The pet park object must be set in each amenity object and the amenity must
    * be added to the pet park's set of amenities.
    * 
+   * A new park is stored on the shard for its country. An existing park is
+   * updated on the shard that holds it (see {@link ShardRouter}).
+   * 
+   * If group commit is enabled (see {@link GroupCommitExecutor}), the save is
+   * queued and committed together with other saves in one transaction.
+   * Otherwise it is committed in its own transaction. Either way the
+   * transaction is managed here rather than with @Transactional, because the
+   * shard must be chosen before the transaction starts and a caller waiting
+   * on the group-commit queue must not hold a connection.
+   * 
    * @param contributorId The ID of the contributor to add the pet park to.
    * @param petParkData The pet park data to insert or create.
    * @return The resulting pet park and contributor.
+   * @throws NoSuchElementException Thrown if the contributor or the pet park
+   *         to update does not exist.
+   * @throws IllegalStateException Thrown if the pet park to update belongs to
+   *         another contributor.
    */
-  @Transactional(readOnly = false)
   public PetParkData savePetPark(Long contributorId, PetParkData petParkData) {
-    Contributor contributor = findContributorById(contributorId);
+    Long petParkId = petParkData.getPetParkId();
+    String shard = Objects.isNull(petParkId)
+        ? shardRouter.shardForCountry(petParkData.getCountry())
+        : shardRouter.shardForId(petParkId);
+
+    if(groupCommit.isEnabled()) {
+      return groupCommit.submit(shard,
+          () -> applyPetPark(contributorId, petParkData));
+    }
+
+    return shardRouter.inShard(shard, false,
+        () -> applyPetPark(contributorId, petParkData));
+  }
+
+  /**
+   * Save a new pet park after checking that it is not a near duplicate of a
+   * park that already exists (see {@link DuplicateParkIndex}). The check is
+   * made in memory, before any transaction is started. What happens when
+   * duplicates are found depends on the policy:
+   * 
+   * <ul>
+   * <li>REJECT - a DuplicateKeyException is thrown (409 Conflict).</li>
+   * <li>MERGE - the park is merged into the closest duplicate that the
+   * contributor owns. If the contributor owns none of them, the park is
+   * treated as with WARN, since a contributor may only change their own
+   * parks.</li>
+   * <li>WARN - the park is saved and the duplicates are reported.</li>
+   * </ul>
+   * 
+   * An update (a pet park ID is given) is not checked.
+   * 
+   * @param contributorId The ID of the contributor to add the pet park to.
+   * @param petParkData The pet park data to insert or create.
+   * @param policy What to do if duplicates are found.
+   * @return The saved or merged park and the IDs of the duplicates.
+   * @throws DuplicateKeyException Thrown if duplicates are found and the
+   *         policy is REJECT.
+   */
+  public PetParkSaveResult savePetPark(Long contributorId,
+      PetParkData petParkData, DuplicatePolicy policy) {
+    List<PetParkData> duplicates = List.of();
+
+    if(Objects.isNull(petParkData.getPetParkId())) {
+      duplicates = duplicateParkIndex.findDuplicates(petParkData);
+    }
+
+    List<Long> duplicateIds =
+        duplicates.stream().map(PetParkData::getPetParkId).toList();
+
+    if(!duplicateIds.isEmpty() && policy == DuplicatePolicy.REJECT) {
+      throw new DuplicateKeyException("Pet park " + petParkData.getParkName()
+          + " looks like existing pet park(s) with ID=" + duplicateIds);
+    }
+
+    if(policy == DuplicatePolicy.MERGE) {
+      Optional<Long> ownedId = duplicates.stream()
+          .filter(park -> Objects.nonNull(park.getContributor())
+              && Objects.equals(park.getContributor().getContributorId(),
+                  contributorId))
+          .map(PetParkData::getPetParkId).findFirst();
+
+      if(ownedId.isPresent()) {
+        PetParkData merged =
+            mergePetPark(contributorId, ownedId.get(), petParkData);
+
+        return new PetParkSaveResult(merged, duplicateIds, true);
+      }
+    }
+
+    return new PetParkSaveResult(savePetPark(contributorId, petParkData),
+        duplicateIds, false);
+  }
+
+  /*
+   * Merges a new park into an existing one: the new amenities are added and
+   * any field the existing park lacks is taken from the new park. The
+   * existing park keeps its name and owner, which must be the contributor
+   * (the in-memory index may be a moment behind, so this is checked again).
+   */
+  private PetParkData mergePetPark(Long contributorId, Long existingId,
+      PetParkData petParkData) {
+    return shardRouter.inShard(shardRouter.shardForId(existingId), false,
+        () -> {
+          /* The contributor submitting the park must exist. */
+          findContributorById(contributorId);
+
+          PetPark petPark = petParkDao.findDetailByPetParkId(existingId)
+              .orElseThrow(
+                  () -> new NotFoundException(Entity.PET_PARK, existingId));
+
+          checkOwner(petPark.getContributor().getContributorId(),
+              contributorId, existingId);
+
+          if(Objects.isNull(petPark.getDirections())) {
+            petPark.setDirections(petParkData.getDirections());
+          }
+
+          if(Objects.isNull(petPark.getStateOrProvince())) {
+            petPark.setStateOrProvince(petParkData.getStateOrProvince());
+          }
+
+          if(Objects.isNull(petPark.getCountry())) {
+            petPark.setCountry(petParkData.getCountry());
+          }
+
+          if(!GeoMath.isComplete(petPark.getGeoLocation())) {
+            petPark.setGeoLocation(petParkData.getGeoLocation());
+          }
+
+          for(Amenity amenity : amenityDao
+              .findAllByAmenityIn(petParkData.getAmenities())) {
+            if(petPark.getAmenities().add(amenity)) {
+              amenity.getPetParks().add(petPark);
+            }
+          }
+
+          PetParkData saved = new PetParkData(petParkDao.save(petPark));
+
+          eventPublisher.publishEvent(ParkChangeEvent.parkSaved(saved));
+          return saved;
+        });
+  }
+
+  /*
+   * Does the work of savePetPark(). It must be called inside a transaction.
+   */
+  private PetParkData applyPetPark(Long contributorId,
+      PetParkData petParkData) {
+    Long petParkId = petParkData.getPetParkId();
+    Contributor contributor;
+    PetPark petPark;
+
+    if(Objects.isNull(petParkId)) {
+      contributor = findContributorById(contributorId);
+      petPark = new PetPark();
+    }
+    else {
+      /*
+       * The contributor and the park are loaded together, and the park must
+       * belong to the contributor.
+       */
+      OwnedPetPark owned = findOwnedPetPark(contributorId, petParkId);
+      contributor = owned.contributor();
+      petPark = owned.petPark();
+    }
 
     Set<Amenity> amenities =
         amenityDao.findAllByAmenityIn(petParkData.getAmenities());
 
-    PetPark petPark = findOrCreatePetPark(petParkData.getPetParkId());
     setPetParkFields(petPark, petParkData);
 
     petPark.setContributor(contributor);
@@ -215,8 +638,10 @@ public class ParkService {
       petPark.getAmenities().add(amenity);
     }
 
-    PetPark dbPetPark = petParkDao.save(petPark);
-    return new PetParkData(dbPetPark);
+    PetParkData saved = new PetParkData(petParkDao.save(petPark));
+
+    eventPublisher.publishEvent(ParkChangeEvent.parkSaved(saved));
+    return saved;
   }
 
   /**
@@ -236,82 +661,303 @@ public class ParkService {
   }
 
   /**
-   * If the pet park ID is not {@code null}, find the pet park object from the
-   * pet park table. If the pet park ID is {@code null} return an empty pet park
-   * object.
+   * Load a pet park and its contributor for an update. Both are read in one
+   * query (see {@link PetParkDao#findOwnedById(Long, Long)}).
    * 
-   * @param petParkId The pet park ID (primary key value). May be {@code null}.
-   * @return An empty pet park object or a pet park object found in the pet park
-   *         table.
-   * @throws NoSuchElementException If the pet park ID is present but does not
-   *         match an ID in the pet park table.
+   * @param contributorId The ID of the contributor that must own the park.
+   * @param petParkId The pet park ID.
+   * @return The contributor and the pet park.
+   * @throws NoSuchElementException Thrown if the contributor or the pet park
+   *         does not exist.
+   * @throws IllegalStateException Thrown if the pet park belongs to another
+   *         contributor.
    */
-  private PetPark findOrCreatePetPark(Long petParkId) {
-    PetPark petPark;
+  private OwnedPetPark findOwnedPetPark(Long contributorId, Long petParkId) {
+    OwnedPetPark owned = petParkDao.findOwnedById(contributorId, petParkId)
+        .orElseThrow(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId));
 
-    if(Objects.isNull(petParkId)) {
-      petPark = new PetPark();
-    }
-    else {
-      petPark = findPetParkById(petParkId);
+    if(Objects.isNull(owned.petPark())) {
+      throw new NotFoundException(Entity.PET_PARK, petParkId);
     }
 
-    return petPark;
+    checkOwner(owned.petPark().getContributor().getContributorId(),
+        contributorId, petParkId);
+
+    return owned;
+  }
+
+  /**
+   * Throws an exception if the contributor ID of the pet park contributor
+   * does not match the expected contributor ID. The IDs are Long objects, so
+   * they are compared with equals() and not with ==.
+   * 
+   * @param ownerId The ID of the contributor that owns the park.
+   * @param contributorId The contributor ID given in the request.
+   * @param petParkId The pet park ID.
+   * @throws IllegalStateException Thrown if the IDs do not match.
+   */
+  private void checkOwner(Long ownerId, Long contributorId, Long petParkId) {
+    if(!Objects.equals(ownerId, contributorId)) {
+      throw new IllegalStateException("Pet park with ID=" + petParkId
+          + " is not owned by contributor with ID=" + contributorId);
+    }
   }
 
   /**
-   * Find a pet park given the pet park ID (primary key value).
+   * This method returns the most viewed pet parks. Views are counted by
+   * {@link #retrievePetParkById(Long, Long)} and written to the database in
+   * batches by the {@link ParkViewCounter}.
    * 
-   * @param petParkId The pet park ID to search for.
-   * @return The pet park data if found.
-   * @throws NoSuchElementException If the pet park ID is present but does not
-   *         match an ID in the pet park table.
+   * @param limit The maximum number of parks.
+   * @return Up to <em>limit</em> parks, most viewed first.
    */
-  private PetPark findPetParkById(Long petParkId) {
-    return petParkDao.findById(petParkId)
-        .orElseThrow(() -> new NoSuchElementException(
-            "Pet park with ID=" + petParkId + " does not exist."));
+  public List<PopularPetParkData> retrievePopularPetParks(int limit) {
+    return viewCounter.mostViewed(limit);
   }
 
   /**
    * Retrieve a pet park given the park ID (primary key value). If the
    * contributor ID is not associated with the pet park an exception is thrown.
    * 
+   * A widely shared park can receive hundreds of simultaneous requests.
+   * Identical concurrent requests are coalesced so that only one of them runs
+   * the queries (see {@link SingleFlight}). IDs that were recently not found
+   * are answered from the {@link NegativeLookupCache} without a query.
+   * 
+   * If the park is in the {@link ParkColumnStore} and belongs to the
+   * contributor, it is returned from there. Otherwise (the park is new, or
+   * the request is an error) the database is asked, so that the errors are
+   * the same as before. The database is also asked until the store has been
+   * loaded from it, since the snapshot the store starts from may be stale.
+   * 
+   * A park that is found counts as one view in the {@link ParkViewCounter}.
+   * 
    * @param contributorId The contributor ID to match.
    * @param parkId The pet park ID of the park to retrieve.
    * @return The pet park data if successful.
    * @throws IllegalStateException Thrown if the contributor ID in the parameter
    *         list is not associated with the pet park.
    */
-  @Transactional(readOnly = true)
   public PetParkData retrievePetParkById(Long contributorId, Long parkId) {
-    /* Check that the contributor ID exists or throws an exception. */
-    findContributorById(contributorId);
+    Optional<PetParkData> stored = columnStore.findById(parkId)
+        .filter(petPark -> Objects.equals(
+            petPark.getContributor().getContributorId(), contributorId));
 
-    /* Check that the pet park ID exists or throws an exception. */
-    PetPark petPark = findPetParkById(parkId);
+    if(stored.isPresent()) {
+      viewCounter.recordView(parkId);
+      return stored.get();
+    }
 
-    /*
-     * Throws an exception if the contributor ID of the pet park contributor
-     * does not match the expected contributor ID.
-     */
-    if(petPark.getContributor().getContributorId() != contributorId) {
-      throw new IllegalStateException("Pet park with ID=" + parkId
-          + " is not owned by contributor with ID=" + contributorId);
+    negativeCache.checkNotMissing(Entity.CONTRIBUTOR, contributorId);
+    negativeCache.checkNotMissing(Entity.PET_PARK, parkId);
+    long generation = negativeCache.generation();
+
+    try {
+      PetParkData petPark = petParkLoads.load(
+          new ParkKey(contributorId, parkId),
+          () -> shardRouter.inShard(shardRouter.shardForId(parkId), true,
+              () -> loadPetParkById(contributorId, parkId)));
+
+      viewCounter.recordView(parkId);
+      return petPark;
+    }
+    catch(NotFoundException e) {
+      negativeCache.recordMissing(e, generation);
+      throw e;
     }
+  }
+
+  /*
+   * Runs inside the read-only transaction started by
+   * retrievePetParkById() on the shard that holds the park. The contributor
+   * check, the park lookup and the ownership check are answered by one query
+   * (see PetParkDao.findOwnedViewById()). The park is read as a projection,
+   * so no entities are created.
+   */
+  private PetParkData loadPetParkById(Long contributorId, Long parkId) {
+    PetParkView petPark = petParkDao.findOwnedViewById(contributorId, parkId)
+        .orElseThrow(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId));
+
+    if(Objects.isNull(petPark.getPetParkId())) {
+      throw new NotFoundException(Entity.PET_PARK, parkId);
+    }
+
+    checkOwner(petPark.getContributorId(), contributorId, parkId);
 
     return new PetParkData(petPark);
   }
 
-   @Transactional(readOnly = true)
-   public List<PetParkData> retrieveAllPetParks() {
-      // @formatter:off
-	  return petParkDao.findAll() // Retrieves a List of PetPark
-	      .stream()               // Converts to a Stream of PetPark
-	      .map(PetParkData::new)  // Converts to a Stream of PetParkData
-	      .toList();              // Converts to a List of PetParkData
-	// @formatter:on
+  /**
+   * This method returns a list of all the pet parks. The parks are read with
+   * a projection query that builds each {@link PetParkData} directly from one
+   * result row, with the amenities aggregated in SQL. The query is run on
+   * every shard in parallel and the results are merged by pet park ID.
+   * 
+   * @return The list of pet parks.
+   */
+  public List<PetParkData> retrieveAllPetParks() {
+    List<PetParkView> views = shardRouter.gather(petParkDao::findAllViews);
+    Deadline.checkCurrent();
+    views.sort(Comparator.comparing(PetParkView::getPetParkId));
+
+    // @formatter:off
+    return views                     // A List of PetParkView
+        .stream()                    // Converts to a Stream of PetParkView
+        .map(PetParkData::new)       // Converts to a Stream of PetParkData
+        .toList();                   // Converts to a List of PetParkData
+    // @formatter:on
+  }
 
-   }
-	
+  /**
+   * This method returns one page of the pet parks, ordered by pet park ID.
+   * Each shard returns its first (page + 1) * size parks. Those are merged by
+   * pet park ID and the requested page is cut from the merged list, which
+   * gives the same page as a single database would.
+   * 
+   * @param page The page number, starting at 0.
+   * @param size The number of parks per page.
+   * @return The pet parks on the page.
+   * @throws InvalidParameterValueException Thrown if the page is negative,
+   *         the size is less than 1, or the page ends beyond the largest
+   *         number of rows that can be read.
+   */
+  public List<PetParkData> retrievePetParks(int page, int size) {
+    checkPage(page, size);
+
+    int limit = (page + 1) * size;
+
+    List<PetParkView> views =
+        shardRouter.gather(() -> petParkDao.findFirstViews(limit));
+    views.sort(Comparator.comparing(PetParkView::getPetParkId));
+
+    return views.stream()
+        .skip((long)page * size)
+        .limit(size)
+        .map(PetParkData::new)
+        .toList();
+  }
+
+  /**
+   * This method returns the pet parks that pass a filter, ordered by pet park
+   * ID, one page at a time. The parks come from the {@link ParkColumnStore}
+   * once it has been loaded from the database (see
+   * {@link ReadConsistency#BOUNDED}). Otherwise, an unfiltered page is read
+   * from the database
+   * with {@link #retrievePetParks(int, int)} and a filtered list is cut from
+   * {@link #retrieveAllPetParks()}.
+   * 
+   * @param filter The filter.
+   * @param page The page number, starting at 0.
+   * @param size The number of parks per page.
+   * @return The pet parks on the page.
+   */
+  public List<PetParkData> retrievePetParks(ParkFilter filter, int page,
+      int size) {
+    return retrievePetParks(filter, page, size, ParkFields.ALL,
+        ReadConsistency.BOUNDED);
+  }
+
+  /**
+   * This method is the same as {@link #retrievePetParks(ParkFilter, int, int)}
+   * but is only required to fill in the given fields, and the caller says
+   * how fresh the parks must be. The column store is used if it can answer
+   * with that consistency: not at all for STRONG, and also from the startup
+   * snapshot for STALE. When the parks are read from the database, only the
+   * columns for the wanted fields (and for the filter) are selected, so the
+   * directions text, the contributor and the amenities are not read unless
+   * they are wanted.
+   * 
+   * @param filter The filter.
+   * @param page The page number, starting at 0.
+   * @param size The number of parks per page.
+   * @param fields The wanted fields.
+   * @param consistency How fresh the parks must be.
+   * @return The pet parks on the page.
+   * @throws InvalidParameterValueException Thrown if the page and size are
+   *         not valid (see {@link #retrievePetParks(int, int)}).
+   */
+  public List<PetParkData> retrievePetParks(ParkFilter filter, int page,
+      int size, ParkFields fields, ReadConsistency consistency) {
+    checkPage(page, size);
+
+    long offset = (long)page * size;
+
+    if(columnStore.canServe(consistency)) {
+      return columnStore.find(filter, offset, size);
+    }
+
+    if(!fields.isAll()) {
+      return retrieveSparsePetParks(filter, offset, size, fields);
+    }
+
+    if(filter.isEmpty()) {
+      return retrievePetParks(page, size);
+    }
+
+    return retrieveAllPetParks().stream()
+        .filter(filter::matches)
+        .skip(offset)
+        .limit(size)
+        .toList();
+  }
+
+  /*
+   * The shards are asked for the first (page + 1) * size rows, which must
+   * fit in an int.
+   */
+  private static void checkPage(int page, int size) {
+    if(page < 0) {
+      throw new InvalidParameterValueException(
+          "page must be 0 or more, not " + page + ".");
+    }
+
+    if(size < 1) {
+      throw new InvalidParameterValueException(
+          "size must be 1 or more, not " + size + ".");
+    }
+
+    if((page + 1L) * size > Integer.MAX_VALUE) {
+      throw new InvalidParameterValueException("page " + page
+          + " is beyond the last page that can be read with size " + size
+          + ".");
+    }
+  }
+
+  private List<PetParkData> retrieveSparsePetParks(ParkFilter filter,
+      long offset, int size, ParkFields fields) {
+    ParkFields columns = filter.isEmpty() ? fields
+        : fields.with(Field.COUNTRY, Field.STATE_OR_PROVINCE, Field.AMENITIES);
+    int limit = filter.isEmpty()
+        ? (int)Math.min(offset + size, Integer.MAX_VALUE)
+        : Integer.MAX_VALUE;
+
+    List<PetParkView> views = shardRouter
+        .gather(() -> petParkDao.findSparseViews(columns, limit));
+    Deadline.checkCurrent();
+    views.sort(Comparator.comparing(PetParkView::getPetParkId));
+
+    return views.stream()
+        .map(PetParkData::new)
+        .filter(filter::matches)
+        .skip(offset)
+        .limit(size)
+        .toList();
+  }
+
+  /**
+   * This method returns the pet parks most similar to the given park, ranked
+   * by shared amenities and distance. The parks come from the in-memory
+   * {@link SimilarParkIndex}, so no query is made.
+   * 
+   * @param parkId The pet park ID.
+   * @param limit The maximum number of parks to return.
+   * @return The similar parks, best first.
+   * @throws NoSuchElementException Thrown if the pet park does not exist.
+   */
+  public List<SimilarPetParkData> retrieveSimilarPetParks(Long parkId,
+      int limit) {
+    return similarParkIndex.findSimilar(parkId, limit);
+  }
 }
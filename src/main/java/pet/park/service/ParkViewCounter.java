@@ -0,0 +1,219 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PopularPetParkData;
+import pet.park.dao.PetParkDao;
+import pet.park.dao.PopularParkView;
+
+/**
+ * This class counts how often each pet park is viewed, for ranking parks by
+ * popularity. Updating a row on every view would make concurrent viewers of
+ * a popular park wait on each other's row locks, so views are counted in
+ * memory and written to the pet_park_view table in batches.
+ *
+ * <ul>
+ * <li>Each park has a LongAdder. A LongAdder spreads concurrent increments
+ * over several cells (stripes), so viewers of the same park on different
+ * threads do not contend on one memory location, and recording a view never
+ * blocks.</li>
+ * <li>Every <em>pet-park.view-counter.flush-interval</em>, a background
+ * thread takes the counts with LongAdder.sumThenReset(), which resets each
+ * cell atomically, so a view recorded during the flush is kept for the next
+ * one. The counts are added to the table with one multi-row upsert per
+ * <em>pet-park.view-counter.batch-size</em> parks, on the shard that holds
+ * each park.</li>
+ * <li>If a flush fails, its counts are added back and written by the next
+ * flush.</li>
+ * <li>The counts are also flushed when the application shuts down, so a
+ * crash loses at most one flush interval of views.</li>
+ * </ul>
+ *
+ * The table is only read by {@link #mostViewed(int)}, so views recorded
+ * since the last flush are not included in the ranking yet.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class ParkViewCounter {
+
+  @Autowired
+  private PetParkDao petParkDao;
+
+  @Autowired
+  private ShardRouter shardRouter;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.view-counter.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.view-counter.flush-interval:PT10S}")
+  private Duration flushInterval;
+
+  @Value("${pet-park.view-counter.batch-size:500}")
+  private int batchSize;
+
+  /*
+   * Parks are never removed from the map, so a view cannot be recorded in an
+   * adder that a flush no longer sees. The map is bounded by the number of
+   * parks.
+   */
+  private final ConcurrentMap<Long, LongAdder> views =
+      new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService flusher =
+      Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+          .daemon().name("park-view-flush").factory());
+
+  private Counter flushed;
+  private Counter failed;
+  private Timer flushTime;
+
+  @PostConstruct
+  void init() {
+    flushed = Counter.builder("pet.park.views.flushed")
+        .description("Park views written to the database")
+        .register(meterRegistry);
+
+    failed = Counter.builder("pet.park.views.flush.failures")
+        .description("View count flushes that failed and were retried")
+        .register(meterRegistry);
+
+    flushTime = Timer.builder("pet.park.views.flush")
+        .description("Time taken to write the view counts")
+        .register(meterRegistry);
+
+    if(enabled) {
+      long period = Math.max(1, flushInterval.toMillis());
+
+      flusher.scheduleWithFixedDelay(this::flush, period, period,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Count one view of a park.
+   *
+   * @param petParkId The pet park ID.
+   */
+  public void recordView(Long petParkId) {
+    if(enabled) {
+      views.computeIfAbsent(petParkId, id -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * Read the most viewed parks from every shard.
+   *
+   * @param limit The maximum number of parks.
+   * @return Up to <em>limit</em> parks, most viewed first.
+   */
+  public List<PopularPetParkData> mostViewed(int limit) {
+    List<PopularParkView> rows =
+        shardRouter.gather(() -> petParkDao.findMostViewedViews(limit));
+
+    return rows.stream()
+        .sorted((a, b) -> Long.compare(b.getViewCount(), a.getViewCount()))
+        .limit(limit)
+        .map(row -> new PopularPetParkData(new PetParkData(row),
+            row.getViewCount()))
+        .toList();
+  }
+
+  /*
+   * Take the counts, group them by shard and write them in batches.
+   */
+  private void flush() {
+    Map<String, Map<Long, Long>> byShard = new HashMap<>();
+
+    views.forEach((petParkId, adder) -> {
+      long count = adder.sumThenReset();
+
+      if(count > 0) {
+        byShard.computeIfAbsent(shardRouter.shardForId(petParkId),
+            shard -> new LinkedHashMap<>()).put(petParkId, count);
+      }
+    });
+
+    byShard.forEach(this::writeBatches);
+  }
+
+  private void writeBatches(String shard, Map<Long, Long> counts) {
+    Map<Long, Long> batch = new LinkedHashMap<>();
+
+    for(Map.Entry<Long, Long> entry : counts.entrySet()) {
+      batch.put(entry.getKey(), entry.getValue());
+
+      if(batch.size() >= batchSize) {
+        write(shard, batch);
+        batch = new LinkedHashMap<>();
+      }
+    }
+
+    if(!batch.isEmpty()) {
+      write(shard, batch);
+    }
+  }
+
+  private void write(String shard, Map<Long, Long> batch) {
+    try {
+      flushTime.record(() -> shardRouter.inShard(shard, false,
+          () -> petParkDao.addViews(batch)));
+      flushed.increment(
+          batch.values().stream().mapToLong(Long::longValue).sum());
+    }
+    catch(RuntimeException e) {
+      failed.increment();
+      log.warn("Could not write {} park view counts: {}", batch.size(),
+          e.toString());
+
+      batch.forEach((petParkId, count) -> views
+          .computeIfAbsent(petParkId, id -> new LongAdder()).add(count));
+    }
+  }
+
+  /**
+   * Write the counts that have not been flushed yet.
+   */
+  @PreDestroy
+  public void shutdown() {
+    flusher.shutdown();
+
+    try {
+      flusher.awaitTermination(flushInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if(enabled) {
+      flush();
+    }
+  }
+}
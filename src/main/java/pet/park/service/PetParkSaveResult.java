@@ -0,0 +1,23 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.List;
+import pet.park.controller.model.PetParkData;
+
+/**
+ * This record holds the result of saving a new pet park with a
+ * {@link DuplicatePolicy}.
+ * 
+ * @param petPark The saved park, or the existing park it was merged into.
+ * @param duplicateIds The IDs of the existing parks that look like the new
+ *        one. The list is empty if there were none.
+ * @param merged {@code true} if the park was merged into an existing park
+ *        instead of being created.
+ * 
+ * @author Promineo
+ *
+ */
+public record PetParkSaveResult(PetParkData petPark, List<Long> duplicateIds,
+    boolean merged) {
+}
@@ -0,0 +1,97 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.PetParkData;
+import pet.park.dao.ReactiveParkDao;
+import pet.park.service.NotFoundException.Entity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * This is the non-blocking counterpart of the read methods in
+ * {@link ParkService}. It returns the same DTOs and applies the same rules
+ * (e.g. a pet park must belong to the contributor in the request), but the
+ * results are Reactor publishers instead of values. No thread waits for the
+ * database.
+ *
+ * There are no transactions here. Each read is a single SQL statement, which
+ * MySQL runs with statement-level consistency.
+ *
+ * Class-level annotations:
+ *
+ * @Service Tells Spring that this class is a Managed Bean.
+ *
+ * @Profile The bean is only created when the "reactive" profile is active.
+ *
+ * @author Promineo
+ *
+ */
+@Service
+@Profile("reactive")
+public class ReactiveParkService {
+
+  @Autowired
+  private ReactiveParkDao reactiveParkDao;
+
+  /**
+   * Stream all contributors.
+   *
+   * @return The contributors.
+   */
+  public Flux<ContributorData> retrieveAllContributors() {
+    return reactiveParkDao.findAllContributors();
+  }
+
+  /**
+   * Retrieve a contributor given the contributor ID.
+   *
+   * @param contributorId The contributor ID.
+   * @return The contributor data.
+   * @throws NoSuchElementException Signalled if the contributor is not found.
+   */
+  public Mono<ContributorData> retrieveContributorById(Long contributorId) {
+    return reactiveParkDao.findContributorById(contributorId)
+        .switchIfEmpty(Mono.error(
+            () -> new NotFoundException(Entity.CONTRIBUTOR, contributorId)));
+  }
+
+  /**
+   * Retrieve a pet park given the park ID. The park must belong to the given
+   * contributor.
+   *
+   * @param contributorId The contributor ID to match.
+   * @param parkId The pet park ID.
+   * @return The pet park data.
+   * @throws NoSuchElementException Signalled if the park is not found.
+   * @throws IllegalStateException Signalled if the park does not belong to the
+   *         contributor.
+   */
+  public Mono<PetParkData> retrievePetParkById(Long contributorId,
+      Long parkId) {
+    return reactiveParkDao.findPetParkById(parkId)
+        .switchIfEmpty(Mono.error(
+            () -> new NotFoundException(Entity.PET_PARK, parkId)))
+        .flatMap(park -> Objects.equals(
+            park.getContributor().getContributorId(), contributorId)
+                ? Mono.just(park)
+                : Mono.error(new IllegalStateException("Pet park with ID="
+                    + parkId + " is not owned by contributor with ID="
+                    + contributorId)));
+  }
+
+  /**
+   * Stream all pet parks.
+   *
+   * @return The pet parks.
+   */
+  public Flux<PetParkData> retrieveAllPetParks() {
+    return reactiveParkDao.findAllPetParks();
+  }
+}
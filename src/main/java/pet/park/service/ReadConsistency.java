@@ -0,0 +1,45 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+/**
+ * This tells ParkService how fresh the parks that it returns must be. A
+ * client chooses it with the X-Consistency request header.
+ *
+ * @author Promineo
+ *
+ */
+public enum ReadConsistency {
+  /** Read from the database ("X-Consistency: strong"). */
+  STRONG,
+
+  /**
+   * The default. The parks may come from an in-memory copy that has been
+   * read from the database and is reconciled with it, such as
+   * {@link ParkColumnStore}. Changes made on other nodes show up within the
+   * reconcile interval.
+   */
+  BOUNDED,
+
+  /**
+   * The parks may also come from the snapshot that was written at the last
+   * shutdown, before the database has been read ("X-Consistency: stale").
+   * The snapshot may hold parks that have since been changed or deleted.
+   */
+  STALE;
+
+  /**
+   * Read the value of the X-Consistency header.
+   *
+   * @param header The header value, or {@code null} if there is none.
+   * @return STRONG for "strong", STALE for "stale" (in any case), and
+   *         BOUNDED otherwise.
+   */
+  public static ReadConsistency fromHeader(String header) {
+    if("strong".equalsIgnoreCase(header)) {
+      return STRONG;
+    }
+
+    return "stale".equalsIgnoreCase(header) ? STALE : BOUNDED;
+  }
+}
@@ -0,0 +1,268 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import pet.park.dao.Deadline;
+import pet.park.dao.ShardContext;
+import pet.park.dao.ShardingProperties;
+
+/**
+ * This class decides which shard the data for a request lives on and runs
+ * the database work there. See pet.park.dao.ShardingConfiguration for how
+ * the shards are set up.
+ * 
+ * <ul>
+ * <li>A new pet park goes to the shard mapped to its country, or to the
+ * default shard if the country is not mapped.</li>
+ * <li>An existing pet park stays on the shard that created it. The shard is
+ * computed from the ID: with N shards, shard i (counting from 1) holds the IDs
+ * where (ID - 1) % N == i - 1.</li>
+ * <li>Contributors live on the primary (first) shard and are copied to the
+ * others by {@link ContributorReplicator}.</li>
+ * <li>Lists are read from all shards in parallel and merged
+ * ({@link #gather(Supplier)}).</li>
+ * <li>Different queries for one response can be run at the same time in a
+ * {@link ShardScope}.</li>
+ * </ul>
+ * 
+ * If sharding is not enabled there is a single shard and the methods simply
+ * run the work in a transaction on the calling thread.
+ * 
+ * @author Promineo
+ *
+ */
+@Component
+public class ShardRouter {
+
+  /**
+   * The name of the only shard when sharding is not enabled.
+   */
+  public static final String SINGLE_SHARD = "default";
+
+  @Autowired
+  private ShardingProperties properties;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private List<String> shards;
+  private String defaultShard;
+  private TransactionTemplate readOnlyTransaction;
+  private TransactionTemplate writeTransaction;
+  private ExecutorService scatterExecutor;
+
+  /**
+   * Read the shard list once Spring has injected the dependencies.
+   */
+  @PostConstruct
+  void init() {
+    if(properties.isEnabled()) {
+      shards = properties.getShards().stream()
+          .map(shard -> shard.getName()).toList();
+      defaultShard = Objects.requireNonNullElse(
+          properties.getDefaultShard(), shards.get(0));
+    }
+    else {
+      shards = List.of(SINGLE_SHARD);
+      defaultShard = SINGLE_SHARD;
+    }
+
+    /*
+     * Work for another shard must not join a transaction that is already
+     * open on this thread, because that transaction's connection belongs to
+     * a different shard.
+     */
+    int propagation = isSharded()
+        ? TransactionDefinition.PROPAGATION_REQUIRES_NEW
+        : TransactionDefinition.PROPAGATION_REQUIRED;
+
+    readOnlyTransaction = new TransactionTemplate(transactionManager);
+    readOnlyTransaction.setReadOnly(true);
+    readOnlyTransaction.setPropagationBehavior(propagation);
+    writeTransaction = new TransactionTemplate(transactionManager);
+    writeTransaction.setPropagationBehavior(propagation);
+
+    scatterExecutor = Executors.newVirtualThreadPerTaskExecutor();
+  }
+
+  /**
+   * @return {@code true} if there is more than one shard.
+   */
+  public boolean isSharded() {
+    return shards.size() > 1;
+  }
+
+  /**
+   * @return The names of all shards. The first one is the primary shard.
+   */
+  public List<String> shards() {
+    return shards;
+  }
+
+  /**
+   * @return The name of the primary shard, which holds the contributors.
+   */
+  public String primaryShard() {
+    return shards.get(0);
+  }
+
+  /**
+   * Find the shard that a new pet park in the given country is stored on.
+   * 
+   * @param country The pet park country (may be {@code null}).
+   * @return The shard name.
+   */
+  public String shardForCountry(String country) {
+    if(!isSharded() || Objects.isNull(country)) {
+      return defaultShard;
+    }
+
+    return properties.getCountries().getOrDefault(country.trim(),
+        defaultShard);
+  }
+
+  /**
+   * Find the shard that generated (and stores) the pet park with the given
+   * ID.
+   * 
+   * @param petParkId The pet park ID.
+   * @return The shard name.
+   */
+  public String shardForId(Long petParkId) {
+    if(!isSharded() || Objects.isNull(petParkId) || petParkId < 1) {
+      return primaryShard();
+    }
+
+    return shards.get((int)((petParkId - 1) % shards.size()));
+  }
+
+  /**
+   * Run the work in a transaction on the given shard.
+   * 
+   * @param <T> The result type.
+   * @param shard The shard name.
+   * @param readOnly {@code true} for a read-only transaction.
+   * @param work The work.
+   * @return The result of the work.
+   */
+  public <T> T inShard(String shard, boolean readOnly, Supplier<T> work) {
+    String previous = ShardContext.set(isSharded() ? shard : null);
+
+    try {
+      TransactionTemplate transaction =
+          readOnly ? readOnlyTransaction : writeTransaction;
+
+      return transaction.execute(status -> work.get());
+    }
+    finally {
+      ShardContext.set(previous);
+    }
+  }
+
+  /**
+   * Run the same query on every shard and return all the rows. The shards
+   * are queried in parallel, each in its own read-only transaction, so the
+   * time taken is that of the slowest shard rather than the sum. If one shard
+   * fails, the others are cancelled and the exception is thrown. Each branch
+   * runs with the caller's {@link Deadline}, and the caller stops waiting
+   * when the deadline passes.
+   * 
+   * The rows are returned in shard order. Callers that need a global order
+   * sort the result. When each shard returns its rows sorted, this is a merge
+   * of already sorted runs, which List.sort() does in linear time.
+   * 
+   * @param <T> The row type.
+   * @param query The query to run on each shard.
+   * @return The rows from all shards.
+   */
+  public <T> List<T> gather(Supplier<List<T>> query) {
+    if(!isSharded()) {
+      return new ArrayList<>(inShard(primaryShard(), true, query));
+    }
+
+    Deadline deadline = Deadline.current();
+    List<CompletableFuture<List<T>>> branches = shards.stream()
+        .map(shard -> CompletableFuture.supplyAsync(
+            Deadline.wrap(() -> inShard(shard, true, query)),
+            scatterExecutor))
+        .toList();
+
+    List<T> rows = new ArrayList<>();
+
+    try {
+      for(CompletableFuture<List<T>> branch : branches) {
+        rows.addAll(await(branch, deadline));
+      }
+    }
+    catch(RuntimeException e) {
+      branches.forEach(branch -> branch.cancel(true));
+      throw e;
+    }
+
+    return rows;
+  }
+
+  /**
+   * Open a scope for running different read-only queries at the same time.
+   * See {@link ShardScope}.
+   * 
+   * @return The scope, which must be closed.
+   */
+  public ShardScope openScope() {
+    return new ShardScope(this, scatterExecutor);
+  }
+
+  /*
+   * Wait for one branch, but no longer than the request's deadline. The
+   * exception that the branch threw is unwrapped.
+   */
+  private <T> T await(CompletableFuture<T> branch, Deadline deadline) {
+    try {
+      if(deadline == null) {
+        return branch.join();
+      }
+
+      return branch.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+    catch(CompletionException | ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+
+      throw new CompletionException(e.getCause());
+    }
+    catch(TimeoutException e) {
+      throw deadline.exceeded();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * Stop the scatter-gather threads.
+   */
+  @PreDestroy
+  public void shutdown() {
+    scatterExecutor.shutdownNow();
+  }
+}
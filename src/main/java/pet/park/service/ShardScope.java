@@ -0,0 +1,192 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import pet.park.dao.Deadline;
+
+/**
+ * This class runs several independent read-only queries at the same time and
+ * waits for all of them. It follows the shape of Java's structured
+ * concurrency API (StructuredTaskScope.ShutdownOnFailure), which is still a
+ * preview feature in Java 21:
+ *
+ * <pre>
+ * try(ShardScope scope = shardRouter.openScope()) {
+ *   Supplier&lt;A&gt; a = scope.fork(shard, () -&gt; ...);
+ *   Supplier&lt;List&lt;B&gt;&gt; b = scope.forkAll(() -&gt; ...);
+ *
+ *   scope.join();
+ *   ... a.get() ... b.get() ...
+ * }
+ * </pre>
+ *
+ * Each query runs on its own virtual thread in its own read-only transaction
+ * (so it has its own connection) and with the caller's {@link Deadline}. If
+ * any query fails, the others are cancelled (their threads are interrupted)
+ * and {@link #join()} throws the first failure. If the deadline passes
+ * first, everything is cancelled and join() throws a
+ * pet.park.dao.DeadlineExceededException. Closing the scope cancels anything
+ * that is still running. A cancelled query that is already inside the
+ * database is ended by its query timeout, which the deadline set.
+ *
+ * A scope is created with {@link ShardRouter#openScope()} and is used by one
+ * thread.
+ *
+ * @author Promineo
+ *
+ */
+public class ShardScope implements AutoCloseable {
+  private final ShardRouter router;
+  private final ExecutorService executor;
+  private final Deadline deadline = Deadline.current();
+  private final List<Future<?>> threads = new ArrayList<>();
+  private final List<CompletableFuture<?>> results = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final CompletableFuture<Void> failed = new CompletableFuture<>();
+  private boolean joined;
+
+  ShardScope(ShardRouter router, ExecutorService executor) {
+    this.router = router;
+    this.executor = executor;
+  }
+
+  /**
+   * Start a query on the given shard.
+   *
+   * @param <T> The result type.
+   * @param shard The shard name.
+   * @param query The query.
+   * @return The result, which can be read after {@link #join()} returns.
+   */
+  public <T> Supplier<T> fork(String shard, Supplier<T> query) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    Supplier<T> branch =
+        Deadline.wrap(() -> router.inShard(shard, true, query));
+
+    results.add(result);
+
+    Future<?> thread = executor.submit(() -> {
+      try {
+        result.complete(branch.get());
+      }
+      catch(Throwable e) {
+        result.completeExceptionally(e);
+
+        if(failure.compareAndSet(null, e)) {
+          failed.complete(null);
+          cancel();
+        }
+      }
+    });
+
+    synchronized(threads) {
+      threads.add(thread);
+    }
+
+    return () -> {
+      if(!joined) {
+        throw new IllegalStateException("join() has not been called");
+      }
+
+      return result.join();
+    };
+  }
+
+  /**
+   * Start the same query on every shard.
+   *
+   * @param <T> The row type.
+   * @param query The query.
+   * @return The rows from all shards in shard order, which can be read after
+   *         {@link #join()} returns.
+   */
+  public <T> Supplier<List<T>> forkAll(Supplier<List<T>> query) {
+    List<Supplier<List<T>>> branches = router.shards().stream()
+        .map(shard -> fork(shard, query)).toList();
+
+    return () -> {
+      List<T> rows = new ArrayList<>();
+
+      for(Supplier<List<T>> branch : branches) {
+        rows.addAll(branch.get());
+      }
+
+      return rows;
+    };
+  }
+
+  /**
+   * Wait until every query has finished, one has failed, or the deadline has
+   * passed.
+   *
+   * @throws RuntimeException The first query's failure, or a
+   *         DeadlineExceededException if the deadline passed.
+   */
+  public void join() {
+    /*
+     * A failed query completes "failed". The failure itself is read from
+     * "failure" below.
+     */
+    CompletableFuture<Object> done = CompletableFuture.anyOf(failed,
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)))
+        .exceptionally(e -> null);
+
+    try {
+      if(deadline == null) {
+        done.get();
+      }
+      else {
+        done.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+      }
+    }
+    catch(TimeoutException e) {
+      cancel();
+      throw deadline.exceeded();
+    }
+    catch(InterruptedException e) {
+      cancel();
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+    catch(ExecutionException e) {
+      throw new CompletionException(e.getCause());
+    }
+
+    joined = true;
+
+    Throwable e = failure.get();
+
+    if(e instanceof RuntimeException runtime) {
+      throw runtime;
+    }
+
+    if(e != null) {
+      throw new CompletionException(e);
+    }
+  }
+
+  /**
+   * Cancel any query that is still running.
+   */
+  @Override
+  public void close() {
+    cancel();
+  }
+
+  private void cancel() {
+    synchronized(threads) {
+      threads.forEach(thread -> thread.cancel(true));
+    }
+  }
+}
@@ -0,0 +1,347 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.SimilarPetParkData;
+import pet.park.entity.GeoLocation;
+import pet.park.service.NotFoundException.Entity;
+
+/**
+ * This class finds pet parks that are similar to a given park. Parks are
+ * similar if they have many amenities in common and are close to each other.
+ *
+ * Comparing the amenities of one park with every other park would take time
+ * in proportion to the number of parks. Instead, each park's amenity set is
+ * reduced to a {@link MinHash} signature, and the signature's bands are put
+ * into hash buckets. Parks that share a bucket in any band are the
+ * candidates. Only the candidates are scored, using the exact Jaccard
+ * similarity of the amenity sets and the distance between the parks:
+ *
+ * <pre>
+ * score = w * similarity + (1 - w) / (1 + distance / scale)
+ * </pre>
+ *
+ * where w is <em>pet-park.similar-parks.amenity-weight</em> and scale is
+ * <em>pet-park.similar-parks.distance-scale-km</em>. At most
+ * <em>pet-park.similar-parks.max-candidates</em> candidates are scored, so a
+ * very common amenity combination cannot make a lookup scan every park.
+ *
+ * So that the candidates that are kept are the nearest ones, each bucket is
+ * divided by a grid of cells about <em>pet-park.similar-parks.cell-km</em>
+ * on a side. The candidates are taken first from the park's own cell and
+ * the neighboring cells, then from the other cells in order of their
+ * distance, and last from the parks without a location.
+ *
+ * The index is kept current by {@link ParkIndex}, and the parks are read
+ * from the ParkColumnStore.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+public class SimilarParkIndex extends ParkIndex {
+  private static final double KM_PER_DEGREE = 111.32;
+
+  /*
+   * The cell of the parks without a location. No grid cell has this key.
+   */
+  private static final long NO_LOCATION = Long.MIN_VALUE;
+
+  @Getter
+  @Value("${pet-park.similar-parks.enabled:true}")
+  private boolean enabled;
+
+  @Value("${pet-park.similar-parks.bands:16}")
+  private int bands;
+
+  @Value("${pet-park.similar-parks.rows:4}")
+  private int rows;
+
+  @Value("${pet-park.similar-parks.amenity-weight:0.7}")
+  private double amenityWeight;
+
+  @Value("${pet-park.similar-parks.distance-scale-km:25}")
+  private double distanceScaleKm;
+
+  @Value("${pet-park.similar-parks.max-candidates:2000}")
+  private int maxCandidates;
+
+  @Value("${pet-park.similar-parks.cell-km:50}")
+  private double cellKm;
+
+  /*
+   * The band keys and cell of each park. A park without amenities is not
+   * in the index.
+   */
+  private record Keys(long[] bands, long cell) {
+  }
+
+  private final ConcurrentMap<Long, Keys> parkKeys = new ConcurrentHashMap<>();
+
+  private MinHash minHash;
+
+  /*
+   * For each band, the parks in each bucket, by cell.
+   */
+  private List<ConcurrentMap<Long, ConcurrentMap<Long, Set<Long>>>> buckets;
+
+  public SimilarParkIndex() {
+    super("similar-park-index");
+  }
+
+  /**
+   * Create the buckets once the settings are injected.
+   */
+  @PostConstruct
+  void init() {
+    minHash = new MinHash(bands, rows);
+    buckets = new ArrayList<>(bands);
+
+    for(int band = 0; band < bands; band++) {
+      buckets.add(new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * Find the parks most similar to the given park.
+   *
+   * @param petParkId The pet park ID.
+   * @param limit The maximum number of parks to return.
+   * @return The similar parks, best first. The list is empty if the index
+   *         has not been loaded yet.
+   * @throws NotFoundException Thrown if the park is not in the index.
+   */
+  public List<SimilarPetParkData> findSimilar(Long petParkId, int limit) {
+    PetParkData target = findPark(petParkId).orElse(null);
+
+    if(target == null) {
+      if(isLoaded()) {
+        throw new NotFoundException(Entity.PET_PARK, petParkId);
+      }
+
+      return List.of();
+    }
+
+    List<SimilarPetParkData> scored = new ArrayList<>();
+
+    for(PetParkData candidate : findParks(candidates(petParkId))) {
+      scored.add(score(target, candidate));
+    }
+
+    scored.sort(Comparator.comparingDouble(SimilarPetParkData::getScore)
+        .reversed());
+
+    return scored.subList(0, Math.min(limit, scored.size()));
+  }
+
+  /*
+   * The parks that share a bucket with the park in any band, nearest cells
+   * first, up to maxCandidates.
+   */
+  private Set<Long> candidates(Long petParkId) {
+    Set<Long> candidates = new HashSet<>();
+    Keys keys = parkKeys.get(petParkId);
+
+    if(keys == null) {
+      return candidates;
+    }
+
+    List<Map<Long, Set<Long>>> cellsByBand = new ArrayList<>();
+
+    for(int band = 0; band < keys.bands().length; band++) {
+      Map<Long, Set<Long>> bucket =
+          buckets.get(band).get(keys.bands()[band]);
+
+      if(bucket != null) {
+        cellsByBand.add(bucket);
+      }
+    }
+
+    Set<Long> searched = new HashSet<>();
+
+    if(keys.cell() != NO_LOCATION) {
+      for(long cell : nearestFirst(keys.cell(), neighbors(keys.cell()))) {
+        searched.add(cell);
+        addCandidates(candidates, cellsByBand, cell, petParkId);
+      }
+    }
+
+    if(candidates.size() < maxCandidates) {
+      Set<Long> others = new HashSet<>();
+
+      cellsByBand.forEach(cells -> others.addAll(cells.keySet()));
+      others.removeAll(searched);
+
+      for(long cell : nearestFirst(keys.cell(), others)) {
+        if(candidates.size() >= maxCandidates) {
+          break;
+        }
+
+        addCandidates(candidates, cellsByBand, cell, petParkId);
+      }
+    }
+
+    return candidates;
+  }
+
+  private void addCandidates(Set<Long> candidates,
+      List<Map<Long, Set<Long>>> cellsByBand, long cell, Long petParkId) {
+    for(Map<Long, Set<Long>> cells : cellsByBand) {
+      Set<Long> parks = cells.getOrDefault(cell, Set.of());
+
+      for(Long id : parks) {
+        if(candidates.size() >= maxCandidates) {
+          return;
+        }
+
+        if(!id.equals(petParkId)) {
+          candidates.add(id);
+        }
+      }
+    }
+  }
+
+  /*
+   * The cell and the cells around it. A cell is narrower (in kilometers)
+   * away from the equator, so more cells to the east and west are searched
+   * there.
+   */
+  private List<Long> neighbors(long cell) {
+    long latCell = cell >> 32;
+    long lonCell = (int)cell;
+    int lonRange = (int)Math.ceil(
+        1 / Math.max(0.01, Math.cos(Math.toRadians(centerDegrees(latCell)))));
+    List<Long> neighbors = new ArrayList<>();
+
+    for(long dLat = -1; dLat <= 1; dLat++) {
+      for(long dLon = -lonRange; dLon <= lonRange; dLon++) {
+        neighbors.add(cellKey(latCell + dLat, lonCell + dLon));
+      }
+    }
+
+    return neighbors;
+  }
+
+  /*
+   * Sort cells by the distance between their centers and the center of the
+   * given cell. Parks without a location come last.
+   */
+  private List<Long> nearestFirst(long from, Collection<Long> cells) {
+    if(from == NO_LOCATION) {
+      return List.copyOf(cells);
+    }
+
+    double lat = centerDegrees(from >> 32);
+    double lon = centerDegrees((int)from);
+
+    return cells.stream()
+        .sorted(Comparator.comparingDouble(cell -> cell == NO_LOCATION
+            ? Double.MAX_VALUE
+            : GeoMath.distanceKm(lat, lon, centerDegrees(cell >> 32),
+                centerDegrees((int)(long)cell))))
+        .toList();
+  }
+
+  private double centerDegrees(long cell) {
+    return (cell + 0.5) * cellKm / KM_PER_DEGREE;
+  }
+
+  private long cellKey(GeoLocation location) {
+    if(!GeoMath.isComplete(location)) {
+      return NO_LOCATION;
+    }
+
+    return cellKey(cellOf(location.getLatitude().doubleValue()),
+        cellOf(location.getLongitude().doubleValue()));
+  }
+
+  private long cellOf(double degrees) {
+    return (long)Math.floor(degrees * KM_PER_DEGREE / cellKm);
+  }
+
+  private static long cellKey(long latCell, long lonCell) {
+    return (latCell << 32) ^ (lonCell & 0xffffffffL);
+  }
+
+  private SimilarPetParkData score(PetParkData target, PetParkData other) {
+    double similarity =
+        MinHash.jaccard(target.getAmenities(), other.getAmenities());
+    Double distanceKm = distanceKm(target.getGeoLocation(),
+        other.getGeoLocation());
+    double proximity =
+        distanceKm == null ? 0 : 1 / (1 + distanceKm / distanceScaleKm);
+    double score =
+        amenityWeight * similarity + (1 - amenityWeight) * proximity;
+
+    return new SimilarPetParkData(other, similarity, distanceKm, score);
+  }
+
+  private Double distanceKm(GeoLocation a, GeoLocation b) {
+    if(!GeoMath.isComplete(a) || !GeoMath.isComplete(b)) {
+      return null;
+    }
+
+    return GeoMath.distanceKm(a.getLatitude().doubleValue(),
+        a.getLongitude().doubleValue(), b.getLatitude().doubleValue(),
+        b.getLongitude().doubleValue());
+  }
+
+  @Override
+  protected void added(PetParkData petPark) {
+    if(petPark.getAmenities().isEmpty()) {
+      return;
+    }
+
+    Long petParkId = petPark.getPetParkId();
+    long[] signature = minHash.signature(petPark.getAmenities());
+    Keys keys =
+        new Keys(new long[bands], cellKey(petPark.getGeoLocation()));
+
+    for(int band = 0; band < bands; band++) {
+      keys.bands()[band] = minHash.bandKey(signature, band);
+      buckets.get(band)
+          .computeIfAbsent(keys.bands()[band],
+              key -> new ConcurrentHashMap<>())
+          .computeIfAbsent(keys.cell(), cell -> ConcurrentHashMap.newKeySet())
+          .add(petParkId);
+    }
+
+    parkKeys.put(petParkId, keys);
+  }
+
+  @Override
+  protected void removed(PetParkData petPark) {
+    Long petParkId = petPark.getPetParkId();
+    Keys keys = parkKeys.remove(petParkId);
+
+    if(keys == null) {
+      return;
+    }
+
+    for(int band = 0; band < keys.bands().length; band++) {
+      buckets.get(band).computeIfPresent(keys.bands()[band],
+          (key, cells) -> {
+            cells.computeIfPresent(keys.cell(), (cell, parks) -> {
+              parks.remove(petParkId);
+              return parks.isEmpty() ? null : parks;
+            });
+
+            return cells.isEmpty() ? null : cells;
+          });
+    }
+  }
+}
@@ -0,0 +1,157 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import pet.park.dao.Deadline;
+
+/**
+ * This class coalesces concurrent loads of the same key. The first caller for
+ * a key (the leader) runs the loader. Any caller that asks for the same key
+ * while the leader is still loading waits for the leader's result instead of
+ * running its own load. So, if 500 requests for the same pet park arrive at
+ * once, the database sees one query instead of 500.
+ *
+ * Nothing is cached. As soon as the leader finishes, the key is removed and
+ * the next caller starts a fresh load.
+ *
+ * The in-flight loads are kept in a {@link ConcurrentHashMap}. Its
+ * putIfAbsent() method is lock-free when the key is already present and only
+ * locks a single hash bin when it is not, so callers for different keys do
+ * not contend with each other.
+ *
+ * A caller waits no longer than its own {@link Deadline}. If the leader's
+ * load timed out (the leader may have had less time), a caller that still
+ * has time runs the load itself.
+ *
+ * Two Micrometer counters are kept per instance: pet.park.singleflight.loads
+ * (loads actually run) and pet.park.singleflight.coalesced (callers that
+ * shared another caller's load). Both are tagged with the name passed to the
+ * constructor.
+ *
+ * @param <K> The key type. It must have proper equals() and hashCode()
+ *        methods.
+ * @param <V> The value type.
+ *
+ * @author Promineo
+ *
+ */
+public class SingleFlight<K, V> {
+  private final ConcurrentMap<K, CompletableFuture<V>> inFlight =
+      new ConcurrentHashMap<>();
+
+  private final Counter loads;
+  private final Counter coalesced;
+
+  /**
+   * Create a single-flight group.
+   *
+   * @param name The name used to tag the metrics.
+   * @param meterRegistry The Micrometer registry.
+   */
+  public SingleFlight(String name, MeterRegistry meterRegistry) {
+    loads = Counter.builder("pet.park.singleflight.loads").tag("name", name)
+        .description("Loads executed").register(meterRegistry);
+
+    coalesced = Counter.builder("pet.park.singleflight.coalesced")
+        .tag("name", name).description("Callers served by another's load")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Load the value for the given key, sharing the load with any concurrent
+   * callers for the same key.
+   *
+   * @param key The key.
+   * @param loader The code that loads the value. Only the leader runs it.
+   * @return The loaded value.
+   * @throws RuntimeException The exception thrown by the loader is rethrown
+   *         to the leader and to every caller that waited on it.
+   */
+  public V load(K key, Supplier<V> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+
+    if(existing != null) {
+      coalesced.increment();
+
+      try {
+        return await(existing);
+      }
+      catch(RuntimeException e) {
+        if(!retryAfterTimeout(e)) {
+          throw e;
+        }
+
+        return load(key, loader);
+      }
+    }
+
+    loads.increment();
+
+    try {
+      V value = loader.get();
+      mine.complete(value);
+      return value;
+    }
+    catch(RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    }
+    finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  /*
+   * Wait for the leader. The exception that the leader threw is unwrapped so
+   * that the error handler sees the same type (e.g. NoSuchElementException ->
+   * 404) no matter which caller ran the load.
+   */
+  private V await(CompletableFuture<V> future) {
+    Deadline deadline = Deadline.current();
+
+    try {
+      if(deadline == null) {
+        return future.join();
+      }
+
+      return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+    catch(CompletionException | ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+
+      throw new CompletionException(e.getCause());
+    }
+    catch(TimeoutException e) {
+      throw deadline.exceeded();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    }
+  }
+
+  /*
+   * The leader may have had a shorter deadline than this caller. If the
+   * leader's load timed out but this caller still has time, this caller
+   * runs the load itself.
+   */
+  private boolean retryAfterTimeout(RuntimeException e) {
+    Deadline deadline = Deadline.current();
+
+    return Deadline.isTimeout(e)
+        && (deadline == null || !deadline.isExpired());
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.startup;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.PetParkData;
+import pet.park.entity.Amenity;
+import pet.park.entity.Contributor;
+import pet.park.entity.GeoLocation;
+import pet.park.entity.PetPark;
+
+/**
+ * This class tells the GraalVM native-image compiler (via Spring AOT) about
+ * reflection that it cannot discover by itself. A native image only contains
+ * the classes, methods and fields that are known at build time to be needed.
+ *
+ * <ul>
+ * <li>The DTOs are converted to and from JSON by Jackson, which calls the
+ * getters and setters that Lombok generates. Spring registers the return
+ * types of controller methods automatically, but some responses are
+ * serialized outside a controller (e.g. by the park list cache), so all DTOs
+ * are registered here.</li>
+ * <li>Hibernate reads and writes the entity fields directly (field
+ * access), so the declared fields and constructors of the entities are
+ * registered.</li>
+ * <li>The Flyway migrations are loaded as classpath resources.</li>
+ * </ul>
+ *
+ * The hints are registered by the @ImportRuntimeHints annotation on
+ * {@link pet.park.PetParkApplication}. They have no effect on a regular JVM.
+ *
+ * @author Promineo
+ *
+ */
+public class PetParkRuntimeHints implements RuntimeHintsRegistrar {
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    BindingReflectionHintsRegistrar bindingRegistrar =
+        new BindingReflectionHintsRegistrar();
+
+    bindingRegistrar.registerReflectionHints(hints.reflection(),
+        PetParkData.class, PetParkData.PetParkContributor.class,
+        ContributorData.class, ContributorData.PetParkResponse.class,
+        GeoLocation.class);
+
+    for(Class<?> entity : new Class<?>[] {Amenity.class, Contributor.class,
+        PetPark.class, GeoLocation.class}) {
+      hints.reflection().registerType(entity,
+          MemberCategory.DECLARED_FIELDS,
+          MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+          MemberCategory.INVOKE_PUBLIC_METHODS);
+    }
+
+    hints.resources().registerPattern("db/migration/*.sql");
+  }
+}
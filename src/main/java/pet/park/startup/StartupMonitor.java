@@ -0,0 +1,158 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.startup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class measures how long the application takes to start. Pods are
+ * scaled out when map traffic spikes, so the time from JVM launch until the
+ * first request is answered decides how quickly new capacity helps.
+ *
+ * Two numbers are recorded, both measured from the moment the JVM started
+ * (so JVM and class loading time is included):
+ *
+ * <ul>
+ * <li>startup.ready - the Spring context is refreshed and the web server is
+ * listening.</li>
+ * <li>startup.first-response - a request to the liveness endpoint has been
+ * answered. This is only measured in benchmark mode.</li>
+ * </ul>
+ *
+ * The ready time is exported as the gauge pet.park.startup.ready. If
+ * <em>pet-park.startup.benchmark</em> is true, this class sends the first
+ * request itself, writes the numbers to
+ * <em>pet-park.startup.report-file</em> (a properties file the build can
+ * compare between runs) and shuts the application down. The Maven "cds"
+ * profile uses this mode for its training run.
+ *
+ * @author Promineo
+ *
+ */
+@Component
+@Slf4j
+public class StartupMonitor {
+
+  @Autowired
+  private ApplicationContext applicationContext;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${pet-park.startup.benchmark:false}")
+  private boolean benchmark;
+
+  @Value("${pet-park.startup.report-file:target/startup-report.properties}")
+  private Path reportFile;
+
+  @Value("${pet-park.startup.probe-path:/actuator/health/liveness}")
+  private String probePath;
+
+  /**
+   * Record the ready time and, in benchmark mode, measure the first response
+   * and exit.
+   *
+   * @param event The ready event.
+   */
+  @EventListener
+  public void onReady(ApplicationReadyEvent event) {
+    long readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+
+    TimeGauge.builder("pet.park.startup.ready", () -> readyMillis,
+        TimeUnit.MILLISECONDS).description("JVM start until context ready")
+        .register(meterRegistry);
+
+    log.info("Started in {} ms (context {} ms)", readyMillis,
+        event.getTimeTaken() == null ? "?" : event.getTimeTaken().toMillis());
+
+    if(benchmark) {
+      runBenchmark(event, readyMillis);
+    }
+  }
+
+  private void runBenchmark(ApplicationReadyEvent event, long readyMillis) {
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("startup.ready.ms", readyMillis);
+
+    if(Objects.nonNull(event.getTimeTaken())) {
+      report.put("startup.context.ms", event.getTimeTaken().toMillis());
+    }
+
+    report.put("startup.first-response.ms", firstResponseMillis());
+    report.put("startup.aot", Boolean.getBoolean("spring.aot.enabled"));
+    report.put("startup.profiles", String.join(",",
+        applicationContext.getEnvironment().getActiveProfiles()));
+    report.put("startup.cds",
+        ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+            .anyMatch(arg -> arg.contains("SharedArchiveFile")
+                || arg.contains("ArchiveClassesAtExit")));
+
+    String text = report.entrySet().stream()
+        .map(e -> e.getKey() + "=" + e.getValue())
+        .collect(Collectors.joining(System.lineSeparator()));
+
+    try {
+      Files.createDirectories(reportFile.toAbsolutePath().getParent());
+      Files.writeString(reportFile, text + System.lineSeparator());
+      log.info("Startup benchmark written to {}:{}{}", reportFile,
+          System.lineSeparator(), text);
+    }
+    catch(IOException e) {
+      log.warn("Could not write startup report: {}", e.toString());
+    }
+
+    System.exit(SpringApplication.exit(applicationContext, () -> 0));
+  }
+
+  /*
+   * Returns -1 if the request could not be made (e.g. no web server).
+   */
+  private long firstResponseMillis() {
+    if(!(applicationContext instanceof WebServerApplicationContext web)) {
+      return -1;
+    }
+
+    URI uri = URI.create("http://localhost:" + web.getWebServer().getPort()
+        + probePath);
+
+    try {
+      HttpClient client = HttpClient.newHttpClient();
+      client.send(HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30))
+          .build(), HttpResponse.BodyHandlers.discarding());
+
+      return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+    catch(IOException e) {
+      log.warn("First request to {} failed: {}", uri, e.toString());
+      return -1;
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    }
+  }
+}
@@ -1,14 +0,0 @@
--- delete from pet_park_amenity;
--- DELETE FROM amenity;
--- DELETE FROM contributor;
-
-INSERT INTO amenity (amenity) VALUES ('Dog friendly');
-INSERT INTO amenity (amenity) VALUES ('cat friendly');
-INSERT INTO amenity (amenity) VALUES ('turtle friendly');
-INSERT INTO amenity (amenity) VALUES ('chicken friendly');
-INSERT INTO amenity (amenity) VALUES ('restrooms');
-INSERT INTO amenity (amenity) VALUES ('Hot dog stand');
-INSERT INTO amenity (amenity) VALUES ('wifi');
-
--- INSERT INTO contributor (contributor_email, contributor_name) VALUES ('ckiefriter@gmail.com', 'Chuck Kiefriter');
--- INSERT INTO contributor (contributor_email, contributor_name) VALUES ('chuck@someemail.com', 'Chuck at work');
\ No newline at end of file
@@ -0,0 +1,44 @@
+-- Creates the pet park schema. The tables match what Hibernate generated
+-- from the entities when the application used ddl-auto: update. IF NOT
+-- EXISTS lets this migration run against a database that Hibernate already
+-- created (Flyway is configured with baseline-version 0 for that case).
+
+CREATE TABLE IF NOT EXISTS amenity (
+  amenity_id bigint NOT NULL AUTO_INCREMENT,
+  amenity varchar(255),
+  PRIMARY KEY (amenity_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS contributor (
+  contributor_id bigint NOT NULL AUTO_INCREMENT,
+  contributor_email varchar(255),
+  contributor_name varchar(255),
+  PRIMARY KEY (contributor_id),
+  CONSTRAINT uk_contributor_email UNIQUE (contributor_email)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS pet_park (
+  pet_park_id bigint NOT NULL AUTO_INCREMENT,
+  country varchar(255),
+  directions varchar(255),
+  latitude decimal(38,2),
+  longitude decimal(38,2),
+  park_name varchar(255),
+  state_or_province varchar(255),
+  contributor_id bigint NOT NULL,
+  PRIMARY KEY (pet_park_id),
+  KEY idx_pet_park_contributor (contributor_id),
+  CONSTRAINT fk_pet_park_contributor FOREIGN KEY (contributor_id)
+    REFERENCES contributor (contributor_id)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS pet_park_amenity (
+  pet_park_id bigint NOT NULL,
+  amenity_id bigint NOT NULL,
+  PRIMARY KEY (pet_park_id, amenity_id),
+  KEY idx_pet_park_amenity_amenity (amenity_id),
+  CONSTRAINT fk_pet_park_amenity_pet_park FOREIGN KEY (pet_park_id)
+    REFERENCES pet_park (pet_park_id),
+  CONSTRAINT fk_pet_park_amenity_amenity FOREIGN KEY (amenity_id)
+    REFERENCES amenity (amenity_id)
+) ENGINE=InnoDB;
@@ -0,0 +1,24 @@
+-- data.sql used to run on every startup, inserting another copy of each
+-- amenity each time. Parks may be linked to any of the copies. This keeps
+-- the lowest amenity_id for each name, moves the park links onto it and
+-- deletes the other copies. On a new database there is nothing to do.
+
+INSERT IGNORE INTO pet_park_amenity (pet_park_id, amenity_id)
+SELECT pa.pet_park_id, keep.amenity_id
+  FROM pet_park_amenity pa
+  JOIN amenity a ON a.amenity_id = pa.amenity_id
+  JOIN (SELECT amenity, MIN(amenity_id) AS amenity_id
+          FROM amenity GROUP BY amenity) keep ON keep.amenity = a.amenity;
+
+DELETE pa
+  FROM pet_park_amenity pa
+  JOIN amenity a ON a.amenity_id = pa.amenity_id
+  JOIN (SELECT amenity, MIN(amenity_id) AS amenity_id
+          FROM amenity GROUP BY amenity) keep ON keep.amenity = a.amenity
+ WHERE pa.amenity_id <> keep.amenity_id;
+
+DELETE a
+  FROM amenity a
+  JOIN (SELECT amenity, MIN(amenity_id) AS amenity_id
+          FROM amenity GROUP BY amenity) keep ON keep.amenity = a.amenity
+ WHERE a.amenity_id <> keep.amenity_id;
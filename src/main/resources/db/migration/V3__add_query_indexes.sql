@@ -0,0 +1,14 @@
+-- Indexes for the hot queries.
+--
+-- amenity.amenity: AmenityDao.findAllByAmenityIn() looks amenities up by
+-- name. The index is unique so that duplicate amenities cannot come back.
+--
+-- pet_park (latitude, longitude): bounding-box searches on the map.
+--
+-- contributor.contributor_email and pet_park.contributor_id are already
+-- indexed by the unique constraint and the foreign key created in V1 (or by
+-- Hibernate on older databases).
+
+CREATE UNIQUE INDEX uk_amenity_amenity ON amenity (amenity);
+
+CREATE INDEX idx_pet_park_lat_lon ON pet_park (latitude, longitude);
@@ -0,0 +1,11 @@
+-- The amenities that parks can have. This replaces data.sql. INSERT IGNORE
+-- skips amenities that already exist (e.g. in a database that data.sql
+-- seeded), relying on the unique index from V3.
+
+INSERT IGNORE INTO amenity (amenity) VALUES ('Dog friendly');
+INSERT IGNORE INTO amenity (amenity) VALUES ('cat friendly');
+INSERT IGNORE INTO amenity (amenity) VALUES ('turtle friendly');
+INSERT IGNORE INTO amenity (amenity) VALUES ('chicken friendly');
+INSERT IGNORE INTO amenity (amenity) VALUES ('restrooms');
+INSERT IGNORE INTO amenity (amenity) VALUES ('Hot dog stand');
+INSERT IGNORE INTO amenity (amenity) VALUES ('wifi');
@@ -0,0 +1,15 @@
+-- View counts per park, written by ParkViewCounter in batched upserts.
+--
+-- There is no foreign key to pet_park: a flush must not fail because a park
+-- it counted was deleted in the meantime. Counts of deleted parks are left
+-- behind and are dropped by the join to pet_park when they are read.
+--
+-- idx_pet_park_view_count lets the most viewed parks be read from the end of
+-- the index instead of sorting every row.
+
+CREATE TABLE IF NOT EXISTS pet_park_view (
+  pet_park_id bigint NOT NULL,
+  view_count bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (pet_park_id),
+  KEY idx_pet_park_view_count (view_count)
+) ENGINE=InnoDB;
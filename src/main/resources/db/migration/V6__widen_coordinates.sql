@@ -0,0 +1,9 @@
+-- Stores latitude and longitude with 6 decimals (about 0.1 m) instead of
+-- the 2 (up to about 550 m of rounding) that Hibernate chose for a plain
+-- BigDecimal. Nearby-park checks such as DuplicateParkIndex compare
+-- coordinates a few hundred meters apart, which the rounding made useless.
+-- 3 integer digits hold every longitude, so no stored value changes.
+
+ALTER TABLE pet_park
+  MODIFY latitude decimal(9,6),
+  MODIFY longitude decimal(9,6);
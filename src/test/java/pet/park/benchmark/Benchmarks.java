@@ -0,0 +1,319 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import com.sun.management.ThreadMXBean;
+import pet.park.PetParkApplication;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.PetParkData;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This class holds what the benchmarks in this package share: starting the
+ * application, timing an operation on several threads and printing the
+ * results. The benchmarks are programs with a main() method rather than
+ * tests, so "mvn test" does not run them. Run one with the "bench" profile:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=GroupCommitBenchmark
+ * </pre>
+ *
+ * Most of them start the application on the MySQL database in
+ * application.yaml. They add a contributor with parks and delete it when
+ * they are done, so they should not be run against a database that matters.
+ *
+ * Each result gives the throughput, the latency percentiles (recorded in an
+ * HdrHistogram) and the bytes allocated per operation by the measuring
+ * threads. The measuring threads are platform threads, because the JVM does
+ * not report allocation for virtual threads.
+ *
+ * @author Promineo
+ *
+ */
+final class Benchmarks {
+  private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  /**
+   * An operation to time. It fails by throwing.
+   */
+  @FunctionalInterface
+  interface Operation {
+    void run() throws Exception;
+  }
+
+  /**
+   * The result of one measurement.
+   *
+   * @param name What was measured.
+   * @param operations The operations that succeeded.
+   * @param errors The operations that threw.
+   * @param elapsedNanos How long the measurement ran.
+   * @param latencies The latency of each operation, in nanoseconds.
+   * @param allocatedBytes The bytes allocated by the measuring threads.
+   */
+  record Result(String name, long operations, long errors, long elapsedNanos,
+      Histogram latencies, long allocatedBytes) {
+  }
+
+  private Benchmarks() {
+  }
+
+  /**
+   * Start the application. The port is chosen by the system, the startup
+   * benchmark and SQL logging are turned off, and the column store snapshot
+   * is kept in a directory of its own so that the application's snapshot is
+   * left alone.
+   *
+   * @param profiles The profiles to activate.
+   * @param args More command-line arguments, such as
+   *        "--pet-park.group-commit.enabled=true".
+   * @return The running application.
+   */
+  static ConfigurableApplicationContext start(String[] profiles,
+      String... args) throws IOException {
+    Path snapshots = Files.createTempDirectory("pet-park-bench");
+    List<String> all = new ArrayList<>(List.of("--server.port=0",
+        "--pet-park.startup.benchmark=false", "--spring.jpa.show-sql=false",
+        "--logging.level.root=WARN", "--pet-park.column-store.snapshot-file="
+            + snapshots.resolve("park-columns.bin")));
+
+    all.addAll(List.of(args));
+
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(() -> deleteQuietly(snapshots)));
+    return new SpringApplicationBuilder(PetParkApplication.class)
+        .profiles(profiles).run(all.toArray(String[]::new));
+  }
+
+  /**
+   * @return The port that a started application listens on.
+   */
+  static int port(ConfigurableApplicationContext context) {
+    return context.getEnvironment().getRequiredProperty("local.server.port",
+        Integer.class);
+  }
+
+  /**
+   * Run an operation on several threads, first for the warmup and then for
+   * the measurement. Only operations that start during the measurement are
+   * recorded.
+   *
+   * @param name What is measured.
+   * @param threads The number of threads.
+   * @param warmup How long to run before measuring.
+   * @param duration How long to measure.
+   * @param operation The operation.
+   * @return The result.
+   */
+  static Result measure(String name, int threads, Duration warmup,
+      Duration duration, Operation operation) throws InterruptedException {
+    ThreadMXBean threadBean =
+        (ThreadMXBean)ManagementFactory.getThreadMXBean();
+    CountDownLatch done = new CountDownLatch(threads);
+    AtomicReference<Exception> firstError = new AtomicReference<>();
+    List<Histogram> histograms = new ArrayList<>();
+    long[] operations = new long[threads];
+    long[] errors = new long[threads];
+    long[] allocated = new long[threads];
+    long[] finished = new long[threads];
+    long measureFrom = System.nanoTime() + warmup.toNanos();
+    long measureUntil = measureFrom + duration.toNanos();
+
+    for(int thread = 0; thread < threads; thread++) {
+      int index = thread;
+      Histogram histogram = new Histogram(MAX_LATENCY_NANOS, 3);
+
+      histograms.add(histogram);
+      Thread.ofPlatform().name(name + "-" + thread).start(() -> {
+        long threadId = Thread.currentThread().threadId();
+        long allocatedFrom = -1;
+        long start;
+
+        try {
+          while((start = System.nanoTime()) < measureUntil) {
+            boolean measured = start >= measureFrom;
+
+            if(measured && allocatedFrom < 0) {
+              allocatedFrom = threadBean.getThreadAllocatedBytes(threadId);
+            }
+
+            try {
+              operation.run();
+
+              if(measured) {
+                histogram.recordValue(
+                    Math.min(System.nanoTime() - start, MAX_LATENCY_NANOS));
+                operations[index]++;
+              }
+            }
+            catch(Exception e) {
+              firstError.compareAndSet(null, e);
+
+              if(measured) {
+                errors[index]++;
+              }
+            }
+          }
+
+          if(allocatedFrom >= 0) {
+            allocated[index] =
+                threadBean.getThreadAllocatedBytes(threadId) - allocatedFrom;
+          }
+
+          finished[index] = System.nanoTime();
+        }
+        finally {
+          done.countDown();
+        }
+      });
+    }
+
+    done.await();
+
+    if(firstError.get() != null) {
+      System.err.println(name + ": " + firstError.get());
+    }
+
+    Histogram latencies = new Histogram(MAX_LATENCY_NANOS, 3);
+
+    histograms.forEach(latencies::add);
+
+    long last = measureUntil;
+
+    for(long time : finished) {
+      last = Math.max(last, time);
+    }
+
+    return new Result(name, sum(operations), sum(errors), last - measureFrom,
+        latencies, sum(allocated));
+  }
+
+  /**
+   * Print a table of results.
+   *
+   * @param title The heading.
+   * @param results The results, one per row.
+   */
+  static void print(String title, List<Result> results) {
+    System.out.println();
+    System.out.println(title);
+    System.out.printf("%-36s %10s %9s %9s %9s %11s %7s%n", "", "ops/s",
+        "p50 ms", "p99 ms", "p99.9 ms", "alloc/op", "errors");
+
+    for(Result result : results) {
+      Histogram latencies = result.latencies();
+      long operations = Math.max(result.operations(), 1);
+
+      System.out.printf("%-36s %10.0f %9.3f %9.3f %9.3f %11s %7d%n",
+          result.name(),
+          result.operations() * 1e9 / result.elapsedNanos(),
+          millis(latencies.getValueAtPercentile(50)),
+          millis(latencies.getValueAtPercentile(99)),
+          millis(latencies.getValueAtPercentile(99.9)),
+          bytes(result.allocatedBytes() / operations), result.errors());
+    }
+  }
+
+  /**
+   * Measure the heap still in use after a full collection. A few
+   * collections are requested, since one is not always enough to clear
+   * everything that is unreachable.
+   *
+   * @return The used heap, in bytes.
+   */
+  static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+
+    for(int pass = 0; pass < 4; pass++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Format a byte count in B, KB or MB.
+   */
+  static String bytes(long bytes) {
+    if(bytes < 10 * 1024) {
+      return bytes + " B";
+    }
+
+    if(bytes < 10 * 1024 * 1024) {
+      return bytes / 1024 + " KB";
+    }
+
+    return bytes / (1024 * 1024) + " MB";
+  }
+
+  /**
+   * Save a contributor for a benchmark. The email is made unique so that
+   * a benchmark that did not finish does not stop the next one.
+   */
+  static ContributorData contributor() {
+    ContributorData contributor = new ContributorData();
+
+    contributor.setContributorName("Benchmark");
+    contributor.setContributorEmail(
+        "benchmark-" + System.nanoTime() + "@example.com");
+    return contributor;
+  }
+
+  /**
+   * Build the n-th pet park of a benchmark. Each one gets its own name and
+   * position, so the duplicate check does not find the others.
+   */
+  static PetParkData park(long n) {
+    PetParkData park = new PetParkData();
+
+    park.setParkName("Benchmark park " + n);
+    park.setDirections("Turn left at the fire hydrant.");
+    park.setStateOrProvince("Colorado");
+    park.setCountry("United States");
+    park.setGeoLocation(new GeoLocation(
+        BigDecimal.valueOf(37_000_000 + n % 4000 * 1000, 6),
+        BigDecimal.valueOf(-109_000_000 + n / 4000 % 7000 * 1000, 6)));
+    park.setAmenities(Set.of("Dog friendly", "restrooms", "wifi"));
+    return park;
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static long sum(long[] values) {
+    long sum = 0;
+
+    for(long value : values) {
+      sum += value;
+    }
+
+    return sum;
+  }
+
+  private static void deleteQuietly(Path directory) {
+    try {
+      FileSystemUtils.deleteRecursively(directory);
+    }
+    catch(IOException e) {
+      /* A leftover temporary directory is harmless. */
+    }
+  }
+}
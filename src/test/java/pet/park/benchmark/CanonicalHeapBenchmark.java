@@ -0,0 +1,201 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+import pet.park.controller.model.Canonical;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+import pet.park.dao.PetParkView;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This benchmark measures the heap retained by a large list of PetParkData
+ * with and without {@link Canonical}. Both lists are built from the same
+ * projection rows. Like rows read by the JDBC driver, each row has its own
+ * copies of the strings.
+ *
+ * <ul>
+ * <li>Without Canonical, each DTO is built as PetParkData(PetParkView) was
+ * before: it keeps the row's country and state strings and splits the
+ * amenities into a HashSet of its own.</li>
+ * <li>With Canonical, each DTO is built by PetParkData(PetParkView), which
+ * shares one copy of each string and one set per amenity combination. The
+ * tables in Canonical are counted as part of what it retains.</li>
+ * </ul>
+ *
+ * It needs no database. Run it with:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=CanonicalHeapBenchmark
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class CanonicalHeapBenchmark {
+  private static final int PARKS = 500_000;
+
+  private static final List<String> AMENITIES = List.of("Dog friendly",
+      "cat friendly", "turtle friendly", "chicken friendly", "restrooms",
+      "Hot dog stand", "wifi");
+  private static final List<String> COUNTRIES = List.of("United States",
+      "Canada", "Mexico", "United Kingdom", "Australia");
+  private static final int STATES_PER_COUNTRY = 20;
+
+  /*
+   * A projection row.
+   */
+  private record View(Long petParkId, String parkName, String directions,
+      String stateOrProvince, String country, BigDecimal latitude,
+      BigDecimal longitude, Long contributorId, String contributorName,
+      String contributorEmail, String amenities) implements PetParkView {
+
+    @Override
+    public Long getPetParkId() {
+      return petParkId;
+    }
+
+    @Override
+    public String getParkName() {
+      return parkName;
+    }
+
+    @Override
+    public String getDirections() {
+      return directions;
+    }
+
+    @Override
+    public String getStateOrProvince() {
+      return stateOrProvince;
+    }
+
+    @Override
+    public String getCountry() {
+      return country;
+    }
+
+    @Override
+    public BigDecimal getLatitude() {
+      return latitude;
+    }
+
+    @Override
+    public BigDecimal getLongitude() {
+      return longitude;
+    }
+
+    @Override
+    public Long getContributorId() {
+      return contributorId;
+    }
+
+    @Override
+    public String getContributorName() {
+      return contributorName;
+    }
+
+    @Override
+    public String getContributorEmail() {
+      return contributorEmail;
+    }
+
+    @Override
+    public String getAmenities() {
+      return amenities;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    long without = retained(false);
+    long with = retained(true);
+
+    System.out.println();
+    System.out.println("Heap retained by " + PARKS + " PetParkData");
+    System.out.printf("%-20s %12s %12s%n", "", "retained", "per park");
+    print("without Canonical", without);
+    print("with Canonical", with);
+  }
+
+  /*
+   * Build the list and measure how much more heap is in use while it is
+   * held.
+   */
+  private static long retained(boolean canonical) throws Exception {
+    Random random = new Random(42);
+    long before = Benchmarks.usedHeap();
+    List<PetParkData> parks = new ArrayList<>(PARKS);
+
+    for(int park = 0; park < PARKS; park++) {
+      View view = view(random, park);
+
+      parks.add(canonical ? new PetParkData(view) : uncanonical(view));
+    }
+
+    long retained = Benchmarks.usedHeap() - before;
+
+    /* Keep the list reachable until it has been measured. */
+    if(parks.size() != PARKS) {
+      throw new IllegalStateException();
+    }
+
+    return retained;
+  }
+
+  /*
+   * Convert a row as PetParkData(PetParkView) did before Canonical.
+   */
+  private static PetParkData uncanonical(View view) {
+    PetParkData park = new PetParkData();
+
+    park.setPetParkId(view.getPetParkId());
+    park.setParkName(view.getParkName());
+    park.setDirections(view.getDirections());
+    park.setStateOrProvince(view.getStateOrProvince());
+    park.setCountry(view.getCountry());
+    park.setGeoLocation(
+        new GeoLocation(view.getLatitude(), view.getLongitude()));
+    park.setContributor(new PetParkContributor(view.getContributorId(),
+        view.getContributorName(), view.getContributorEmail()));
+    park.setAmenities(view.getAmenities() == null ? new HashSet<>()
+        : new HashSet<>(Arrays.asList(
+            view.getAmenities().split(PetParkView.AMENITY_SEPARATOR))));
+    return park;
+  }
+
+  /*
+   * Make a row with its own copies of the strings, as the driver would.
+   */
+  private static View view(Random random, int park) {
+    String country = COUNTRIES.get(random.nextInt(COUNTRIES.size()));
+    StringJoiner amenities = new StringJoiner(PetParkView.AMENITY_SEPARATOR);
+    int mask = random.nextInt(1 << AMENITIES.size());
+
+    for(int amenity = 0; amenity < AMENITIES.size(); amenity++) {
+      if((mask & 1 << amenity) != 0) {
+        amenities.add(AMENITIES.get(amenity));
+      }
+    }
+
+    return new View((long)park, "Park " + park, "Directions to park " + park,
+        new String(country + " state " + random.nextInt(STATES_PER_COUNTRY)),
+        new String(country),
+        BigDecimal.valueOf(random.nextLong(-90_000_000, 90_000_000), 6),
+        BigDecimal.valueOf(random.nextLong(-180_000_000, 180_000_000), 6),
+        (long)park % 1000, "Contributor " + park % 1000,
+        "contributor" + park % 1000 + "@example.com",
+        mask == 0 ? null : new String(amenities.toString()));
+  }
+
+  private static void print(String name, long retained) {
+    System.out.printf("%-20s %12s %12s%n", name, Benchmarks.bytes(retained),
+        Benchmarks.bytes(retained / PARKS));
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.context.ConfigurableApplicationContext;
+import pet.park.benchmark.Benchmarks.Result;
+import pet.park.service.GroupCommitExecutor;
+import pet.park.service.ParkService;
+
+/**
+ * This benchmark compares saving pet parks with a commit per request to
+ * saving them with group commit (see {@link GroupCommitExecutor}) at a few
+ * batch windows. Many writers save new parks through
+ * ParkService.savePetPark() at the same time, which is when group commit
+ * should pay off: the commits of a batch share one transaction and one
+ * flush of the database log.
+ *
+ * Each configuration starts the application again, since the group commit
+ * settings are read at startup. The parks are saved under a contributor of
+ * their own, which is deleted at the end. It needs the MySQL database in
+ * application.yaml. Run it with:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=GroupCommitBenchmark
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class GroupCommitBenchmark {
+  private static final int WRITERS = 64;
+  private static final Duration WARMUP = Duration.ofSeconds(5);
+  private static final Duration DURATION = Duration.ofSeconds(20);
+
+  /*
+   * The name of each configuration and the arguments that select it.
+   */
+  private record Configuration(String name, String... args) {
+  }
+
+  private static final List<Configuration> CONFIGURATIONS = List.of(
+      new Configuration("commit per request",
+          "--pet-park.group-commit.enabled=false"),
+      new Configuration("group commit, max wait 1 ms",
+          "--pet-park.group-commit.enabled=true",
+          "--pet-park.group-commit.max-wait=PT0.001S"),
+      new Configuration("group commit, max wait 5 ms",
+          "--pet-park.group-commit.enabled=true",
+          "--pet-park.group-commit.max-wait=PT0.005S"),
+      new Configuration("group commit, max wait 20 ms",
+          "--pet-park.group-commit.enabled=true",
+          "--pet-park.group-commit.max-wait=PT0.02S"));
+
+  public static void main(String[] args) throws Exception {
+    List<Result> results = new ArrayList<>();
+
+    for(Configuration configuration : CONFIGURATIONS) {
+      results.add(run(configuration));
+    }
+
+    Benchmarks.print("Saving new pet parks, " + WRITERS + " writers",
+        results);
+  }
+
+  private static Result run(Configuration configuration) throws Exception {
+    try(ConfigurableApplicationContext context =
+        Benchmarks.start(new String[0], configuration.args())) {
+      ParkService parkService = context.getBean(ParkService.class);
+      Long contributorId = parkService
+          .saveContributor(Benchmarks.contributor()).getContributorId();
+      AtomicLong parks = new AtomicLong();
+
+      try {
+        return Benchmarks.measure(configuration.name(), WRITERS, WARMUP,
+            DURATION, () -> parkService.savePetPark(contributorId,
+                Benchmarks.park(parks.incrementAndGet())));
+      }
+      finally {
+        parkService.deleteContributorById(contributorId);
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+import pet.park.benchmark.Benchmarks.Result;
+import pet.park.dao.PetParkDao;
+import pet.park.service.ParkService;
+
+/**
+ * This benchmark compares the edge profile's log store with JPA on MySQL.
+ * For each store, writers save new parks through ParkService.savePetPark(),
+ * and then readers read the saved parks by ID through
+ * PetParkDao.findViewById() in a read-only transaction. The reads go to the
+ * DAO because the service would answer them from the column store.
+ *
+ * The log store is measured with sync-writes on and off, in a temporary
+ * directory. JPA needs the MySQL database in application.yaml; if it cannot
+ * be reached, that part is skipped. The parks are saved under a
+ * contributor of their own, which is deleted at the end. Run it with:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=LogStoreBenchmark
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class LogStoreBenchmark {
+  private static final int WRITERS = 8;
+  private static final int READERS = 8;
+  private static final Duration WARMUP = Duration.ofSeconds(5);
+  private static final Duration DURATION = Duration.ofSeconds(15);
+
+  public static void main(String[] args) throws Exception {
+    List<Result> results = new ArrayList<>();
+    Path directory = Files.createTempDirectory("pet-park-edge");
+
+    try {
+      results.addAll(run("log store, sync", new String[] {"edge"},
+          "--pet-park.edge.directory=" + directory.resolve("sync"),
+          "--pet-park.edge.sync-writes=true"));
+      results.addAll(run("log store, no sync", new String[] {"edge"},
+          "--pet-park.edge.directory=" + directory.resolve("no-sync"),
+          "--pet-park.edge.sync-writes=false"));
+    }
+    finally {
+      FileSystemUtils.deleteRecursively(directory);
+    }
+
+    try {
+      results.addAll(run("JPA", new String[0]));
+    }
+    catch(Exception e) {
+      System.err.println("JPA skipped: " + e);
+    }
+
+    Benchmarks.print(
+        "Pet parks, " + WRITERS + " writers, " + READERS + " readers",
+        results);
+  }
+
+  private static List<Result> run(String store, String[] profiles,
+      String... args) throws Exception {
+    try(ConfigurableApplicationContext context =
+        Benchmarks.start(profiles, args)) {
+      ParkService parkService = context.getBean(ParkService.class);
+      PetParkDao petParkDao = context.getBean(PetParkDao.class);
+      TransactionTemplate readOnly = new TransactionTemplate(
+          context.getBean(PlatformTransactionManager.class));
+      Long contributorId = parkService
+          .saveContributor(Benchmarks.contributor()).getContributorId();
+      AtomicLong parks = new AtomicLong();
+      Queue<Long> saved = new ConcurrentLinkedQueue<>();
+
+      readOnly.setReadOnly(true);
+
+      try {
+        Result save = Benchmarks.measure(store + " save", WRITERS, WARMUP,
+            DURATION, () -> saved.add(parkService
+                .savePetPark(contributorId,
+                    Benchmarks.park(parks.incrementAndGet()))
+                .getPetParkId()));
+
+        Long[] ids = saved.toArray(Long[]::new);
+
+        Result read = Benchmarks.measure(store + " read by ID", READERS,
+            WARMUP, DURATION,
+            () -> readOnly.executeWithoutResult(status -> petParkDao
+                .findViewById(
+                    ids[ThreadLocalRandom.current().nextInt(ids.length)])
+                .orElseThrow()));
+
+        return List.of(save, read);
+      }
+      finally {
+        parkService.deleteContributorById(contributorId);
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import pet.park.benchmark.Benchmarks.Result;
+import pet.park.controller.model.ContributorData;
+import pet.park.controller.model.PetParkData;
+import pet.park.dao.ContributorDao;
+import pet.park.dao.PetParkDao;
+import pet.park.dao.PetParkView;
+import pet.park.service.ParkService;
+
+/**
+ * This benchmark compares reading parks and contributors through the
+ * {@link PetParkView} projections with reading them as managed entities,
+ * which is how the service read them before. The entity reads load the
+ * entities into the persistence context of a read-only transaction and
+ * convert them with the PetParkData(PetPark) and
+ * ContributorData(Contributor) constructors; the contributor, amenities and
+ * parks are loaded lazily, as they were. The projection reads are the ones
+ * that ParkService uses now.
+ *
+ * The allocation per operation is the number to watch: the entity reads
+ * allocate the entities, their lazy collections and Hibernate's
+ * dirty-checking snapshots as well as the DTOs.
+ *
+ * A contributor with a few hundred parks is added and deleted at the end.
+ * It needs the MySQL database in application.yaml. Run it with:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=ProjectionBenchmark
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class ProjectionBenchmark {
+  private static final int PARKS = 500;
+  private static final int THREADS = 1;
+  private static final Duration WARMUP = Duration.ofSeconds(10);
+  private static final Duration DURATION = Duration.ofSeconds(20);
+
+  public static void main(String[] args) throws Exception {
+    List<Result> results = new ArrayList<>();
+
+    try(ConfigurableApplicationContext context =
+        Benchmarks.start(new String[0])) {
+      ParkService parkService = context.getBean(ParkService.class);
+      PetParkDao petParkDao = context.getBean(PetParkDao.class);
+      ContributorDao contributorDao = context.getBean(ContributorDao.class);
+      TransactionTemplate readOnly = new TransactionTemplate(
+          context.getBean(PlatformTransactionManager.class));
+      Long contributorId = parkService
+          .saveContributor(Benchmarks.contributor()).getContributorId();
+
+      readOnly.setReadOnly(true);
+
+      try {
+        for(int park = 0; park < PARKS; park++) {
+          parkService.savePetPark(contributorId, Benchmarks.park(park));
+        }
+
+        results.add(measure("all parks, entities", readOnly,
+            () -> petParkDao.findAll().stream().map(PetParkData::new)
+                .toList()));
+        results.add(measure("all parks, projection", readOnly,
+            () -> petParkDao.findAllViews().stream().map(PetParkData::new)
+                .toList()));
+        results.add(measure("contributor, entities", readOnly,
+            () -> contributorDao.findById(contributorId)
+                .map(ContributorData::new).orElseThrow()));
+        results.add(measure("contributor, projection", readOnly,
+            () -> new ContributorData(
+                contributorDao.findViewsById(contributorId))));
+      }
+      finally {
+        parkService.deleteContributorById(contributorId);
+      }
+    }
+
+    Benchmarks.print("Reads with " + PARKS + " benchmark parks", results);
+  }
+
+  /*
+   * Time a read in a read-only transaction, as the service runs it.
+   */
+  private static Result measure(String name, TransactionTemplate readOnly,
+      Runnable read) throws InterruptedException {
+    return Benchmarks.measure(name, THREADS, WARMUP, DURATION,
+        () -> readOnly.executeWithoutResult(status -> read.run()));
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.context.ConfigurableApplicationContext;
+import pet.park.benchmark.Benchmarks.Result;
+import pet.park.service.ParkService;
+
+/**
+ * This benchmark compares the servlet stack (ParkController on JPA) with the
+ * "reactive" profile (ReactiveParkController on WebFlux and R2DBC). The same
+ * read routes are requested over HTTP from many clients at a time:
+ *
+ * <ul>
+ * <li>GET /pet_park/contributor/{contributorId}</li>
+ * <li>GET /pet_park/contributor/{contributorId}/park/{parkId}</li>
+ * <li>GET /pet_park/park</li>
+ * </ul>
+ *
+ * The park list cache, the column store and admission control only exist on
+ * the servlet stack, so they are turned off: both stacks then read the
+ * database for every request, and no request is turned away.
+ *
+ * A contributor with a few parks is added through the servlet application
+ * and deleted at the end. It needs the MySQL database in application.yaml
+ * and application-reactive.yaml. Run it with:
+ *
+ * <pre>
+ * mvn -Pbench test-compile exec:exec -Dbenchmark=ReactiveVsServletBenchmark
+ * </pre>
+ *
+ * @author Promineo
+ *
+ */
+public class ReactiveVsServletBenchmark {
+  private static final int CLIENTS = 64;
+  private static final int PARKS = 20;
+  private static final Duration WARMUP = Duration.ofSeconds(5);
+  private static final Duration DURATION = Duration.ofSeconds(15);
+
+  private static final String[] ARGS = {"--pet-park.admission.enabled=false",
+      "--pet-park.park-list-cache.enabled=false",
+      "--pet-park.column-store.enabled=false"};
+
+  /*
+   * A route as it is printed, and the path that is requested.
+   */
+  private record Route(String name, String path) {
+  }
+
+  private static final HttpClient client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1).build();
+
+  public static void main(String[] args) throws Exception {
+    List<Result> results = new ArrayList<>();
+
+    try(ConfigurableApplicationContext servlet =
+        Benchmarks.start(new String[0], ARGS)) {
+      ParkService parkService = servlet.getBean(ParkService.class);
+      Long contributorId = parkService
+          .saveContributor(Benchmarks.contributor()).getContributorId();
+
+      try {
+        Long parkId = null;
+
+        for(int park = 0; park < PARKS; park++) {
+          parkId = parkService
+              .savePetPark(contributorId, Benchmarks.park(park))
+              .getPetParkId();
+        }
+
+        List<Route> routes = List.of(
+            new Route("contributor/{id}", "/pet_park/contributor/"
+                + contributorId),
+            new Route("contributor/{id}/park/{id}", "/pet_park/contributor/"
+                + contributorId + "/park/" + parkId),
+            new Route("park", "/pet_park/park"));
+
+        results.addAll(run("servlet", Benchmarks.port(servlet), routes));
+
+        try(ConfigurableApplicationContext reactive =
+            Benchmarks.start(new String[] {"reactive"}, ARGS)) {
+          results.addAll(run("reactive", Benchmarks.port(reactive),
+              routes));
+        }
+      }
+      finally {
+        parkService.deleteContributorById(contributorId);
+      }
+    }
+
+    Benchmarks.print("GET requests, " + CLIENTS + " clients", results);
+  }
+
+  private static List<Result> run(String stack, int port, List<Route> routes)
+      throws InterruptedException {
+    List<Result> results = new ArrayList<>();
+
+    for(Route route : routes) {
+      HttpRequest request = HttpRequest
+          .newBuilder(URI.create("http://localhost:" + port + route.path()))
+          .header("Accept", "application/json").build();
+
+      results.add(Benchmarks.measure(stack + " " + route.name(), CLIENTS,
+          WARMUP, DURATION, () -> {
+            int status = client.send(request, BodyHandlers.discarding())
+                .statusCode();
+
+            if(status != 200) {
+              throw new IOException("HTTP " + status);
+            }
+          }));
+    }
+
+    return results;
+  }
+}
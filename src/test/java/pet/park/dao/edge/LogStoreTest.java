@@ -0,0 +1,254 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.dao.edge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import pet.park.dao.edge.LogStore.Table;
+
+/**
+ * This class tests how {@link LogStore} recovers its file on startup: a torn
+ * last append is cut off, a damaged frame before the end stops startup (or
+ * is set aside), and a compacted file reads back the live records.
+ *
+ * @author Promineo
+ *
+ */
+class LogStoreTest {
+
+  /*
+   * Each record is written in a frame of its own: the frame header, the
+   * entry header and a value of VALUE_BYTES.
+   */
+  private static final int VALUE_BYTES = 10;
+  private static final int FRAME_BYTES = 8 + 13 + VALUE_BYTES;
+  private static final int MAGIC_BYTES = 8;
+
+  @TempDir
+  Path directory;
+
+  private LogStore store;
+
+  @AfterEach
+  void closeStore() throws IOException {
+    if(store != null) {
+      store.close();
+    }
+  }
+
+  @Test
+  void aTornLastAppendIsCutOff() throws IOException {
+    writeRecords(3);
+    cutLogTo(size() - 5);
+
+    reopen(false);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 2L);
+    assertThat(size()).isEqualTo(MAGIC_BYTES + 2 * FRAME_BYTES);
+
+    store.write(Table.PET_PARK, 3, value(3));
+    reopen(false);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 2L, 3L);
+    assertThat(store.read(Table.PET_PARK, 3)).isEqualTo(value(3));
+  }
+
+  @Test
+  void aTornLastFrameWithABadChecksumIsCutOff() throws IOException {
+    writeRecords(3);
+    flipByte(size() - 1);
+
+    reopen(false);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 2L);
+    assertThat(size()).isEqualTo(MAGIC_BYTES + 2 * FRAME_BYTES);
+  }
+
+  @Test
+  void zerosAfterTheLastFrameAreCutOff() throws IOException {
+    writeRecords(3);
+
+    long size = size();
+
+    try(FileChannel channel = FileChannel.open(logFile(),
+        StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4096), size);
+    }
+
+    reopen(false);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 2L, 3L);
+    assertThat(size()).isEqualTo(size);
+  }
+
+  @Test
+  void aDamagedFrameBeforeTheEndStopsStartup() throws IOException {
+    writeRecords(3);
+    store.close();
+    store = null;
+
+    long size = size();
+
+    flipByte(MAGIC_BYTES + FRAME_BYTES + FRAME_BYTES / 2);
+
+    assertThatThrownBy(() -> store = open(false))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("is corrupt");
+    assertThat(size()).isEqualTo(size);
+  }
+
+  @Test
+  void aDamagedFrameBeforeTheEndCanBeSetAside() throws IOException {
+    writeRecords(3);
+
+    long size = size();
+
+    flipByte(MAGIC_BYTES + FRAME_BYTES + FRAME_BYTES / 2);
+
+    reopen(true);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L);
+    assertThat(size()).isEqualTo(MAGIC_BYTES + FRAME_BYTES);
+
+    List<Path> corrupt;
+
+    try(var files = Files.list(directory)) {
+      corrupt = files.filter(file -> file.getFileName().toString()
+          .startsWith("pet-parks.log.corrupt-")).toList();
+    }
+
+    assertThat(corrupt).hasSize(1);
+    assertThat(Files.size(corrupt.get(0)))
+        .isEqualTo(size - MAGIC_BYTES - FRAME_BYTES);
+  }
+
+  @Test
+  void aCompactedLogIsRecovered() throws IOException {
+    writeRecords(5);
+    store.write(Table.PET_PARK, 1, value(11));
+    store.delete(Table.PET_PARK, 2);
+    store.write(Table.CONTRIBUTOR, 1, value(21));
+
+    store.compact();
+
+    assertThat(Files.exists(directory.resolve("pet-parks.log.compact")))
+        .isFalse();
+
+    store.write(Table.PET_PARK, 6, value(6));
+
+    long size = size();
+
+    store.write(Table.PET_PARK, 7, value(7));
+    cutLogTo(size() - 1);
+
+    reopen(false);
+
+    assertThat(size()).isEqualTo(size);
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 3L, 4L, 5L, 6L);
+    assertThat(store.read(Table.PET_PARK, 1)).isEqualTo(value(11));
+    assertThat(store.read(Table.PET_PARK, 2)).isNull();
+    assertThat(store.read(Table.PET_PARK, 6)).isEqualTo(value(6));
+    assertThat(store.read(Table.CONTRIBUTOR, 1)).isEqualTo(value(21));
+    assertThat(store.nextId(Table.PET_PARK)).isEqualTo(7);
+  }
+
+  @Test
+  void aLeftOverCompactFileIsIgnored() throws IOException {
+    writeRecords(2);
+    store.close();
+    store = null;
+
+    Files.write(directory.resolve("pet-parks.log.compact"), new byte[100]);
+
+    store = open(false);
+
+    assertThat(store.ids(Table.PET_PARK)).containsExactly(1L, 2L);
+    assertThat(Files.exists(directory.resolve("pet-parks.log.compact")))
+        .isFalse();
+  }
+
+  /*
+   * Open a new store and write records 1 to count to PET_PARK, each in a
+   * frame of its own.
+   */
+  private void writeRecords(int count) throws IOException {
+    store = open(false);
+
+    for(long id = 1; id <= count; id++) {
+      store.write(Table.PET_PARK, id, value(id));
+    }
+  }
+
+  private void reopen(boolean setAsideCorruption) throws IOException {
+    if(store != null) {
+      store.close();
+      store = null;
+    }
+
+    store = open(setAsideCorruption);
+  }
+
+  private LogStore open(boolean setAsideCorruption) throws IOException {
+    LogStore logStore = new LogStore();
+
+    ReflectionTestUtils.setField(logStore, "meterRegistry",
+        new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(logStore, "directory", directory);
+    ReflectionTestUtils.setField(logStore, "syncWrites", false);
+    ReflectionTestUtils.setField(logStore, "compactionInterval",
+        Duration.ofHours(1));
+    ReflectionTestUtils.setField(logStore, "compactionThreshold", 0.5);
+    ReflectionTestUtils.setField(logStore, "compactionMinSize",
+        DataSize.ofMegabytes(1));
+    ReflectionTestUtils.setField(logStore, "setAsideCorruption",
+        setAsideCorruption);
+
+    logStore.open();
+    return logStore;
+  }
+
+  private static byte[] value(long id) {
+    return String.format("value %4d", id).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Path logFile() {
+    return directory.resolve("pet-parks.log");
+  }
+
+  private long size() throws IOException {
+    return Files.size(logFile());
+  }
+
+  private void cutLogTo(long size) throws IOException {
+    try(FileChannel channel = FileChannel.open(logFile(),
+        StandardOpenOption.WRITE)) {
+      channel.truncate(size);
+    }
+  }
+
+  private void flipByte(long position) throws IOException {
+    try(FileChannel channel = FileChannel.open(logFile(),
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(1);
+
+      channel.read(buffer, position);
+      buffer.put(0, (byte)~buffer.get(0));
+      channel.write(buffer.rewind(), position);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) 2023 by Promineo Tech.
+
+package pet.park.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pet.park.controller.model.PetParkData;
+import pet.park.controller.model.PetParkData.PetParkContributor;
+import pet.park.entity.GeoLocation;
+
+/**
+ * This class tests {@link ParkColumns}: that a snapshot reads back the parks
+ * that were written, and that compaction keeps the live parks.
+ *
+ * @author Promineo
+ *
+ */
+class ParkColumnsTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void snapshotReadsBackTheParksThatWereWritten() throws IOException {
+    ParkColumns columns = new ParkColumns(0);
+    List<PetParkData> petParks = parks(100);
+
+    petParks.forEach(columns::put);
+
+    Path file = directory.resolve("park-columns.bin");
+    columns.writeSnapshot(file);
+    ParkColumns snapshot = ParkColumns.readSnapshot(file);
+
+    assertThat(snapshot.liveRows()).isEqualTo(100);
+    assertThat(snapshot.find(ParkFilter.NONE, 0, Integer.MAX_VALUE))
+        .isEqualTo(petParks);
+    assertThat(snapshot.get(42L)).contains(petParks.get(41));
+    assertThat(snapshot.find(
+        new ParkFilter("canada", null, Set.of("wifi")), 0, Integer.MAX_VALUE))
+        .isEqualTo(columns.find(new ParkFilter("canada", null,
+            Set.of("wifi")), 0, Integer.MAX_VALUE))
+        .isNotEmpty();
+  }
+
+  @Test
+  void snapshotLeavesOutRemovedAndReplacedRows() throws IOException {
+    ParkColumns columns = new ParkColumns(0);
+    List<PetParkData> petParks = parks(10);
+
+    petParks.forEach(columns::put);
+    columns.remove(3L);
+    petParks.get(4).setParkName("Renamed park");
+    columns.put(petParks.get(4));
+
+    Path file = directory.resolve("park-columns.bin");
+    columns.writeSnapshot(file);
+    ParkColumns snapshot = ParkColumns.readSnapshot(file);
+
+    assertThat(snapshot.liveRows()).isEqualTo(9);
+    assertThat(snapshot.get(3L)).isEmpty();
+    assertThat(snapshot.get(5L).map(PetParkData::getParkName))
+        .contains("Renamed park");
+    assertThat(snapshot.find(ParkFilter.NONE, 0, Integer.MAX_VALUE))
+        .isEqualTo(columns.find(ParkFilter.NONE, 0, Integer.MAX_VALUE));
+  }
+
+  @Test
+  void readSnapshotRejectsAFileThatIsNotASnapshot() throws IOException {
+    Path file = directory.resolve("park-columns.bin");
+
+    Files.write(file, new byte[64]);
+
+    assertThatThrownBy(() -> ParkColumns.readSnapshot(file))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void compactionKeepsTheLiveParks() {
+    ParkColumns columns = new ParkColumns(0);
+    List<PetParkData> petParks = parks(3000);
+
+    petParks.forEach(columns::put);
+
+    for(PetParkData petPark : petParks) {
+      petPark.setDirections("Moved to the other side of the road.");
+      columns.put(petPark);
+    }
+
+    columns.removeContributor(7L);
+
+    List<PetParkData> live =
+        columns.find(ParkFilter.NONE, 0, Integer.MAX_VALUE);
+
+    assertThat(columns.needsCompaction()).isTrue();
+
+    ParkColumns compacted = columns.compact();
+
+    assertThat(compacted.needsCompaction()).isFalse();
+    assertThat(compacted.liveRows()).isEqualTo(columns.liveRows())
+        .isEqualTo(live.size());
+    assertThat(compacted.find(ParkFilter.NONE, 0, Integer.MAX_VALUE))
+        .isEqualTo(live);
+    assertThat(compacted.petParkIdsOf(7L)).isEmpty();
+    assertThat(compacted.get(1L).map(PetParkData::getDirections))
+        .contains("Moved to the other side of the road.");
+    assertThat(compacted.find(new ParkFilter(null, "Ontario", Set.of()), 0,
+        Integer.MAX_VALUE))
+        .isEqualTo(columns.find(new ParkFilter(null, "Ontario", Set.of()),
+            0, Integer.MAX_VALUE));
+  }
+
+  /*
+   * Build parks with IDs 1 to count. The coordinates have different scales
+   * so that the test sees whether they come back exactly.
+   */
+  private static List<PetParkData> parks(int count) {
+    List<String> amenities =
+        List.of("Dog friendly", "restrooms", "wifi", "Hot dog stand");
+    List<PetParkData> petParks = new ArrayList<>();
+
+    for(int park = 1; park <= count; park++) {
+      PetParkData petPark = new PetParkData();
+      long contributorId = park % 10;
+
+      petPark.setPetParkId((long)park);
+      petPark.setParkName("Park " + park);
+      petPark.setDirections("Directions to park " + park);
+      petPark.setCountry(park % 2 == 0 ? "Canada" : "United States");
+      petPark.setStateOrProvince(park % 2 == 0 ? "Ontario" : "Colorado");
+      petPark.setGeoLocation(new GeoLocation(
+          BigDecimal.valueOf(40_123_456L + park, 6),
+          BigDecimal.valueOf(-1050L - park, park % 3)));
+      petPark.setContributor(new PetParkContributor(contributorId,
+          "Contributor " + contributorId,
+          "contributor" + contributorId + "@example.com"));
+      petPark.setAmenities(Set.copyOf(amenities.subList(0, park % 5)));
+      petParks.add(petPark);
+    }
+
+    return petParks;
+  }
+}